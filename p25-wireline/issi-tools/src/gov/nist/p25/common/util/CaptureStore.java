@@ -0,0 +1,321 @@
+//
+package gov.nist.p25.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An append-only store for captured messages that keeps memory flat over
+ * long runs. Messages are kept in fixed-size chunks; once more than a given
+ * number of full chunks are in memory, the oldest one is serialized to an
+ * append-only spill file and read back only when it is iterated.
+ * <p>
+ * Adding is synchronized. Iterators see the messages that were added before
+ * they were created and may run concurrently with further adds.
+ */
+public class CaptureStore<T extends Serializable> implements Iterable<T> {
+
+   private static Logger logger = Logger.getLogger(CaptureStore.class);
+
+   /** Messages per chunk. */
+   public static int DEFAULT_CHUNK_SIZE = 1024;
+
+   /** Full chunks kept in memory before the oldest is spilled. */
+   public static int DEFAULT_MEMORY_CHUNKS = 16;
+
+   /**
+    * Called with the messages of a chunk just before the chunk is written to
+    * the spill file, for work that needs the live objects. The listener is
+    * called with the store locked.
+    */
+   public interface SpillListener<T> {
+      /**
+       * @param first
+       *            index of the first message of the chunk in the store.
+       * @param messages
+       *            the messages of the chunk.
+       */
+      public void spilling(int first, List<T> messages);
+   }
+
+   private final String name;
+   private final int chunkSize;
+   private final int memoryChunks;
+   private SpillListener<T> spillListener;
+
+   /** Offsets and lengths of the spilled chunks in the spill file. */
+   private long[] spillOffsets = new long[16];
+   private int[] spillLengths = new int[16];
+   private int spilledChunks;
+
+   /** Full chunks still in memory, oldest first. */
+   private final ArrayList<Object[]> fullChunks = new ArrayList<Object[]>();
+   private Object[] current;
+   private int currentSize;
+   private int size;
+
+   private File spillFile;
+   private RandomAccessFile spillOut;
+   private boolean spillFailed;
+
+   public CaptureStore(String name) {
+      this(name, DEFAULT_CHUNK_SIZE, DEFAULT_MEMORY_CHUNKS);
+   }
+
+   /**
+    * Construct a capture store.
+    *
+    * @param name
+    *            prefix for the spill file name.
+    * @param chunkSize
+    *            messages per chunk.
+    * @param memoryChunks
+    *            full chunks kept in memory.
+    */
+   public CaptureStore(String name, int chunkSize, int memoryChunks) {
+      if (chunkSize <= 0 || memoryChunks < 0)
+         throw new IllegalArgumentException("bad chunk size " + chunkSize
+               + " or memory chunk count " + memoryChunks);
+      this.name = name;
+      this.chunkSize = chunkSize;
+      this.memoryChunks = memoryChunks;
+      this.current = new Object[chunkSize];
+   }
+
+   public synchronized void setSpillListener(SpillListener<T> spillListener) {
+      this.spillListener = spillListener;
+   }
+
+   public synchronized int size() {
+      return size;
+   }
+
+   /**
+    * Append a message.
+    */
+   public synchronized void add(T message) {
+      current[currentSize++] = message;
+      size++;
+      if (currentSize == chunkSize) {
+         fullChunks.add(current);
+         current = new Object[chunkSize];
+         currentSize = 0;
+         while (fullChunks.size() > memoryChunks && !spillFailed) {
+            spill();
+         }
+      }
+   }
+
+   /**
+    * Drop every message and truncate the spill file. Iterators created
+    * before this call must not be used after it.
+    */
+   public synchronized void clear() {
+      fullChunks.clear();
+      Arrays.fill(current, 0, currentSize, null);
+      currentSize = 0;
+      size = 0;
+      spilledChunks = 0;
+      try {
+         if (spillOut != null)
+            spillOut.setLength(0);
+      } catch (IOException ex) {
+         logger.error("Could not truncate " + spillFile, ex);
+      }
+   }
+
+   /**
+    * Drop every message and delete the spill file.
+    */
+   public synchronized void close() {
+      clear();
+      if (spillOut != null) {
+         try {
+            spillOut.close();
+         } catch (IOException ex) {
+            logger.error("Could not close " + spillFile, ex);
+         }
+         spillFile.delete();
+         spillOut = null;
+         spillFile = null;
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private void spill() {
+      Object[] chunk = fullChunks.get(0);
+      if (spillListener != null)
+         spillListener.spilling(spilledChunks * chunkSize,
+               (List<T>) (List<?>) Arrays.asList(chunk));
+      try {
+         if (spillOut == null) {
+            spillFile = File.createTempFile(name + "-capture", ".bin");
+            spillFile.deleteOnExit();
+            spillOut = new RandomAccessFile(spillFile, "rw");
+         }
+         ByteArrayOutputStream bos = new ByteArrayOutputStream(chunkSize * 256);
+         ObjectOutputStream oos = new ObjectOutputStream(bos);
+         oos.writeObject(chunk);
+         oos.close();
+
+         long offset = spillOut.length();
+         spillOut.seek(offset);
+         spillOut.write(bos.toByteArray());
+         if (spilledChunks == spillOffsets.length) {
+            spillOffsets = Arrays.copyOf(spillOffsets, spilledChunks * 2);
+            spillLengths = Arrays.copyOf(spillLengths, spilledChunks * 2);
+         }
+         spillOffsets[spilledChunks] = offset;
+         spillLengths[spilledChunks] = bos.size();
+         spilledChunks++;
+         fullChunks.remove(0);
+      } catch (IOException ex) {
+         // Keep everything in memory rather than lose captures.
+         logger.error("Could not spill captures of " + name
+               + " -- keeping them in memory", ex);
+         spillFailed = true;
+      }
+   }
+
+   private Object[] readChunk(RandomAccessFile in, long offset, int length)
+         throws IOException {
+      byte[] data = new byte[length];
+      in.seek(offset);
+      in.readFully(data);
+      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+      try {
+         return (Object[]) ois.readObject();
+      } catch (ClassNotFoundException ex) {
+         throw new IOException("Bad spilled chunk: " + ex.getMessage());
+      } finally {
+         ois.close();
+      }
+   }
+
+   /**
+    * Iterate over every message in the order they were added.
+    */
+   public Iterator<T> iterator() {
+      return range(0, Integer.MAX_VALUE).iterator();
+   }
+
+   /**
+    * Get the messages with an index in [from, to), in the order they were
+    * added. The range is clipped to the messages added so far.
+    */
+   public synchronized Iterable<T> range(int from, int to) {
+      if (from < 0 || to < from)
+         throw new IllegalArgumentException("bad range " + from + ", " + to);
+      final Snapshot snapshot = new Snapshot(from, Math.min(to, size));
+      return new Iterable<T>() {
+         public Iterator<T> iterator() {
+            return snapshot.new ChunkIterator();
+         }
+      };
+   }
+
+   /**
+    * Copy every message into a list.
+    */
+   public ArrayList<T> toList() {
+      ArrayList<T> list = new ArrayList<T>(size());
+      for (T message : this) {
+         list.add(message);
+      }
+      return list;
+   }
+
+   /**
+    * The chunks that make up a range at the time it was asked for.
+    */
+   private class Snapshot {
+      final int from;
+      final int to;
+      final int spilled;
+      final long[] offsets;
+      final int[] lengths;
+      final File file;
+      final Object[][] chunks;
+
+      Snapshot(int from, int to) {
+         this.from = from;
+         this.to = to;
+         this.spilled = spilledChunks;
+         this.offsets = spillOffsets;
+         this.lengths = spillLengths;
+         this.file = spillFile;
+         chunks = new Object[fullChunks.size() + 1][];
+         for (int i = 0; i < fullChunks.size(); i++)
+            chunks[i] = fullChunks.get(i);
+         chunks[fullChunks.size()] = Arrays.copyOf(current, currentSize);
+      }
+
+      class ChunkIterator implements Iterator<T> {
+         private int index = from;
+         private int chunkIndex = -1;
+         private Object[] chunk;
+         private RandomAccessFile in;
+
+         public boolean hasNext() {
+            if (index < to)
+               return true;
+            closeFile();
+            return false;
+         }
+
+         @SuppressWarnings("unchecked")
+         public T next() {
+            if (!hasNext())
+               throw new NoSuchElementException();
+            int wanted = index / chunkSize;
+            if (wanted != chunkIndex) {
+               chunk = loadChunk(wanted);
+               chunkIndex = wanted;
+            }
+            return (T) chunk[index++ % chunkSize];
+         }
+
+         public void remove() {
+            throw new UnsupportedOperationException();
+         }
+
+         private Object[] loadChunk(int n) {
+            if (n >= spilled)
+               return chunks[n - spilled];
+            try {
+               if (in == null)
+                  in = new RandomAccessFile(file, "r");
+               return readChunk(in, offsets[n], lengths[n]);
+            } catch (IOException ex) {
+               closeFile();
+               throw new IllegalStateException("Could not read spilled captures of "
+                     + name, ex);
+            }
+         }
+
+         private void closeFile() {
+            if (in != null) {
+               try {
+                  in.close();
+               } catch (IOException ex) {
+                  logger.debug("Could not close " + file, ex);
+               }
+               in = null;
+            }
+         }
+      }
+   }
+}
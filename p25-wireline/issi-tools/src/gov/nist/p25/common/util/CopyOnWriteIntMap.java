@@ -0,0 +1,160 @@
+//
+package gov.nist.p25.common.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A map from primitive int keys to values for tables that are read on every
+ * packet and changed rarely, such as the sessions of a group keyed by TSN.
+ * Lookups do not lock or box the key: they probe an open addressed table
+ * reached through one volatile read. Every change copies the table.
+ */
+public class CopyOnWriteIntMap<V> {
+
+   private static final class Table {
+      final int[] keys;
+      final Object[] values;
+      final Object[] entries;
+
+      Table(int capacity, int size) {
+         keys = new int[capacity];
+         values = new Object[capacity];
+         entries = new Object[size];
+      }
+   }
+
+   private volatile Table table = new Table(2, 0);
+
+   private static int index(int key, int mask) {
+      int h = key * 0x9e3779b9;
+      return (h ^ (h >>> 16)) & mask;
+   }
+
+   /**
+    * Get the value of a key.
+    *
+    * @param key
+    *            the key.
+    * @return the value or null if the key is not in the map.
+    */
+   @SuppressWarnings("unchecked")
+   public V get(int key) {
+      Table t = table;
+      int mask = t.keys.length - 1;
+      for (int i = index(key, mask);; i = (i + 1) & mask) {
+         Object value = t.values[i];
+         if (value == null)
+            return null;
+         if (t.keys[i] == key)
+            return (V) value;
+      }
+   }
+
+   public boolean containsKey(int key) {
+      return get(key) != null;
+   }
+
+   /**
+    * Map a key to a value, replacing any previous value.
+    *
+    * @param key
+    *            the key.
+    * @param value
+    *            the value, not null.
+    * @return the previous value or null.
+    */
+   @SuppressWarnings("unchecked")
+   public synchronized V put(int key, V value) {
+      if (value == null)
+         throw new NullPointerException("null value");
+      Table t = table;
+      int size = t.entries.length;
+      V previous = null;
+      int[] keys = new int[size + 1];
+      Object[] values = new Object[size + 1];
+      int n = 0;
+      for (int i = 0; i < t.keys.length; i++) {
+         if (t.values[i] == null)
+            continue;
+         if (t.keys[i] == key) {
+            previous = (V) t.values[i];
+            continue;
+         }
+         keys[n] = t.keys[i];
+         values[n++] = t.values[i];
+      }
+      keys[n] = key;
+      values[n++] = value;
+      table = build(keys, values, n);
+      return previous;
+   }
+
+   /**
+    * Remove a key.
+    *
+    * @param key
+    *            the key.
+    * @return the removed value or null.
+    */
+   @SuppressWarnings("unchecked")
+   public synchronized V remove(int key) {
+      V previous = get(key);
+      if (previous == null)
+         return null;
+      Table t = table;
+      int[] keys = new int[t.entries.length];
+      Object[] values = new Object[t.entries.length];
+      int n = 0;
+      for (int i = 0; i < t.keys.length; i++) {
+         if (t.values[i] != null && t.keys[i] != key) {
+            keys[n] = t.keys[i];
+            values[n++] = t.values[i];
+         }
+      }
+      table = build(keys, values, n);
+      return previous;
+   }
+
+   public synchronized void clear() {
+      table = new Table(2, 0);
+   }
+
+   public int size() {
+      return table.entries.length;
+   }
+
+   public boolean isEmpty() {
+      return size() == 0;
+   }
+
+   /**
+    * Get the values of the map. The list is a snapshot that later changes
+    * to the map do not affect, so it can be iterated without locking.
+    *
+    * @return the values.
+    */
+   @SuppressWarnings("unchecked")
+   public List<V> values() {
+      return Collections.unmodifiableList((List<V>) Arrays.asList(table.entries));
+   }
+
+   private static Table build(int[] keys, Object[] values, int size) {
+      // Keep the load factor at or below one half
+      int capacity = 2;
+      while (capacity < size * 2)
+         capacity <<= 1;
+      Table t = new Table(capacity, size);
+      int mask = capacity - 1;
+      for (int n = 0; n < size; n++) {
+         int i = index(keys[n], mask);
+         while (t.values[i] != null)
+            i = (i + 1) & mask;
+         t.keys[i] = keys[n];
+         t.values[i] = values[n];
+         t.entries[n] = values[n];
+      }
+      return t;
+   }
+}
@@ -0,0 +1,164 @@
+//
+package gov.nist.p25.common.util;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests that a capture store gives back every message in order whether its
+ * chunk was spilled or is still in memory, that clear starts it over, and
+ * that a store which cannot spill keeps its messages in memory.
+ */
+public class Test_CaptureStoreTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.common.util");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   /** Records the chunks handed to the spill listener. */
+   static class RecordingListener implements CaptureStore.SpillListener<Integer> {
+      final List<Integer> firsts = new ArrayList<Integer>();
+      final List<Integer> messages = new ArrayList<Integer>();
+
+      public void spilling(int first, List<Integer> chunk) {
+         firsts.add(first);
+         messages.addAll(chunk);
+      }
+   }
+
+   private CaptureStore<Integer> store;
+   private RecordingListener listener;
+
+   public void setUp() {
+      store = new CaptureStore<Integer>("test", 4, 2);
+      listener = new RecordingListener();
+      store.setSpillListener(listener);
+   }
+
+   public void tearDown() {
+      store.close();
+   }
+
+   private void add(int from, int to) {
+      for (int i = from; i < to; i++)
+         store.add(new Integer(i));
+   }
+
+   private static void assertRange(Iterable<Integer> messages, int from, int to) {
+      int expected = from;
+      for (Integer message : messages)
+         assertEquals(expected++, message.intValue());
+      assertEquals(to, expected);
+   }
+
+   public void testSpill() {
+      add(0, 22);
+      assertEquals(22, store.size());
+      // Five full chunks, two kept in memory, three spilled.
+      assertEquals(3, listener.firsts.size());
+      assertEquals(0, listener.firsts.get(0).intValue());
+      assertEquals(4, listener.firsts.get(1).intValue());
+      assertEquals(8, listener.firsts.get(2).intValue());
+      assertRange(listener.messages, 0, 12);
+      assertRange(store, 0, 22);
+      assertEquals(22, store.toList().size());
+   }
+
+   public void testRangeAcrossSpilledAndMemoryChunks() {
+      add(0, 22);
+      // Spilled chunks 1 and 2, in-memory chunks 3 and 4, the current chunk.
+      assertRange(store.range(6, 21), 6, 21);
+      assertRange(store.range(18, 100), 18, 22);
+      assertRange(store.range(22, 22), 22, 22);
+      assertRange(store.range(30, 40), 30, 30);
+
+      // A range sees the messages added before it was asked for, even once
+      // later adds have spilled its in-memory chunks.
+      Iterable<Integer> range = store.range(0, Integer.MAX_VALUE);
+      Iterator<Integer> iterator = range.iterator();
+      assertEquals(0, iterator.next().intValue());
+      add(22, 40);
+      assertRange(range, 0, 22);
+      assertRange(store, 0, 40);
+
+      try {
+         store.range(5, 4);
+         fail("accepted a range that ends before it starts");
+      } catch (IllegalArgumentException ex) {
+         // expected
+      }
+   }
+
+   public void testClear() {
+      add(0, 22);
+      store.clear();
+      assertEquals(0, store.size());
+      assertFalse(store.iterator().hasNext());
+
+      // The store fills and spills again from the start.
+      listener.firsts.clear();
+      listener.messages.clear();
+      add(100, 114);
+      assertEquals(14, store.size());
+      assertEquals(1, listener.firsts.size());
+      assertEquals(0, listener.firsts.get(0).intValue());
+      assertRange(listener.messages, 100, 104);
+      assertRange(store, 100, 114);
+   }
+
+   /** A message that cannot be written to the spill file. */
+   static class Unwritable implements Serializable {
+      private static final long serialVersionUID = 1L;
+      final int value;
+
+      Unwritable(int value) {
+         this.value = value;
+      }
+
+      private void writeObject(ObjectOutputStream out) throws IOException {
+         throw new NotSerializableException("unwritable " + value);
+      }
+   }
+
+   /** A chunk that cannot be spilled leaves every message in memory. */
+   public void testSpillFailure() {
+      CaptureStore<Unwritable> unwritable = new CaptureStore<Unwritable>("test", 4, 2);
+      final List<Integer> firsts = new ArrayList<Integer>();
+      unwritable.setSpillListener(new CaptureStore.SpillListener<Unwritable>() {
+         public void spilling(int first, List<Unwritable> messages) {
+            firsts.add(first);
+         }
+      });
+      try {
+         for (int i = 0; i < 40; i++)
+            unwritable.add(new Unwritable(i));
+         assertEquals(40, unwritable.size());
+         // The first spill is attempted once, then no more.
+         assertEquals(1, firsts.size());
+         int expected = 0;
+         for (Unwritable message : unwritable)
+            assertEquals(expected++, message.value);
+         assertEquals(40, expected);
+         expected = 3;
+         for (Unwritable message : unwritable.range(3, 37))
+            assertEquals(expected++, message.value);
+         assertEquals(37, expected);
+      } finally {
+         unwritable.close();
+      }
+   }
+}
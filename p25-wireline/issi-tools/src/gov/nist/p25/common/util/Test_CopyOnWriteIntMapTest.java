@@ -0,0 +1,168 @@
+//
+package gov.nist.p25.common.util;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests put, remove and get on the copy on write int map, alone and while
+ * several threads change it and others read it.
+ */
+public class Test_CopyOnWriteIntMapTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.common.util");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private static final int WRITERS = 4;
+   private static final int READERS = 2;
+   private static final int KEYS_PER_WRITER = 64;
+   private static final int ROUNDS = 200;
+
+   public void testPutGetRemove() {
+      CopyOnWriteIntMap<String> map = new CopyOnWriteIntMap<String>();
+      assertTrue(map.isEmpty());
+      assertNull(map.get(1));
+
+      for (int key = 1; key < 64; key += 2)
+         assertNull(map.put(key, "v" + key));
+      assertEquals(32, map.size());
+      for (int key = 1; key < 64; key += 2)
+         assertEquals("v" + key, map.get(key));
+      assertNull(map.get(2));
+      assertNull(map.get(-1));
+      assertFalse(map.containsKey(0));
+
+      assertEquals("v5", map.put(5, "w5"));
+      assertEquals("w5", map.get(5));
+      assertEquals(32, map.size());
+
+      List<String> snapshot = map.values();
+      assertEquals("w5", map.remove(5));
+      assertNull(map.remove(5));
+      assertNull(map.get(5));
+      assertEquals(31, map.size());
+      // A values list taken earlier does not change.
+      assertEquals(32, snapshot.size());
+      assertTrue(snapshot.contains("w5"));
+      assertFalse(map.values().contains("w5"));
+
+      try {
+         map.put(7, null);
+         fail("accepted a null value");
+      } catch (NullPointerException ex) {
+         // expected
+      }
+      assertEquals("v7", map.get(7));
+
+      map.clear();
+      assertTrue(map.isEmpty());
+      assertNull(map.get(7));
+   }
+
+   /** Keys that hash to the same slot are all found. */
+   public void testCollidingKeys() {
+      CopyOnWriteIntMap<Integer> map = new CopyOnWriteIntMap<Integer>();
+      for (int i = 0; i < 100; i++)
+         map.put(i << 16, new Integer(i));
+      for (int i = 0; i < 100; i++)
+         assertEquals(i, map.get(i << 16).intValue());
+      for (int i = 0; i < 100; i += 2)
+         map.remove(i << 16);
+      for (int i = 0; i < 100; i++)
+         assertEquals(i % 2 == 0 ? null : new Integer(i), map.get(i << 16));
+   }
+
+   /**
+    * Writers put and remove their own keys while readers look them up. A
+    * reader must only ever see the value of the key it asked for, and no
+    * change may be lost.
+    */
+   public void testConcurrentWriters() throws Exception {
+      final CopyOnWriteIntMap<Integer> map = new CopyOnWriteIntMap<Integer>();
+      final AtomicInteger errors = new AtomicInteger();
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch writersDone = new CountDownLatch(WRITERS);
+      final CountDownLatch readersDone = new CountDownLatch(READERS);
+
+      // A key every writer changes, to make the writers contend.
+      final int sharedKey = -1;
+
+      for (int w = 0; w < WRITERS; w++) {
+         final int first = w * KEYS_PER_WRITER;
+         new Thread() {
+            public void run() {
+               try {
+                  start.await();
+                  for (int round = 0; round < ROUNDS; round++) {
+                     for (int key = first; key < first + KEYS_PER_WRITER; key++) {
+                        Integer previous = map.put(key, new Integer(key));
+                        // Odd keys are removed every round, even keys stay.
+                        if (round > 0 && key % 2 == 0 && previous == null)
+                           errors.incrementAndGet();
+                     }
+                     for (int key = first + 1; key < first + KEYS_PER_WRITER; key += 2) {
+                        if (map.remove(key) == null)
+                           errors.incrementAndGet();
+                     }
+                     map.put(sharedKey, new Integer(sharedKey));
+                  }
+               } catch (InterruptedException ex) {
+                  // fall through
+               } finally {
+                  writersDone.countDown();
+               }
+            }
+         }.start();
+      }
+      for (int r = 0; r < READERS; r++) {
+         new Thread() {
+            public void run() {
+               try {
+                  start.await();
+                  while (writersDone.getCount() > 0) {
+                     for (int key = -1; key < WRITERS * KEYS_PER_WRITER; key++) {
+                        Integer value = map.get(key);
+                        if (value != null && value.intValue() != key)
+                           errors.incrementAndGet();
+                     }
+                     for (Integer value : map.values()) {
+                        if (value == null)
+                           errors.incrementAndGet();
+                     }
+                  }
+               } catch (InterruptedException ex) {
+                  // fall through
+               } finally {
+                  readersDone.countDown();
+               }
+            }
+         }.start();
+      }
+      start.countDown();
+      writersDone.await();
+      readersDone.await();
+
+      assertEquals(0, errors.get());
+      Set<Integer> expected = new HashSet<Integer>();
+      expected.add(new Integer(sharedKey));
+      for (int key = 0; key < WRITERS * KEYS_PER_WRITER; key += 2)
+         expected.add(new Integer(key));
+      assertEquals(expected.size(), map.size());
+      assertEquals(expected, new HashSet<Integer>(map.values()));
+      for (int key = 0; key < WRITERS * KEYS_PER_WRITER; key++)
+         assertEquals(key % 2 == 0 ? new Integer(key) : null, map.get(key));
+   }
+}
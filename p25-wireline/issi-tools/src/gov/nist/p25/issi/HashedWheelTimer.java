@@ -0,0 +1,436 @@
+//
+package gov.nist.p25.issi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * A hashed timing wheel for the PTT and call control timers. Scheduling and
+ * cancelling a task are constant time: the caller only queues the change and
+ * a single wheel thread links the task into, or out of, the bucket of its
+ * deadline. Expired tasks are handed to a worker thread, so the wheel keeps
+ * time while a task runs.
+ * <p>
+ * By default there is a single worker: tasks run one at a time in the
+ * order they expire, as with the java.util.Timer this timer replaced, and
+ * the PTT and call control tasks rely on that. A task that runs long makes
+ * the tasks expiring behind it late; they still run, and are counted as
+ * late in the metrics. More workers may be given to the constructor for
+ * tasks that are safe to run at the same time.
+ * <p>
+ * Timing has the resolution of one tick. Repeating tasks are rescheduled
+ * with a fixed delay after each run, as with java.util.Timer.schedule(task,
+ * delay, period), so a repeating task never overlaps itself. Unlike
+ * java.util.Timer, an exception thrown by a task is logged instead of
+ * killing the timer.
+ */
+public class HashedWheelTimer {
+
+   private static Logger logger = Logger.getLogger(HashedWheelTimer.class);
+
+   /** Default tick duration in milliseconds. */
+   public static final int DEFAULT_TICK_MILLIS = 10;
+
+   /** Default number of buckets in the wheel. */
+   public static final int DEFAULT_WHEEL_SIZE = 512;
+
+   /** Default lateness (ms) above which a firing is counted as late. */
+   public static final int DEFAULT_LATE_THRESHOLD_MILLIS = 20;
+
+   /** Bound on the number of new tasks linked into the wheel per tick. */
+   private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+   private final long tickNanos;
+   private final long lateThresholdNanos;
+   private final Bucket[] wheel;
+   private final int mask;
+   private final long startTime = System.nanoTime();
+
+   private final ConcurrentLinkedQueue<ISSITimerTask> pendingTasks =
+      new ConcurrentLinkedQueue<ISSITimerTask>();
+   private final ConcurrentLinkedQueue<ISSITimerTask> cancelledTasks =
+      new ConcurrentLinkedQueue<ISSITimerTask>();
+   private final ConcurrentHashMap<String, TimerMetrics> metrics =
+      new ConcurrentHashMap<String, TimerMetrics>();
+
+   private final ExecutorService workers;
+   private final WheelThread wheelThread;
+
+   /** Incremented by reset() to drop every task scheduled before it. */
+   private volatile int generation = 0;
+
+   /** The generation the wheel was last cleared for. */
+   private int wheelGeneration = 0;
+
+   private volatile boolean stopped = false;
+
+   /**
+    * Construct a timer with the default tick and wheel size that runs its
+    * tasks one at a time.
+    */
+   public HashedWheelTimer() {
+      this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, 1,
+            DEFAULT_LATE_THRESHOLD_MILLIS);
+   }
+
+   /**
+    * Construct a timer.
+    *
+    * @param tickMillis
+    *            the tick duration in milliseconds.
+    * @param wheelSize
+    *            the number of buckets, rounded up to a power of two.
+    * @param workerCount
+    *            the number of threads that run expired tasks; with more
+    *            than one, tasks may run at the same time.
+    * @param lateThresholdMillis
+    *            the lateness above which a firing is counted as late.
+    */
+   public HashedWheelTimer(int tickMillis, int wheelSize, int workerCount,
+         int lateThresholdMillis) {
+      if (tickMillis <= 0 || wheelSize <= 0 || workerCount <= 0)
+         throw new IllegalArgumentException("Timer parameters must be positive");
+
+      int size = 1;
+      while (size < wheelSize)
+         size <<= 1;
+      this.wheel = new Bucket[size];
+      for (int i = 0; i < size; i++)
+         wheel[i] = new Bucket();
+      this.mask = size - 1;
+      this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+      this.lateThresholdNanos = TimeUnit.MILLISECONDS.toNanos(lateThresholdMillis);
+
+      final AtomicInteger threadNumber = new AtomicInteger();
+      this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L,
+            TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+               public Thread newThread(Runnable r) {
+                  Thread thread = new Thread(r, "ISSITimer-worker-"
+                        + threadNumber.incrementAndGet());
+                  thread.setDaemon(true);
+                  return thread;
+               }
+            });
+      this.wheelThread = new WheelThread();
+      wheelThread.start();
+   }
+
+   /**
+    * Schedule a task to run once after a delay.
+    *
+    * @param task
+    *            the task to schedule.
+    * @param delay
+    *            the delay in milliseconds.
+    */
+   public void schedule(ISSITimerTask task, long delay) {
+      schedule(task, delay, 0);
+   }
+
+   /**
+    * Schedule a task to run repeatedly, first after a delay and then with a
+    * fixed delay between the end of one run and the start of the next.
+    *
+    * @param task
+    *            the task to schedule.
+    * @param delay
+    *            the delay in milliseconds before the first run.
+    * @param period
+    *            the delay in milliseconds between runs (0 to run once).
+    */
+   public void schedule(ISSITimerTask task, long delay, long period) {
+      if (delay < 0)
+         throw new IllegalArgumentException("Negative delay.");
+      if (period < 0)
+         throw new IllegalArgumentException("Non-positive period.");
+      if (stopped)
+         throw new IllegalStateException("Timer already cancelled.");
+      if (!task.state.compareAndSet(ISSITimerTask.VIRGIN,
+            ISSITimerTask.SCHEDULED))
+         throw new IllegalStateException(
+               "Task already scheduled or cancelled");
+
+      task.timer = this;
+      task.period = period;
+      task.generation = generation;
+      task.metrics = getMetrics(task.getTimerClass());
+      task.metrics.recordScheduled();
+      if (delay == 0) {
+         // Run now rather than on the next tick
+         task.deadline = System.nanoTime() - startTime;
+         expire(task);
+      } else {
+         enqueue(task, delay);
+      }
+   }
+
+   /**
+    * Cancel every scheduled task. The timer stays usable.
+    */
+   public synchronized void reset() {
+      generation++;
+      wheelThread.interrupt();
+   }
+
+   /**
+    * Cancel every scheduled task and stop the timer threads.
+    */
+   public void stop() {
+      stopped = true;
+      reset();
+      workers.shutdown();
+   }
+
+   /**
+    * Get the metrics of a timer class, creating them if needed.
+    *
+    * @param timerClass
+    *            the timer class name.
+    * @return the metrics of the timer class.
+    */
+   public TimerMetrics getMetrics(String timerClass) {
+      TimerMetrics m = metrics.get(timerClass);
+      if (m == null) {
+         TimerMetrics created = new TimerMetrics(timerClass);
+         m = metrics.putIfAbsent(timerClass, created);
+         if (m == null)
+            m = created;
+      }
+      return m;
+   }
+
+   /**
+    * Get the metrics of every timer class scheduled so far.
+    *
+    * @return the timer metrics.
+    */
+   public Collection<TimerMetrics> getMetrics() {
+      return new ArrayList<TimerMetrics>(metrics.values());
+   }
+
+   /**
+    * @return the pending task count and one line of metrics per timer
+    *         class.
+    */
+   public String getStatistics() {
+      StringBuffer sbuf = new StringBuffer();
+      sbuf.append("HashedWheelTimer pending=" + getPendingCount() + "\n");
+      for (TimerMetrics m : getMetrics()) {
+         sbuf.append(m).append("\n");
+      }
+      return sbuf.toString();
+   }
+
+   /**
+    * Get the number of tasks that are scheduled and not yet cancelled.
+    *
+    * @return the number of pending tasks.
+    */
+   public int getPendingCount() {
+      return wheelThread.linkedCount + pendingTasks.size();
+   }
+
+   /**
+    * Called by ISSITimerTask.cancel() after the task state changed.
+    */
+   void cancelled(ISSITimerTask task) {
+      task.metrics.recordCancelled();
+      cancelledTasks.add(task);
+   }
+
+   private void enqueue(ISSITimerTask task, long delayMillis) {
+      task.deadline = System.nanoTime() - startTime
+            + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+      pendingTasks.add(task);
+   }
+
+   private void expire(final ISSITimerTask task) {
+      workers.execute(new Runnable() {
+         public void run() {
+            fire(task);
+         }
+      });
+   }
+
+   private void fire(ISSITimerTask task) {
+      if (task.generation != generation) {
+         task.state.set(ISSITimerTask.CANCELLED);
+         return;
+      }
+      if (task.state.get() != ISSITimerTask.SCHEDULED)
+         return;
+
+      long lateness = System.nanoTime() - startTime - task.deadline;
+      task.metrics.recordFired(Math.max(0, lateness), lateThresholdNanos);
+      try {
+         task.run();
+      } catch (Throwable ex) {
+         logger.error("Timer task " + task.getTimerClass() + " failed", ex);
+      }
+
+      if (task.period > 0) {
+         if (task.state.get() == ISSITimerTask.SCHEDULED && !stopped)
+            enqueue(task, task.period);
+      } else {
+         task.state.compareAndSet(ISSITimerTask.SCHEDULED,
+               ISSITimerTask.EXECUTED);
+      }
+   }
+
+   /**
+    * A bucket of the wheel: a doubly linked list of tasks.
+    */
+   static final class Bucket {
+      private ISSITimerTask head;
+      private ISSITimerTask tail;
+
+      void add(ISSITimerTask task) {
+         task.bucket = this;
+         if (head == null) {
+            head = tail = task;
+         } else {
+            tail.next = task;
+            task.prev = tail;
+            tail = task;
+         }
+      }
+
+      void remove(ISSITimerTask task) {
+         ISSITimerTask next = task.next;
+         if (task.prev != null)
+            task.prev.next = next;
+         if (task.next != null)
+            task.next.prev = task.prev;
+         if (task == head)
+            head = next;
+         if (task == tail)
+            tail = task.prev;
+         task.prev = null;
+         task.next = null;
+         task.bucket = null;
+      }
+   }
+
+   /**
+    * The thread that advances the wheel.
+    */
+   private class WheelThread extends Thread {
+
+      private long tick = 0;
+
+      private volatile int linkedCount = 0;
+
+      WheelThread() {
+         super("ISSITimer-wheel");
+         setDaemon(true);
+      }
+
+      public void run() {
+         while (!stopped) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+               try {
+                  Thread.sleep(sleepNanos / 1000000L,
+                        (int) (sleepNanos % 1000000L));
+               } catch (InterruptedException ex) {
+                  // reset() or stop(); fall through to drop old tasks
+               }
+            }
+            int current = generation;
+            if (wheelGeneration != current)
+               clearWheel(current);
+            if (System.nanoTime() - startTime < deadline)
+               continue;
+
+            processCancelled();
+            transferPending();
+            expireBucket(wheel[(int) (tick & mask)]);
+            tick++;
+         }
+         clearWheel(generation + 1);
+      }
+
+      /**
+       * Drop the linked tasks of every generation but the current one, so
+       * that a task scheduled after a reset that raced the previous tick is
+       * kept.
+       */
+      private void clearWheel(int current) {
+         wheelGeneration = current;
+         int count = linkedCount;
+         for (Bucket bucket : wheel) {
+            ISSITimerTask task = bucket.head;
+            while (task != null) {
+               ISSITimerTask next = task.next;
+               if (task.generation != current) {
+                  bucket.remove(task);
+                  task.state.set(ISSITimerTask.CANCELLED);
+                  count--;
+               }
+               task = next;
+            }
+         }
+         linkedCount = count;
+      }
+
+      private void processCancelled() {
+         ISSITimerTask task;
+         while ((task = cancelledTasks.poll()) != null) {
+            if (task.bucket != null) {
+               task.bucket.remove(task);
+               linkedCount--;
+            }
+         }
+      }
+
+      private void transferPending() {
+         for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            ISSITimerTask task = pendingTasks.poll();
+            if (task == null)
+               break;
+            // Compared with the current generation, not the one the wheel
+            // was cleared for: a task scheduled after a reset this thread
+            // has not seen yet must still run.
+            if (task.generation != generation) {
+               task.state.set(ISSITimerTask.CANCELLED);
+               continue;
+            }
+            if (task.state.get() != ISSITimerTask.SCHEDULED)
+               continue;
+
+            long ticks = task.deadline / tickNanos;
+            // Never schedule into the past
+            long target = Math.max(ticks, tick);
+            task.remainingRounds = (target - tick) / wheel.length;
+            wheel[(int) (target & mask)].add(task);
+            linkedCount++;
+         }
+      }
+
+      private void expireBucket(Bucket bucket) {
+         ISSITimerTask task = bucket.head;
+         while (task != null) {
+            ISSITimerTask next = task.next;
+            if (task.remainingRounds <= 0) {
+               bucket.remove(task);
+               linkedCount--;
+               expire(task);
+            } else {
+               task.remainingRounds--;
+            }
+            task = next;
+         }
+      }
+   }
+}
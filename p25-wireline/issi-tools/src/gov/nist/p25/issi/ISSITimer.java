@@ -3,13 +3,21 @@ package gov.nist.p25.issi;
 
 import java.util.Timer;
 
+import org.apache.log4j.Logger;
+
 /**
  * Global timer to be used everywhere. When the test is stopped 
- * the timer is killed.
+ * the timer is killed. PTT and call control timers use the hashed
+ * wheel timer, which scales to many sessions; the java.util.Timer is
+ * kept for the tester and the GUIs.
  */
 public  class ISSITimer {
    
+   private static Logger logger = Logger.getLogger(ISSITimer.class);
+
    private static Timer timer = new Timer();
+
+   private static HashedWheelTimer wheelTimer = new HashedWheelTimer();
    
    /**
     * get the timer.
@@ -21,12 +29,25 @@ public  class ISSITimer {
    }
    
    /**
-    * Reset the timer to a new timer instance.
+    * get the hashed wheel timer for PTT and call control timers.
+    * 
+    * @return the hashed wheel timer
+    */
+   public static HashedWheelTimer getWheelTimer() {
+      return wheelTimer;
+   }
+
+   /**
+    * Reset the timer to a new timer instance. The wheel timer metrics of
+    * the test that ends here are logged first.
     */
    public static void resetTimer() {
       synchronized (ISSITimer.class) {
+         if (logger.isInfoEnabled())
+            logger.info("Timer statistics:\n" + wheelTimer.getStatistics());
          timer.cancel();
          timer= new Timer();
+         wheelTimer.reset();
       }
    }
 }
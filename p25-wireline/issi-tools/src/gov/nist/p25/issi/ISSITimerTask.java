@@ -0,0 +1,73 @@
+//
+package gov.nist.p25.issi;
+
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A timer task that can be scheduled on the HashedWheelTimer. It remains a
+ * TimerTask so that code which only keeps and cancels tasks is unchanged.
+ * Cancelling a task unlinks it from the wheel in constant time.
+ */
+public abstract class ISSITimerTask extends TimerTask {
+
+   static final int VIRGIN = 0;
+   static final int SCHEDULED = 1;
+   static final int EXECUTED = 2;
+   static final int CANCELLED = 3;
+
+   /** The state of this task. */
+   final AtomicInteger state = new AtomicInteger(VIRGIN);
+
+   /** The timer this task is scheduled on. */
+   volatile HashedWheelTimer timer;
+
+   /** The metrics of the timer class of this task. */
+   TimerMetrics metrics;
+
+   /** The reset generation of the timer when this task was scheduled. */
+   int generation;
+
+   /** Deadline of the next execution, relative to the timer start (ns). */
+   long deadline;
+
+   /** Repeat period in milliseconds (0 for a one-shot task). */
+   long period;
+
+   /** Wheel rotations left before the task expires. */
+   long remainingRounds;
+
+   /* Links of the wheel bucket; owned by the timer worker thread. */
+   HashedWheelTimer.Bucket bucket;
+   ISSITimerTask next;
+   ISSITimerTask prev;
+
+   /**
+    * Get the name under which metrics for this task are reported. By
+    * default this is the class name without its package.
+    *
+    * @return the timer class name.
+    */
+   public String getTimerClass() {
+      String name = getClass().getName();
+      return name.substring(name.lastIndexOf('.') + 1);
+   }
+
+   /**
+    * Cancel this task. A one-shot task that has not run yet will never run,
+    * and a repeating task will not run again.
+    *
+    * @return true if this prevented one or more scheduled executions.
+    */
+   public boolean cancel() {
+      super.cancel();
+      if (!state.compareAndSet(SCHEDULED, CANCELLED)) {
+         state.compareAndSet(VIRGIN, CANCELLED);
+         return false;
+      }
+      HashedWheelTimer owner = timer;
+      if (owner != null)
+         owner.cancelled(this);
+      return true;
+   }
+}
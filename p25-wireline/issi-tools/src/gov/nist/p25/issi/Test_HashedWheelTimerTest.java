@@ -0,0 +1,215 @@
+//
+package gov.nist.p25.issi;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests that the hashed wheel timer runs tasks one at a time in deadline
+ * order, that cancelled tasks never run, and that a task held back by a
+ * slow one still runs and is counted as late.
+ */
+public class Test_HashedWheelTimerTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private HashedWheelTimer timer;
+
+   public void setUp() {
+      timer = new HashedWheelTimer();
+   }
+
+   public void tearDown() {
+      timer.stop();
+   }
+
+   /** Records its id, and whether another task was running at the time. */
+   static class RecordingTask extends ISSITimerTask {
+      private static final AtomicInteger running = new AtomicInteger();
+      private final int id;
+      private final List<Integer> order;
+      private final AtomicInteger overlaps;
+      private final CountDownLatch done;
+
+      RecordingTask(int id, List<Integer> order, AtomicInteger overlaps,
+            CountDownLatch done) {
+         this.id = id;
+         this.order = order;
+         this.overlaps = overlaps;
+         this.done = done;
+      }
+
+      public void run() {
+         if (running.incrementAndGet() > 1)
+            overlaps.incrementAndGet();
+         try {
+            Thread.sleep(5);
+         } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+         }
+         order.add(id);
+         running.decrementAndGet();
+         done.countDown();
+      }
+   }
+
+   public void testRunsSeriallyInDeadlineOrder() throws Exception {
+      int[] delays = { 90, 30, 150, 60, 120, 0 };
+      List<Integer> order = new Vector<Integer>();
+      AtomicInteger overlaps = new AtomicInteger();
+      CountDownLatch done = new CountDownLatch(delays.length);
+      for (int i = 0; i < delays.length; i++)
+         timer.schedule(new RecordingTask(delays[i], order, overlaps, done), delays[i]);
+
+      assertTrue(done.await(2, TimeUnit.SECONDS));
+      List<Integer> sorted = new Vector<Integer>(order);
+      Collections.sort(sorted);
+      assertEquals(sorted, order);
+      assertEquals(0, overlaps.get());
+   }
+
+   /** Tasks expiring on the same tick do not overlap either. */
+   public void testSameTickTasksDoNotOverlap() throws Exception {
+      List<Integer> order = new Vector<Integer>();
+      AtomicInteger overlaps = new AtomicInteger();
+      CountDownLatch done = new CountDownLatch(20);
+      for (int i = 0; i < 20; i++)
+         timer.schedule(new RecordingTask(i, order, overlaps, done), 20);
+
+      assertTrue(done.await(2, TimeUnit.SECONDS));
+      assertEquals(0, overlaps.get());
+   }
+
+   public void testCancel() throws Exception {
+      final AtomicInteger runs = new AtomicInteger();
+      ISSITimerTask once = new ISSITimerTask() {
+         public void run() {
+            runs.incrementAndGet();
+         }
+      };
+      timer.schedule(once, 50);
+      assertTrue(once.cancel());
+      assertFalse(once.cancel());
+
+      final CountDownLatch firstRun = new CountDownLatch(1);
+      final AtomicInteger repeats = new AtomicInteger();
+      ISSITimerTask repeating = new ISSITimerTask() {
+         public void run() {
+            repeats.incrementAndGet();
+            firstRun.countDown();
+         }
+      };
+      timer.schedule(repeating, 20, 20);
+      assertTrue(firstRun.await(1, TimeUnit.SECONDS));
+      assertTrue(repeating.cancel());
+      int afterCancel = repeats.get();
+
+      Thread.sleep(150);
+      assertEquals(0, runs.get());
+      assertTrue(repeats.get() <= afterCancel + 1);
+      assertEquals(1, timer.getMetrics(once.getTimerClass()).getCancelledCount());
+   }
+
+   public void testResetDropsScheduledTasks() throws Exception {
+      final AtomicInteger runs = new AtomicInteger();
+      for (int i = 0; i < 10; i++) {
+         timer.schedule(new ISSITimerTask() {
+            public void run() {
+               runs.incrementAndGet();
+            }
+         }, 100);
+      }
+      timer.reset();
+      Thread.sleep(200);
+      assertEquals(0, runs.get());
+   }
+
+   /**
+    * A task scheduled right after a reset runs, even when the wheel thread
+    * sees the reset only after the task was queued.
+    */
+   public void testTaskScheduledAfterResetRuns() throws Exception {
+      // A 1 ms tick makes the wheel thread check for resets often.
+      HashedWheelTimer fastTimer = new HashedWheelTimer(1, 64, 1, 20);
+      try {
+         for (int round = 0; round < 2000; round++) {
+            final CountDownLatch ran = new CountDownLatch(1);
+            fastTimer.reset();
+            fastTimer.schedule(new ISSITimerTask() {
+               public void run() {
+                  ran.countDown();
+               }
+            }, 1);
+            assertTrue("task of round " + round + " never ran",
+                  ran.await(1, TimeUnit.SECONDS));
+         }
+      } finally {
+         fastTimer.stop();
+      }
+   }
+
+   public void testStatistics() throws Exception {
+      final CountDownLatch ran = new CountDownLatch(1);
+      timer.schedule(new ISSITimerTask() {
+         public String getTimerClass() {
+            return "ReportedTask";
+         }
+         public void run() {
+            ran.countDown();
+         }
+      }, 10);
+      assertTrue(ran.await(1, TimeUnit.SECONDS));
+      String statistics = timer.getStatistics();
+      logger.info(statistics);
+      assertTrue(statistics.startsWith("HashedWheelTimer pending=0\n"));
+      assertTrue(statistics.indexOf("timerClass=\"ReportedTask\" scheduled=\"1\" fired=\"1\"") != -1);
+   }
+
+   /** A task held back by a slow task runs late and is counted as late. */
+   public void testLateExecution() throws Exception {
+      final CountDownLatch done = new CountDownLatch(1);
+      ISSITimerTask slow = new ISSITimerTask() {
+         public void run() {
+            try {
+               Thread.sleep(200);
+            } catch (InterruptedException ex) {
+               Thread.currentThread().interrupt();
+            }
+         }
+      };
+      ISSITimerTask held = new ISSITimerTask() {
+         public String getTimerClass() {
+            return "HeldTask";
+         }
+         public void run() {
+            done.countDown();
+         }
+      };
+      long start = System.nanoTime();
+      timer.schedule(slow, 10);
+      timer.schedule(held, 30);
+
+      assertTrue(done.await(2, TimeUnit.SECONDS));
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      assertTrue(elapsedMillis >= 200);
+      TimerMetrics metrics = timer.getMetrics("HeldTask");
+      assertEquals(1, metrics.getFiredCount());
+      assertEquals(1, metrics.getLateCount());
+      assertTrue(metrics.getMaxLatenessMillis() >= 100);
+   }
+}
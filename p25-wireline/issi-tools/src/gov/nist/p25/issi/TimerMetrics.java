@@ -0,0 +1,75 @@
+//
+package gov.nist.p25.issi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters kept by the HashedWheelTimer for one timer class, for example
+ * SmfTransmitter$RequestTask. A firing is late when it starts more than the
+ * late threshold of the timer after its deadline.
+ */
+public class TimerMetrics {
+
+   private final String timerClass;
+   private final AtomicLong scheduled = new AtomicLong();
+   private final AtomicLong fired = new AtomicLong();
+   private final AtomicLong cancelled = new AtomicLong();
+   private final AtomicLong late = new AtomicLong();
+   private final AtomicLong maxLatenessNanos = new AtomicLong();
+
+   TimerMetrics(String timerClass) {
+      this.timerClass = timerClass;
+   }
+
+   void recordScheduled() {
+      scheduled.incrementAndGet();
+   }
+
+   void recordCancelled() {
+      cancelled.incrementAndGet();
+   }
+
+   void recordFired(long latenessNanos, long lateThresholdNanos) {
+      fired.incrementAndGet();
+      if (latenessNanos > lateThresholdNanos)
+         late.incrementAndGet();
+      long max;
+      while (latenessNanos > (max = maxLatenessNanos.get())) {
+         if (maxLatenessNanos.compareAndSet(max, latenessNanos))
+            break;
+      }
+   }
+
+   public String getTimerClass() {
+      return timerClass;
+   }
+
+   public long getScheduledCount() {
+      return scheduled.get();
+   }
+
+   public long getFiredCount() {
+      return fired.get();
+   }
+
+   public long getCancelledCount() {
+      return cancelled.get();
+   }
+
+   public long getLateCount() {
+      return late.get();
+   }
+
+   public long getMaxLatenessMillis() {
+      return maxLatenessNanos.get() / 1000000L;
+   }
+
+   public String toString() {
+      return "<timer-metrics timerClass=\"" + timerClass
+            + "\" scheduled=\"" + getScheduledCount()
+            + "\" fired=\"" + getFiredCount()
+            + "\" cancelled=\"" + getCancelledCount()
+            + "\" late=\"" + getLateCount()
+            + "\" maxLatenessMillis=\"" + getMaxLatenessMillis() + "\"/>";
+   }
+}
@@ -2,10 +2,13 @@
 package gov.nist.p25.issi.fsm;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.text.ParseException;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import javax.xml.stream.XMLStreamException;
 import org.apache.log4j.Logger;
 import org.apache.xmlbeans.XmlException;
 
@@ -56,6 +59,7 @@ public class IssiMessageAnalyzer
    private String perfType;
    private String keySIP;
    private PacketType keyPTT;
+   private int analysis;
 
    // accessor
    public int getMask() { return mask; }
@@ -105,7 +109,8 @@ public class IssiMessageAnalyzer
 
    public IssiMessageFsm findFsmByIndex( int index) {
       for( IssiMessageFsm fsm: fsmMap.values()) {
-         showln("findFsmByIndex: fsm-Id: "+fsm.getId());
+         if( logger.isDebugEnabled())
+            logger.debug("findFsmByIndex: fsm-Id: "+fsm.getId());
 	 if( index == fsm.getIndex()) {
             return fsm;
 	 }
@@ -119,7 +124,7 @@ public class IssiMessageAnalyzer
       IssiMessageFsm fromFsm = null;
       IssiMessageFsm toFsm = null;
 
-      showln("setupFsmMap(): START...");
+      logger.debug("setupFsmMap(): START...");
       Message[] messageArray = allmessages.getMessageArray();
       for( int i=0; i < messageArray.length; i++)
       {
@@ -129,7 +134,6 @@ public class IssiMessageAnalyzer
          String firstLine = message.getFirstLine();
 	 if( KEY_ANY.equals(keySIP) || firstLine.startsWith(keySIP))
          {
-            showln("setupFsmMap(): keySIP="+keySIP);
             findFsmById( message.getFromRfssId());
             findFsmById( message.getToRfssId());
          }
@@ -155,13 +159,13 @@ public class IssiMessageAnalyzer
             if((ptype == PacketType.PTT_TRANSMIT_REQUEST) ||
 	       (ptype == PacketType.PTT_TRANSMIT_PROGRESS))
 	    {
-               showln("setupFsmMap(): PTT_TRANSMIT_REQUEST or PROGRESS");
                findFsmById( pttPacket.getSendingRfssId());
                findFsmById( pttPacket.getReceivingRfssId());
 	    }
 	 }
       }  // for all-PTT
-      showln("setupFsmMap(): DONE...\n"+fsmMap);
+      if( logger.isDebugEnabled())
+         logger.debug("setupFsmMap(): DONE...\n"+fsmMap);
    }
 
    /*** NOT USED
@@ -927,344 +931,47 @@ public class IssiMessageAnalyzer
    public void analyze(int mask, String xmlMsg)
       throws XmlException, IOException, ParseException
    {
+      analyze(mask, new StringReader(xmlMsg));
+   }
+
+   /**
+    * Analyze a trace read from a stream. Each run resets the FSMs, so when
+    * the mask selects several analyses only the last one (in the order
+    * GCSD, UCSD, GMTD, UMTD) is left for calculate().
+    */
+   public void analyze(int mask, Reader in)
+      throws XmlException, IOException, ParseException
+   {
+      int analysis = 0;
       if( (mask & IssiMessageFsm.MASK_GCSD) == IssiMessageFsm.MASK_GCSD) { 
-         analyzeGCSD( mask, xmlMsg);
+         analysis = IssiMessageFsm.MASK_GCSD;
       }
       if( (mask & IssiMessageFsm.MASK_UCSD) == IssiMessageFsm.MASK_UCSD) { 
-         analyzeUCSD( mask, xmlMsg);
+         analysis = IssiMessageFsm.MASK_UCSD;
       }
       if( (mask & IssiMessageFsm.MASK_GMTD) == IssiMessageFsm.MASK_GMTD) { 
-         analyzeGMTD( mask, xmlMsg);
+         analysis = IssiMessageFsm.MASK_GMTD;
       }
       if( (mask & IssiMessageFsm.MASK_UMTD) == IssiMessageFsm.MASK_UMTD) { 
-         analyzeUMTD( mask, xmlMsg);
+         analysis = IssiMessageFsm.MASK_UMTD;
+      }
+      if( analysis != 0) {
+         analyze(mask, analysis, in);
       }
    }
    //-----------------------------------------------------------------------
    public void analyzeGCSD(int mask, String xmlMsg)
       throws XmlException, IOException, ParseException
    {
-      this.mask = mask;
-      this.userTag = "";
-      fsmMap = new LinkedHashMap<String,IssiMessageFsm>();
-
-      XmlAllmessages xmldoc = new XmlAllmessages();
-      xmldoc.loadAllmessages( xmlMsg);
-      Allmessages allmessages = xmldoc.getAllmessages();
-      Message[] messageArray = allmessages.getMessageArray();
-
-      // establish the order of FSM
-      setupFsmMap(allmessages);
-
-      boolean fromFlag;
-      boolean toFlag;
-      IssiMessageFsm fromFsm = null;
-      IssiMessageFsm toFsm = null;
-      IssiState currentState;
-
-      for( int i=0; i < messageArray.length; i++)
-      {
-         Message message = messageArray[i];
-         if( message==null) continue;
-         long time = message.getTime();
-         String firstLine = message.getFirstLine();
-
-         if( verbose) {
-            logger.debug("analyzeGCSD(): Message: i="+i);
-            logger.debug("    packetNumber: "+message.getPacketNumber());
-            logger.debug("    from: "+message.getFrom());
-            logger.debug("    to: "+message.getTo());
-            logger.debug("    fromRfssId: "+message.getFromRfssId());
-            logger.debug("    toRfssId: "+message.getToRfssId());
-            logger.debug("    time: "+time);
-            logger.debug("    firstLine: "+firstLine);
-         }
-
-         fromFsm = findFsmById( message.getFromRfssId());
-         toFsm = findFsmById( message.getToRfssId());
-         //--------------------------------------------------
-        // check the FSM index limit 
-        if( fromFsm.getIndex() >  MAX_FSMS || toFsm.getIndex() >  MAX_FSMS) {
-             logger.debug( "FSM index out of range: "+fromFsm.getId()+":"+toFsm.getId());
-             continue;
-         }
-         //--------------------------------------------------
-         if( firstLine.startsWith("INVITE")) {
-            userTag = XmlAllmessages.getUserTag( firstLine);
-            //showln("    userTag: "+userTag);
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.INVITE_EXIT);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.INVITE_ENTRY);
-               logger.debug("    tpFlag: "+toFlag);
-            }
-         }
-         else if( firstLine.startsWith("SIP")) {
-
-            currentState = fromFsm.getCurrentState();
-            //showln("fromFsm: currentState="+ currentState);
-            if( firstLine.endsWith("OK") ) {
-               if(currentState == IssiState.INVITE_ENTRY) {
-                  fromFlag = fromFsm.processMessage(mask, time, IssiState.OK_EXIT);
-                  if(fromFlag) {
-                     toFlag = toFsm.processMessage(mask, time, IssiState.OK_ENTRY);
-                  }
-               }
-            }
-            else if( firstLine.endsWith("Trying")) {
-               // nothing to do
-            }
-            else if( firstLine.endsWith("Ringing")) {
-               // nothing to do
-            }
-         }
-         else if( firstLine.startsWith("ACK")) {
-            currentState = IssiState.ACK_EXIT;
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.ACK_EXIT);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.ACK_ENTRY);
-            }
-         }
-         //--------------------------------------------------
-         if( verbose) {
-            logger.debug("----------------------");
-            logger.debug("fromFsm-Id: "+fromFsm.getId());
-            logger.debug("fromFsm-CurrentState: "+fromFsm.getCurrentState());
-            logger.debug("fromFsm-tgxMap: "+fromFsm.getDataMap());
-            logger.debug("----------------------");
-            logger.debug("toFsm-Id: "+toFsm.getId());
-            logger.debug("toFsm-CurrentState: "+toFsm.getCurrentState());
-            logger.debug("toFsm-tgxMap: "+toFsm.getDataMap());
-            logger.debug("----------------------");
-         }
-
-      }  // allmessages
-
-      //-------------------------------------------------------------------
-      PttPacket[] pttPacketArray = allmessages.getPttPacketArray();
-      for( int i=0; i < pttPacketArray.length; i++) {
-         PttPacket pttPacket = pttPacketArray[i];
-         if( pttPacket==null) continue;
-
-         RtpHeader rtpHeader = pttPacket.getRtpHeader();
-         P25Payload p25Payload = pttPacket.getP25Payload();
-         IssiPacketType issiPacketType = p25Payload.getIssiPacketType();
-
-         fromFsm = findFsmById( pttPacket.getSendingRfssId());
-         toFsm = findFsmById( pttPacket.getReceivingRfssId());
-
-         if( verbose) {
-            logger.debug("analyzeGCSD(): PttPacket: i="+i);
-            logger.debug("    packetNumber: "+pttPacket.getPacketNumber());
-            logger.debug("    receptionTime: "+pttPacket.getReceptionTime());
-            logger.debug("    sendingRfssId: "+pttPacket.getSendingRfssId());
-            logger.debug("    receivingRfssId: "+pttPacket.getReceivingRfssId());
-            logger.debug("    rtp-payloadType: "+rtpHeader.getPayloadType());
-            BlockHeader[] blockHeaderArray = p25Payload.getBlockHeaderArray();
-            for( BlockHeader blockHeader: blockHeaderArray) {
-               logger.debug("    p25-blockHeader-blockType: "+blockHeader.getBlockType());
-            }
-            logger.debug("    p25-issiPacketType-packetType: "+issiPacketType.getPacketType());
-         }   // verbose
-
-         // check the FSM index limit 
-         if( fromFsm.getIndex() > MAX_FSMS || toFsm.getIndex() > MAX_FSMS) {
-            logger.debug( "FSM index out of range: "+fromFsm.getId()+":"+toFsm.getId());
-            continue;
-         }
-
-         //--------------------------------------
-         long time = pttPacket.getReceptionTime();
-         PacketType ptype = PacketType.getInstance(
-            PacketType.getValueFromString( issiPacketType.getPacketType()));
-         if( ptype == PacketType.HEARTBEAT) {
-            //showln("see PttPacket: HEARTBEAT");
-         }
-         else if( ptype == PacketType.HEARTBEAT_QUERY) {
-            //showln("see PttPacket: HEARTBEAT_QUERY");
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_REQUEST) {
-            //showln("see PttPacket: PTT_TRANSMIT_REQUEST");
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_REQUEST_EXIT);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_REQUEST_ENTRY);
-            }
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_GRANT) {
-            //showln("see PttPacket: PTT_TRANSMIT_GRANT");
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_GRANT_EXIT);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_GRANT_ENTRY);
-            }
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_PROGRESS) {
-            //showln("see PttPacket: PTT_TRANSMIT_PROGRESS");
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_PROGRESS_EXIT);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_PROGRESS_ENTRY);
-            }
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_START) {
-            //showln("see PttPacket: PTT_TRANSMIT_START => PTT_TRANSMIT_PROGRESS");
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_PROGRESS_EXIT);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_PROGRESS_ENTRY);
-            }
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_END) {
-            //showln("see PttPacket: PTT_TRANSMIT_END");
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_MUTE) {
-            //showln("see PttPacket: PTT_TRANSMIT_MUTE");
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_UNMUTE) {
-            //showln("see PttPacket: PTT_TRANSMIT_UNMUTE");
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_WAIT) {
-            //showln("see PttPacket: PTT_TRANSMIT_WAIT");
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_DENY) {
-            //showln("see PttPacket: PTT_TRANSMIT_DENY");
-         }
-         //--------------------------------------------------
-         if( verbose) {
-            logger.debug("----------------------");
-            logger.debug("fromFsm-Id: "+fromFsm.getId());
-            logger.debug("fromFsm-CurrentState: "+fromFsm.getCurrentState());
-            logger.debug("fromFsm-tgxMap: "+fromFsm.getDataMap());
-            logger.debug("----------------------");
-            logger.debug("toFsm-Id: "+toFsm.getId());
-            logger.debug("toFsm-CurrentState: "+toFsm.getCurrentState());
-            logger.debug("toFsm-tgxMap: "+toFsm.getDataMap());
-            logger.debug("----------------------");
-         }
-      }
+      analyze(mask, IssiMessageFsm.MASK_GCSD, new StringReader(xmlMsg));
    }
 
-   //-----------------------------------------------------------------------
    public void analyzeUCSD(int mask, String xmlMsg)
       throws XmlException, IOException, ParseException
    {
-      this.mask = mask;
-      this.userTag = "";
-      fsmMap = new LinkedHashMap<String,IssiMessageFsm>();
-
-      XmlAllmessages xmldoc = new XmlAllmessages();
-      xmldoc.loadAllmessages( xmlMsg);
-      Allmessages allmessages = xmldoc.getAllmessages();
-      Message[] messageArray = allmessages.getMessageArray();
-
-      // establish the order of FSM
-      setupFsmMap( allmessages);
-
-      boolean fromFlag;
-      boolean toFlag;
-      IssiMessageFsm fromFsm = null;
-      IssiMessageFsm toFsm = null;
-      IssiState currentState = IssiState.STATE_READY;
-
-      for( int i=0; i < messageArray.length; i++)
-      {
-         Message message = messageArray[i];
-         if( message==null) continue;
-         long time = message.getTime();
-         String firstLine = message.getFirstLine().trim();
-
-         if( verbose) {
-            logger.debug("analyzeUCSD(): Message: i="+i);
-            logger.debug("    packetNumber: "+message.getPacketNumber());
-            logger.debug("    from: "+message.getFrom());
-            logger.debug("    to: "+message.getTo());
-            logger.debug("    fromRfssId: "+message.getFromRfssId());
-            logger.debug("    toRfssId: "+message.getToRfssId());
-            logger.debug("    time: "+time);
-            logger.debug("    firstLine: "+firstLine);
-         }
-   
-         fromFsm = findFsmById( message.getFromRfssId());
-         toFsm = findFsmById( message.getToRfssId());
-
-         //--------------------------------------------------
-         // check the FSM index limit 
-         if( fromFsm.getIndex() > MAX_FSMS || toFsm.getIndex() > MAX_FSMS) {
-            logger.debug( "FSM index out of range: "+fromFsm.getId()+":"+toFsm.getId());
-            continue;
-         }
-         //--------------------------------------------------
-         if( firstLine.startsWith("INVITE")) {
-            userTag = XmlAllmessages.getUserTag( firstLine);
-            //showln("    userTag: "+userTag);
-            showln("INVITE-firstLine=["+ firstLine+"]");
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.INVITE_EXIT);
-            showln("INVITE-fromFlag="+ fromFlag);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.INVITE_ENTRY);
-               logger.debug("INVITE-toFlag: "+toFlag);
-               showln("INVITE-toFlag: "+toFlag);
-            }
-         }
-         else if( firstLine.startsWith("SIP")) {
-
-            currentState = fromFsm.getCurrentState();
-            showln("SIP-currentState="+ currentState);
-            //showln("SIP-firstLine=["+ firstLine+"]");
-
-	    if( currentState != IssiState.STATE_FIN)
-            if( firstLine.endsWith("OK") ) {
-               showln("SIP-OK-firstLine=["+ firstLine+"]");
-               if(currentState == IssiState.INVITE_ENTRY  || 
-                  currentState == IssiState.INVITE_EXIT ||
-                  currentState == IssiState.OK_ENTRY
-                 ) { 
-                  fromFlag = fromFsm.processMessage(mask, time, IssiState.OK_EXIT);
-                  showln("SIP-fromFlag="+ fromFlag);
-                  if(fromFlag) {
-                     toFlag = toFsm.processMessage(mask, time, IssiState.OK_ENTRY);
-                     logger.debug("SIP-toFlag: "+toFlag);
-                     showln("SIP-toFlag="+ toFlag);
-                  }
-               }
-            }
-            else if( firstLine.endsWith("Trying")) {
-               // nothing to do
-               showln("SIP-Trying");
-            }
-            else if( firstLine.endsWith("Ringing")) {
-               // nothing to do
-               showln("SIP-Ringing");
-            }
-         }
-         else if( firstLine.startsWith("ACK")) {
-            currentState = IssiState.ACK_EXIT;
-            showln("ACK-currentState="+ currentState);
-            showln("ACK-firstLine=["+ firstLine+"]");
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.ACK_EXIT);
-            showln("ACK-fromFlag="+ fromFlag);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.ACK_ENTRY);
-               logger.debug("ACK-toFlag: "+toFlag);
-               showln("ACK-toFlag="+ toFlag);
-	       // === all done
-	       fromFsm.setCurrentState(IssiState.STATE_FIN);
-            }
-         }
-         //--------------------------------------------------
-         if( verbose) {
-            logger.debug("----------------------");
-            logger.debug("fromFsm-Id: "+fromFsm.getId());
-            logger.debug("fromFsm-CurrentState: "+fromFsm.getCurrentState());
-            logger.debug("fromFsm-tgxMap: "+fromFsm.getDataMap());
-            logger.debug("----------------------");
-            logger.debug("toFsm-Id: "+toFsm.getId());
-            logger.debug("toFsm-CurrentState: "+toFsm.getCurrentState());
-            logger.debug("toFsm-tgxMap: "+toFsm.getDataMap());
-            logger.debug("----------------------");
-         }
-         showln("-------------------------");
-
-      }  // allmessages
+      analyze(mask, IssiMessageFsm.MASK_UCSD, new StringReader(xmlMsg));
    }
 
-   //-----------------------------------------------------------------------
    public void analyzeGMTD(int mask, String xmlMsg)
       throws XmlException, IOException, ParseException
    {
@@ -1274,124 +981,209 @@ public class IssiMessageAnalyzer
    public void analyzeUMTD(int mask, String xmlMsg)
       throws XmlException, IOException, ParseException
    {
-      this.mask = mask;
-      this.userTag = "";
-      fsmMap = new LinkedHashMap<String,IssiMessageFsm>();
-
-      XmlAllmessages xmldoc = new XmlAllmessages();
-      xmldoc.loadAllmessages( xmlMsg);
-      Allmessages allmessages = xmldoc.getAllmessages();
-      //Message[] messageArray = allmessages.getMessageArray();
+      analyze(mask, IssiMessageFsm.MASK_UMTD, new StringReader(xmlMsg));
+   }
 
-      // establish the order of FSM
-      setupFsmMap( allmessages);
+   // Stream the trace through the FSMs as it is parsed. An allmessages
+   // trace holds its SIP messages before its PTT packets, so the FSMs are
+   // ordered as if every keyed SIP message were seen first.
+   private void analyze(int mask, int analysis, Reader in)
+      throws XmlException, ParseException
+   {
+      begin(mask, analysis);
+      try {
+         IssiTraceReader reader = new IssiTraceReader(in);
+         IssiTraceEvent event;
+         while( (event = reader.next()) != null) {
+            process( event);
+         }
+         reader.close();
+      } catch(XMLStreamException ex) {
+         throw new XmlException("Cannot read the trace: "+ex.getMessage(), ex);
+      }
+      if( logger.isDebugEnabled())
+         logger.debug("analyze(): DONE...\n"+fsmMap);
+   }
 
-      boolean fromFlag;
-      boolean toFlag;
-      IssiMessageFsm fromFsm = null;
-      IssiMessageFsm toFsm = null;
-      //IssiState currentState;
+   // Create the FSMs of an event that sets the FSM order: a SIP message
+   // starting with keySIP, or a PTT packet of type keyPTT (a request or
+   // progress without one). This is done whatever the analysis, so the
+   // FSM indexes of a PTT analysis follow the SIP call setup.
+   private void orderFsms(IssiTraceEvent event)
+   {
+      boolean key;
+      if( !event.isPtt()) {
+         key = KEY_ANY.equals(keySIP) || event.getFirstLine().startsWith(keySIP);
+      }
+      else {
+         PacketType ptype = event.getPacketType();
+         key = ptype != null && (keyPTT == ptype || (keyPTT == null &&
+               (ptype == PacketType.PTT_TRANSMIT_REQUEST ||
+                ptype == PacketType.PTT_TRANSMIT_PROGRESS)));
+      }
+      if( key) {
+         findFsmById( event.getFromRfssId());
+         findFsmById( event.getToRfssId());
+      }
+   }
 
-      // process only PTT messages
-      //-------------------------------------------------------------------
-      PttPacket[] pttPacketArray = allmessages.getPttPacketArray();
-      for( int i=0; i < pttPacketArray.length; i++) {
-         PttPacket pttPacket = pttPacketArray[i];
-         if( pttPacket==null) continue;
+   //-----------------------------------------------------------------------
+   /**
+    * Start an analysis: events are then passed to process() as they are
+    * read or captured, and the delays can be calculated at any time. FSMs
+    * are ordered by the first keyed event (see orderFsms) that involves
+    * them, then by the first event they process.
+    *
+    * @param mask -- the FSM mask.
+    * @param analysis -- one of the IssiMessageFsm masks.
+    */
+   public void begin(int mask, int analysis)
+   {
+      this.mask = mask;
+      this.analysis = analysis;
+      this.userTag = "";
+      fsmMap = new LinkedHashMap<String,IssiMessageFsm>();
+   }
 
-         RtpHeader rtpHeader = pttPacket.getRtpHeader();
-         P25Payload p25Payload = pttPacket.getP25Payload();
-         IssiPacketType issiPacketType = p25Payload.getIssiPacketType();
+   /**
+    * Update the FSMs of the current analysis with one SIP message or PTT
+    * packet.
+    */
+   public void process(IssiTraceEvent event)
+      throws ParseException
+   {
+      orderFsms( event);
+      // UCSD looks only at SIP messages, GMTD and UMTD only at PTT packets
+      if( event.isPtt() ? analysis == IssiMessageFsm.MASK_UCSD
+            : analysis != IssiMessageFsm.MASK_GCSD && analysis != IssiMessageFsm.MASK_UCSD) {
+         return;
+      }
+      IssiMessageFsm fromFsm = findFsmById( event.getFromRfssId());
+      IssiMessageFsm toFsm = findFsmById( event.getToRfssId());
+      if( verbose && logger.isDebugEnabled()) {
+         logger.debug("process(): "+event);
+      }
 
-         fromFsm = findFsmById( pttPacket.getSendingRfssId());
-         toFsm = findFsmById( pttPacket.getReceivingRfssId());
+      // check the FSM index limit 
+      if( fromFsm.getIndex() > MAX_FSMS || toFsm.getIndex() > MAX_FSMS) {
+         if( logger.isDebugEnabled())
+            logger.debug( "FSM index out of range: "+fromFsm.getId()+":"+toFsm.getId());
+         return;
+      }
 
-         if( verbose) {
-            logger.debug("anayzeUMTD(): PttPacket: i="+i);
-            logger.debug("    packetNumber: "+pttPacket.getPacketNumber());
-            logger.debug("    receptionTime: "+pttPacket.getReceptionTime());
-            logger.debug("    sendingRfssId: "+pttPacket.getSendingRfssId());
-            logger.debug("    receivingRfssId: "+pttPacket.getReceivingRfssId());
-            logger.debug("    rtp-payloadType: "+rtpHeader.getPayloadType());
-            BlockHeader[] blockHeaderArray = p25Payload.getBlockHeaderArray();
-            for( BlockHeader blockHeader: blockHeaderArray) {
-               logger.debug("    p25-blockHeader-blockType: "+blockHeader.getBlockType());
-            }
-            logger.debug("    p25-issiPacketType-packetType: "+issiPacketType.getPacketType());
-         }   // verbose
+      if( event.isPtt()) {
+         processPtt( event, fromFsm, toFsm);
+      }
+      else if( analysis == IssiMessageFsm.MASK_GCSD) {
+         processGCSD( event, fromFsm, toFsm);
+      }
+      else {
+         processUCSD( event, fromFsm, toFsm);
+      }
 
-         // check the FSM index limit
-         if( fromFsm.getIndex() > MAX_FSMS || toFsm.getIndex() > MAX_FSMS) {
-             logger.debug( "FSM index out of range: "+fromFsm.getId()+":"+toFsm.getId());
-             continue;
-         }
+      if( verbose && logger.isDebugEnabled()) {
+         logger.debug("----------------------");
+         logger.debug("fromFsm-Id: "+fromFsm.getId());
+         logger.debug("fromFsm-CurrentState: "+fromFsm.getCurrentState());
+         logger.debug("fromFsm-tgxMap: "+fromFsm.getDataMap());
+         logger.debug("----------------------");
+         logger.debug("toFsm-Id: "+toFsm.getId());
+         logger.debug("toFsm-CurrentState: "+toFsm.getCurrentState());
+         logger.debug("toFsm-tgxMap: "+toFsm.getDataMap());
+         logger.debug("----------------------");
+      }
+   }
 
-         //--------------------------------------
-         long time = pttPacket.getReceptionTime();
-         PacketType ptype = PacketType.getInstance(
-            PacketType.getValueFromString( issiPacketType.getPacketType()));
-         if( ptype == PacketType.HEARTBEAT) {
-            //showln("see PttPacket: HEARTBEAT");
-         }
-         else if( ptype == PacketType.HEARTBEAT_QUERY) {
-            //showln("see PttPacket: HEARTBEAT_QUERY");
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_REQUEST) {
-            //showln("see PttPacket: PTT_TRANSMIT_REQUEST");
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_REQUEST_EXIT);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_REQUEST_ENTRY);
-            }
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_GRANT) {
-            //showln("see PttPacket: PTT_TRANSMIT_GRANT");
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_GRANT_EXIT);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_GRANT_ENTRY);
+   private void processGCSD(IssiTraceEvent event,
+      IssiMessageFsm fromFsm, IssiMessageFsm toFsm)
+      throws ParseException
+   {
+      long time = event.getTime();
+      switch( event.getSipType()) {
+      case IssiTraceEvent.SIP_INVITE:
+         userTag = XmlAllmessages.getUserTag( event.getFirstLine());
+         if( fromFsm.processMessage(mask, time, IssiState.INVITE_EXIT)) {
+            toFsm.processMessage(mask, time, IssiState.INVITE_ENTRY);
+         }
+         break;
+      case IssiTraceEvent.SIP_OK:
+         if( fromFsm.getCurrentState() == IssiState.INVITE_ENTRY) {
+            if( fromFsm.processMessage(mask, time, IssiState.OK_EXIT)) {
+               toFsm.processMessage(mask, time, IssiState.OK_ENTRY);
             }
          }
-         else if( ptype == PacketType.PTT_TRANSMIT_PROGRESS) {
-            //showln("see PttPacket: PTT_TRANSMIT_PROGRESS");
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_PROGRESS_EXIT);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_PROGRESS_ENTRY);
-            }
+         break;
+      case IssiTraceEvent.SIP_ACK:
+         if( fromFsm.processMessage(mask, time, IssiState.ACK_EXIT)) {
+            toFsm.processMessage(mask, time, IssiState.ACK_ENTRY);
          }
-         else if( ptype == PacketType.PTT_TRANSMIT_START) {
-            //showln("see PttPacket: PTT_TRANSMIT_START => PTT_TRANSMIT_PROGRESS");
-            fromFlag = fromFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_PROGRESS_EXIT);
-            if(fromFlag) {
-               toFlag = toFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_PROGRESS_ENTRY);
+         break;
+      default:
+         // Trying, Ringing: nothing to do
+         break;
+      }
+   }
+
+   private void processUCSD(IssiTraceEvent event,
+      IssiMessageFsm fromFsm, IssiMessageFsm toFsm)
+      throws ParseException
+   {
+      long time = event.getTime();
+      IssiState currentState;
+      switch( event.getSipType()) {
+      case IssiTraceEvent.SIP_INVITE:
+         userTag = XmlAllmessages.getUserTag( event.getFirstLine());
+         if( fromFsm.processMessage(mask, time, IssiState.INVITE_EXIT)) {
+            toFsm.processMessage(mask, time, IssiState.INVITE_ENTRY);
+         }
+         break;
+      case IssiTraceEvent.SIP_OK:
+         currentState = fromFsm.getCurrentState();
+         if( currentState == IssiState.INVITE_ENTRY  || 
+             currentState == IssiState.INVITE_EXIT ||
+             currentState == IssiState.OK_ENTRY) { 
+            if( fromFsm.processMessage(mask, time, IssiState.OK_EXIT)) {
+               toFsm.processMessage(mask, time, IssiState.OK_ENTRY);
             }
          }
-         else if( ptype == PacketType.PTT_TRANSMIT_END) {
-            //showln("see PttPacket: PTT_TRANSMIT_END");
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_MUTE) {
-            //showln("see PttPacket: PTT_TRANSMIT_MUTE");
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_UNMUTE) {
-            //showln("see PttPacket: PTT_TRANSMIT_UNMUTE");
-         }
-         else if( ptype == PacketType.PTT_TRANSMIT_WAIT) {
-            //showln("see PttPacket: PTT_TRANSMIT_WAIT");
+         break;
+      case IssiTraceEvent.SIP_ACK:
+         if( fromFsm.processMessage(mask, time, IssiState.ACK_EXIT)) {
+            toFsm.processMessage(mask, time, IssiState.ACK_ENTRY);
+            // === all done
+            fromFsm.setCurrentState(IssiState.STATE_FIN);
+         }
+         break;
+      default:
+         // Trying, Ringing: nothing to do
+         break;
+      }
+   }
+
+   private void processPtt(IssiTraceEvent event,
+      IssiMessageFsm fromFsm, IssiMessageFsm toFsm)
+      throws ParseException
+   {
+      long time = event.getTime();
+      PacketType ptype = event.getPacketType();
+      if( ptype == PacketType.PTT_TRANSMIT_REQUEST) {
+         if( fromFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_REQUEST_EXIT)) {
+            toFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_REQUEST_ENTRY);
          }
-         else if( ptype == PacketType.PTT_TRANSMIT_DENY) {
-            //showln("see PttPacket: PTT_TRANSMIT_DENY");
+      }
+      else if( ptype == PacketType.PTT_TRANSMIT_GRANT) {
+         if( fromFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_GRANT_EXIT)) {
+            toFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_GRANT_ENTRY);
          }
-         //--------------------------------------------------
-         if( verbose) {
-            logger.debug("----------------------");
-            logger.debug("fromFsm-Id: "+fromFsm.getId());
-            logger.debug("fromFsm-CurrentState: "+fromFsm.getCurrentState());
-            logger.debug("fromFsm-tgxMap: "+fromFsm.getDataMap());
-            logger.debug("----------------------");
-            logger.debug("toFsm-Id: "+toFsm.getId());
-            logger.debug("toFsm-CurrentState: "+toFsm.getCurrentState());
-            logger.debug("toFsm-tgxMap: "+toFsm.getDataMap());
-            logger.debug("----------------------");
+      }
+      else if( ptype == PacketType.PTT_TRANSMIT_PROGRESS ||
+               ptype == PacketType.PTT_TRANSMIT_START) {
+         // PTT_TRANSMIT_START => PTT_TRANSMIT_PROGRESS
+         if( fromFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_PROGRESS_EXIT)) {
+            toFsm.processMessage(mask, time, IssiState.PTT_TRANSMIT_PROGRESS_ENTRY);
          }
       }
+      // Heartbeat, End, Mute, Unmute, Wait, Deny: nothing to do
    }
 
    //=======================================================================
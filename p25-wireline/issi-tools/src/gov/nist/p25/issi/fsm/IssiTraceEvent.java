@@ -0,0 +1,134 @@
+//
+package gov.nist.p25.issi.fsm;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import gov.nist.p25.issi.p25payload.PacketType;
+
+/**
+ * A SIP message or PTT packet of a trace, reduced to what the IVS delay
+ * analysis needs. SIP messages are classified once, when the event is
+ * created.
+ */
+public class IssiTraceEvent
+{
+   public static final int SIP_OTHER = 0;
+   public static final int SIP_INVITE = 1;
+   public static final int SIP_ACK = 2;
+   public static final int SIP_TRYING = 3;
+   public static final int SIP_RINGING = 4;
+   public static final int SIP_OK = 5;
+   public static final int SIP_RESPONSE = 6;
+
+   private static final HashMap<String,Integer> methodMap = new HashMap<String,Integer>();
+   private static final HashMap<Integer,Integer> statusMap = new HashMap<Integer,Integer>();
+   private static final Map<String,PacketType> packetTypeMap = new ConcurrentHashMap<String,PacketType>();
+   static {
+      methodMap.put("INVITE", SIP_INVITE);
+      methodMap.put("ACK", SIP_ACK);
+      statusMap.put(100, SIP_TRYING);
+      statusMap.put(180, SIP_RINGING);
+      statusMap.put(200, SIP_OK);
+   }
+
+   private final boolean isPtt;
+   private final long time;
+   private final String fromRfssId;
+   private final String toRfssId;
+   private final String firstLine;
+   private final int sipType;
+   private final PacketType packetType;
+
+   // accessor
+   public boolean isPtt() { return isPtt; }
+   public long getTime() { return time; }
+   public String getFromRfssId() { return fromRfssId; }
+   public String getToRfssId() { return toRfssId; }
+   public String getFirstLine() { return firstLine; }
+   public int getSipType() { return sipType; }
+   public PacketType getPacketType() { return packetType; }
+
+   // constructor
+   private IssiTraceEvent(boolean isPtt, long time, String fromRfssId,
+         String toRfssId, String firstLine, int sipType, PacketType packetType)
+   {
+      this.isPtt = isPtt;
+      this.time = time;
+      this.fromRfssId = fromRfssId;
+      this.toRfssId = toRfssId;
+      this.firstLine = firstLine;
+      this.sipType = sipType;
+      this.packetType = packetType;
+   }
+
+   /**
+    * Create the event for a SIP message.
+    *
+    * @param firstLine -- the request or status line.
+    */
+   public static IssiTraceEvent createSipEvent(long time, String fromRfssId,
+         String toRfssId, String firstLine)
+   {
+      firstLine = firstLine == null ? "" : firstLine.trim();
+      return new IssiTraceEvent(false, time, fromRfssId, toRfssId,
+            firstLine, classify(firstLine), null);
+   }
+
+   /**
+    * Create the event for a PTT packet.
+    */
+   public static IssiTraceEvent createPttEvent(long time, String sendingRfssId,
+         String receivingRfssId, PacketType packetType)
+   {
+      return new IssiTraceEvent(true, time, sendingRfssId, receivingRfssId,
+            null, SIP_OTHER, packetType);
+   }
+
+   /**
+    * @param packetType -- the packet type description, as in the trace.
+    * @return the packet type, or null if it is not known.
+    */
+   public static PacketType getPacketType(String packetType)
+   {
+      if (packetType == null)
+         return null;
+      PacketType ptype = packetTypeMap.get(packetType);
+      if (ptype == null) {
+         try {
+            ptype = PacketType.getInstance(PacketType.getValueFromString(packetType));
+         } catch (IllegalArgumentException ex) {
+            return null;
+         }
+         packetTypeMap.put(packetType, ptype);
+      }
+      return ptype;
+   }
+
+   // INVITE sip:... SIP/2.0  or  SIP/2.0 200 OK
+   private static int classify(String firstLine)
+   {
+      int sp = firstLine.indexOf(' ');
+      String token = sp < 0 ? firstLine : firstLine.substring(0, sp);
+      if (token.startsWith("SIP/")) {
+         int sp2 = firstLine.indexOf(' ', sp + 1);
+         try {
+            Integer status = Integer.valueOf(sp2 < 0 ? firstLine.substring(sp + 1)
+                  : firstLine.substring(sp + 1, sp2));
+            Integer sipType = statusMap.get(status);
+            return sipType == null ? SIP_RESPONSE : sipType;
+         } catch (NumberFormatException ex) {
+            return SIP_RESPONSE;
+         }
+      }
+      Integer sipType = methodMap.get(token);
+      return sipType == null ? SIP_OTHER : sipType;
+   }
+
+   public String toString()
+   {
+      return (isPtt ? packetType : firstLine) + " " + fromRfssId + " -> "
+            + toRfssId + " @" + time;
+   }
+}
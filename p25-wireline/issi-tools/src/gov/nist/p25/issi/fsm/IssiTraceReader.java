@@ -0,0 +1,76 @@
+//
+package gov.nist.p25.issi.fsm;
+
+import java.io.Reader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the SIP messages and PTT packets of an allmessages trace one at a
+ * time with a StAX parser. Only the attributes the IVS delay analysis uses
+ * are kept; message bodies are skipped.
+ */
+public class IssiTraceReader
+{
+   private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+   private XMLStreamReader reader;
+
+   // constructor
+   public IssiTraceReader(Reader in) throws XMLStreamException {
+      reader = factory.createXMLStreamReader(in);
+   }
+
+   /**
+    * @return the next event, or null at the end of the trace.
+    */
+   public IssiTraceEvent next() throws XMLStreamException
+   {
+      long time = 0;
+      String sendingRfssId = null;
+      String receivingRfssId = null;
+      String packetType = null;
+      boolean inPttPacket = false;
+
+      while (reader.hasNext()) {
+         int eventType = reader.next();
+         if (eventType == XMLStreamConstants.START_ELEMENT) {
+            String name = reader.getLocalName();
+            if ("message".equals(name)) {
+               return IssiTraceEvent.createSipEvent(
+                  parseLong(reader.getAttributeValue(null, "time")),
+                  reader.getAttributeValue(null, "fromRfssId"),
+                  reader.getAttributeValue(null, "toRfssId"),
+                  reader.getAttributeValue(null, "firstLine"));
+            }
+            else if ("ptt-packet".equals(name)) {
+               inPttPacket = true;
+               time = parseLong(reader.getAttributeValue(null, "receptionTime"));
+               sendingRfssId = reader.getAttributeValue(null, "sendingRfssId");
+               receivingRfssId = reader.getAttributeValue(null, "receivingRfssId");
+               packetType = null;
+            }
+            else if (inPttPacket && "issi-packet-type".equals(name)) {
+               packetType = reader.getAttributeValue(null, "packetType");
+            }
+         }
+         else if (eventType == XMLStreamConstants.END_ELEMENT) {
+            if (inPttPacket && "ptt-packet".equals(reader.getLocalName())) {
+               return IssiTraceEvent.createPttEvent(time, sendingRfssId,
+                  receivingRfssId, IssiTraceEvent.getPacketType(packetType));
+            }
+         }
+      }
+      return null;
+   }
+
+   public void close() throws XMLStreamException {
+      reader.close();
+   }
+
+   private static long parseLong(String value) {
+      return value == null ? 0 : Long.parseLong(value.trim());
+   }
+}
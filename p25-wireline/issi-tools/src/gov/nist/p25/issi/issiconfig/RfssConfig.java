@@ -10,6 +10,7 @@ import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -61,6 +62,9 @@ public class RfssConfig implements Comparable<RfssConfig>
    private TopologyConfig topologyConfig;
    private String colorString = "BLACK";
    private int selfTestPort;
+
+   /** Bumped whenever a field that TopologyConfig indexes changes. */
+   private static final AtomicInteger changeCount = new AtomicInteger();
          
    /**
     * Construct a RfssConfig object.
@@ -317,11 +321,20 @@ public class RfssConfig implements Comparable<RfssConfig>
       this.isEmulated = emulatedFlag;
    }
 
+   /**
+    * The number of changes made to the name, address, port or ID of any
+    * RfssConfig; TopologyConfig uses it to know when to re-index.
+    */
+   static int getChangeCount() {
+      return changeCount.get();
+   }
+
    public String getRfssName() {
       return rfssName;
    }
    public void setRfssName(String rfssName) {
       this.rfssName = rfssName;
+      changeCount.incrementAndGet();
    }
 
    /**
@@ -492,6 +505,7 @@ public class RfssConfig implements Comparable<RfssConfig>
    }
    public void setIpAddress(String ipAddress) {
       this.ipAddress = ipAddress;      
+      changeCount.incrementAndGet();
    }
 
    public int getSipPort() {
@@ -502,6 +516,7 @@ public class RfssConfig implements Comparable<RfssConfig>
          throw new IllegalArgumentException("bad port value");
       }
       this.sipPort = port;
+      changeCount.incrementAndGet();
    }
 
    public int getSelfTestPort() {
@@ -520,6 +535,7 @@ public class RfssConfig implements Comparable<RfssConfig>
             "RFSS ID out of range should be <= 0xff was 0x" +Integer.toHexString(rfssId));
       }
       this.rfssId = rfssId;      
+      changeCount.incrementAndGet();
    }
    public String getRfssIdString() {
       return EndPointHelper.encodeRfssId(rfssId);
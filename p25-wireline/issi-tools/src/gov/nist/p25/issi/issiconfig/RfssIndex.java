@@ -0,0 +1,118 @@
+//
+package gov.nist.p25.issi.issiconfig;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the RFSS lookup indices of a TopologyConfig.
+ * Each index keeps the RFSS that a linear scan of the RFSS tables would
+ * have found first, so lookups return the same RFSS as before.
+ */
+final class RfssIndex {
+
+   /** The TopologyConfig table change count this snapshot was built from. */
+   final int tableVersion;
+
+   /** The RfssConfig change count this snapshot was built from. */
+   final int configVersion;
+
+   /** RFSS configurations by IP address. */
+   private final HashMap<String, RfssConfig> byIpAddress;
+
+   /** RFSS configurations and aliases by IP address, searched by port. */
+   private final HashMap<String, RfssConfig[]> byIpAddressAndPort;
+   private final HashMap<String, RfssConfig> byTag;
+   private final HashMap<String, RfssConfig> byRfssName;
+   private final HashMap<Integer, RfssConfig> byRfssId;
+
+   /**
+    * Build the indices.
+    *
+    * @param tableVersion
+    *            the table change count of the topology.
+    * @param configVersion
+    *            the RfssConfig change count.
+    * @param rfssConfigs
+    *            the RFSS configurations, in table order.
+    * @param rfssAliases
+    *            the RFSS name table, in table order.
+    */
+   RfssIndex(int tableVersion, int configVersion,
+         Collection<RfssConfig> rfssConfigs, Collection<RfssConfig> rfssAliases) {
+      this.tableVersion = tableVersion;
+      this.configVersion = configVersion;
+      byIpAddress = new HashMap<String, RfssConfig>();
+      byTag = new HashMap<String, RfssConfig>();
+      byRfssName = new HashMap<String, RfssConfig>();
+      byRfssId = new HashMap<Integer, RfssConfig>();
+
+      HashMap<String, ArrayList<RfssConfig>> ipLists =
+         new HashMap<String, ArrayList<RfssConfig>>();
+      for (RfssConfig rfssConfig : rfssConfigs) {
+         putFirst(byIpAddress, rfssConfig.getIpAddress(), rfssConfig);
+         putFirst(byTag, rfssConfig.getTag(), rfssConfig);
+         putFirst(byRfssName, rfssConfig.getRfssName(), rfssConfig);
+         putFirst(byRfssId, rfssConfig.getRfssId(), rfssConfig);
+         addToList(ipLists, rfssConfig);
+      }
+      for (RfssConfig rfssConfig : rfssAliases) {
+         addToList(ipLists, rfssConfig);
+      }
+
+      byIpAddressAndPort = new HashMap<String, RfssConfig[]>(ipLists.size() * 2);
+      for (Map.Entry<String, ArrayList<RfssConfig>> entry : ipLists.entrySet()) {
+         ArrayList<RfssConfig> list = entry.getValue();
+         byIpAddressAndPort.put(entry.getKey(),
+               list.toArray(new RfssConfig[list.size()]));
+      }
+   }
+
+   private static void addToList(HashMap<String, ArrayList<RfssConfig>> ipLists,
+         RfssConfig rfssConfig) {
+      String ipAddress = rfssConfig.getIpAddress();
+      if (ipAddress == null)
+         return;
+      ArrayList<RfssConfig> list = ipLists.get(ipAddress);
+      if (list == null) {
+         list = new ArrayList<RfssConfig>(2);
+         ipLists.put(ipAddress, list);
+      }
+      list.add(rfssConfig);
+   }
+
+   private static <K> void putFirst(HashMap<K, RfssConfig> map, K key,
+         RfssConfig rfssConfig) {
+      if (key != null && !map.containsKey(key))
+         map.put(key, rfssConfig);
+   }
+
+   RfssConfig getByIpAddress(String ipAddress) {
+      return byIpAddress.get(ipAddress);
+   }
+
+   RfssConfig getByIpAddressAndPort(String ipAddress, int port) {
+      RfssConfig[] rfssConfigs = byIpAddressAndPort.get(ipAddress);
+      if (rfssConfigs != null) {
+         for (RfssConfig rfssConfig : rfssConfigs) {
+            if (rfssConfig.getSipPort() == port)
+               return rfssConfig;
+         }
+      }
+      return null;
+   }
+
+   RfssConfig getByTag(String tag) {
+      return byTag.get(tag);
+   }
+
+   RfssConfig getByRfssName(String name) {
+      return byRfssName.get(name);
+   }
+
+   RfssConfig getByRfssId(int id) {
+      return byRfssId.get(id);
+   }
+}
@@ -5,6 +5,7 @@ import gov.nist.p25.issi.constants.ISSIDtdConstants;
 import gov.nist.p25.issi.constants.XMLTagsAndAttributes;
 import gov.nist.p25.issi.rfss.tester.ISSITesterConfiguration;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Hashtable;
 import java.util.LinkedList;
@@ -83,6 +84,13 @@ public class TopologyConfig implements XMLTagsAndAttributes,
     */
    private List<String> traceOrder;
 
+   /**
+    * Hash indices over the RFSS tables, rebuilt when rfssTableVersion or
+    * the RfssConfig change count moves on.
+    */
+   private transient volatile RfssIndex rfssIndex;
+   private transient volatile int rfssTableVersion;
+
    // accessors
    public Hashtable<String, SuConfig> getSuConfigTable() {
       return suConfigTable;
@@ -115,37 +123,51 @@ public class TopologyConfig implements XMLTagsAndAttributes,
    }
 
    public RfssConfig getRfssConfigByTag(String tag) { 
-      if( tag != null)
-      for ( RfssConfig rfssConfig: getRfssConfigurations()) {
-         if ( tag.equals(rfssConfig.getTag()))
-            return rfssConfig;
-      }
-      return null;
+      if( tag == null)
+         return null;
+      return getRfssIndex().getByTag(tag);
    }
    public RfssConfig getRfssConfigByIpAddress(String ipStr) {
-      if( ipStr != null)
-      for ( RfssConfig rfssConfig: getRfssConfigurations()) {
-         if ( ipStr.equals(rfssConfig.getIpAddress()))
-            return rfssConfig;
-      }
-      return null;
+      if( ipStr == null)
+         return null;
+      return getRfssIndex().getByIpAddress(ipStr);
    }
    public RfssConfig getRfssConfigByRfssName(String name) {
-      if( name != null)
-      for ( RfssConfig rfssConfig: getRfssConfigurations()) {
-         if ( name.equals(rfssConfig.getRfssName()))
-            return rfssConfig;
-      }
-      return null;
+      if( name == null)
+         return null;
+      return getRfssIndex().getByRfssName(name);
    }
 
    // for swapping RFSS
    public RfssConfig getRfssConfigByRfssId(int id) {
-      for ( RfssConfig rfssConfig: getRfssConfigurations()) {
-         if ( id == rfssConfig.getRfssId())
-            return rfssConfig;
+      return getRfssIndex().getByRfssId(id);
+   }
+
+   /**
+    * Get the RFSS lookup indices, rebuilding them if the RFSS tables or
+    * any RfssConfig changed since they were last built.
+    */
+   private RfssIndex getRfssIndex() {
+      RfssIndex index = rfssIndex;
+      int configVersion = RfssConfig.getChangeCount();
+      if (index != null && index.tableVersion == rfssTableVersion
+            && index.configVersion == configVersion)
+         return index;
+
+      // read the versions before the tables so that a concurrent change
+      // leaves this snapshot stale rather than wrong.
+      int tableVersion = rfssTableVersion;
+      List<RfssConfig> rfssConfigs;
+      List<RfssConfig> rfssAliases;
+      synchronized (rfssConfigTable) {
+         rfssConfigs = new ArrayList<RfssConfig>(rfssConfigTable.values());
       }
-      return null;
+      synchronized (rfssNameTable) {
+         rfssAliases = new ArrayList<RfssConfig>(rfssNameTable.values());
+      }
+      index = new RfssIndex(tableVersion, configVersion, rfssConfigs, rfssAliases);
+      rfssIndex = index;
+      return index;
    }
 
    /**
@@ -228,15 +250,9 @@ public class TopologyConfig implements XMLTagsAndAttributes,
    }
 
    public RfssConfig getRfssConfig(String ipAddress, int port) {
-      for (RfssConfig rfss: rfssConfigTable.values()) {
-         if (rfss.getIpAddress().equals(ipAddress) && rfss.getSipPort() == port)
-            return rfss;
-      }
-      // try name table
-      for (RfssConfig rfss: rfssNameTable.values()) {
-         if (rfss.getIpAddress().equals(ipAddress) && rfss.getSipPort() == port)
-            return rfss;
-      }
+      RfssConfig found = getRfssIndex().getByIpAddressAndPort(ipAddress, port);
+      if (found != null)
+         return found;
 
       if(verbose)
       logger.error("Could not find rfss for ip=" +ipAddress +":" +port);
@@ -373,6 +389,7 @@ public class TopologyConfig implements XMLTagsAndAttributes,
          + " port:" + rfssConfig.getSipPort());  
       rfssNameTable.put(rfssConfig.getRfssName(), rfssConfig);
       rfssConfigTable.put(rfssConfig.getDomainName(), rfssConfig);
+      rfssTableVersion++;
    }
 
    /**
@@ -544,6 +561,7 @@ public class TopologyConfig implements XMLTagsAndAttributes,
     */
    public void addRfssAlias(String id, RfssConfig rfssConfig) {
       rfssNameTable.put(id, rfssConfig);
+      rfssTableVersion++;
    }
    
    /**
@@ -12,6 +12,7 @@ import gov.nist.p25.issi.p25payload.P25BlockException;
 import gov.nist.p25.issi.rfss.SipUtils;
 import gov.nist.p25.issi.rfss.tester.ISSITesterConfiguration;
 import gov.nist.p25.issi.rfss.tester.ISSITesterConfigurationParser;
+import gov.nist.p25.issi.utils.EventLogger;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -19,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Hashtable;
@@ -63,6 +65,7 @@ import org.mortbay.jetty.servlet.ServletHandler;
 public class PacketMonitor implements PacketReceiver {
 
    public static Logger logger = Logger.getLogger(PacketMonitor.class);
+   private static EventLogger eventLogger = new EventLogger(logger);
    static {
       try {
          logger.addAppender(new FileAppender(new SimpleLayout(),
@@ -86,8 +89,17 @@ public class PacketMonitor implements PacketReceiver {
    private LinkedList<CapturedSipMessage> sipMessages;
    private Hashtable<String, MediaSession> pendingSessions;
    private HashSet<EndPoint> sipAddresses;
-   private volatile LinkedList<CapturedPacket> capturedPackets;
+   private volatile ArrayList<CapturedPacket> capturedPackets;
    private Hashtable<String, MediaSession> pttSessionsByDestination;
+   private UnmatchedPackets unmatchedPackets;
+
+   // Bounds on the RTP packets kept for end points with no media session.
+   private static final int MAX_UNMATCHED_PER_END_POINT = 1000;
+   private static final int MAX_UNMATCHED_PACKETS = 10000;
+   private static final long UNMATCHED_WINDOW_MILLIS = 30000;
+
+   // Number of captured packets already sorted into the tables.
+   private int sortedPacketCount;
 
    private Hashtable<String, String> transactionTable;
    private LinkedHashMap<String, LinkedList<CapturedSipMessage>> inviteTransactions;
@@ -160,7 +172,7 @@ public class PacketMonitor implements PacketReceiver {
       errorFlag = true;
    }
 
-   public void clearTables()
+   public synchronized void clearTables()
    {
       errorFlag = false;
       errorString = "";
@@ -170,6 +182,14 @@ public class PacketMonitor implements PacketReceiver {
       inviteTransactions.clear();
       ackDialog.clear();
       pttSessionsByDestination.clear();
+      if (unmatchedPackets.getDroppedCount() > 0) {
+         logger.info("clearTables(): dropped " + unmatchedPackets.getDroppedCount()
+            + " RTP packets sent to end points without a media session");
+      }
+      unmatchedPackets.clear();
+      pendingSessions.clear();
+      pttSessions.clear();
+      sortedPacketCount = 0;
    }
 
    /**
@@ -277,13 +297,6 @@ public class PacketMonitor implements PacketReceiver {
       }
    }
 
-   // ////////////////////////////////////////////////////////////////////
-   // Inner classes
-   // ///////////////////////////////////////////////////////////////////
-   enum  XPacketType {
-      SIPREQUEST, SIPRESPONSE, SIPMESSAGE, PTT, ALLMESSAGE
-   }
-
    // constructor
    public PacketMonitor(TopologyConfig topologyConfig) {
 
@@ -298,8 +311,10 @@ public class PacketMonitor implements PacketReceiver {
          this.allMessages = new LinkedList<Object>();
          this.sipMessages = new LinkedList<CapturedSipMessage>();
          this.sipAddresses = new HashSet<EndPoint>();
-         this.capturedPackets = new LinkedList<CapturedPacket>();
+         this.capturedPackets = new ArrayList<CapturedPacket>();
          this.pttSessionsByDestination = new Hashtable<String, MediaSession>();
+         this.unmatchedPackets = new UnmatchedPackets(MAX_UNMATCHED_PER_END_POINT,
+            MAX_UNMATCHED_PACKETS, UNMATCHED_WINDOW_MILLIS);
          SipFactory sipFactory = SipFactory.getInstance();
          sipFactory.setPathName("gov.nist");
          messageFactory = sipFactory.createMessageFactory();
@@ -355,7 +370,8 @@ public class PacketMonitor implements PacketReceiver {
       
    /**
     * This method receives the raw Packet and stores them. At run time, there
-    * is no time for packet sorting.
+    * is no time for packet sorting; packets are sorted incrementally by the
+    * next query.
     * 
     */
    public synchronized void receivePacket(Packet packet) {
@@ -369,7 +385,8 @@ public class PacketMonitor implements PacketReceiver {
    }
 
    /**
-    * This method reads from a file and calls Receive packet iteratively.
+    * This method reads the UDP packets sent to the monitored end points from
+    * a pcap or pcapng file.
     * 
     * @param fileName --
     *            the file name from which to read packets.
@@ -377,50 +394,99 @@ public class PacketMonitor implements PacketReceiver {
    public void readTraceFromFile(String fileName) throws Exception {
 
       logger.debug("PacketMonitor: readTraceFromFile: " + fileName);
-      JpcapCaptor captor = JpcapCaptor.openFile(fileName);
-      int count = 0;
-      Packet packet = captor.getPacket();
-      while (packet != Packet.EOF) {
-         if (packet instanceof UDPPacket) {
-            //logger.debug("got a packet ");
-            CapturedPacket capturedPacket = new CapturedPacket(count, packet);
-            capturedPackets.add(capturedPacket);
-            
-            // current TS + captured sec and micro-sec
-            //==long ts = capturedPacket.getTimeStamp() + packet.sec*1000 + packet.usec/1000;
-            //==capturedPacket.setTimeStamp( ts);
+      PcapFileReader reader = openTraceFile(fileName);
+      try {
+         UDPPacket packet;
+         while ((packet = reader.next()) != null) {
+            CapturedPacket capturedPacket = new CapturedPacket(
+                  reader.getFrameNumber(), packet);
+            addCapturedPacket(capturedPacket);
          }
-         packet = captor.getPacket();
-	 count++;
+      } finally {
+         reader.close();
       }
-      logger.debug("PacketMonitor: DONE count="+count);
+      logger.debug("PacketMonitor: DONE count=" + (reader.getFrameNumber() + 1)
+            + " accepted=" + reader.getAcceptedCount()
+            + " fragments=" + reader.getFragmentCount());
+   }
+
+   /*
+    * Open a trace file filtered to the SIP end points and the RFSS hosts,
+    * which receive the RTP packets.
+    */
+   private PcapFileReader openTraceFile(String fileName) throws IOException {
+      PcapFileReader reader = new PcapFileReader(new File(fileName));
+      HashSet<String> rtpHosts = new HashSet<String>();
+      for (EndPoint endPoint : sipAddresses)
+         rtpHosts.add(endPoint.getHost());
+      reader.setFilter(sipAddresses, rtpHosts);
+      return reader;
+   }
+
+   private synchronized void addCapturedPacket(CapturedPacket capturedPacket) {
+      capturedPackets.add(capturedPacket);
    }
 
    /**
-    * This method sorts packets. It goes through the list of captured packets
-    * pulls out the SIP Packets, identifies the SIP packets and from the SIP
-    * packets, it pulls out the media sessions. It then associates the captured
-    * PTT packets with the media sessions. This sorting step is done after the
-    * packet capture is complete.
-    * 
-    * @param capturedPaket --
-    *            the captured packet to sort.
-    * 
-    * @param packetType --
-    *            the type of packet we are looking for.
+    * Sort the packets captured since the last query. Every table is kept up
+    * to date as packets are sorted, so a query only pays for the packets
+    * that arrived since the previous one.
     */
-   private void sortPacket(CapturedPacket capturedPacket, XPacketType packetType) 
-      throws P25BlockException
+   private synchronized void sortNewPackets() {
+      long reftime = 0;
+      if (capturedPackets.size() > 0) {
+         reftime = capturedPackets.get(0).getTimeStamp();
+      }
+      while (sortedPacketCount < capturedPackets.size()) {
+         CapturedPacket packet = capturedPackets.get(sortedPacketCount++);
+         try {
+            sortPacket(packet, reftime);
+         } catch(P25BlockException ex) {
+            logger.debug("sortNewPackets(): "+ex);
+         }
+      }
+   }
+
+   /**
+    * Record the media session receiving at an end point. A later session
+    * for the same end point takes over the PTT messages already sorted into
+    * the earlier one, and PTT packets that were captured before any session
+    * was known for the end point are sorted into it.
+    */
+   private void putMediaSession(EndPoint endPoint, MediaSession session)
    {
-      long ts = 0;
-      if( capturedPackets.get(0) != null) {
-         ts = capturedPackets.get(0).getTimeStamp();
+      String key = endPoint.toString();
+      MediaSession previous = pttSessionsByDestination.put(key, session);
+      if (previous != null) {
+         session.getCapturedPttMessages().addAll(0, previous.getCapturedPttMessages());
+      }
+      LinkedList<CapturedPacket> unmatched = unmatchedPackets.remove(key);
+      if (unmatched != null) {
+         for (CapturedPacket packet: unmatched) {
+            UDPPacket udpPacket = (UDPPacket) packet.getPacket();
+            try {
+               session.addPttMessage(packet.getPacketNumber(), udpPacket.data,
+                  packet.getTimeStamp());
+            } catch(P25BlockException ex) {
+               logger.debug("putMediaSession(): "+ex);
+            }
+         }
       }
-      sortPacket( capturedPacket, packetType, ts);
    }
 
-   private synchronized void sortPacket(CapturedPacket capturedPacket,
-         XPacketType packetType, long reftime)
+   /**
+    * This method sorts one packet. SIP packets are parsed and indexed by
+    * transaction and dialog, and the media sessions are inferred from their
+    * SDP. PTT packets are associated with the media session of their
+    * destination.
+    * 
+    * @param capturedPaket --
+    *            the captured packet to sort.
+    * 
+    * @param reftime --
+    *            the time stamp of the first captured packet.
+    */
+   private void sortPacket(CapturedPacket capturedPacket, long reftime)
       throws P25BlockException
    {
       UDPPacket udpPacket = (UDPPacket) capturedPacket.getPacket();
@@ -434,19 +500,18 @@ public class PacketMonitor implements PacketReceiver {
 
       byte[] data = udpPacket.data;
       long delta = timeStamp - reftime;
-      logger.debug("sortPacket: " + packetAddress +" " + packetType +" " +
-         udpPacket.src_ip.getHostAddress() +":" + udpPacket.src_port +" " +
-         timeStamp + " " + delta);
+      eventLogger.event("sortPacket")
+         .field("destination", packetAddress)
+         .field("source", udpPacket.src_ip, udpPacket.src_port)
+         .field("timeStamp", timeStamp)
+         .field("delta", delta).log();
 
       if (sipAddresses.contains(packetAddress)) {
 
          String messageString = new String(data);
          try {
             // SIP Responses start with the string SIP
-            if ((!messageString.startsWith("SIP")) &&
-                  (packetType == XPacketType.SIPREQUEST || 
-                   packetType == XPacketType.SIPMESSAGE ||
-                   packetType == XPacketType.ALLMESSAGE)) {
+            if (!messageString.startsWith("SIP")) {
 
                Request request = messageFactory.createRequest(messageString);
                String transactionId = ((ViaHeader) request.getHeader(ViaHeader.NAME)).getBranch();
@@ -471,11 +536,10 @@ public class PacketMonitor implements PacketReceiver {
                CapturedSipMessage captured = new CapturedSipMessage(this,
                      packetAddress, timeStamp, request);
                captured.setPacketNumber( packetNumber);
-               if( packetType == XPacketType.ALLMESSAGE)
-                  allMessages.add(captured);
-               else
-                  sipMessages.add(captured);
-               logger.debug("         -->" + captured.getShortDescription());
+               allMessages.add(captured);
+               sipMessages.add(captured);
+               if (logger.isDebugEnabled())
+                  logger.debug("         -->" + captured.getShortDescription());
 
                // compute Dialog ID
                Message message = captured.getMessage();
@@ -519,7 +583,7 @@ public class PacketMonitor implements PacketReceiver {
                      MediaSession pendingSession = new MediaSession(this, endPoint);
                      pendingSession.setOwningRfss( destinationRfss);
                      pendingSession.setRemoteRfss( srcRfssConfig);
-                     pttSessionsByDestination.put(endPoint.toString(), pendingSession);
+                     putMediaSession(endPoint, pendingSession);
 
                      logger.debug("add PttSession: " + endPoint);
                      pendingSessions.put(transactionId, pendingSession);
@@ -539,22 +603,18 @@ public class PacketMonitor implements PacketReceiver {
                      ackDialog.get(dialogId).add(captured);
                   }
                }
-            } else if (messageString.startsWith("SIP") &&
-                  (packetType == XPacketType.SIPRESPONSE || 
-                   packetType == XPacketType.SIPMESSAGE ||
-                   packetType == XPacketType.ALLMESSAGE) ) {
+            } else {
 
                Response response = messageFactory.createResponse(messageString);
                CapturedSipMessage captured = new CapturedSipMessage(this,
                      packetAddress, timeStamp, response);
                //RfssConfig destinationRfss = topologyConfig.getRfssConfig(host, port);
 
-               logger.debug("         -->" + captured.getShortDescription());
+               if (logger.isDebugEnabled())
+                  logger.debug("         -->" + captured.getShortDescription());
                captured.setPacketNumber( packetNumber);
-               if( packetType == XPacketType.ALLMESSAGE)
-                  allMessages.add(captured);
-               else
-                  sipMessages.add(captured);
+               allMessages.add(captured);
+               sipMessages.add(captured);
 
                // compute Dialog ID
                Message message = captured.getMessage();
@@ -613,7 +673,7 @@ public class PacketMonitor implements PacketReceiver {
                         session.setSource(endPoint);
                         MediaSession reversed = session.reverse();
                         reversed.setDestination( endPoint);
-                        pttSessionsByDestination.put(endPoint.toString(), reversed);
+                        putMediaSession(endPoint, reversed);
                         logger.debug("process response: pttSession: " + endPoint);
                      } else {
                         String msg = "Could not find transaction ID " + transactionId;
@@ -635,19 +695,19 @@ public class PacketMonitor implements PacketReceiver {
             logger.error("Message : [" + messageString + "]");
          }
       } 
-      else if (pttSessionsByDestination.containsKey(packetAddress.toString()) &&
-               (packetType == XPacketType.PTT || packetType == XPacketType.ALLMESSAGE)) {
+      else if (pttSessionsByDestination.containsKey(packetAddress.toString())) {
 
          MediaSession session = pttSessionsByDestination.get(packetAddress.toString());
          try {
             CapturedPttMessage pttMsg = session.addPttMessage(packetNumber, data, timeStamp);
 
-            logger.debug("sortPacket: Adding PTT Packet headed for " + packetAddress + " " +
-               pttMsg.getTimeStamp());
-            logger.debug("         -->" + pttMsg.getShortDescription());
+            eventLogger.event("sortPacket.ptt")
+               .field("destination", packetAddress)
+               .field("timeStamp", pttMsg.getTimeStamp()).log();
+            if (logger.isDebugEnabled())
+               logger.debug("         -->" + pttMsg.getShortDescription());
 
-            if( pttMsg != null && packetType == XPacketType.ALLMESSAGE)
-               allMessages.add( pttMsg);
+            allMessages.add( pttMsg);
 
             // store measurement required PTT messages
             int type = pttMsg.getP25Payload().getISSIPacketType().getPT();
@@ -664,10 +724,10 @@ public class PacketMonitor implements PacketReceiver {
                logger.debug("PTT_TRANSMIT_PROGRESS seen");
                break;
             case ISSIPacketType.HEARTBEAT:
-               logger.debug("See PTT packet: Heartbeat " + type);
+               eventLogger.event("sortPacket.heartbeat").field("type", type).log();
                break;
             default:
-               logger.debug("#### Unknown PTT packet type: " + type);
+               eventLogger.event("sortPacket.unknownPttType").field("type", type).log();
                break;
             }
          }
@@ -676,8 +736,16 @@ public class PacketMonitor implements PacketReceiver {
             throw ex;
          }
       }  
+      else if (data.length >= 12 && (data[0] & 0xC0) == 0x80) {
+         // An RTP packet: keep it in case a media session for this end
+         // point shows up later
+         if (!unmatchedPackets.add(packetAddress.toString(), capturedPacket)) {
+            eventLogger.event("sortPacket.unmatchedDropped")
+               .field("destination", packetAddress).log();
+         }
+      }
       else {
-         logger.debug("sortPacket: *** Ignoring packet " + packetAddress);
+         eventLogger.event("sortPacket.ignored").field("destination", packetAddress).log();
       }
    }
 
@@ -696,15 +764,7 @@ public class PacketMonitor implements PacketReceiver {
          throw new RuntimeException( msg);
          //return "";
       }
-      clearTables();
-
-      for (CapturedPacket packet: capturedPackets) {
-         try {
-            sortPacket(packet, XPacketType.SIPMESSAGE);
-         } catch(P25BlockException ex) {
-            logger.debug("getSipMessages(): "+ex);
-	 }
-      }
+      sortNewPackets();
 
       StringBuffer sbuf = new StringBuffer();
       for (CapturedSipMessage message: sipMessages) {
@@ -731,25 +791,12 @@ public class PacketMonitor implements PacketReceiver {
          throw new RuntimeException(msg);
          //return "";
       }
-      clearTables();
+      sortNewPackets();
 
       boolean incHex = true;
       StringBuffer sbuf = new StringBuffer();
-      for (CapturedPacket packet: capturedPackets) {
-         try {
-            sortPacket(packet, XPacketType.SIPMESSAGE);
-         } catch(P25BlockException ex) {
-            logger.debug("getPttMessages(): "+ex);
-	 }
-      }
-      logger.debug("getPttMessages(): pttSessionsByDestionation=\n" + pttSessionsByDestination);
-      //logger.debug("getPttMessages(): values=\n" + pttSessionsByDestination.values());
-
-      for (CapturedPacket packet: capturedPackets) {
-         try {
-            sortPacket(packet, XPacketType.PTT);
-         } catch(P25BlockException ex) { }
-      }
+      if (logger.isDebugEnabled())
+         logger.debug("getPttMessages(): pttSessionsByDestionation=\n" + pttSessionsByDestination);
 
       for (MediaSession mediaSession: pttSessionsByDestination.values()) {
          for (CapturedPttMessage capturedPacket: mediaSession.getCapturedPttMessages()) {
@@ -774,13 +821,7 @@ public class PacketMonitor implements PacketReceiver {
          logger.info( msg);
          throw new RuntimeException( msg);
       }
-      clearTables();
-
-      for (CapturedPacket packet: capturedPackets) {
-         try {
-            sortPacket(packet, XPacketType.ALLMESSAGE);
-         } catch(P25BlockException ex) { }
-      }
+      sortNewPackets();
 
       StringBuffer sbuf = new StringBuffer();
       for (Object message: allMessages) {
@@ -808,6 +849,7 @@ public class PacketMonitor implements PacketReceiver {
          throw new RuntimeException(msg);
          //return "";
       }
+      sortNewPackets();
       String result = packetAnalyzer.getResultString();
       return result;
    }
@@ -854,8 +896,14 @@ public class PacketMonitor implements PacketReceiver {
    }
 
    public void readTraceFromString(String fileName) throws Exception {
-      jpcap = JpcapCaptor.openFile(fileName);
-      jpcap.processPacket(-1, new MonitorWrapper(this));
+      PcapFileReader reader = openTraceFile(fileName);
+      try {
+         UDPPacket packet;
+         while ((packet = reader.next()) != null)
+            receivePacket(packet);
+      } finally {
+         reader.close();
+      }
    }
 
    /**
@@ -0,0 +1,501 @@
+//
+package gov.nist.p25.issi.packetmonitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+import jpcap.packet.IPPacket;
+import jpcap.packet.UDPPacket;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A pure Java reader of pcap and pcapng trace files. The file is memory
+ * mapped and the link, IPv4 and UDP headers are parsed in place, so frames
+ * that are not UDP, or that are not addressed to one of the monitored end
+ * points, are skipped without creating any object. Accepted frames are
+ * returned as jpcap UDPPacket objects, which is what CapturedPacket and the
+ * analyzers expect; the jpcap native library is not needed.
+ * <p>
+ * Fragmented IPv4 datagrams are skipped, as are IPv6 frames.
+ */
+public class PcapFileReader {
+
+   private static Logger logger = Logger.getLogger(PcapFileReader.class);
+
+   /** Size of the mapped window; records never straddle two windows. */
+   private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+   private static final int PCAP_MAGIC = 0xa1b2c3d4;
+   private static final int PCAP_NSEC_MAGIC = 0xa1b23c4d;
+   private static final int PCAPNG_SHB = 0x0a0d0d0a;
+   private static final int PCAPNG_BYTE_ORDER_MAGIC = 0x1a2b3c4d;
+   private static final int PCAPNG_IDB = 1;
+   private static final int PCAPNG_SPB = 3;
+   private static final int PCAPNG_EPB = 6;
+
+   private static final int LINKTYPE_NULL = 0;
+   private static final int LINKTYPE_ETHERNET = 1;
+   private static final int LINKTYPE_RAW = 101;
+   // Raw IP written with the DLT value of the capturing host instead of
+   // LINKTYPE_RAW: DLT_RAW is 12 on most systems and 14 on OpenBSD.
+   private static final int DLT_RAW = 12;
+   private static final int DLT_RAW_OPENBSD = 14;
+   private static final int LINKTYPE_LINUX_SLL = 113;
+   private static final int LINKTYPE_LINUX_SLL2 = 276;
+
+   private static final int ETHERTYPE_IP = 0x0800;
+   private static final int ETHERTYPE_VLAN = 0x8100;
+
+   private final RandomAccessFile file;
+   private final FileChannel channel;
+   private final long fileSize;
+   private final boolean pcapng;
+
+   private MappedByteBuffer window;
+   // The same mapping in network byte order, for the packet headers
+   private ByteBuffer network;
+   private long windowStart;
+   private long position;
+
+   // Classic pcap
+   private ByteOrder byteOrder;
+   private int linkType;
+   private boolean nanoResolution;
+
+   // pcapng interfaces: link type, snap length and ticks per second
+   private int[] ifLinkType = new int[0];
+   private int[] ifSnapLength = new int[0];
+   private long[] ifTicksPerSecond = new long[0];
+
+   // Sorted (address << 16 | port) of the SIP end points and sorted
+   // addresses of the RTP hosts; null accepts every UDP packet.
+   private long[] sipEndPoints;
+   private int[] rtpHosts;
+
+   private final HashMap<Integer, InetAddress> addressCache =
+      new HashMap<Integer, InetAddress>();
+
+   private int frameNumber = -1;
+   private int acceptedCount;
+   private int fragmentCount;
+
+   // Result of the last parse; valid while next() runs
+   private long tsSec;
+   private long tsUsec;
+   private int origLength;
+
+   /**
+    * Open a trace file.
+    *
+    * @param traceFile
+    *            the pcap or pcapng file.
+    * @throws IOException
+    *             if the file cannot be read or is not a trace file.
+    */
+   public PcapFileReader(File traceFile) throws IOException {
+      this.file = new RandomAccessFile(traceFile, "r");
+      this.channel = file.getChannel();
+      this.fileSize = channel.size();
+      try {
+         if (fileSize < 24)
+            throw new IOException("Not a pcap file: " + traceFile);
+         map(0);
+         int magic = window.getInt(0);
+         if (magic == PCAPNG_SHB) {
+            pcapng = true;
+         } else {
+            pcapng = false;
+            readPcapHeader(magic, traceFile);
+         }
+      } catch (IOException ex) {
+         close();
+         throw ex;
+      }
+   }
+
+   /**
+    * Only accept the UDP packets sent to a SIP end point, or RTP packets
+    * sent to one of the RTP hosts. Without a filter every UDP packet is
+    * accepted. If an address does not resolve the filter is not applied.
+    *
+    * @param sipEndPoints
+    *            the SIP end points.
+    * @param rtpHosts
+    *            the hosts of the RTP end points.
+    */
+   public void setFilter(Collection<EndPoint> sipEndPoints,
+         Collection<String> rtpHosts) {
+      try {
+         long[] endPoints = new long[sipEndPoints.size()];
+         int i = 0;
+         for (EndPoint endPoint : sipEndPoints)
+            endPoints[i++] = ((long) toInt(endPoint.getHost()) & 0xffffffffL) << 16
+                  | (endPoint.getPort() & 0xffff);
+         int[] hosts = new int[rtpHosts.size()];
+         i = 0;
+         for (String host : rtpHosts)
+            hosts[i++] = toInt(host);
+         Arrays.sort(endPoints);
+         Arrays.sort(hosts);
+         this.sipEndPoints = endPoints;
+         this.rtpHosts = hosts;
+      } catch (UnknownHostException ex) {
+         logger.warn("Cannot resolve monitored address, reading all UDP packets: "
+               + ex.getMessage());
+         this.sipEndPoints = null;
+         this.rtpHosts = null;
+      }
+   }
+
+   /**
+    * Read the next accepted UDP packet.
+    *
+    * @return the packet or null at the end of the file.
+    * @throws IOException
+    *             if the file cannot be read.
+    */
+   public UDPPacket next() throws IOException {
+      UDPPacket packet = null;
+      while (packet == null && position < fileSize) {
+         packet = pcapng ? nextPcapngBlock() : nextPcapRecord();
+      }
+      return packet;
+   }
+
+   /**
+    * Get the zero based number of the frame of the last packet returned by
+    * next(). Every frame in the file is counted, whether accepted or not.
+    *
+    * @return the frame number.
+    */
+   public int getFrameNumber() {
+      return frameNumber;
+   }
+
+   public int getAcceptedCount() {
+      return acceptedCount;
+   }
+
+   public int getFragmentCount() {
+      return fragmentCount;
+   }
+
+   public void close() throws IOException {
+      window = null;
+      network = null;
+      file.close();
+   }
+
+   private void readPcapHeader(int magic, File traceFile) throws IOException {
+      int swapped = Integer.reverseBytes(magic);
+      if (magic == PCAP_MAGIC || magic == PCAP_NSEC_MAGIC) {
+         byteOrder = ByteOrder.BIG_ENDIAN;
+      } else if (swapped == PCAP_MAGIC || swapped == PCAP_NSEC_MAGIC) {
+         byteOrder = ByteOrder.LITTLE_ENDIAN;
+         magic = swapped;
+      } else {
+         throw new IOException("Not a pcap file: " + traceFile);
+      }
+      nanoResolution = magic == PCAP_NSEC_MAGIC;
+      window.order(byteOrder);
+      linkType = window.getInt(20) & 0x0fffffff;
+      position = 24;
+   }
+
+   /*
+    * Make sure len bytes at the position are mapped and return the offset
+    * of the position in the window.
+    */
+   private int ensureMapped(long len) throws IOException {
+      if (position < windowStart
+            || position + len > windowStart + window.capacity()) {
+         if (len > WINDOW_SIZE)
+            throw new IOException("Record too large at offset " + position);
+         map(position);
+      }
+      return (int) (position - windowStart);
+   }
+
+   private void map(long start) throws IOException {
+      long size = Math.min(WINDOW_SIZE, fileSize - start);
+      ByteOrder order = window == null ? ByteOrder.BIG_ENDIAN : window.order();
+      window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+      window.order(order);
+      network = window.duplicate();
+      windowStart = start;
+   }
+
+   private UDPPacket nextPcapRecord() throws IOException {
+      if (fileSize - position < 16) {
+         position = fileSize;
+         return null;
+      }
+      int offset = ensureMapped(16);
+      long sec = window.getInt(offset) & 0xffffffffL;
+      long frac = window.getInt(offset + 4) & 0xffffffffL;
+      int inclLength = window.getInt(offset + 8);
+      int length = window.getInt(offset + 12);
+      if (inclLength < 0 || position + 16 + inclLength > fileSize) {
+         logger.warn("Truncated pcap record at offset " + position);
+         position = fileSize;
+         return null;
+      }
+      offset = ensureMapped(16 + inclLength) + 16;
+      position += 16 + inclLength;
+      frameNumber++;
+
+      tsSec = sec;
+      tsUsec = nanoResolution ? frac / 1000 : frac;
+      origLength = length;
+      return parseFrame(linkType, offset, inclLength);
+   }
+
+   private UDPPacket nextPcapngBlock() throws IOException {
+      if (fileSize - position < 12) {
+         position = fileSize;
+         return null;
+      }
+      int offset = ensureMapped(12);
+      int type = window.getInt(offset);
+      if (type == PCAPNG_SHB) {
+         int bom = window.getInt(offset + 8);
+         if (Integer.reverseBytes(bom) == PCAPNG_BYTE_ORDER_MAGIC) {
+            window.order(window.order() == ByteOrder.BIG_ENDIAN
+                  ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+         } else if (bom != PCAPNG_BYTE_ORDER_MAGIC) {
+            throw new IOException("Bad pcapng section at offset " + position);
+         }
+         // Interface ids are numbered per section
+         ifLinkType = new int[0];
+         ifSnapLength = new int[0];
+         ifTicksPerSecond = new long[0];
+      }
+      long blockLength = window.getInt(offset + 4) & 0xffffffffL;
+      if (blockLength < 12 || (blockLength & 3) != 0
+            || position + blockLength > fileSize) {
+         logger.warn("Bad pcapng block at offset " + position);
+         position = fileSize;
+         return null;
+      }
+      offset = ensureMapped(blockLength);
+      long blockStart = position;
+      position += blockLength;
+
+      switch (type) {
+      case PCAPNG_IDB:
+         addInterface(offset, (int) blockLength);
+         return null;
+      case PCAPNG_EPB: {
+         frameNumber++;
+         int ifId = window.getInt(offset + 8);
+         if (ifId < 0 || ifId >= ifLinkType.length) {
+            logger.debug("Unknown pcapng interface " + ifId + " at offset "
+                  + blockStart);
+            return null;
+         }
+         long ts = (window.getInt(offset + 12) & 0xffffffffL) << 32
+               | (window.getInt(offset + 16) & 0xffffffffL);
+         int capLength = window.getInt(offset + 20);
+         setTimeStamp(ts, ifTicksPerSecond[ifId]);
+         origLength = window.getInt(offset + 24);
+         if (capLength < 0 || 28 + capLength > blockLength)
+            return null;
+         return parseFrame(ifLinkType[ifId], offset + 28, capLength);
+      }
+      case PCAPNG_SPB: {
+         frameNumber++;
+         if (ifLinkType.length == 0)
+            return null;
+         origLength = window.getInt(offset + 8);
+         int capLength = Math.min(origLength, (int) blockLength - 16);
+         if (ifSnapLength[0] > 0)
+            capLength = Math.min(capLength, ifSnapLength[0]);
+         tsSec = 0;
+         tsUsec = 0;
+         return parseFrame(ifLinkType[0], offset + 12, capLength);
+      }
+      default:
+         return null;
+      }
+   }
+
+   private void addInterface(int offset, int blockLength) {
+      int n = ifLinkType.length;
+      ifLinkType = Arrays.copyOf(ifLinkType, n + 1);
+      ifSnapLength = Arrays.copyOf(ifSnapLength, n + 1);
+      ifTicksPerSecond = Arrays.copyOf(ifTicksPerSecond, n + 1);
+      ifLinkType[n] = window.getShort(offset + 8) & 0xffff;
+      ifSnapLength[n] = window.getInt(offset + 12);
+      ifTicksPerSecond[n] = 1000000L;
+
+      // Options: look for if_tsresol
+      int opt = offset + 16;
+      int end = offset + blockLength - 4;
+      while (opt + 4 <= end) {
+         int code = window.getShort(opt) & 0xffff;
+         int len = window.getShort(opt + 2) & 0xffff;
+         if (code == 0)
+            break;
+         if (code == 9 && len >= 1) {
+            int resol = window.get(opt + 4) & 0xff;
+            int exp = resol & 0x7f;
+            long ticks = 1;
+            for (int i = 0; i < exp && ticks < Long.MAX_VALUE / 10; i++)
+               ticks *= (resol & 0x80) != 0 ? 2 : 10;
+            ifTicksPerSecond[n] = ticks;
+         }
+         opt += 4 + ((len + 3) & ~3);
+      }
+   }
+
+   private void setTimeStamp(long ticks, long ticksPerSecond) {
+      tsSec = ticks / ticksPerSecond;
+      long rem = ticks % ticksPerSecond;
+      if (ticksPerSecond >= 1000000L)
+         tsUsec = rem / (ticksPerSecond / 1000000L);
+      else
+         tsUsec = rem * 1000000L / ticksPerSecond;
+   }
+
+   /*
+    * Parse the link, IPv4 and UDP headers of a frame in place and build a
+    * packet only if it is accepted by the filter.
+    */
+   private UDPPacket parseFrame(int link, int offset, int capLength) {
+      int end = offset + capLength;
+      int ip;
+      switch (link) {
+      case LINKTYPE_ETHERNET: {
+         ip = offset + 14;
+         if (ip > end)
+            return null;
+         int etherType = network.getShort(ip - 2) & 0xffff;
+         while (etherType == ETHERTYPE_VLAN && ip + 4 <= end) {
+            etherType = network.getShort(ip + 2) & 0xffff;
+            ip += 4;
+         }
+         if (etherType != ETHERTYPE_IP)
+            return null;
+         break;
+      }
+      case LINKTYPE_LINUX_SLL:
+         ip = offset + 16;
+         if (ip > end || (network.getShort(offset + 14) & 0xffff) != ETHERTYPE_IP)
+            return null;
+         break;
+      case LINKTYPE_LINUX_SLL2:
+         ip = offset + 20;
+         if (ip > end || (network.getShort(offset) & 0xffff) != ETHERTYPE_IP)
+            return null;
+         break;
+      case LINKTYPE_NULL:
+         // Address family in host byte order; only the IP version matters
+         ip = offset + 4;
+         break;
+      case LINKTYPE_RAW:
+      case DLT_RAW:
+      case DLT_RAW_OPENBSD:
+         ip = offset;
+         break;
+      default:
+         return null;
+      }
+
+      if (ip + 20 > end)
+         return null;
+      int versionAndLength = network.get(ip) & 0xff;
+      if ((versionAndLength >> 4) != 4 || network.get(ip + 9) != 17)
+         return null;
+      int headerLength = (versionAndLength & 0x0f) * 4;
+      int totalLength = network.getShort(ip + 2) & 0xffff;
+      int fragment = network.getShort(ip + 6) & 0xffff;
+      if ((fragment & 0x3fff) != 0) {
+         // More fragments or a non zero fragment offset
+         fragmentCount++;
+         return null;
+      }
+      int srcAddress = network.getInt(ip + 12);
+      int dstAddress = network.getInt(ip + 16);
+
+      int udp = ip + headerLength;
+      if (udp + 8 > end)
+         return null;
+      int srcPort = network.getShort(udp) & 0xffff;
+      int dstPort = network.getShort(udp + 2) & 0xffff;
+      int udpLength = network.getShort(udp + 4) & 0xffff;
+      int payload = udp + 8;
+      int payloadEnd = Math.min(end, Math.min(udp + udpLength, ip + totalLength));
+      if (payloadEnd < payload)
+         return null;
+
+      if (!accept(dstAddress, dstPort, payload, payloadEnd))
+         return null;
+
+      byte[] data = new byte[payloadEnd - payload];
+      network.position(payload);
+      network.get(data);
+
+      UDPPacket packet = new UDPPacket(srcPort, dstPort);
+      packet.setIPv4Parameter(0, false, false, false, 0, false,
+            (fragment & 0x4000) != 0, false, 0,
+            network.getShort(ip + 4) & 0xffff, network.get(ip + 8) & 0xff,
+            IPPacket.IPPROTO_UDP, getAddress(srcAddress),
+            getAddress(dstAddress));
+      packet.sec = tsSec;
+      packet.usec = tsUsec;
+      packet.caplen = capLength;
+      packet.len = origLength;
+      packet.data = data;
+      acceptedCount++;
+      return packet;
+   }
+
+   private boolean accept(int dstAddress, int dstPort, int payload,
+         int payloadEnd) {
+      if (sipEndPoints == null)
+         return true;
+      long key = ((long) dstAddress & 0xffffffffL) << 16 | dstPort;
+      if (Arrays.binarySearch(sipEndPoints, key) >= 0)
+         return true;
+      // RTP version 2 with at least a fixed header
+      return payloadEnd - payload >= 12
+            && (network.get(payload) & 0xc0) == 0x80
+            && Arrays.binarySearch(rtpHosts, dstAddress) >= 0;
+   }
+
+   private InetAddress getAddress(int address) {
+      Integer key = Integer.valueOf(address);
+      InetAddress inetAddress = addressCache.get(key);
+      if (inetAddress == null) {
+         byte[] bytes = { (byte) (address >>> 24), (byte) (address >>> 16),
+               (byte) (address >>> 8), (byte) address };
+         try {
+            inetAddress = InetAddress.getByAddress(bytes);
+         } catch (UnknownHostException ex) {
+            // Cannot happen for a four byte address
+            throw new IllegalStateException(ex);
+         }
+         addressCache.put(key, inetAddress);
+      }
+      return inetAddress;
+   }
+
+   private static int toInt(String host) throws UnknownHostException {
+      byte[] bytes = InetAddress.getByName(host).getAddress();
+      if (bytes.length != 4)
+         throw new UnknownHostException("Not an IPv4 address: " + host);
+      return (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16
+            | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+   }
+}
@@ -1,6 +1,8 @@
 //
 package gov.nist.p25.issi.packetmonitor;
 
+import gov.nist.p25.issi.utils.HttpCompression;
+
 import java.io.IOException;
 
 import javax.servlet.ServletException;
@@ -33,7 +35,6 @@ public class PttTraceGetter extends HttpServlet {
          retval = packetMonitor.getPttMessages();
       }
       logger.debug("PttTraceGetter: doGet(): retrieved ptt traces\n" + retval);
-      response.getWriter().print(retval);
-      response.getWriter().close();
+      HttpCompression.writeBody(request, response, retval);
    }
 }
@@ -0,0 +1,268 @@
+//
+package gov.nist.p25.issi.packetmonitor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import jpcap.packet.UDPPacket;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests the pcap and pcapng reader on trace files built by the test: both
+ * byte orders and time stamp resolutions, the supported link types, the
+ * end point filter, and fragmented, truncated and non UDP frames.
+ */
+public class Test_PcapFileReaderTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.packetmonitor");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private static final byte[] SIP = "INVITE sip:00001200002@p25dr SIP/2.0".getBytes();
+   private static final byte[] RTP = { (byte) 0x80, 100, 0, 1, 0, 0, 0, (byte) 160,
+      0, 0, 0x12, 0x34, 1, 2, 3, 4 };
+
+   private File traceFile;
+
+   public void setUp() throws Exception {
+      traceFile = File.createTempFile("trace", ".pcap");
+   }
+
+   public void tearDown() {
+      traceFile.delete();
+   }
+
+   /** An IPv4 header followed by a UDP header and the payload. */
+   private static byte[] udp(String src, String dst, int srcPort, int dstPort,
+         int fragment, byte[] payload) {
+      ByteBuffer bb = ByteBuffer.allocate(28 + payload.length);
+      bb.put((byte) 0x45).put((byte) 0).putShort((short) (28 + payload.length));
+      bb.putShort((short) 7).putShort((short) fragment);
+      bb.put((byte) 64).put((byte) 17).putShort((short) 0);
+      bb.put(address(src)).put(address(dst));
+      bb.putShort((short) srcPort).putShort((short) dstPort);
+      bb.putShort((short) (8 + payload.length)).putShort((short) 0);
+      bb.put(payload);
+      return bb.array();
+   }
+
+   private static byte[] address(String host) {
+      String[] parts = host.split("\\.");
+      byte[] bytes = new byte[4];
+      for (int i = 0; i < 4; i++)
+         bytes[i] = (byte) Integer.parseInt(parts[i]);
+      return bytes;
+   }
+
+   /** A TCP segment header in an IPv4 packet. */
+   private static byte[] tcp(String src, String dst) {
+      byte[] ip = udp(src, dst, 5060, 5060, 0, SIP);
+      ip[9] = 6;
+      return ip;
+   }
+
+   private static byte[] ethernet(int etherType, byte[] payload, boolean vlan) {
+      ByteBuffer bb = ByteBuffer.allocate(14 + (vlan ? 4 : 0) + payload.length);
+      bb.put(new byte[12]);
+      if (vlan)
+         bb.putShort((short) 0x8100).putShort((short) 42);
+      bb.putShort((short) etherType).put(payload);
+      return bb.array();
+   }
+
+   private static byte[] ethernet(byte[] ip) {
+      return ethernet(0x0800, ip, false);
+   }
+
+   /** A classic pcap file; each frame is stamped second i, fraction i * 1000. */
+   private static byte[] pcap(ByteOrder order, boolean nano, int linkType,
+         byte[]... frames) {
+      int size = 24;
+      for (byte[] frame : frames)
+         size += 16 + frame.length;
+      ByteBuffer bb = ByteBuffer.allocate(size).order(order);
+      bb.putInt(nano ? 0xa1b23c4d : 0xa1b2c3d4).putShort((short) 2).putShort((short) 4);
+      bb.putInt(0).putInt(0).putInt(65535).putInt(linkType);
+      for (int i = 0; i < frames.length; i++) {
+         bb.putInt(1000 + i).putInt(i * 1000);
+         bb.putInt(frames[i].length).putInt(frames[i].length);
+         bb.put(frames[i]);
+      }
+      return bb.array();
+   }
+
+   /**
+    * A pcapng section with one interface of the given time stamp resolution
+    * (if_tsresol) and one enhanced packet block per frame.
+    */
+   private static byte[] pcapng(ByteOrder order, int linkType, int tsresol,
+         long[] timeStamps, byte[]... frames) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ByteBuffer shb = ByteBuffer.allocate(28).order(order);
+      shb.putInt(0x0a0d0d0a).putInt(28).putInt(0x1a2b3c4d);
+      shb.putShort((short) 1).putShort((short) 0).putLong(-1L).putInt(28);
+      out.write(shb.array(), 0, 28);
+
+      ByteBuffer idb = ByteBuffer.allocate(32).order(order);
+      idb.putInt(1).putInt(32).putShort((short) linkType).putShort((short) 0);
+      idb.putInt(65535);
+      idb.putShort((short) 9).putShort((short) 1).put((byte) tsresol).put(new byte[3]);
+      idb.putShort((short) 0).putShort((short) 0).putInt(32);
+      out.write(idb.array(), 0, 32);
+
+      for (int i = 0; i < frames.length; i++) {
+         int padded = (frames[i].length + 3) & ~3;
+         ByteBuffer epb = ByteBuffer.allocate(32 + padded).order(order);
+         epb.putInt(6).putInt(32 + padded).putInt(0);
+         epb.putInt((int) (timeStamps[i] >>> 32)).putInt((int) timeStamps[i]);
+         epb.putInt(frames[i].length).putInt(frames[i].length);
+         epb.put(frames[i]).put(new byte[padded - frames[i].length]);
+         epb.putInt(32 + padded);
+         out.write(epb.array(), 0, epb.capacity());
+      }
+      return out.toByteArray();
+   }
+
+   private PcapFileReader open(byte[] contents) throws IOException {
+      FileOutputStream fos = new FileOutputStream(traceFile);
+      fos.write(contents);
+      fos.close();
+      return new PcapFileReader(traceFile);
+   }
+
+   private static void assertPacket(UDPPacket packet, String src, String dst,
+         int srcPort, int dstPort, byte[] payload) {
+      assertNotNull(packet);
+      assertEquals(src, packet.src_ip.getHostAddress());
+      assertEquals(dst, packet.dst_ip.getHostAddress());
+      assertEquals(srcPort, packet.src_port);
+      assertEquals(dstPort, packet.dst_port);
+      assertTrue(Arrays.equals(payload, packet.data));
+   }
+
+   /** Non UDP frames are skipped but counted. */
+   public void testPcapEthernet() throws Exception {
+      PcapFileReader reader = open(pcap(ByteOrder.LITTLE_ENDIAN, false, 1,
+            ethernet(0x0806, new byte[28], false),
+            ethernet(tcp("10.0.0.2", "10.0.0.1")),
+            ethernet(udp("10.0.0.2", "10.0.0.1", 5070, 5060, 0, SIP))));
+
+      UDPPacket packet = reader.next();
+      assertPacket(packet, "10.0.0.2", "10.0.0.1", 5070, 5060, SIP);
+      assertEquals(2, reader.getFrameNumber());
+      assertEquals(1002, packet.sec);
+      assertEquals(2000, packet.usec);
+      assertNull(reader.next());
+      assertEquals(1, reader.getAcceptedCount());
+      reader.close();
+   }
+
+   /** Raw IP under LINKTYPE_RAW and the DLT_RAW values of BSD and OpenBSD. */
+   public void testPcapRawNanosecondBigEndian() throws Exception {
+      int[] linkTypes = { 101, 12, 14 };
+      for (int i = 0; i < linkTypes.length; i++) {
+         PcapFileReader reader = open(pcap(ByteOrder.BIG_ENDIAN, true, linkTypes[i],
+               udp("10.0.0.2", "10.0.0.1", 5070, 5060, 0, SIP),
+               udp("10.0.0.1", "10.0.0.2", 30000, 30002, 0, RTP)));
+         assertPacket(reader.next(), "10.0.0.2", "10.0.0.1", 5070, 5060, SIP);
+         UDPPacket packet = reader.next();
+         assertPacket(packet, "10.0.0.1", "10.0.0.2", 30000, 30002, RTP);
+         assertEquals(1001, packet.sec);
+         assertEquals(1, packet.usec);
+         assertNull(reader.next());
+         reader.close();
+      }
+   }
+
+   public void testUnknownLinkType() throws Exception {
+      PcapFileReader reader = open(pcap(ByteOrder.LITTLE_ENDIAN, false, 147,
+            udp("10.0.0.2", "10.0.0.1", 5070, 5060, 0, SIP)));
+      assertNull(reader.next());
+      assertEquals(0, reader.getAcceptedCount());
+      reader.close();
+   }
+
+   /** Nanosecond pcapng time stamps, a VLAN tag and a big-endian section. */
+   public void testPcapngEthernetVlan() throws Exception {
+      long ns = 1500000000123456789L;
+      ByteOrder[] orders = { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN };
+      for (int i = 0; i < orders.length; i++) {
+         PcapFileReader reader = open(pcapng(orders[i], 1, 9, new long[] { ns, ns + 1000 },
+               ethernet(0x0800, udp("10.0.0.2", "10.0.0.1", 5070, 5060, 0, SIP), true),
+               ethernet(udp("10.0.0.1", "10.0.0.2", 30000, 30002, 0, RTP))));
+         UDPPacket packet = reader.next();
+         assertPacket(packet, "10.0.0.2", "10.0.0.1", 5070, 5060, SIP);
+         assertEquals(0, reader.getFrameNumber());
+         assertEquals(1500000000L, packet.sec);
+         assertEquals(123456L, packet.usec);
+         packet = reader.next();
+         assertPacket(packet, "10.0.0.1", "10.0.0.2", 30000, 30002, RTP);
+         assertEquals(123457L, packet.usec);
+         assertNull(reader.next());
+         reader.close();
+      }
+   }
+
+   /** SIP is accepted at a SIP end point, RTP at an RTP host; nothing else is. */
+   public void testFilter() throws Exception {
+      PcapFileReader reader = open(pcap(ByteOrder.LITTLE_ENDIAN, false, 1,
+            ethernet(udp("10.0.0.2", "10.0.0.1", 5070, 5060, 0, SIP)),
+            ethernet(udp("10.0.0.2", "10.0.0.1", 5070, 5070, 0, SIP)),
+            ethernet(udp("10.0.0.1", "10.0.0.2", 30000, 30002, 0, RTP)),
+            ethernet(udp("10.0.0.1", "10.0.0.3", 30000, 30002, 0, RTP)),
+            ethernet(udp("10.0.0.1", "10.0.0.2", 30000, 30002, 0, SIP))));
+      reader.setFilter(Arrays.asList(new EndPoint("10.0.0.1", 5060)),
+            Arrays.asList("10.0.0.2"));
+
+      assertPacket(reader.next(), "10.0.0.2", "10.0.0.1", 5070, 5060, SIP);
+      assertEquals(0, reader.getFrameNumber());
+      assertPacket(reader.next(), "10.0.0.1", "10.0.0.2", 30000, 30002, RTP);
+      assertEquals(2, reader.getFrameNumber());
+      assertNull(reader.next());
+      assertEquals(2, reader.getAcceptedCount());
+      reader.close();
+   }
+
+   public void testFragmentsAreSkipped() throws Exception {
+      PcapFileReader reader = open(pcap(ByteOrder.LITTLE_ENDIAN, false, 101,
+            udp("10.0.0.2", "10.0.0.1", 5070, 5060, 0x2000, SIP),
+            udp("10.0.0.2", "10.0.0.1", 5070, 5060, 0x0010, SIP),
+            udp("10.0.0.2", "10.0.0.1", 5070, 5060, 0x4000, SIP)));
+      assertPacket(reader.next(), "10.0.0.2", "10.0.0.1", 5070, 5060, SIP);
+      assertNull(reader.next());
+      assertEquals(2, reader.getFragmentCount());
+      reader.close();
+   }
+
+   /** A record cut short ends the file; the records before it are read. */
+   public void testTruncatedRecord() throws Exception {
+      byte[] contents = pcap(ByteOrder.LITTLE_ENDIAN, false, 101,
+            udp("10.0.0.2", "10.0.0.1", 5070, 5060, 0, SIP),
+            udp("10.0.0.1", "10.0.0.2", 30000, 30002, 0, RTP));
+      PcapFileReader reader = open(Arrays.copyOf(contents, contents.length - 5));
+      assertPacket(reader.next(), "10.0.0.2", "10.0.0.1", 5070, 5060, SIP);
+      assertNull(reader.next());
+      reader.close();
+   }
+
+   public void testNotATraceFile() throws Exception {
+      try {
+         open(new byte[64]);
+         fail("opened a file that is not a trace");
+      } catch (IOException ex) {
+      }
+   }
+}
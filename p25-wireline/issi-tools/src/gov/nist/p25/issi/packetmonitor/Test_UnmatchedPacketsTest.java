@@ -0,0 +1,97 @@
+//
+package gov.nist.p25.issi.packetmonitor;
+
+import java.util.LinkedList;
+
+import jpcap.packet.UDPPacket;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests that the RTP packets kept for end points without a media session
+ * are bounded per end point and overall, and that old packets expire.
+ */
+public class Test_UnmatchedPacketsTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.packetmonitor");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   /** A packet numbered n captured at a time in milliseconds. */
+   private static CapturedPacket packet(int n, long millis) {
+      UDPPacket udpPacket = new UDPPacket(25000, 25002);
+      udpPacket.sec = millis / 1000;
+      udpPacket.usec = (millis % 1000) * 1000;
+      return new CapturedPacket(n, udpPacket);
+   }
+
+   private static void assertNumbers(LinkedList<CapturedPacket> packets, int from, int to) {
+      assertNotNull(packets);
+      int expected = from;
+      for (CapturedPacket packet : packets)
+         assertEquals(expected++, packet.getPacketNumber());
+      assertEquals(to, expected);
+   }
+
+   public void testPerEndPointBound() {
+      UnmatchedPackets unmatched = new UnmatchedPackets(4, 100, 10000);
+      for (int i = 0; i < 10; i++)
+         assertTrue(unmatched.add("a", packet(i, 1000 + i)));
+      assertTrue(unmatched.add("b", packet(10, 1010)));
+      assertEquals(5, unmatched.size());
+      assertEquals(6, unmatched.getDroppedCount());
+
+      // The newest packets are kept, oldest first.
+      assertNumbers(unmatched.remove("a"), 6, 10);
+      assertNull(unmatched.remove("a"));
+      assertEquals(1, unmatched.size());
+   }
+
+   public void testOverallBound() {
+      UnmatchedPackets unmatched = new UnmatchedPackets(100, 6, 10000);
+      for (int i = 0; i < 6; i++)
+         assertTrue(unmatched.add("end point " + i, packet(i, 1000)));
+      assertFalse(unmatched.add("a", packet(6, 1000)));
+      assertFalse(unmatched.add("end point 0", packet(7, 1000)));
+      assertEquals(6, unmatched.size());
+      assertEquals(2, unmatched.getDroppedCount());
+      assertNull(unmatched.remove("a"));
+      assertNumbers(unmatched.remove("end point 0"), 0, 1);
+
+      // A slot freed by a session is used again.
+      assertTrue(unmatched.add("a", packet(8, 1000)));
+      assertEquals(6, unmatched.size());
+   }
+
+   public void testOldPacketsExpire() {
+      UnmatchedPackets unmatched = new UnmatchedPackets(100, 4, 1000);
+      unmatched.add("a", packet(0, 1000));
+      unmatched.add("a", packet(1, 1500));
+      unmatched.add("b", packet(2, 1600));
+      // Packet 0 is out of the window of packet 3.
+      unmatched.add("a", packet(3, 2200));
+      assertEquals(3, unmatched.size());
+      assertEquals(1, unmatched.getDroppedCount());
+
+      // A full table drops the expired packets of other end points first.
+      unmatched.add("c", packet(4, 2300));
+      assertTrue(unmatched.add("c", packet(5, 2700)));
+      assertNull(unmatched.remove("b"));
+      assertNumbers(unmatched.remove("a"), 3, 4);
+      assertNumbers(unmatched.remove("c"), 4, 6);
+      assertEquals(0, unmatched.size());
+
+      unmatched.add("a", packet(6, 3000));
+      unmatched.clear();
+      assertEquals(0, unmatched.size());
+      assertEquals(0, unmatched.getDroppedCount());
+      assertNull(unmatched.remove("a"));
+   }
+}
@@ -0,0 +1,101 @@
+//
+package gov.nist.p25.issi.packetmonitor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * The RTP packets captured for end points that have no media session yet,
+ * kept by end point so they can be sorted into the session once its SDP is
+ * seen. A packet older than the window, counted from the newest packet
+ * added, is dropped, and so is the oldest packet of an end point that holds
+ * too many. Once the table is full, new packets are dropped. Callers
+ * synchronize.
+ */
+class UnmatchedPackets {
+
+   private final int maxPerEndPoint;
+   private final int maxPackets;
+   private final long windowMillis;
+
+   private final HashMap<String, LinkedList<CapturedPacket>> packets =
+      new HashMap<String, LinkedList<CapturedPacket>>();
+   private int size;
+   private int droppedCount;
+
+   UnmatchedPackets(int maxPerEndPoint, int maxPackets, long windowMillis) {
+      this.maxPerEndPoint = maxPerEndPoint;
+      this.maxPackets = maxPackets;
+      this.windowMillis = windowMillis;
+   }
+
+   /**
+    * Keep a packet sent to an end point.
+    *
+    * @return false if the table is full and the packet was dropped
+    */
+   boolean add(String key, CapturedPacket packet) {
+      long oldest = packet.getTimeStamp() - windowMillis;
+      LinkedList<CapturedPacket> list = packets.get(key);
+      if (list == null) {
+         list = new LinkedList<CapturedPacket>();
+         packets.put(key, list);
+      }
+      while (!list.isEmpty()
+            && (list.size() >= maxPerEndPoint || list.getFirst().getTimeStamp() < oldest)) {
+         list.removeFirst();
+         size--;
+         droppedCount++;
+      }
+      if (size >= maxPackets) {
+         expire(oldest);
+      }
+      if (size >= maxPackets) {
+         droppedCount++;
+         if (list.isEmpty())
+            packets.remove(key);
+         return false;
+      }
+      list.add(packet);
+      size++;
+      return true;
+   }
+
+   /** Drop the packets of every end point captured before a time. */
+   private void expire(long oldest) {
+      Iterator<LinkedList<CapturedPacket>> lists = packets.values().iterator();
+      while (lists.hasNext()) {
+         LinkedList<CapturedPacket> list = lists.next();
+         while (!list.isEmpty() && list.getFirst().getTimeStamp() < oldest) {
+            list.removeFirst();
+            size--;
+            droppedCount++;
+         }
+         if (list.isEmpty())
+            lists.remove();
+      }
+   }
+
+   /** Take the packets kept for an end point, oldest first, or null. */
+   LinkedList<CapturedPacket> remove(String key) {
+      LinkedList<CapturedPacket> list = packets.remove(key);
+      if (list != null)
+         size -= list.size();
+      return list;
+   }
+
+   void clear() {
+      packets.clear();
+      size = 0;
+      droppedCount = 0;
+   }
+
+   int size() {
+      return size;
+   }
+
+   int getDroppedCount() {
+      return droppedCount;
+   }
+}
@@ -1,7 +1,7 @@
 //
 package gov.nist.p25.issi.rfss;
 
-import java.util.TimerTask;
+import gov.nist.p25.issi.ISSITimerTask;
 import javax.sip.address.Address;
 import javax.sip.address.URI;
 import javax.sip.header.ContactHeader;
@@ -11,33 +11,38 @@ import org.apache.log4j.Logger;
 /**
  * Class for removing the bindings after expires
  */
-public class ExpiresTask extends TimerTask {
+public class ExpiresTask extends ISSITimerTask {
    private static Logger logger = Logger.getLogger(ExpiresTask.class);
 
    private String key;
    private ContactHeader contactHeader;
    private RegistrationsTable registrationsTable;
+   private long deadline;
 
    // Constructor
    public ExpiresTask(String key, ContactHeader contactHeader,
-         RegistrationsTable registrationsTable) {
+         RegistrationsTable registrationsTable, long deadline) {
       this.registrationsTable = registrationsTable;
       this.key = key;
       this.contactHeader = contactHeader;
+      this.deadline = deadline;
+   }
+
+   /**
+    * @return the time, in milliseconds since the epoch, at which the
+    *         contact expires.
+    */
+   public long getDeadline() {
+      return deadline;
    }
 
    public void run() {
-      Address address = contactHeader.getAddress();
-      URI cleanedUri = UnitToUnitMobilityManager.getCleanUri(address.getURI());
-      String contactURI = cleanedUri.toString();
-      registrationsTable.removeContact(key, contactHeader);
-      registrationsTable.getExpiresTaskTable().remove(contactURI);
-      if (logger.isDebugEnabled()) {
+      if (registrationsTable.expireContact(key, contactHeader, this)
+            && logger.isDebugEnabled()) {
+         Address address = contactHeader.getAddress();
+         URI cleanedUri = UnitToUnitMobilityManager.getCleanUri(address.getURI());
          logger.debug("ExpiresTask, run(), we  removed the contact: "
-               + contactURI + " for the user: " + key);
-      }
-      synchronized (registrationsTable.getExpiresTaskTable()) {
-         registrationsTable.getExpiresTaskTable().remove(key);
+               + cleanedUri + " for the user: " + key);
       }
    }
 }
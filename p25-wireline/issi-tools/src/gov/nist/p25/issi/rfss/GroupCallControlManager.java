@@ -3,6 +3,7 @@ package gov.nist.p25.issi.rfss;
 
 import gov.nist.javax.sdp.fields.OriginField;
 import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.ISSITimerTask;
 import gov.nist.p25.issi.constants.ISSIConstants;
 import gov.nist.p25.issi.issiconfig.CProtectedDisposition;
 import gov.nist.p25.issi.issiconfig.GroupConfig;
@@ -36,7 +37,6 @@ import java.util.Collection;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import javax.sdp.MediaDescription;
 import javax.sdp.SdpFactory;
@@ -182,7 +182,7 @@ public class GroupCallControlManager implements SipListener {
     * The task that simulates a delay in invite processing so we can generate
     * call collisions.
     */
-   class GroupInviteServingDelayTask extends TimerTask {
+   class GroupInviteServingDelayTask extends ISSITimerTask {
       private ServerTransaction serverTransaction;
       private RequestEvent requestEvent;
 
@@ -211,7 +211,7 @@ public class GroupCallControlManager implements SipListener {
       }
    }
 
-   class GroupInviteHomeDelayTask extends TimerTask {
+   class GroupInviteHomeDelayTask extends ISSITimerTask {
       private RequestEvent requestEvent;
       private GroupHome groupHome;
       private ServerTransaction st;
@@ -1232,7 +1232,7 @@ logger.debug("#685 ct.getState()="+ct.getState()+" ct.getRequest()=\n"+ct.getReq
                            GroupInviteServingDelayTask delayTask = new GroupInviteServingDelayTask(
                                  requestEvent, st);
                            pendingTimers.put(st.getBranchId(), delayTask);
-                           ISSITimer.getTimer().schedule( delayTask,
+                           ISSITimer.getWheelTimer().schedule( delayTask,
                               rfssConfig.getGroupCallInviteProcessingTime() * 1000);
                         //} else {
                         //   logger.debug("GroupInvite serving delay is 0 -- processing request");
@@ -1834,9 +1834,9 @@ logger.debug("processRequest(1): groupHome="+groupHome);
                      groupHome.incrementPendingRequestCount();
 
                      long period = rfssConfig.getGroupCallInviteProcessingTime() * 1000;
-                     TimerTask delayTask = new GroupInviteHomeDelayTask(requestEvent,groupHome,st);
+                     ISSITimerTask delayTask = new GroupInviteHomeDelayTask(requestEvent,groupHome,st);
                      groupHome.setDelayTask(delayTask);
-                     ISSITimer.getTimer().schedule( delayTask, period);
+                     ISSITimer.getWheelTimer().schedule( delayTask, period);
 
                   } else {
                      actuallyProcessRequest(requestEvent, st);
@@ -1850,7 +1850,7 @@ logger.debug("processRequest(1): groupHome="+groupHome);
                   GroupInviteServingDelayTask delayTask = new GroupInviteServingDelayTask(
                         requestEvent, st);
                   pendingTimers.put(st.getBranchId(), delayTask);
-                  ISSITimer.getTimer().schedule( delayTask,
+                  ISSITimer.getWheelTimer().schedule( delayTask,
                      rfssConfig.getGroupCallInviteProcessingTime() * 1000);
                } else {
                   logger.debug("GroupInvite serving delay is 0 -- processing request");
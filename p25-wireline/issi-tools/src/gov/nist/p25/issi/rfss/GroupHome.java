@@ -2,6 +2,7 @@
 package gov.nist.p25.issi.rfss;
 
 import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.ISSITimerTask;
 import gov.nist.p25.issi.constants.ISSIConstants;
 import gov.nist.p25.issi.issiconfig.GroupConfig;
 import gov.nist.p25.issi.issiconfig.RfssConfig;
@@ -18,6 +19,7 @@ import gov.nist.p25.issi.transctlmgr.ptt.TimerValues;
 //import gov.nist.p25.issi.utils.ProtocolObjects;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashSet;
@@ -127,7 +129,7 @@ public class GroupHome implements HeartbeatListener {
     * 5. Selectively repeat the above steps, as appropriate.
     * 
     */
-   class SipHeartbeatTimerTask extends TimerTask {
+   class SipHeartbeatTimerTask extends ISSITimerTask {
       private String peerDomainName;
       private GroupHome groupHome;
       private GroupCallControlManager groupCallControlManager;
@@ -180,7 +182,7 @@ public class GroupHome implements HeartbeatListener {
       }
    }
 
-   class RegistrationTimer extends TimerTask {
+   class RegistrationTimer extends ISSITimerTask {
       private RfssConfig rfssConfig;
 
       public RegistrationTimer(RfssConfig rfssConfig) {
@@ -189,6 +191,7 @@ public class GroupHome implements HeartbeatListener {
       @Override
       public void run() {
          GroupHome.this.subscribers.remove(rfssConfig);
+         journalSubscribers();
       }
    }
 
@@ -219,10 +222,10 @@ public class GroupHome implements HeartbeatListener {
    public void addDialog(String rfssId, Dialog dialog) {
       logger.debug("Group: addDialog " + rfssId);
       dialogs.put(rfssId, dialog);
-      TimerTask timerTask = 
+      ISSITimerTask timerTask = 
          new SipHeartbeatTimerTask(rfssId,rfss.getCallControlManager().getGroupCallControlManager());
       timerTaskTable.put(dialog,timerTask);
-      ISSITimer.getTimer().schedule(timerTask, TimerValues.TGCHCONFIRMSIP, TimerValues.TGCHCONFIRMSIP);
+      ISSITimer.getWheelTimer().schedule(timerTask, TimerValues.TGCHCONFIRMSIP, TimerValues.TGCHCONFIRMSIP);
    }
 
    public Collection<Dialog> getDialogs() {
@@ -295,10 +298,11 @@ public class GroupHome implements HeartbeatListener {
     */
    public void addSubscriber(RfssConfig rfssConfig) {
       subscribers.add(rfssConfig);
+      journalSubscribers();
 
       // Remove the registration after the given time.
       if (rfssConfig.getGroupRegistrationExpiresTime() > 0) {
-         ISSITimer.getTimer().schedule(new RegistrationTimer(rfssConfig),
+         ISSITimer.getWheelTimer().schedule(new RegistrationTimer(rfssConfig),
                rfssConfig.getGroupRegistrationExpiresTime() * 1000);
       }
    }
@@ -314,6 +318,32 @@ public class GroupHome implements HeartbeatListener {
     */
    public void removeSubscriber(RfssConfig registeringRfss) {
       subscribers.remove(registeringRfss);
+      journalSubscribers();
+   }
+
+   /**
+    * Replace the subscribers by those saved in the state store by the
+    * previous run. Each gets a new registration lease.
+    * 
+    * @param rfssConfigs -- the subscribed RFSSs.
+    */
+   public void restoreSubscribers(Collection<RfssConfig> rfssConfigs) {
+      subscribers.clear();
+      for (RfssConfig rfssConfig : rfssConfigs) {
+         addSubscriber(rfssConfig);
+      }
+      journalSubscribers();
+   }
+
+   private void journalSubscribers() {
+      RfssStateStore stateStore = rfss.getStateStore();
+      if (stateStore == null)
+         return;
+      ArrayList<String> domainNames = new ArrayList<String>();
+      for (RfssConfig rfssConfig : subscribers.toArray(new RfssConfig[0])) {
+         domainNames.add(rfssConfig.getDomainName());
+      }
+      stateStore.putGroupSubscribers(groupConfig.getRadicalName(), domainNames);
    }
 
    public boolean isSubscribed(RfssConfig rfssConfig) {
@@ -17,11 +17,13 @@ import gov.nist.p25.issi.transctlmgr.ptt.SessionType;
 import gov.nist.p25.issi.utils.ProtocolObjects;
 import gov.nist.p25.issi.utils.WarningCodes;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.TimerTask;
 
 import javax.sip.ClientTransaction;
@@ -512,11 +514,10 @@ public class GroupMobilityManager implements SipListener {
                      String radicalName = gc.getRadicalName();
                      if (rfssConfig.getServedGroupLeaseTime() != 0) {
                         if (!groupRefcountTable.containsKey(radicalName)) {
-                           groupRefcountTable.put(radicalName, new Integer(1));
+                           setGroupRefcount(radicalName, 1);
                         } else {
                            Integer rc = groupRefcountTable.get(radicalName);
-                           Integer newrc = new Integer( rc.intValue()+1);
-                           groupRefcountTable.put(radicalName, newrc);
+                           setGroupRefcount(radicalName, rc.intValue()+1);
                         }
                      } else {
                         logger.debug(rfssConfig.getRfssName()
@@ -534,6 +535,54 @@ public class GroupMobilityManager implements SipListener {
           ***/
          }
       }
+      restoreGroups();
+   }
+
+   /**
+    * When the RFSS restarts with a state store, bring the group reference
+    * counts and the subscribers of our home groups back to where the
+    * previous run left them, so that the groups need not register again.
+    */
+   private void restoreGroups() {
+      RfssStateStore stateStore = rfss.getStateStore();
+      if (stateStore == null || !stateStore.isRestored())
+         return;
+      Map<String, Integer> refcounts = stateStore.getRestoredGroupRefcounts();
+      for (String radicalName : new ArrayList<String>(groupRefcountTable.keySet())) {
+         if (!refcounts.containsKey(radicalName))
+            setGroupRefcount(radicalName, 0);
+      }
+      for (Map.Entry<String, Integer> entry : refcounts.entrySet()) {
+         setGroupRefcount(entry.getKey(), entry.getValue());
+      }
+      for (Map.Entry<String, String[]> entry :
+            stateStore.getRestoredGroupSubscribers().entrySet()) {
+         GroupHome groupHome = myGroups.get(entry.getKey());
+         if (groupHome == null)
+            continue;
+         ArrayList<RfssConfig> subscribers = new ArrayList<RfssConfig>();
+         for (String domainName : entry.getValue()) {
+            RfssConfig subscriber = topologyConfig.getRfssConfig(domainName);
+            if (subscriber != null)
+               subscribers.add(subscriber);
+         }
+         groupHome.restoreSubscribers(subscribers);
+      }
+      logger.info(rfssConfig.getRfssName() + " : restored " + groupRefcountTable.size()
+            + " served groups");
+   }
+
+   /**
+    * Set the number of served SUs in a group; 0 removes the group.
+    */
+   private void setGroupRefcount(String radicalName, int refcount) {
+      if (refcount == 0)
+         groupRefcountTable.remove(radicalName);
+      else
+         groupRefcountTable.put(radicalName, refcount);
+      RfssStateStore stateStore = rfss.getStateStore();
+      if (stateStore != null)
+         stateStore.putGroupRefcount(radicalName, refcount);
    }
 
    /**
@@ -741,7 +790,7 @@ public class GroupMobilityManager implements SipListener {
             Integer rc = groupRefcountTable.get(gc.getRadicalName());
             Integer newRc = new Integer(rc.intValue() - 1);
             if (newRc == 0) {
-               groupRefcountTable.remove(gc.getRadicalName());
+               setGroupRefcount(gc.getRadicalName(), 0);
 
                // Generate a Register-Deregister message from the old location.
                Request request = this.createRegisterRequest(gc, 0);
@@ -834,8 +883,7 @@ public class GroupMobilityManager implements SipListener {
                   }
                   //-------------------------------------------------
                   if (rfssConfig.getServedGroupLeaseTime() != 0) {
-                     Integer rc = new Integer(1);
-                     groupRefcountTable.put(gc.getRadicalName(), rc);
+                     setGroupRefcount(gc.getRadicalName(), 1);
                   }
 
                } else {
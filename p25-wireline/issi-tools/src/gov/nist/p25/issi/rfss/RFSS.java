@@ -4,6 +4,7 @@ package gov.nist.p25.issi.rfss;
 import gov.nist.javax.sip.SipStackImpl;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.p25.common.util.CaptureStore;
 import gov.nist.p25.issi.ISSITimer;
 
 import gov.nist.p25.issi.constants.ISSIDtdConstants;
@@ -27,9 +28,15 @@ import gov.nist.p25.issi.testlauncher.TestHarness;
 import gov.nist.p25.issi.transctlmgr.TransmissionControlManager;
 //import gov.nist.p25.issi.transctlmgr.TransmissionControlSAP;
 import gov.nist.p25.issi.transctlmgr.ptt.CapturedPttPacket;
+import gov.nist.p25.issi.transctlmgr.ptt.PttPacketLogger;
 import gov.nist.p25.issi.transctlmgr.ptt.PttSessionInterface;
+import gov.nist.p25.issi.transctlmgr.ptt.PttTraceIndex;
+import gov.nist.p25.issi.transctlmgr.ptt.PttTraceReader;
+import gov.nist.p25.issi.transctlmgr.ptt.PttTraceWriter;
 
+import gov.nist.p25.issi.utils.EventLogger;
 import gov.nist.p25.issi.utils.ProtocolObjects;
+import gov.nist.p25.issi.utils.WorkerPool;
 import gov.nist.p25.issi.verifier.TestMessages;
 import gov.nist.p25.issi.verifier.TestMessagesParser;
 import gov.nist.rtp.RtpPacket;
@@ -39,8 +46,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -106,6 +111,7 @@ import org.apache.log4j.Logger;
 public class RFSS implements SipListener {
 
    private static Logger logger = Logger.getLogger(RFSS.class);
+   private static EventLogger eventLogger = new EventLogger(logger);
    private static Logger errorLogger = Logger.getLogger("gov.nist.p25.ERRORLOG");
    
    public static void showln(String s) { System.out.println(s); }
@@ -121,8 +127,8 @@ public class RFSS implements SipListener {
    private boolean isRfResourcesAvailable;
    private static Hashtable<String, RFSS> rfssTable = new Hashtable<String, RFSS>();
 
-   private ArrayList<Request> requests;
-   private ArrayList<Response> responses;
+   private CaptureStore<SIPRequest> requests;
+   private CaptureStore<SIPResponse> responses;
    private RfssConfig rfssConfig;
    private int port;
    private String ipAddress;
@@ -154,7 +160,13 @@ public class RFSS implements SipListener {
               new Hashtable<PttSessionInterface, CapturedPttPacket>();
    private CallControlManager callControlManager;
    private TopologyConfig topologyConfig;
-   private ArrayList<CapturedPttPacket> capturedPackets = new ArrayList<CapturedPttPacket>();
+   private CaptureStore<CapturedPttPacket> capturedPackets;
+
+   /** Captured packets below this index have been handed to the logger. */
+   private int flushedPacketCount;
+
+   /** Registration and group state kept across restarts, or null. */
+   private RfssStateStore stateStore;
    private String failureReason;
    private TestMessages testMessages;
    private TestMessages refMessages;
@@ -235,10 +247,12 @@ public class RFSS implements SipListener {
    }
 
    /**
-    * Reset the table after the test is over.
+    * Reset the table after the test is over. The cached SIP headers are
+    * dropped too, since the next test may load another topology.
     */
    public static void reset() {
       rfssTable.clear();
+      SipUtils.clearHeaderCache();
    }
 
    /**
@@ -270,15 +284,15 @@ public class RFSS implements SipListener {
       RtpSession rtpSession = session.getRtpSession();
 
 // Why 14.1.1 rfss_1 has 17 PTT packets ?
-String myTag = rtpSession.getMyIpAddress().getHostAddress() + ":" + rtpSession.getMyRtpRecvPort();
-String remoteTag = rtpSession.getRemoteIpAddress() + ":" + rtpSession.getRemoteRtpRecvPort();
-logger.debug(rfssConfig.getRfssName()+" capturePttPacket():" +
-      " matchPacket=" +matchPacket +
-      " rfssIp=" +getIpAddress() +
-      " isSender="+isSender +
-      " packetType="+payload.getISSIPacketType().getPacketType() +
-      " remoteTag="+remoteTag +
-      " myTag="+myTag);
+eventLogger.event("capturePttPacket")
+   .field("rfss", rfssConfig.getRfssName())
+   .field("matchPacket", matchPacket)
+   .field("rfssIp", getIpAddress())
+   .field("isSender", isSender)
+   .field("packetType", payload.getISSIPacketType().getPacketType())
+   .field("remoteTag", rtpSession.getRemoteIpAddress(), rtpSession.getRemoteRtpRecvPort())
+   .field("myTag", rtpSession.getMyIpAddress(), rtpSession.getMyRtpRecvPort())
+   .log();
 
       // Dont record packets that we route within an RFSS (internal to RFSS).
       // Need to verify: record packets if the remote RFSS is a REAL RFSS
@@ -287,14 +301,21 @@ logger.debug(rfssConfig.getRfssName()+" capturePttPacket():" +
       
       //boolean emulated = remoteRfssConfig.getEmulated();
       boolean emulated = (remoteRfssConfig==null ? false : remoteRfssConfig.getEmulated());
-      logger.debug(rfssConfig.getRfssName()+" ownsRemoteRtpSession: "+bflag+" remoteEmulated="+emulated);
+      eventLogger.event("capturePttPacket.remote")
+         .field("rfss", rfssConfig.getRfssName())
+         .field("ownsRemoteRtpSession", bflag)
+         .field("remoteEmulated", emulated).log();
 
       if (bflag) {
-         logger.debug(rfssConfig.getRfssName()+" Not logging a packet that we send to ourselves");
+         eventLogger.event("capturePttPacket.skipped")
+            .field("rfss", rfssConfig.getRfssName())
+            .field("reason", "sent to ourselves").log();
          return;
       }
       if (isSender && emulated) {
-         logger.debug(rfssConfig.getRfssName()+" Not logging a packet: we are sender or remote is emulated RFSS");
+         eventLogger.event("capturePttPacket.skipped")
+            .field("rfss", rfssConfig.getRfssName())
+            .field("reason", "sent to an emulated RFSS").log();
          return;
       }
 
@@ -307,21 +328,21 @@ if( matchPacket) {
             && lastPacket.getRemotePort() == pttPacket.getRemotePort()
             && lastPacket.getRemoteIpAddress().equals( pttPacket.getRemoteIpAddress())
             && lastPacket.match(pttPacket)) {
-         logger.debug(rfssConfig.getRfssName()+" Not logging a packet: matched previous one ");
+         eventLogger.event("capturePttPacket.skipped")
+            .field("rfss", rfssConfig.getRfssName())
+            .field("reason", "matched previous packet").log();
          return;
       } 
 }
       lastCapturedPttPacketTable.put(session, pttPacket);
-     synchronized( capturedPackets) {
       capturedPackets.add(pttPacket);
-     }
 
-      logger.debug(rfssConfig.getRfssName() +" capturePttPacket():" +
-            " size=" +capturedPackets.size() +
-            " isSender=" +isSender +
-            " packetType="+payload.getISSIPacketType().getPacketType() +
-            " remoteTag=" +remoteTag +
-            " myTag=" +myTag);
+      eventLogger.event("capturePttPacket.captured")
+         .field("rfss", rfssConfig.getRfssName())
+         .field("size", capturedPackets.size())
+         .field("isSender", isSender)
+         .field("packetType", payload.getISSIPacketType().getPacketType())
+         .log();
    }
 
    /**
@@ -330,10 +351,14 @@ if( matchPacket) {
     */
    public synchronized void flushCapturedPttMessages() {
      synchronized( capturedPackets) {
-      logger.debug(rfssConfig.getRfssName()+" flushCapturedPttMessages(): flushing " + capturedPackets.size() + " packets !");
-      for (CapturedPttPacket pttMessage: capturedPackets) {
+      int size = capturedPackets.size();
+      logger.debug(rfssConfig.getRfssName()+" flushCapturedPttMessages(): flushing " + (size - flushedPacketCount) + " packets !");
+      for (CapturedPttPacket pttMessage: capturedPackets.range(flushedPacketCount, size)) {
          pttMessage.flush();
       }
+      flushedPacketCount = size;
+      // Wait for the logger thread to write them out
+      PttPacketLogger.getInstance().flush();
       //logger.debug(rfssConfig.getRfssName()+" flushCapturedPttMessages(): SKIP capturedPackets.clear()...");
       //capturedPackets.clear();
      }
@@ -455,15 +480,11 @@ if( matchPacket) {
             file = new File( fullname);
             file.delete();
             file.createNewFile();
-            fos = new FileOutputStream(file);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-	   synchronized( capturedPackets) {
+            PttTraceWriter traceWriter = new PttTraceWriter(new FileOutputStream(file));
             for (CapturedPttPacket pttMessage : capturedPackets) {
-               oos.writeObject(pttMessage);
+               traceWriter.write(pttMessage);
             }
-	   }
-            oos.close();
-            fos.close();
+            traceWriter.close();
             
             // M1009 PTT PACKET ptt.bin files
             isSaveTrace = true;
@@ -614,29 +635,20 @@ if( matchPacket) {
          fname = RFSS.this.rfssConfig.getRfssName() + "_ptt.bin";
          File file = new File(testScript.getReferenceMessagesDirName() + "/" + fname);
          if (file.exists()) {
-            FileInputStream fis = new FileInputStream(file);
-            ObjectInputStream oos = new ObjectInputStream(fis);
-            int counter = 0;
-            while (oos.available() != 0) {
-               CapturedPttPacket pttPacket = (CapturedPttPacket) oos.readObject();
-               
-               boolean matchFound = false;
-              synchronized( capturedPackets) {
-               while (capturedPackets.size() != 0) {
-                  CapturedPttPacket packetToCheck = capturedPackets.get(counter++);
-                  //TODO: this looks fishy for break, BUG ???
-                  if (packetToCheck.match(pttPacket)) {
-                     matchFound = true;   // M1001
-                     break;
+            PttTraceIndex captured = new PttTraceIndex(capturedPackets);
+            PttTraceReader traceReader = new PttTraceReader(new FileInputStream(file));
+            try {
+               CapturedPttPacket pttPacket;
+               while ((pttPacket = traceReader.read()) != null) {
+                  if (captured.consume(pttPacket) == null) {
+                     failureReason = "Could not find a packet to match this REFERENCE packet: \n"
+                        + pttPacket.toString();
+                     logError(failureReason);
+                     return false;
                   }
                }
-              }
-               if (!matchFound) {
-                  failureReason = "Could not find a packet to match this REFERENCE packet: \n"
-                     + pttPacket.toString();
-                  logError(failureReason);
-                  return false;
-               }
+            } finally {
+               traceReader.close();
             }
          }
          return true;
@@ -652,6 +664,7 @@ if( matchPacket) {
          rfss.shutDown();
       }
       rfssTable.clear();
+      logger.info("Worker pool statistics:\n" + WorkerPool.getAllStatistics());
    }
 
    public static Collection<RFSS> getAllRfss() {
@@ -674,6 +687,9 @@ if( matchPacket) {
    public void shutDown() {
       logger.debug("Shutting down emulated rfss " + rfssConfig.getDomainName());
       transmissionControlManager.shutDown();
+      if (stateStore != null) {
+         stateStore.close();
+      }
    }
 
    /**
@@ -694,8 +710,20 @@ if( matchPacket) {
          this.isRfResourcesAvailable = rfssConfig.isRfResourcesAvailable();
          this.topologyConfig = rfssConfig.getSysConfig().getTopologyConfig();
          SipStack sipStack = provider.getSipStack();
-         this.requests = new ArrayList<Request>();
-         this.responses = new ArrayList<Response>();
+         this.requests = new CaptureStore<SIPRequest>(rfssConfig.getRfssName() + "-requests");
+         this.responses = new CaptureStore<SIPResponse>(rfssConfig.getRfssName() + "-responses");
+         this.capturedPackets = new CaptureStore<CapturedPttPacket>(rfssConfig.getRfssName() + "-ptt");
+         // A spilled packet loses its session, so log it while it has one.
+         // Packets below flushedPacketCount were logged already.
+         this.capturedPackets.setSpillListener(new CaptureStore.SpillListener<CapturedPttPacket>() {
+            public void spilling(int first, List<CapturedPttPacket> packets) {
+               int end = first + packets.size();
+               for (int i = Math.max(flushedPacketCount - first, 0); i < packets.size(); i++) {
+                  packets.get(i).flush();
+               }
+               flushedPacketCount = Math.max(flushedPacketCount, end);
+            }
+         });
          this.servedSubscriberUnits = new HashSet<SuConfig>();
 
          logger.debug("InitialServedSubscriberUnits : "
@@ -753,6 +781,7 @@ if( matchPacket) {
          this.transmissionControlManager = new TransmissionControlManager( this);
 
          // Manages registrations etc.
+         this.stateStore = RfssStateStore.open(rfssConfig.getRfssName());
          this.mobilityManager = new MobilityManager(this);
          this.callControlManager = new CallControlManager(this);
          this.methodHash = new Hashtable<String, SipListener>();
@@ -811,9 +840,10 @@ if( matchPacket) {
    public void processRequest(RequestEvent requestEvent) {
 
       Request request = requestEvent.getRequest();
-      requests.add(request);
+      requests.add((SIPRequest) request);
       String method = request.getMethod();
-      logger.debug("RFSS: id=" + getRfssConfig().getRfssIdString() 
+      if (logger.isDebugEnabled())
+         logger.debug("RFSS: id=" + getRfssConfig().getRfssIdString() 
             + " processRequest: " + method
             + " isInteractive= " + testScript.isInteractive());
       SipListener listener = methodHash.get(method);
@@ -844,7 +874,8 @@ if( matchPacket) {
       Response response = responseEvent.getResponse();
       ClientTransaction ct = responseEvent.getClientTransaction();
       if (ct == null) {
-         logger.debug("RFSS: Dropping stray response !!!\n" + responseEvent.getResponse());
+         if (logger.isDebugEnabled())
+            logger.debug("RFSS: Dropping stray response !!!\n" + responseEvent.getResponse());
          return;
       }
       ViaHeader viaHeader = (ViaHeader) ct.getRequest().getHeader( ViaHeader.NAME);
@@ -852,7 +883,7 @@ if( matchPacket) {
 
       if (!host.equals(this.rfssConfig.getDomainName())) {
          // We do not care about self routed requests.
-         this.responses.add(response);
+         this.responses.add((SIPResponse) response);
       }
 
       CSeqHeader cseqHeader = (CSeqHeader) response.getHeader(CSeqHeader.NAME);
@@ -1017,6 +1048,16 @@ if( matchPacket) {
       return mobilityManager;
    }
 
+   /**
+    * Get the store that keeps the registration and group state of this
+    * RFSS across restarts.
+    * 
+    * @return the state store, or null if it is not enabled.
+    */
+   public RfssStateStore getStateStore() {
+      return stateStore;
+   }
+
    /**
     * Return a collection of all the subscriber units that we are currently
     * serving.
@@ -1125,14 +1166,14 @@ if( matchPacket) {
     * @return Returns the requests.
     */
    public ArrayList<Request> getRequests() {
-      return requests;
+      return new ArrayList<Request>(requests.toList());
    }
 
    /**
     * @return Returns the responses.
     */
    public ArrayList<Response> getResponses() {
-      return responses;
+      return new ArrayList<Response>(responses.toList());
    }
 
    /**
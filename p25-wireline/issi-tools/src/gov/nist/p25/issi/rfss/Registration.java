@@ -5,6 +5,7 @@ import gov.nist.p25.issi.issiconfig.RfssConfig;
 import gov.nist.p25.issi.issiconfig.TopologyConfig;
 import gov.nist.p25.issi.p25body.serviceprofile.ServiceProfile;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Vector;
 import javax.sip.address.*;
@@ -197,6 +198,28 @@ public class Registration {
       this.contactsList.removeAllElements();
    }
 
+   /**
+    * Replace all the contacts by one, in a single step for readers of the
+    * contact list.
+    */
+   public void replaceContacts(ContactHeader contactHeader) {
+      synchronized (contactsList) {
+         contactsList.removeAllElements();
+         contactsList.addElement(contactHeader);
+      }
+   }
+
+   /**
+    * Replace all the contacts, in a single step for readers of the contact
+    * list.
+    */
+   public void replaceContacts(Collection<ContactHeader> contactHeaders) {
+      synchronized (contactsList) {
+         contactsList.removeAllElements();
+         contactsList.addAll(contactHeaders);
+      }
+   }
+
    public URI getUri() {
       return uri;
    }
@@ -2,16 +2,20 @@
 package gov.nist.p25.issi.rfss;
 
 import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.ISSITimerTask;
+import gov.nist.p25.issi.issiconfig.SuConfig;
 import gov.nist.p25.issi.issiconfig.TopologyConfig;
 import gov.nist.p25.issi.p25body.serviceprofile.ServiceProfile;
 import gov.nist.p25.issi.rfss.SipUtils;
+import gov.nist.p25.issi.utils.ProtocolObjects;
 
 import java.rmi.RemoteException;
+import java.text.ParseException;
 import java.util.Collection;
-import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sip.*;
 import javax.sip.address.*;
@@ -22,36 +26,79 @@ import org.apache.log4j.Logger;
 
 /**
  * Registration Table
+ * <p>
+ * Bindings are sharded by the radical name of the SU: every change to the
+ * registration and expiry timers of a key is made while holding the lock of
+ * its shard (see getLock), so registrations of unrelated SUs proceed in
+ * parallel while changes to one SU stay atomic. Readers do not lock.
+ * <p>
+ * When the RFSS has a state store, each change to a binding is recorded in
+ * it under the same lock, and restore brings the table back to the
+ * bindings saved by the previous run.
  */
 @SuppressWarnings("unchecked")
 public class RegistrationsTable {
 
    private static Logger logger = Logger.getLogger(RegistrationsTable.class);
 
+   /** Number of lock shards; a power of two. */
+   private static final int SHARDS = 64;
+
    private UnitToUnitMobilityManager mobilityManager;
-   private Hashtable<String, ExpiresTask> expiresTaskTable;
-   private Hashtable<String, Registration> registrations;
+   private ConcurrentHashMap<String, ExpiresTask> expiresTaskTable;
+   private ConcurrentHashMap<String, Registration> registrations;
+   private final Object[] shardLocks;
    private RFSS rfss;
+   private RfssStateStore stateStore;
    private TopologyConfig topologyConfig;
 
    // constructor
    public RegistrationsTable(UnitToUnitMobilityManager registrar, TopologyConfig topologyConfig) {
+      this(registrar.getRFSS().getStateStore(), topologyConfig);
       this.mobilityManager = registrar;
-      registrations = new Hashtable<String, Registration>();
-      expiresTaskTable = new Hashtable<String, ExpiresTask>();
       this.rfss = registrar.getRFSS();
+   }
+
+   /**
+    * Create a table that is not attached to a running RFSS.
+    *
+    * @param stateStore -- the store recording the bindings, or null.
+    * @param topologyConfig -- the topology the SUs belong to.
+    */
+   RegistrationsTable(RfssStateStore stateStore, TopologyConfig topologyConfig) {
+      registrations = new ConcurrentHashMap<String, Registration>(256, 0.75f, SHARDS);
+      expiresTaskTable = new ConcurrentHashMap<String, ExpiresTask>(256, 0.75f, SHARDS);
+      shardLocks = new Object[SHARDS];
+      for (int i = 0; i < SHARDS; i++) {
+         shardLocks[i] = new Object();
+      }
+      this.stateStore = stateStore;
       this.topologyConfig = topologyConfig;
    }
 
-   public Hashtable getRegistrations() {
+   public Map<String, Registration> getRegistrations() {
       return registrations;
    }
 
-   public Hashtable getExpiresTaskTable() {
+   public Map<String, ExpiresTask> getExpiresTaskTable() {
       return expiresTaskTable;
    }
 
-   public synchronized String getRegistryXMLTags() throws RemoteException
+   /**
+    * Get the lock guarding the registration of a key. Registrations that
+    * hash to the same shard share a lock; keys differing only in case
+    * always do.
+    * 
+    * @param key -- the radical name of the SU
+    * @return the lock of the shard holding the key
+    */
+   public Object getLock(String key) {
+      int h = key.toLowerCase().hashCode();
+      h ^= (h >>> 16);
+      return shardLocks[h & (SHARDS - 1)];
+   }
+
+   public String getRegistryXMLTags() throws RemoteException
    {
       StringBuffer retval = new StringBuffer("<REGISTRATIONS>");
       Collection values = registrations.values();
@@ -64,7 +111,7 @@ public class RegistrationsTable {
       return retval.toString();
    }
 
-   public synchronized Vector getRegistryBindings() throws RemoteException
+   public Vector getRegistryBindings() throws RemoteException
    {
       Vector retval = new Vector();
       Collection values = registrations.values();
@@ -81,20 +128,27 @@ public class RegistrationsTable {
       return retval;
    }
 
-   public synchronized int getRegistrySize() throws RemoteException
+   public int getRegistrySize() throws RemoteException
    {
       Collection values = registrations.values();
       return values.size();
    }
 
-   public synchronized boolean hasRegistration(String key) {
+   public boolean hasRegistration(String key) {
       boolean res = registrations.containsKey(key.toLowerCase());
-      logger.debug("RegistrationsTable, hasRegistration(), Checking registration for \""
-         + key.toLowerCase() + "\" : " + (res ? "registered" : "not registered"));
+      if (logger.isDebugEnabled())
+         logger.debug("RegistrationsTable, hasRegistration(), Checking registration for \""
+            + key.toLowerCase() + "\" : " + (res ? "registered" : "not registered"));
       return res;
    }
 
    protected void addRegistration(String key, Request request) {
+      synchronized (getLock(key)) {
+         addRegistrationLocked(key, request);
+      }
+   }
+
+   private void addRegistrationLocked(String key, Request request) {
       Iterator it = request.getHeaders(ContactHeader.NAME);
       int expiresTimeHeader = -1;
       FromHeader fromHeader = (FromHeader) request.getHeader(FromHeader.NAME);
@@ -120,15 +174,26 @@ public class RegistrationsTable {
          } catch (InvalidArgumentException ex) {
             throw new Error("Unexpected excepton", ex);
          }
-         startTimer(key, contactHeader.getExpires(), contactHeader);
+         startTimerLocked(key, contactHeader.getExpires(), contactHeader);
       }
       registrations.put(key, registration);
+      journal(key);
       logger.debug("RegistrationsTable, addRegistration(), registration "
             + " added for the key: " + key);
       printRegistrations();
    }
 
    protected void addRegistration(Registration registration) throws Exception {
+      String key = registration.getKey();
+      if (key == null) {
+         throw new Exception("key is null, registration not added!");
+      }
+      synchronized (getLock(key)) {
+         addRegistrationLocked(key, registration);
+      }
+   }
+
+   private void addRegistrationLocked(String key, Registration registration) throws Exception {
       Vector contacts = registration.getContactsList();
       // ok to have empty contact list. This just means that the
       // registration is known to the mobilityManager but contact info
@@ -137,19 +202,15 @@ public class RegistrationsTable {
          throw new Exception("contact list is empty, registration not added!");
       }
 
-      String key = registration.getKey();
-      if (key == null) {
-         throw new Exception("key is null, registration not added!");
-      }
-
       for (int i = 0; i < contacts.size(); i++) {
          ContactHeader contactHeader = (ContactHeader) contacts.elementAt(i);
          if (contactHeader.getExpires() == -1) {
             contactHeader.setExpires(UnitToUnitMobilityManager.EXPIRES_TIME_MAX);
          }
-         startTimer(key, contactHeader.getExpires(), contactHeader);
+         startTimerLocked(key, contactHeader.getExpires(), contactHeader);
       }
       registrations.put(key, registration);
+      journal(key);
       logger.debug("RegistrationsTable, addRegistration(), registration "
             + " added for the key: " + key);
       printRegistrations();
@@ -158,7 +219,10 @@ public class RegistrationsTable {
    public void removeRegistration(String key) {
       logger.debug("RegistrationsTable, removeRegistration(), "
             + " registration removed" + " for the key: " + key);
-      registrations.remove(key);
+      synchronized (getLock(key)) {
+         registrations.remove(key);
+         journal(key);
+      }
       printRegistrations();
       //updateGUI(registration,true);
    }
@@ -166,27 +230,64 @@ public class RegistrationsTable {
    public void replaceContact(String key, ContactHeader contactHeader) throws Exception {
       logger.debug("RegistrationsTable, removeContact(), "
          + " contact removed for the key: " +key +" replacement contact = " +contactHeader);
+      synchronized (getLock(key)) {
+         replaceContactLocked(key, contactHeader);
+         journal(key);
+      }
+   }
+
+   private void replaceContactLocked(String key, ContactHeader contactHeader) {
       Registration registration = (Registration) registrations.get(key);
       // Should only be called at the home RFSS.
       this.rfss.getTestHarness().assertTrue(registration != null);
-      registration.clearContacts();
-      registration.addContactHeader(contactHeader);
+      registration.replaceContacts(contactHeader);
    }
 
    public void removeContact(String key, ContactHeader contactHeader) {
-      Registration registration = (Registration) registrations.get(key);
-      if (registration != null) {
-         registration.removeContactHeader(contactHeader);
-         printRegistrations();
-         if (!registration.hasContacts()) {
-            logger.debug("RegistrationsTable, removeContact(), the registration: "
-                  + key + " does not contain any contacts, we remove it");
-            removeRegistration(key);
+      synchronized (getLock(key)) {
+         Registration registration = (Registration) registrations.get(key);
+         if (registration != null) {
+            registration.removeContactHeader(contactHeader);
+            printRegistrations();
+            if (!registration.hasContacts()) {
+               logger.debug("RegistrationsTable, removeContact(), the registration: "
+                     + key + " does not contain any contacts, we remove it");
+               removeRegistration(key);
+            } else {
+               journal(key);
+            }
+         }
+      }
+   }
+
+   /**
+    * Remove a contact whose timer expired. The contact is kept when it was
+    * refreshed (and a new timer started) after the expiring timer fired.
+    * 
+    * @param key -- the radical name of the SU
+    * @param contactHeader -- the expired contact
+    * @param expiresTask -- the timer that expired
+    * @return true if the contact was removed
+    */
+   public boolean expireContact(String key, ContactHeader contactHeader,
+         ExpiresTask expiresTask) {
+      synchronized (getLock(key)) {
+         if (!expiresTaskTable.remove(getTimerKey(key, contactHeader), expiresTask)) {
+            return false;
          }
+         removeContact(key, contactHeader);
+         return true;
       }
    }
 
    public void updateRegistration(String key, Request request) throws Exception {
+      synchronized (getLock(key)) {
+         updateRegistrationLocked(key, request);
+         journal(key);
+      }
+   }
+
+   private void updateRegistrationLocked(String key, Request request) throws Exception {
       logger.debug("RegistrationsTable, updateRegistration(), registration updated"
                   + " for the key: " + key);
       Registration registration = (Registration) registrations.get(key);
@@ -202,7 +303,7 @@ public class RegistrationsTable {
             }
          }
          if (expiresTime == 0) {
-            replaceContact(key, contactHeader);
+            replaceContactLocked(key, contactHeader);
          } else {
             if (expiresTime > UnitToUnitMobilityManager.EXPIRES_TIME_MAX
                   || expiresTime < UnitToUnitMobilityManager.EXPIRES_TIME_MIN)
@@ -213,7 +314,7 @@ public class RegistrationsTable {
                registration.updateContactHeader(contactHeader);
             else
                registration.addContactHeader(contactHeader);
-            startTimer(key, expiresTime, contactHeader);
+            startTimerLocked(key, expiresTime, contactHeader);
             expiresTime = UnitToUnitMobilityManager.EXPIRES_TIME_MAX;
          }
       }
@@ -234,7 +335,10 @@ public class RegistrationsTable {
       if (logger.isDebugEnabled()) {
          logger.debug("adding registration " + key + " contactHeader = " + contactHeader);
       }
-      registrations.put(key, registration);
+      synchronized (getLock(key)) {
+         registrations.put(key, registration);
+         journal(key);
+      }
    }
 
    public Registration getRegistration(String key) {
@@ -249,40 +353,146 @@ public class RegistrationsTable {
     * @param contactHeader
     */
    public void startTimer(String key, int expiresTime, ContactHeader contactHeader) {
+      synchronized (getLock(key)) {
+         startTimerLocked(key, expiresTime, contactHeader);
+         journal(key);
+      }
+   }
+
+   /**
+    * Start a timer without journaling the binding; the caller journals it
+    * once the table is updated. Called with the lock of the key held.
+    */
+   private void startTimerLocked(String key, int expiresTime, ContactHeader contactHeader) {
       // we kill the precedent timer related to this key if there is one:
       Address address = contactHeader.getAddress();
       javax.sip.address.URI cleanedUri = UnitToUnitMobilityManager.getCleanUri(address.getURI());
       String contactURI = cleanedUri.toString();
 
-      ExpiresTask oldTimerTask = null;
-      synchronized (expiresTaskTable) {
-         oldTimerTask = (ExpiresTask) expiresTaskTable.get(contactURI);
-      }
-
+      // Let's start a timer for this contact...
+      ExpiresTask expiresTask = new ExpiresTask(key, contactHeader, this,
+            System.currentTimeMillis() + expiresTime * 1000L);
+      ExpiresTask oldTimerTask = expiresTaskTable.put(key + " " + contactURI, expiresTask);
       if (oldTimerTask != null) {
          logger.debug("RegistrationsTable, startTimer(), An old timer has "
                + " been stopped for the contact: " + contactURI);
          oldTimerTask.cancel();
       }
+      ISSITimer.getWheelTimer().schedule(expiresTask, expiresTime * 1000);
+      logger.debug("RegistrationsTable, startTimer(), timer started "
+            + " for the contact: " + contactURI + " , expiresTime:" + expiresTime);
+   }
 
-      // Let's start a timer for this contact...
-      ExpiresTask expiresTask = new ExpiresTask(key, contactHeader, this);
-      ISSITimer.getTimer().schedule(expiresTask, expiresTime * 1000);
+   /**
+    * Get the key of the expiry timer of a contact. Several SUs served by one
+    * RFSS register the same contact, so timers are kept per SU and contact.
+    */
+   private static String getTimerKey(String key, ContactHeader contactHeader) {
+      Address address = contactHeader.getAddress();
+      return key + " " + UnitToUnitMobilityManager.getCleanUri(address.getURI());
+   }
 
-      synchronized (expiresTaskTable) {
-         expiresTaskTable.put(contactURI, expiresTask);
+   /**
+    * Record the binding of a key in the state store. Called with the lock
+    * of the key held.
+    */
+   private void journal(String key) {
+      if (stateStore == null)
+         return;
+      Registration registration = registrations.get(key);
+      if (registration == null) {
+         stateStore.removeBinding(key);
+         return;
       }
-      logger.debug("RegistrationsTable, startTimer(), timer started "
-            + " for the contact: " + contactURI + " , expiresTime:" + expiresTime);
+      Object[] contacts = registration.getContactsList().toArray();
+      String[] contactValues = new String[contacts.length];
+      long[] deadlines = new long[contacts.length];
+      for (int i = 0; i < contacts.length; i++) {
+         ContactHeader contactHeader = (ContactHeader) contacts[i];
+         String text = contactHeader.toString().trim();
+         contactValues[i] = text.substring(text.indexOf(':') + 1).trim();
+         ExpiresTask expiresTask = expiresTaskTable.get(getTimerKey(key, contactHeader));
+         deadlines[i] = expiresTask == null ? 0 : expiresTask.getDeadline();
+      }
+      stateStore.putBinding(key, new RfssStateStore.Binding(
+            registration.getUri().toString(), contactValues, deadlines));
+   }
+
+   /**
+    * Bring the table back to the bindings saved by the state store in the
+    * previous run: bindings that were removed are removed, the saved
+    * contacts replace the configured ones, and contact timers restart with
+    * the time they had left. Contacts that expired while the RFSS was down
+    * are dropped.
+    */
+   public void restore() {
+      if (stateStore == null || !stateStore.isRestored())
+         return;
+      Map<String, RfssStateStore.Binding> saved = stateStore.getRestoredBindings();
+      for (String key : registrations.keySet()) {
+         if (!saved.containsKey(key))
+            removeRegistration(key);
+      }
+      long now = System.currentTimeMillis();
+      for (Map.Entry<String, RfssStateStore.Binding> entry : saved.entrySet()) {
+         String key = entry.getKey();
+         synchronized (getLock(key)) {
+            try {
+               restoreBinding(key, entry.getValue(), now);
+            } catch (ParseException ex) {
+               logger.error("Could not restore the binding of " + key, ex);
+            }
+         }
+      }
+      logger.info("RegistrationsTable, restore(), restored " + registrations.size()
+            + " registrations");
+   }
+
+   private void restoreBinding(String key, RfssStateStore.Binding binding, long now)
+         throws ParseException {
+      String[] contactValues = binding.getContacts();
+      long[] deadlines = binding.getDeadlines();
+      Vector<ContactHeader> contacts = new Vector<ContactHeader>();
+      Vector<Long> contactDeadlines = new Vector<Long>();
+      for (int i = 0; i < contactValues.length; i++) {
+         if (deadlines[i] != 0 && deadlines[i] <= now)
+            continue;
+         contacts.add((ContactHeader) ProtocolObjects.headerFactory.createHeader(
+               ContactHeader.NAME, contactValues[i]));
+         contactDeadlines.add(deadlines[i]);
+      }
+      if (contacts.isEmpty()) {
+         registrations.remove(key);
+         journal(key);
+         return;
+      }
+      Registration registration = registrations.get(key);
+      if (registration == null) {
+         URI uri = ProtocolObjects.addressFactory.createURI(binding.getUri());
+         SuConfig suConfig = topologyConfig.getSuConfig(key);
+         ServiceProfile serviceProfile = suConfig == null ? null
+               : suConfig.getUserServiceProfile();
+         registration = new Registration(key, uri, contacts.iterator(),
+               serviceProfile, topologyConfig);
+         registrations.put(key, registration);
+      } else {
+         registration.replaceContacts(contacts);
+      }
+      for (int i = 0; i < contacts.size(); i++) {
+         long deadline = contactDeadlines.get(i);
+         if (deadline != 0)
+            startTimerLocked(key, (int) ((deadline - now + 999) / 1000), contacts.get(i));
+      }
+      journal(key);
    }
 
    protected void printRegistrations() {
+      if (!logger.isDebugEnabled())
+         return;
       logger.debug("*********  Registration record *****************");
-      for (Enumeration e = registrations.keys(); e.hasMoreElements();) {
-         String keyTable = (String) e.nextElement();
-         Registration registration = (Registration) registrations.get(keyTable);
-         logger.debug("registered user: \"" + keyTable + "\"");
-         registration.print();
+      for (Map.Entry<String, Registration> entry : registrations.entrySet()) {
+         logger.debug("registered user: \"" + entry.getKey() + "\"");
+         entry.getValue().print();
       }
       logger.debug("************************************************");
    }
@@ -291,9 +501,7 @@ public class RegistrationsTable {
       StringBuffer retval = new StringBuffer();
       retval.append("<?xml version='1.0' encoding='us-ascii'?> \n");
       retval.append("<REGISTRATIONS> \n");
-      for (Enumeration e = registrations.keys(); e.hasMoreElements();) {
-         String keyTable = (String) e.nextElement();
-         Registration registration = (Registration) registrations.get(keyTable);
+      for (Registration registration : registrations.values()) {
          retval.append(registration.getXMLTags());
       }
       retval.append("</REGISTRATIONS> \n");
@@ -0,0 +1,649 @@
+//
+package gov.nist.p25.issi.rfss;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the registration and group state of an emulated RFSS on local disk
+ * so that a restarted RFSS resumes where it stopped instead of rebuilding
+ * its state through a storm of REGISTER and query traffic.
+ * <p>
+ * The store holds an in-memory copy of the state: the SU bindings with the
+ * deadline of each contact, the previous serving RFSS of each SU, the group
+ * reference counts and the RFSSs subscribed to each home group. Every change
+ * updates the copy and queues a journal record; a background thread appends
+ * the records to the journal in batches. After COMPACT_RECORDS journal
+ * records, and when the store is closed, the copy is written as a snapshot
+ * and the journal is started over. At open the snapshot and then the
+ * journal are each read whole into a heap buffer; a record cut short by a
+ * crash, or one whose fields overrun it, ends the file. The files are not
+ * memory-mapped: a live mapping keeps a file from being replaced or
+ * truncated on some platforms, and both are rewritten right after they are
+ * read.
+ * <p>
+ * Both files start with a magic number and a version, followed by records:
+ *
+ * <pre>
+ * int     record length (bytes that follow)
+ * byte    record type
+ * ...     fields; strings are a short length and UTF-8 bytes
+ * </pre>
+ *
+ * The store is enabled by setting the system property
+ * diets.rfss.state.dir to the directory holding the files.
+ */
+public class RfssStateStore {
+
+   private static Logger logger = Logger.getLogger(RfssStateStore.class);
+
+   /** Directory of the state files; the store is off when unset. */
+   public static final String DIR_PROPERTY = "diets.rfss.state.dir";
+
+   /** "RFSN" */
+   public static final int SNAPSHOT_MAGIC = 0x5246534e;
+   /** "RFJL" */
+   public static final int JOURNAL_MAGIC = 0x52464a4c;
+   public static final short VERSION = 1;
+
+   /** Journal records written before the state is compacted. */
+   public static final int COMPACT_RECORDS =
+      Integer.getInteger("diets.rfss.state.compact", 10000);
+
+   /** Number of records that may wait for the writer. */
+   public static final int QUEUE_CAPACITY = 4096;
+
+   /** Largest number of records written between two flushes. */
+   private static final int MAX_BATCH = 256;
+
+   private static final int HEADER_LENGTH = 6;
+
+   static final byte BINDING = 1;
+   static final byte UNBIND = 2;
+   static final byte PREVIOUS = 3;
+   static final byte GROUP_REFCOUNT = 4;
+   static final byte GROUP_SUBSCRIBERS = 5;
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   /**
+    * The stored binding of an SU: its URI and contacts, with the time (in
+    * milliseconds since the epoch) at which each contact expires, or 0.
+    */
+   public static class Binding {
+      private final String uri;
+      private final String[] contacts;
+      private final long[] deadlines;
+
+      public Binding(String uri, String[] contacts, long[] deadlines) {
+         this.uri = uri;
+         this.contacts = contacts;
+         this.deadlines = deadlines;
+      }
+
+      public String getUri() {
+         return uri;
+      }
+
+      public String[] getContacts() {
+         return contacts;
+      }
+
+      public long[] getDeadlines() {
+         return deadlines;
+      }
+   }
+
+   private final String name;
+   private final File snapshotFile;
+   private final File journalFile;
+
+   private final ConcurrentHashMap<String, Binding> bindings =
+      new ConcurrentHashMap<String, Binding>();
+   private final ConcurrentHashMap<String, String> previousRegistrations =
+      new ConcurrentHashMap<String, String>();
+   private final ConcurrentHashMap<String, Integer> groupRefcounts =
+      new ConcurrentHashMap<String, Integer>();
+   private final ConcurrentHashMap<String, String[]> groupSubscribers =
+      new ConcurrentHashMap<String, String[]>();
+
+   /* The state read at open, before this run changed anything. */
+   private final Map<String, Binding> restoredBindings;
+   private final Map<String, String> restoredPreviousRegistrations;
+   private final Map<String, Integer> restoredGroupRefcounts;
+   private final Map<String, String[]> restoredGroupSubscribers;
+   private final boolean restored;
+
+   private final ArrayBlockingQueue<byte[]> queue =
+      new ArrayBlockingQueue<byte[]>(QUEUE_CAPACITY);
+
+   private final Object progress = new Object();
+
+   /* Guarded by progress. */
+   private long queuedCount = 0;
+   private long writtenCount = 0;
+   private boolean closed = false;
+
+   private final Thread writer;
+
+   /* Used by the writer thread only. */
+   private DataOutputStream journal;
+   private int journalRecords = 0;
+   private long snapshotCount = 0;
+
+   /**
+    * Open the store of an RFSS, if the store is enabled.
+    *
+    * @param rfssName -- the RFSS name, which names the state files.
+    * @return the store, or null if DIR_PROPERTY is not set or the store
+    *         cannot be opened.
+    */
+   public static RfssStateStore open(String rfssName) {
+      String dir = System.getProperty(DIR_PROPERTY);
+      if (dir == null)
+         return null;
+      try {
+         return new RfssStateStore(new File(dir), rfssName);
+      } catch (IOException ex) {
+         logger.error("Could not open the state store of " + rfssName
+               + " -- starting without it", ex);
+         return null;
+      }
+   }
+
+   /**
+    * Open a store, reading back any state saved in the directory.
+    *
+    * @param dir -- the directory of the state files.
+    * @param name -- the name of the state files.
+    * @throws IOException if the files cannot be read or written.
+    */
+   public RfssStateStore(File dir, String name) throws IOException {
+      this.name = name;
+      if (!dir.isDirectory() && !dir.mkdirs())
+         throw new IOException("Cannot create " + dir);
+      snapshotFile = new File(dir, name + ".snapshot");
+      journalFile = new File(dir, name + ".journal");
+
+      long start = System.currentTimeMillis();
+      int records = load(snapshotFile, SNAPSHOT_MAGIC) + load(journalFile, JOURNAL_MAGIC);
+      restored = records > 0;
+      restoredBindings = Collections.unmodifiableMap(new HashMap<String, Binding>(bindings));
+      restoredPreviousRegistrations = Collections.unmodifiableMap(
+            new HashMap<String, String>(previousRegistrations));
+      restoredGroupRefcounts = Collections.unmodifiableMap(
+            new HashMap<String, Integer>(groupRefcounts));
+      restoredGroupSubscribers = Collections.unmodifiableMap(
+            new HashMap<String, String[]>(groupSubscribers));
+      if (restored) {
+         logger.info("RfssStateStore " + name + ": restored " + bindings.size()
+               + " bindings and " + groupRefcounts.size() + " groups from "
+               + records + " records in " + (System.currentTimeMillis() - start) + " ms");
+      }
+
+      // Start from a compact snapshot and an empty journal.
+      writeSnapshot();
+      startJournal();
+
+      writer = new Thread(new Runnable() {
+         public void run() {
+            writeRecords();
+         }
+      }, "RfssStateStore-" + name);
+      writer.setDaemon(true);
+      writer.start();
+   }
+
+   /**
+    * @return true if state was read back when the store was opened.
+    */
+   public boolean isRestored() {
+      return restored;
+   }
+
+   /**
+    * @return the SU bindings read back at open, by radical name.
+    */
+   public Map<String, Binding> getRestoredBindings() {
+      return restoredBindings;
+   }
+
+   /**
+    * @return the previous serving RFSS domain name of each SU read back at
+    *         open, by radical name.
+    */
+   public Map<String, String> getRestoredPreviousRegistrations() {
+      return restoredPreviousRegistrations;
+   }
+
+   /**
+    * @return the group reference counts read back at open.
+    */
+   public Map<String, Integer> getRestoredGroupRefcounts() {
+      return restoredGroupRefcounts;
+   }
+
+   /**
+    * @return the domain names of the RFSSs subscribed to each home group,
+    *         read back at open.
+    */
+   public Map<String, String[]> getRestoredGroupSubscribers() {
+      return restoredGroupSubscribers;
+   }
+
+   /**
+    * Record the binding of an SU.
+    */
+   public void putBinding(String key, Binding binding) {
+      bindings.put(key, binding);
+      append(encodeBinding(key, binding));
+   }
+
+   /**
+    * Record that an SU has no binding.
+    */
+   public void removeBinding(String key) {
+      if (bindings.remove(key) == null)
+         return;
+      Record record = new Record(UNBIND);
+      record.writeString(key);
+      append(record.toByteArray());
+   }
+
+   /**
+    * Record the RFSS that served an SU before it roamed.
+    */
+   public void putPreviousRegistration(String key, String rfssDomainName) {
+      if (rfssDomainName.equals(previousRegistrations.put(key, rfssDomainName)))
+         return;
+      Record record = new Record(PREVIOUS);
+      record.writeString(key);
+      record.writeString(rfssDomainName);
+      append(record.toByteArray());
+   }
+
+   /**
+    * Record the reference count of a group; 0 removes the group.
+    */
+   public void putGroupRefcount(String group, int refcount) {
+      Integer previous = refcount == 0 ? groupRefcounts.remove(group)
+            : groupRefcounts.put(group, refcount);
+      if (previous == null ? refcount == 0 : previous.intValue() == refcount)
+         return;
+      append(encodeGroupRefcount(group, refcount));
+   }
+
+   /**
+    * Record the RFSSs subscribed to a home group.
+    *
+    * @param group -- the group radical name.
+    * @param rfssDomainNames -- the domain names of the subscribed RFSSs.
+    */
+   public void putGroupSubscribers(String group, Collection<String> rfssDomainNames) {
+      String[] subscribers = rfssDomainNames.toArray(new String[rfssDomainNames.size()]);
+      groupSubscribers.put(group, subscribers);
+      append(encodeGroupSubscribers(group, subscribers));
+   }
+
+   /**
+    * Wait until every record queued so far has been written and flushed.
+    */
+   public void flush() {
+      synchronized (progress) {
+         long target = queuedCount;
+         try {
+            while (writtenCount < target && !closed)
+               progress.wait();
+         } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   /**
+    * Write the queued records, then compact the state into a snapshot. The
+    * store records nothing after it is closed.
+    */
+   public void close() {
+      flush();
+      synchronized (progress) {
+         if (closed)
+            return;
+         closed = true;
+         progress.notifyAll();
+      }
+      // Wake the writer and wait until it has compacted and exited.
+      queue.offer(new byte[0]);
+      try {
+         writer.join();
+      } catch (InterruptedException ex) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * @return statistics of the store.
+    */
+   public String getStatistics() {
+      synchronized (progress) {
+         return "RfssStateStore " + name + ": bindings=" + bindings.size()
+            + " groups=" + groupRefcounts.size() + " queued=" + queuedCount
+            + " written=" + writtenCount + " snapshots=" + snapshotCount;
+      }
+   }
+
+   /** Number of journal records queued since the store was opened. */
+   long getQueuedCount() {
+      synchronized (progress) {
+         return queuedCount;
+      }
+   }
+
+   private void append(byte[] record) {
+      synchronized (progress) {
+         if (closed)
+            return;
+         queuedCount++;
+      }
+      try {
+         queue.put(record);
+      } catch (InterruptedException ex) {
+         logger.error("Interrupted while journaling RFSS state");
+         recordWritten(1);
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private void recordWritten(int count) {
+      synchronized (progress) {
+         writtenCount += count;
+         progress.notifyAll();
+      }
+   }
+
+   private boolean isClosed() {
+      synchronized (progress) {
+         return closed;
+      }
+   }
+
+   private void writeRecords() {
+      ArrayList<byte[]> batch = new ArrayList<byte[]>(MAX_BATCH);
+      for (;;) {
+         try {
+            batch.add(queue.take());
+            queue.drainTo(batch, MAX_BATCH - 1);
+            for (byte[] record : batch) {
+               if (record.length > 0) {
+                  journal.write(record);
+                  journalRecords++;
+               }
+            }
+            journal.flush();
+            if (isClosed()) {
+               compact();
+               journal.close();
+               return;
+            }
+            if (journalRecords >= COMPACT_RECORDS)
+               compact();
+         } catch (InterruptedException ex) {
+            // Keep writing; the thread is only stopped by close
+         } catch (Exception ex) {
+            logger.error("Could not write the state journal of " + name, ex);
+         } finally {
+            recordWritten(batch.size());
+            batch.clear();
+         }
+      }
+   }
+
+   /**
+    * Write the state as a snapshot and start an empty journal. The records
+    * still queued are applied to the copy already, so writing them again to
+    * the new journal is harmless.
+    */
+   private void compact() throws IOException {
+      journal.close();
+      writeSnapshot();
+      startJournal();
+   }
+
+   private void startJournal() throws IOException {
+      journal = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(journalFile)));
+      journal.writeInt(JOURNAL_MAGIC);
+      journal.writeShort(VERSION);
+      journal.flush();
+      journalRecords = 0;
+   }
+
+   private void writeSnapshot() throws IOException {
+      File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+      FileOutputStream fos = new FileOutputStream(tmpFile);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+      try {
+         out.writeInt(SNAPSHOT_MAGIC);
+         out.writeShort(VERSION);
+         for (Map.Entry<String, Binding> entry : bindings.entrySet())
+            out.write(encodeBinding(entry.getKey(), entry.getValue()));
+         for (Map.Entry<String, String> entry : previousRegistrations.entrySet()) {
+            Record record = new Record(PREVIOUS);
+            record.writeString(entry.getKey());
+            record.writeString(entry.getValue());
+            out.write(record.toByteArray());
+         }
+         for (Map.Entry<String, Integer> entry : groupRefcounts.entrySet())
+            out.write(encodeGroupRefcount(entry.getKey(), entry.getValue()));
+         for (Map.Entry<String, String[]> entry : groupSubscribers.entrySet())
+            out.write(encodeGroupSubscribers(entry.getKey(), entry.getValue()));
+         out.flush();
+         fos.getFD().sync();
+      } finally {
+         out.close();
+      }
+      Files.move(tmpFile.toPath(), snapshotFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      snapshotCount++;
+   }
+
+   /**
+    * Apply the records of a state file to the state.
+    *
+    * @return the number of records applied.
+    */
+   private int load(File file, int magic) throws IOException {
+      if (!file.exists() || file.length() < HEADER_LENGTH)
+         return 0;
+      byte[] data;
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         data = new byte[(int) raf.length()];
+         raf.readFully(data);
+      } finally {
+         raf.close();
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(data);
+      if (buffer.getInt() != magic || buffer.getShort() != VERSION) {
+         logger.warn("RfssStateStore " + name + ": ignoring " + file
+               + " -- not a state file of this version");
+         return 0;
+      }
+      int count = 0;
+      while (buffer.remaining() >= 4) {
+         int length = buffer.getInt();
+         if (length < 1 || length > buffer.remaining()) {
+            logger.warn("RfssStateStore " + name + ": " + file
+                  + " ends with an incomplete record after " + count + " records");
+            break;
+         }
+         ByteBuffer record = buffer.slice();
+         record.limit(length);
+         buffer.position(buffer.position() + length);
+         try {
+            apply(record);
+         } catch (RuntimeException ex) {
+            // A short string or count inside the record; nothing after it
+            // can be trusted.
+            logger.warn("RfssStateStore " + name + ": " + file
+                  + " has a corrupt record after " + count + " records", ex);
+            break;
+         }
+         count++;
+      }
+      return count;
+   }
+
+   /**
+    * Decode a record and apply it to the state. The state is only changed
+    * once the whole record has been decoded.
+    */
+   private void apply(ByteBuffer record) {
+      byte type = record.get();
+      String key = readString(record);
+      switch (type) {
+      case BINDING:
+         String uri = readString(record);
+         int n = record.getShort();
+         String[] contacts = new String[n];
+         long[] deadlines = new long[n];
+         for (int i = 0; i < n; i++) {
+            contacts[i] = readString(record);
+            deadlines[i] = record.getLong();
+         }
+         bindings.put(key, new Binding(uri, contacts, deadlines));
+         break;
+      case UNBIND:
+         bindings.remove(key);
+         break;
+      case PREVIOUS:
+         previousRegistrations.put(key, readString(record));
+         break;
+      case GROUP_REFCOUNT:
+         int refcount = record.getInt();
+         if (refcount == 0)
+            groupRefcounts.remove(key);
+         else
+            groupRefcounts.put(key, refcount);
+         break;
+      case GROUP_SUBSCRIBERS:
+         String[] subscribers = new String[record.getShort()];
+         for (int i = 0; i < subscribers.length; i++)
+            subscribers[i] = readString(record);
+         groupSubscribers.put(key, subscribers);
+         break;
+      default:
+         logger.warn("RfssStateStore " + name + ": skipping record of type " + type);
+      }
+   }
+
+   private static String readString(ByteBuffer buffer) {
+      byte[] bytes = new byte[buffer.getShort() & 0xffff];
+      buffer.get(bytes);
+      return new String(bytes, UTF8);
+   }
+
+   private static byte[] encodeBinding(String key, Binding binding) {
+      Record record = new Record(BINDING);
+      record.writeString(key);
+      record.writeString(binding.getUri());
+      String[] contacts = binding.getContacts();
+      record.writeShort(contacts.length);
+      for (int i = 0; i < contacts.length; i++) {
+         record.writeString(contacts[i]);
+         record.writeLong(binding.getDeadlines()[i]);
+      }
+      return record.toByteArray();
+   }
+
+   private static byte[] encodeGroupRefcount(String group, int refcount) {
+      Record record = new Record(GROUP_REFCOUNT);
+      record.writeString(group);
+      record.writeInt(refcount);
+      return record.toByteArray();
+   }
+
+   private static byte[] encodeGroupSubscribers(String group, String[] subscribers) {
+      Record record = new Record(GROUP_SUBSCRIBERS);
+      record.writeString(group);
+      record.writeShort(subscribers.length);
+      for (String subscriber : subscribers)
+         record.writeString(subscriber);
+      return record.toByteArray();
+   }
+
+   /**
+    * A record being encoded, prefixed by its length when complete.
+    */
+   static class Record {
+      private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+      private final DataOutputStream out = new DataOutputStream(bytes);
+
+      Record(byte type) {
+         try {
+            out.writeInt(0);
+            out.writeByte(type);
+         } catch (IOException ex) {
+            throw new Error("Unexpected exception", ex);
+         }
+      }
+
+      void writeString(String value) {
+         byte[] data = value.getBytes(UTF8);
+         try {
+            out.writeShort(data.length);
+            out.write(data);
+         } catch (IOException ex) {
+            throw new Error("Unexpected exception", ex);
+         }
+      }
+
+      void writeShort(int value) {
+         try {
+            out.writeShort(value);
+         } catch (IOException ex) {
+            throw new Error("Unexpected exception", ex);
+         }
+      }
+
+      void writeInt(int value) {
+         try {
+            out.writeInt(value);
+         } catch (IOException ex) {
+            throw new Error("Unexpected exception", ex);
+         }
+      }
+
+      void writeLong(long value) {
+         try {
+            out.writeLong(value);
+         } catch (IOException ex) {
+            throw new Error("Unexpected exception", ex);
+         }
+      }
+
+      byte[] toByteArray() {
+         byte[] data = bytes.toByteArray();
+         ByteBuffer.wrap(data).putInt(data.length - 4);
+         return data;
+      }
+   }
+}
@@ -13,6 +13,8 @@ import gov.nist.p25.issi.utils.WarningCodes;
 
 import java.util.LinkedList;
 import java.util.ListIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.sdp.MediaDescription;
 import javax.sdp.SessionDescription;
 import javax.sip.InvalidArgumentException;
@@ -34,6 +36,51 @@ public class SipUtils {
    private static AddressFactory addressFactory = ProtocolObjects.getAddressFactory();
    private static HeaderFactory headerFactory = ProtocolObjects.getHeaderFactory();
    private static MessageFactory messageFactory = ProtocolObjects.getMessageFactory();
+
+   /**
+    * Headers and URIs that depend only on an RFSS domain name and an SU or
+    * group radical name are built once through the factories and kept here
+    * by kind and name; callers get a clone, which they are free to modify.
+    * The cache starts over when the RFSSes are reset for the next test,
+    * which may load another topology, and when it grows past
+    * HEADER_CACHE_SIZE entries.
+    */
+   public static final int HEADER_CACHE_SIZE =
+      Integer.getInteger("diets.sip.headerCacheSize", 4096);
+   private static final ConcurrentHashMap<String, Object> headerCache =
+      new ConcurrentHashMap<String, Object>();
+   private static final AtomicLong headerCacheHits = new AtomicLong();
+   private static final AtomicLong headerCacheMisses = new AtomicLong();
+
+   private static Object getTemplate(String key) {
+      Object template = headerCache.get(key);
+      if (template != null)
+         headerCacheHits.incrementAndGet();
+      else
+         headerCacheMisses.incrementAndGet();
+      return template;
+   }
+
+   private static void putTemplate(String key, Object template) {
+      if (headerCache.size() >= HEADER_CACHE_SIZE)
+         headerCache.clear();
+      headerCache.put(key, template);
+   }
+
+   /**
+    * Drop the cached headers, e.g. when a new topology is loaded.
+    */
+   public static void clearHeaderCache() {
+      headerCache.clear();
+   }
+
+   /**
+    * @return the size, hits and misses of the header cache.
+    */
+   public static String getHeaderCacheStatistics() {
+      return "SipUtils header cache: size=" + headerCache.size()
+         + " hits=" + headerCacheHits.get() + " misses=" + headerCacheMisses.get();
+   }
    
    //-------------------------------------------------------------------------
    public static SipURI createSipURI(String radicalName, String domainName)
@@ -193,13 +240,18 @@ public class SipUtils {
    public static RouteHeader createRouteToRfss(RfssConfig rfssConfig) {
       try {
          String ipAddress = rfssConfig.getDomainName();
-         SipURI homeRfssURI = addressFactory.createSipURI(null, ipAddress);
-
-         // homeRfssURI.setPort(rfssConfig.getPort());
-         homeRfssURI.setLrParam();
-         Address homeRfssAddress = addressFactory.createAddress(homeRfssURI);
-         RouteHeader route = headerFactory.createRouteHeader(homeRfssAddress);
-         return route;
+         String key = "route:" + ipAddress;
+         RouteHeader route = (RouteHeader) getTemplate(key);
+         if (route == null) {
+            SipURI homeRfssURI = addressFactory.createSipURI(null, ipAddress);
+
+            // homeRfssURI.setPort(rfssConfig.getPort());
+            homeRfssURI.setLrParam();
+            Address homeRfssAddress = addressFactory.createAddress(homeRfssURI);
+            route = headerFactory.createRouteHeader(homeRfssAddress);
+            putTemplate(key, route);
+         }
+         return (RouteHeader) route.clone();
       } catch (Exception ex) {
          logger.error("Internal error ", ex);
          throw new RuntimeException("Internal error", ex);
@@ -212,15 +264,20 @@ public class SipUtils {
    public static ContactHeader createContactHeaderForSU(RfssConfig rfssConfig,
          SuConfig suConfig) {
       try {
-         ContactHeader retval = createContactHeaderForRfss(rfssConfig, null);
-         SipURI contactURI = (SipURI) retval.getAddress().getURI();
          String radicalName = suConfig.getRadicalName();
-         contactURI.setUser(radicalName);
-         contactURI.setUserParam(ISSIConstants.TIA_P25_SU);
-         Address contactAddress = addressFactory.createAddress(contactURI);
+         String key = "su-contact:" + rfssConfig.getDomainName() + ";" + radicalName;
+         ContactHeader contactHeader = (ContactHeader) getTemplate(key);
+         if (contactHeader == null) {
+            ContactHeader retval = createContactHeaderForRfss(rfssConfig, null);
+            SipURI contactURI = (SipURI) retval.getAddress().getURI();
+            contactURI.setUser(radicalName);
+            contactURI.setUserParam(ISSIConstants.TIA_P25_SU);
+            Address contactAddress = addressFactory.createAddress(contactURI);
 //logger.debug("createContactHeadreForSU: uri="+contactURI+" radicalName="+radicalName);
-         ContactHeader contactHeader = headerFactory.createContactHeader(contactAddress);
-         return contactHeader;
+            contactHeader = headerFactory.createContactHeader(contactAddress);
+            putTemplate(key, contactHeader);
+         }
+         return (ContactHeader) contactHeader.clone();
       } catch (Exception ex) {
          logger.error("Internal error ", ex);
          throw new RuntimeException("Internal error", ex);
@@ -233,7 +290,13 @@ public class SipUtils {
 
    public static SipURI createDomainSipURI(String domainName) throws ParseException {
       //logger.debug("ZZZ createDomainSipURI: domainName="+domainName);
-      return addressFactory.createSipURI(null, domainName);
+      String key = "uri:" + domainName;
+      SipURI sipURI = (SipURI) getTemplate(key);
+      if (sipURI == null) {
+         sipURI = addressFactory.createSipURI(null, domainName);
+         putTemplate(key, sipURI);
+      }
+      return (SipURI) sipURI.clone();
    }
 
    public static SipURI createDomainSipURI(RfssConfig rfssConfig) throws ParseException {
@@ -244,14 +307,19 @@ public class SipUtils {
 
    public static ContactHeader createContactHeaderForRfss(RfssConfig rfssConfig, String userParam) {
       try {
-         SipURI contactURI = SipUtils.createDomainSipURI(rfssConfig);
-         Address contactAddress = addressFactory.createAddress(contactURI);
+         String key = "contact:" + rfssConfig.getDomainName() + ";" + userParam;
+         ContactHeader contactHeader = (ContactHeader) getTemplate(key);
+         if (contactHeader == null) {
+            SipURI contactURI = SipUtils.createDomainSipURI(rfssConfig);
+            Address contactAddress = addressFactory.createAddress(contactURI);
 //logger.debug("ZZZ createContactHeaderForRfss: contactURI="+contactURI);
-         ContactHeader contactHeader = headerFactory.createContactHeader(contactAddress);
-         if (userParam != null) {
-            contactURI.setUserParam(userParam);
-	 }
-         return contactHeader;
+            contactHeader = headerFactory.createContactHeader(contactAddress);
+            if (userParam != null) {
+               contactURI.setUserParam(userParam);
+            }
+            putTemplate(key, contactHeader);
+         }
+         return (ContactHeader) contactHeader.clone();
       } catch (Exception ex) {
          logger.error("Internal error ", ex);
          throw new RuntimeException("Internal error", ex);
@@ -267,11 +335,16 @@ public class SipUtils {
     */
    public static RecordRouteHeader createRecordRouteHeaderForRfss(RfssConfig rfssConfig) {
       try {
-         SipURI contactURI = SipUtils.createDomainSipURI(rfssConfig);
-         contactURI.setLrParam();
-         Address contactAddress = addressFactory.createAddress(contactURI);
-         RecordRouteHeader recordRouteHeader = headerFactory.createRecordRouteHeader(contactAddress);
-         return recordRouteHeader;
+         String key = "record-route:" + rfssConfig.getDomainName();
+         RecordRouteHeader recordRouteHeader = (RecordRouteHeader) getTemplate(key);
+         if (recordRouteHeader == null) {
+            SipURI contactURI = SipUtils.createDomainSipURI(rfssConfig);
+            contactURI.setLrParam();
+            Address contactAddress = addressFactory.createAddress(contactURI);
+            recordRouteHeader = headerFactory.createRecordRouteHeader(contactAddress);
+            putTemplate(key, recordRouteHeader);
+         }
+         return (RecordRouteHeader) recordRouteHeader.clone();
       } catch (Exception ex) {
          logger.error("Internal error ", ex);
          throw new RuntimeException("Internal error", ex);
@@ -330,9 +403,14 @@ public class SipUtils {
 
    public static ViaHeader createViaHeaderForRfss(RfssConfig config) {
       try {
-         ViaHeader viaHeader = headerFactory.createViaHeader(config.getDomainName(),
-               -1, "UDP", null);
-         return viaHeader;
+         String key = "via:" + config.getDomainName();
+         ViaHeader viaHeader = (ViaHeader) getTemplate(key);
+         if (viaHeader == null) {
+            viaHeader = headerFactory.createViaHeader(config.getDomainName(),
+                  -1, "UDP", null);
+            putTemplate(key, viaHeader);
+         }
+         return (ViaHeader) viaHeader.clone();
       } catch (Exception ex) {
          ex.printStackTrace();
          return null;
@@ -0,0 +1,144 @@
+//
+package gov.nist.p25.issi.rfss;
+
+import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.utils.ProtocolObjects;
+
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sip.address.AddressFactory;
+import javax.sip.address.SipURI;
+import javax.sip.header.ContactHeader;
+import javax.sip.header.HeaderFactory;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * A registration storm: thousands of SUs re-register at once, as after a
+ * site comes back. Checks that every SU ends up with one binding and one
+ * expiry timer, and reports the throughput of the sharded registration
+ * locks against a single lock, which is how processRegister serialized
+ * every REGISTER before.
+ */
+public class Test_RegisterStormTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.rfss");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private static final int SUS = 2000;
+
+   /** Registrations per SU in one storm. */
+   private static final int REGISTERS = 3;
+
+   /** The serving RFSS contact, registered by every SU. */
+   private static final String SERVING_RFSS = "f2.001.00001.p25dr";
+
+   private final AddressFactory addressFactory = ProtocolObjects.addressFactory;
+   private final HeaderFactory headerFactory = ProtocolObjects.headerFactory;
+
+   public void tearDown() {
+      ISSITimer.resetTimer();
+   }
+
+   private static String radicalName(int i) {
+      return Integer.toHexString(0x20020000 + i);
+   }
+
+   /**
+    * Register an SU the way processRegister does: the binding and its timer
+    * are changed, and the response headers built, while holding the lock.
+    */
+   private void register(RegistrationsTable table, Object lock, String key)
+         throws Exception {
+      synchronized (lock) {
+         SipURI uri = addressFactory.createSipURI(key, "p25dr");
+         SipURI contactUri = addressFactory.createSipURI(null, SERVING_RFSS);
+         contactUri.setParameter("user", "TIA-P25-SU");
+         ContactHeader contactHeader = headerFactory.createContactHeader(
+               addressFactory.createAddress(contactUri));
+         table.createRegistration(uri, contactHeader, null);
+         table.startTimer(key, UnitToUnitMobilityManager.EXPIRES_TIME_MAX, contactHeader);
+         headerFactory.createContactHeader(addressFactory.createAddress(contactUri)).toString();
+      }
+   }
+
+   /**
+    * Run a storm and return its duration in milliseconds.
+    *
+    * @param globalLock -- the lock every register takes, or null to take
+    *        the shard lock of the SU.
+    */
+   private long storm(final RegistrationsTable table, final Object globalLock,
+         int threads) throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      final CountDownLatch done = new CountDownLatch(SUS * REGISTERS);
+      final AtomicInteger failures = new AtomicInteger();
+      long start = System.nanoTime();
+      for (int n = 0; n < REGISTERS; n++) {
+         for (int i = 0; i < SUS; i++) {
+            final String key = radicalName(i);
+            executor.execute(new Runnable() {
+               public void run() {
+                  try {
+                     register(table, globalLock != null ? globalLock : table.getLock(key), key);
+                  } catch (Exception ex) {
+                     logger.error("register failed for " + key, ex);
+                     failures.incrementAndGet();
+                  }
+                  done.countDown();
+               }
+            });
+         }
+      }
+      assertTrue(done.await(120, TimeUnit.SECONDS));
+      long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      executor.shutdown();
+      assertEquals(0, failures.get());
+      return millis;
+   }
+
+   public void testStormLeavesOneBindingPerSu() throws Exception {
+      int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+      RegistrationsTable table = new RegistrationsTable((RfssStateStore) null, null);
+      storm(table, null, threads);
+
+      assertEquals(SUS, table.getRegistrySize());
+      for (int i = 0; i < SUS; i++) {
+         Registration registration = table.getRegistration(radicalName(i));
+         assertNotNull(registration);
+         Vector contacts = registration.getContactsList();
+         assertEquals(1, contacts.size());
+      }
+      // Every SU registers the same contact; each keeps a timer of its own.
+      assertEquals(SUS, table.getExpiresTaskTable().size());
+   }
+
+   public void testStormThroughput() throws Exception {
+      int cores = Runtime.getRuntime().availableProcessors();
+      // Warm up.
+      storm(new RegistrationsTable((RfssStateStore) null, null), null, cores);
+
+      for (int threads = 1; threads <= 2 * cores; threads *= 2) {
+         long global = storm(new RegistrationsTable((RfssStateStore) null, null),
+               new Object(), threads);
+         long sharded = storm(new RegistrationsTable((RfssStateStore) null, null),
+               null, threads);
+         logger.info("REGISTER storm, " + SUS * REGISTERS + " registers, "
+               + threads + " threads on " + cores + " cores: single lock "
+               + global + " ms, sharded " + sharded + " ms");
+      }
+   }
+}
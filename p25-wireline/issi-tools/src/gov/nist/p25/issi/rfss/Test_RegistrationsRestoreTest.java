@@ -0,0 +1,130 @@
+//
+package gov.nist.p25.issi.rfss;
+
+import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.issiconfig.GlobalTopologyParser;
+import gov.nist.p25.issi.issiconfig.SuConfig;
+import gov.nist.p25.issi.issiconfig.SystemTopologyParser;
+import gov.nist.p25.issi.issiconfig.TopologyConfig;
+import gov.nist.p25.issi.issiconfig.TopologyConfigParser;
+import gov.nist.p25.issi.rfss.tester.ISSITesterConfiguration;
+import gov.nist.p25.issi.rfss.tester.ISSITesterConfigurationParser;
+import gov.nist.p25.issi.utils.ProtocolObjects;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Vector;
+
+import javax.sip.header.ContactHeader;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests that RegistrationsTable.restore brings back the bindings saved by
+ * the state store, with the service profile of each SU and without the
+ * contacts that expired while the RFSS was down, and that a registration
+ * is journaled once, with the deadlines of its contacts.
+ */
+public class Test_RegistrationsRestoreTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.rfss");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private static final String LIVE_CONTACT = "<sip:f1.001.00001.p25dr;user=TIA-P25-SU>";
+   private static final String EXPIRED_CONTACT = "<sip:f2.001.00001.p25dr;user=TIA-P25-SU>";
+
+   private TopologyConfig topologyConfig;
+   private File dir;
+   private String su1;
+   private String su2;
+
+   public void setUp() throws Exception {
+      ISSITesterConfiguration config = new ISSITesterConfigurationParser(
+            "unit-test/issi-tester-configuration.xml").parse();
+      TopologyConfig systemTopology = new SystemTopologyParser(config).parse(
+            "unit-test/systemtopology.xml");
+      TopologyConfig globalTopology = new GlobalTopologyParser(false).parse(
+            systemTopology, "unit-test/globaltopology.xml");
+      topologyConfig = new TopologyConfigParser().parse(globalTopology,
+            "unit-test/topologytest.xml");
+      Iterator<SuConfig> it = topologyConfig.getSuConfigurations().iterator();
+      su1 = it.next().getRadicalName();
+      su2 = it.next().getRadicalName();
+      dir = Files.createTempDirectory("rfss-state").toFile();
+   }
+
+   public void tearDown() throws Exception {
+      ISSITimer.resetTimer();
+      File[] files = dir.listFiles();
+      for (int i = 0; files != null && i < files.length; i++)
+         files[i].delete();
+      dir.delete();
+   }
+
+   public void testRestoreDropsExpiredContacts() throws Exception {
+      long now = System.currentTimeMillis();
+      RfssStateStore store = new RfssStateStore(dir, "rfss_1");
+      store.putBinding(su1, new RfssStateStore.Binding("sip:" + su1 + "@p25dr",
+            new String[] { LIVE_CONTACT, EXPIRED_CONTACT },
+            new long[] { now + 600000L, now - 1000L }));
+      store.putBinding(su2, new RfssStateStore.Binding("sip:" + su2 + "@p25dr",
+            new String[] { EXPIRED_CONTACT }, new long[] { now - 1000L }));
+      store.close();
+
+      RfssStateStore reopened = new RfssStateStore(dir, "rfss_1");
+      RegistrationsTable table = new RegistrationsTable(reopened, topologyConfig);
+      table.restore();
+
+      Registration registration = table.getRegistration(su1);
+      assertNotNull(registration);
+      assertEquals(1, registration.getContactsList().size());
+      assertTrue(registration.getContactsList().get(0).toString().indexOf("f1.001.00001") != -1);
+      assertSame(topologyConfig.getSuConfig(su1).getUserServiceProfile(),
+            registration.getServiceProfile());
+      assertEquals(1, table.getExpiresTaskTable().size());
+
+      // Every contact of su2 expired while the RFSS was down.
+      assertNull(table.getRegistration(su2));
+      reopened.close();
+
+      RfssStateStore third = new RfssStateStore(dir, "rfss_1");
+      assertTrue(third.getRestoredBindings().containsKey(su1));
+      assertFalse(third.getRestoredBindings().containsKey(su2));
+      third.close();
+   }
+
+   public void testRegistrationJournaledOnce() throws Exception {
+      RfssStateStore store = new RfssStateStore(dir, "rfss_1");
+      RegistrationsTable table = new RegistrationsTable(store, topologyConfig);
+      Vector<ContactHeader> contacts = new Vector<ContactHeader>();
+      contacts.add((ContactHeader) ProtocolObjects.headerFactory.createHeader(
+            ContactHeader.NAME, LIVE_CONTACT));
+      contacts.add((ContactHeader) ProtocolObjects.headerFactory.createHeader(
+            ContactHeader.NAME, EXPIRED_CONTACT));
+      Registration registration = new Registration(su1,
+            ProtocolObjects.addressFactory.createURI("sip:" + su1 + "@p25dr"),
+            contacts.iterator(), null, topologyConfig);
+
+      long queued = store.getQueuedCount();
+      long before = System.currentTimeMillis();
+      table.addRegistration(registration);
+      assertEquals(queued + 1, store.getQueuedCount());
+      store.close();
+
+      RfssStateStore reopened = new RfssStateStore(dir, "rfss_1");
+      RfssStateStore.Binding binding = reopened.getRestoredBindings().get(su1);
+      assertEquals(2, binding.getContacts().length);
+      for (long deadline : binding.getDeadlines())
+         assertTrue(deadline >= before + UnitToUnitMobilityManager.EXPIRES_TIME_MAX * 1000L);
+      reopened.close();
+   }
+}
@@ -0,0 +1,172 @@
+//
+package gov.nist.p25.issi.rfss;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests that the RFSS state store reads back what it wrote: from the
+ * snapshot, from the journal, and after a crash or a compaction.
+ */
+public class Test_RfssStateStoreTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.rfss");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private File dir;
+
+   public void setUp() throws Exception {
+      dir = Files.createTempDirectory("rfss-state").toFile();
+   }
+
+   public void tearDown() throws Exception {
+      File[] files = dir.listFiles();
+      for (int i = 0; files != null && i < files.length; i++)
+         files[i].delete();
+      dir.delete();
+   }
+
+   private static RfssStateStore.Binding binding(String su, String contact, long deadline) {
+      return new RfssStateStore.Binding("sip:" + su + "@p25dr",
+            new String[] { contact }, new long[] { deadline });
+   }
+
+   private static void assertBinding(RfssStateStore.Binding expected,
+         RfssStateStore.Binding actual) {
+      assertNotNull(actual);
+      assertEquals(expected.getUri(), actual.getUri());
+      assertTrue(Arrays.equals(expected.getContacts(), actual.getContacts()));
+      assertTrue(Arrays.equals(expected.getDeadlines(), actual.getDeadlines()));
+   }
+
+   public void testEmptyDirectory() throws Exception {
+      RfssStateStore store = new RfssStateStore(dir, "rfss_1");
+      assertFalse(store.isRestored());
+      assertTrue(store.getRestoredBindings().isEmpty());
+      store.close();
+   }
+
+   /** State recorded without a close is read back from the journal. */
+   public void testJournalRoundTrip() throws Exception {
+      RfssStateStore.Binding b = binding("00001200002", "<sip:f1.001.00001.p25dr>", 1234L);
+      RfssStateStore store = new RfssStateStore(dir, "rfss_1");
+      store.putBinding("00001200002", b);
+      store.putPreviousRegistration("00001200002", "f2.001.00001.p25dr");
+      store.putGroupRefcount("00001200099", 3);
+      store.putGroupSubscribers("00001200099",
+            Arrays.asList("f1.001.00001.p25dr", "f2.001.00001.p25dr"));
+      store.flush();
+
+      RfssStateStore reopened = new RfssStateStore(dir, "rfss_1");
+      assertTrue(reopened.isRestored());
+      assertBinding(b, reopened.getRestoredBindings().get("00001200002"));
+      assertEquals("f2.001.00001.p25dr",
+            reopened.getRestoredPreviousRegistrations().get("00001200002"));
+      assertEquals(Integer.valueOf(3), reopened.getRestoredGroupRefcounts().get("00001200099"));
+      assertTrue(Arrays.equals(new String[] { "f1.001.00001.p25dr", "f2.001.00001.p25dr" },
+            reopened.getRestoredGroupSubscribers().get("00001200099")));
+      reopened.close();
+   }
+
+   /** State written by close is read back from the snapshot. */
+   public void testSnapshotRoundTrip() throws Exception {
+      RfssStateStore.Binding b = binding("00001200002", "<sip:f1.001.00001.p25dr>", 0L);
+      RfssStateStore store = new RfssStateStore(dir, "rfss_1");
+      store.putBinding("00001200002", b);
+      store.putGroupRefcount("00001200099", 1);
+      store.close();
+
+      RfssStateStore reopened = new RfssStateStore(dir, "rfss_1");
+      assertTrue(reopened.isRestored());
+      assertBinding(b, reopened.getRestoredBindings().get("00001200002"));
+      assertEquals(Integer.valueOf(1), reopened.getRestoredGroupRefcounts().get("00001200099"));
+      reopened.close();
+   }
+
+   public void testUnbindAndZeroRefcountRemove() throws Exception {
+      RfssStateStore store = new RfssStateStore(dir, "rfss_1");
+      store.putBinding("00001200002", binding("00001200002", "<sip:f1.001.00001.p25dr>", 0L));
+      store.putBinding("00001200003", binding("00001200003", "<sip:f1.001.00001.p25dr>", 0L));
+      store.removeBinding("00001200002");
+      store.putGroupRefcount("00001200098", 2);
+      store.putGroupRefcount("00001200099", 2);
+      store.putGroupRefcount("00001200098", 0);
+      store.flush();
+
+      RfssStateStore reopened = new RfssStateStore(dir, "rfss_1");
+      Map<String, RfssStateStore.Binding> bindings = reopened.getRestoredBindings();
+      assertFalse(bindings.containsKey("00001200002"));
+      assertTrue(bindings.containsKey("00001200003"));
+      Map<String, Integer> groups = reopened.getRestoredGroupRefcounts();
+      assertFalse(groups.containsKey("00001200098"));
+      assertEquals(Integer.valueOf(2), groups.get("00001200099"));
+      reopened.close();
+   }
+
+   /** A record cut short by a crash ends the journal; earlier records stay. */
+   public void testTruncatedTrailingRecord() throws Exception {
+      RfssStateStore store = new RfssStateStore(dir, "rfss_1");
+      store.putGroupRefcount("00001200098", 1);
+      store.putGroupRefcount("00001200099", 2);
+      store.flush();
+
+      File journal = new File(dir, "rfss_1.journal");
+      RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+      raf.setLength(raf.length() - 3);
+      raf.close();
+
+      RfssStateStore reopened = new RfssStateStore(dir, "rfss_1");
+      Map<String, Integer> groups = reopened.getRestoredGroupRefcounts();
+      assertEquals(Integer.valueOf(1), groups.get("00001200098"));
+      assertFalse(groups.containsKey("00001200099"));
+      reopened.close();
+   }
+
+   /** A record whose fields overrun its length ends the journal. */
+   public void testCorruptRecord() throws Exception {
+      RfssStateStore store = new RfssStateStore(dir, "rfss_1");
+      store.putGroupRefcount("00001200098", 1);
+      store.flush();
+
+      // A GROUP_REFCOUNT record claiming a 200 byte name in a 4 byte body.
+      FileOutputStream fos = new FileOutputStream(new File(dir, "rfss_1.journal"), true);
+      fos.write(new byte[] { 0, 0, 0, 4, RfssStateStore.GROUP_REFCOUNT, 0, (byte) 200, 'x' });
+      fos.close();
+
+      RfssStateStore reopened = new RfssStateStore(dir, "rfss_1");
+      assertEquals(Integer.valueOf(1), reopened.getRestoredGroupRefcounts().get("00001200098"));
+      assertEquals(1, reopened.getRestoredGroupRefcounts().size());
+      reopened.close();
+   }
+
+   /** Compaction moves the state to the snapshot and starts a new journal. */
+   public void testCompactionThenReopen() throws Exception {
+      int records = RfssStateStore.COMPACT_RECORDS + 10;
+      RfssStateStore store = new RfssStateStore(dir, "rfss_1");
+      for (int i = 0; i < records; i++)
+         store.putGroupRefcount("0000120" + (i % 100), 1 + i % 7);
+      store.flush();
+      assertTrue(new File(dir, "rfss_1.journal").length() < 20L * 100);
+
+      RfssStateStore reopened = new RfssStateStore(dir, "rfss_1");
+      Map<String, Integer> groups = reopened.getRestoredGroupRefcounts();
+      assertEquals(100, groups.size());
+      for (int i = records - 100; i < records; i++)
+         assertEquals(Integer.valueOf(1 + i % 7), groups.get("0000120" + (i % 100)));
+      reopened.close();
+   }
+}
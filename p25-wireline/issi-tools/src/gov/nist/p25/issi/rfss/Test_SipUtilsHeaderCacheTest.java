@@ -0,0 +1,157 @@
+//
+package gov.nist.p25.issi.rfss;
+
+import gov.nist.p25.issi.constants.ISSIConstants;
+import gov.nist.p25.issi.issiconfig.GlobalTopologyParser;
+import gov.nist.p25.issi.issiconfig.RfssConfig;
+import gov.nist.p25.issi.issiconfig.SuConfig;
+import gov.nist.p25.issi.issiconfig.SystemTopologyParser;
+import gov.nist.p25.issi.issiconfig.TopologyConfig;
+import gov.nist.p25.issi.issiconfig.TopologyConfigParser;
+import gov.nist.p25.issi.rfss.tester.ISSITesterConfiguration;
+import gov.nist.p25.issi.rfss.tester.ISSITesterConfigurationParser;
+import gov.nist.p25.issi.utils.ProtocolObjects;
+
+import javax.sip.address.AddressFactory;
+import javax.sip.address.SipURI;
+import javax.sip.header.ContactHeader;
+import javax.sip.header.HeaderFactory;
+import javax.sip.header.ViaHeader;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests that the headers SipUtils hands out from its cache are the ones the
+ * factories build, that each caller gets a copy of its own, and that
+ * RFSS.reset drops them. Also reports the cost of a cached header set
+ * against building it through the factories.
+ */
+public class Test_SipUtilsHeaderCacheTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.rfss");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private static final int SETS = 100000;
+
+   private final AddressFactory addressFactory = ProtocolObjects.addressFactory;
+   private final HeaderFactory headerFactory = ProtocolObjects.headerFactory;
+
+   private TopologyConfig topologyConfig;
+
+   public void setUp() throws Exception {
+      ISSITesterConfiguration config = new ISSITesterConfigurationParser(
+            "unit-test/issi-tester-configuration.xml").parse();
+      TopologyConfig systemTopology = new SystemTopologyParser(config).parse(
+            "unit-test/systemtopology.xml");
+      TopologyConfig globalTopology = new GlobalTopologyParser(false).parse(
+            systemTopology, "unit-test/globaltopology.xml");
+      topologyConfig = new TopologyConfigParser().parse(globalTopology,
+            "unit-test/topologytest.xml");
+      RFSS.reset();
+   }
+
+   public void tearDown() {
+      RFSS.reset();
+   }
+
+   private RfssConfig firstRfss() {
+      return topologyConfig.getRfssConfigurations().iterator().next();
+   }
+
+   /** Build the headers of an RFSS through the factories, as before the cache. */
+   private String[] buildHeaders(RfssConfig rfssConfig) throws Exception {
+      String domainName = rfssConfig.getDomainName();
+      SipURI contactURI = addressFactory.createSipURI(null, domainName);
+      ContactHeader contactHeader = headerFactory.createContactHeader(
+            addressFactory.createAddress(contactURI));
+      contactURI.setUserParam(ISSIConstants.TIA_P25_SU);
+      ViaHeader viaHeader = headerFactory.createViaHeader(domainName, -1, "UDP", null);
+      SipURI recordRouteURI = addressFactory.createSipURI(null, domainName);
+      recordRouteURI.setLrParam();
+      SipURI routeURI = addressFactory.createSipURI(null, domainName);
+      routeURI.setLrParam();
+      return new String[] {
+         contactHeader.toString(),
+         viaHeader.toString(),
+         headerFactory.createRecordRouteHeader(
+               addressFactory.createAddress(recordRouteURI)).toString(),
+         headerFactory.createRouteHeader(
+               addressFactory.createAddress(routeURI)).toString() };
+   }
+
+   private static String[] cachedHeaders(RfssConfig rfssConfig) {
+      return new String[] {
+         SipUtils.createContactHeaderForRfss(rfssConfig, ISSIConstants.TIA_P25_SU).toString(),
+         SipUtils.createViaHeaderForRfss(rfssConfig).toString(),
+         SipUtils.createRecordRouteHeaderForRfss(rfssConfig).toString(),
+         SipUtils.createRouteToRfss(rfssConfig).toString() };
+   }
+
+   public void testCachedHeadersMatchFactoryHeaders() throws Exception {
+      for (RfssConfig rfssConfig : topologyConfig.getRfssConfigurations()) {
+         String[] expected = buildHeaders(rfssConfig);
+         // Once from the factories, once from the cache.
+         for (int n = 0; n < 2; n++) {
+            String[] cached = cachedHeaders(rfssConfig);
+            for (int i = 0; i < expected.length; i++)
+               assertEquals(expected[i], cached[i]);
+         }
+      }
+      for (SuConfig suConfig : topologyConfig.getSuConfigurations()) {
+         String contact = SipUtils.createContactHeaderForSU(firstRfss(), suConfig).toString();
+         assertTrue(contact.indexOf(suConfig.getRadicalName() + "@") != -1);
+         assertEquals(contact, SipUtils.createContactHeaderForSU(firstRfss(), suConfig).toString());
+      }
+   }
+
+   public void testCallersGetCopies() throws Exception {
+      RfssConfig rfssConfig = firstRfss();
+      ContactHeader contactHeader = SipUtils.createContactHeaderForRfss(rfssConfig, null);
+      ((SipURI) contactHeader.getAddress().getURI()).setUser("changed");
+      ViaHeader viaHeader = SipUtils.createViaHeaderForRfss(rfssConfig);
+      viaHeader.setBranch("z9hG4bKchanged");
+      SipURI uri = SipUtils.createDomainSipURI(rfssConfig);
+      uri.setUser("changed");
+
+      assertTrue(SipUtils.createContactHeaderForRfss(rfssConfig, null).toString()
+            .indexOf("changed") == -1);
+      assertNull(SipUtils.createViaHeaderForRfss(rfssConfig).getBranch());
+      assertNull(SipUtils.createDomainSipURI(rfssConfig).getUser());
+   }
+
+   public void testResetDropsCachedHeaders() throws Exception {
+      cachedHeaders(firstRfss());
+      assertTrue(SipUtils.getHeaderCacheStatistics().indexOf("size=0 ") == -1);
+      RFSS.reset();
+      assertTrue(SipUtils.getHeaderCacheStatistics().indexOf("size=0 ") != -1);
+   }
+
+   /** Reports the cost of a set of RFSS headers, cached and uncached. */
+   public void testCachedAgainstFactoryBuiltHeaders() throws Exception {
+      RfssConfig rfssConfig = firstRfss();
+      long factoryNanos = 0;
+      long cachedNanos = 0;
+      for (int round = 0; round < 3; round++) {
+         long start = System.nanoTime();
+         for (int i = 0; i < SETS; i++)
+            buildHeaders(rfssConfig);
+         factoryNanos = System.nanoTime() - start;
+
+         start = System.nanoTime();
+         for (int i = 0; i < SETS; i++)
+            cachedHeaders(rfssConfig);
+         cachedNanos = System.nanoTime() - start;
+      }
+      logger.info("Contact, Via, Record-Route and Route headers of an RFSS: factories "
+            + (factoryNanos / SETS) + " ns per set, cache " + (cachedNanos / SETS)
+            + " ns per set; " + SipUtils.getHeaderCacheStatistics());
+   }
+}
@@ -205,11 +205,10 @@ public class TransmissionControlSAP {
       int tsn = groupServing.getMultiplexer().getTsn( suConfig.getRadicalName());
       logger.debug("sendMute: TSN="+tsn+" suConfig="+suConfig);
       
-      int currentTSN = groupServing.getMultiplexer().getCurrentTSN();
-      logger.debug("sendMute: currentTSN="+currentTSN);
-
       SmfSession smfSession = groupServing.getSmfSession(tsn);
       assert smfSession != null;
+      int currentTSN = smfSession.getCurrentTSN();
+      logger.debug("sendMute: currentTSN="+currentTSN);
       smfSession.sendMute(currentTSN);
    }
 
@@ -223,11 +222,10 @@ public class TransmissionControlSAP {
       int tsn = groupServing.getMultiplexer().getTsn( suConfig.getRadicalName());
       logger.debug("sendMute: TSN="+tsn+" suConfig="+suConfig);
 
-      int currentTSN = groupServing.getMultiplexer().getCurrentTSN();
-      logger.debug("sendMute: currentTSN="+currentTSN);
-
       SmfSession smfSession = groupServing.getSmfSession(tsn);
       assert smfSession != null;
+      int currentTSN = smfSession.getCurrentTSN();
+      logger.debug("sendMute: currentTSN="+currentTSN);
       smfSession.sendUnmute(currentTSN);
    }
 }
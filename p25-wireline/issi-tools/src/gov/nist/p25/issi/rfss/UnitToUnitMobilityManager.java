@@ -23,6 +23,7 @@ import java.io.PrintWriter;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.TimerTask;
 import java.util.Vector;
 
@@ -126,7 +127,9 @@ public class UnitToUnitMobilityManager implements SipListener {
       }
       public void run() {
          try {
-            processRegisterQuery(serverTransaction, request, suConfig);
+            synchronized (registrationsTable.getLock(suConfig.getRadicalName())) {
+               processRegisterQuery(serverTransaction, request, suConfig);
+            }
          } catch (Exception ex) { }
       }
    }
@@ -139,6 +142,7 @@ public class UnitToUnitMobilityManager implements SipListener {
       registrationsTable = new RegistrationsTable(this, topologyConfig);
       previousRegistration = new Hashtable<String, RfssConfig>();
       preLoadRegistrations();
+      restoreRegistrations();
       provider = rfss.getProvider();
    }
 
@@ -152,7 +156,7 @@ public class UnitToUnitMobilityManager implements SipListener {
    }
 
    public Registration getRegistration(String key) {
-      return (Registration) registrationsTable.getRegistrations().get(key);
+      return registrationsTable.getRegistration(key);
    }
 
    /**
@@ -172,7 +176,7 @@ public class UnitToUnitMobilityManager implements SipListener {
                ContactHeader contactHeader = SipUtils.createContactHeaderForRfss(
                      su.getInitialServingRfss(), ISSIConstants.TIA_P25_SU);
                registrationsTable.createRegistration(registrationURI, contactHeader, serviceProfile);
-               previousRegistration.put(su.getRadicalName(), su.getInitialServingRfss());
+               setPreviousRegistration(su.getRadicalName(), su.getInitialServingRfss());
             }
          }
       } catch (Exception ex) {
@@ -181,6 +185,31 @@ public class UnitToUnitMobilityManager implements SipListener {
       }
    }
 
+   /**
+    * When the RFSS restarts with a state store, bring the registrations and
+    * previous serving RFSSs back to where the previous run left them, so
+    * that the SUs need not register again.
+    */
+   private void restoreRegistrations() {
+      RfssStateStore stateStore = rfss.getStateStore();
+      if (stateStore == null || !stateStore.isRestored())
+         return;
+      registrationsTable.restore();
+      for (Map.Entry<String, String> entry :
+            stateStore.getRestoredPreviousRegistrations().entrySet()) {
+         RfssConfig previousRfss = topologyConfig.getRfssConfig(entry.getValue());
+         if (previousRfss != null)
+            setPreviousRegistration(entry.getKey(), previousRfss);
+      }
+   }
+
+   private void setPreviousRegistration(String radicalName, RfssConfig servingRfss) {
+      previousRegistration.put(radicalName, servingRfss);
+      RfssStateStore stateStore = rfss.getStateStore();
+      if (stateStore != null)
+         stateStore.putPreviousRegistration(radicalName, servingRfss.getDomainName());
+   }
+
    //-----------------------------------------------------------------------------
    private void processRegisterQuery(ServerTransaction serverTransaction,
          Request request, SuConfig suConfig) throws Exception {
@@ -280,16 +309,24 @@ logger.debug("processRegisterQuery(1): register="+ registrationsTable.hasRegistr
 
    /**
     * Process the register message: add, remove, update the bindings and manage
-    * also the expiration time.
+    * also the expiration time. Registers for the same SU are processed one at
+    * a time; registers for SUs in other registration shards run in parallel.
     * 
     * @param requestEvent -- the request event
     * @param serverTransaction -- the server transaction
     */
-   public synchronized void processRegister(RequestEvent requestEvent,
+   public void processRegister(RequestEvent requestEvent,
          ServerTransaction serverTransaction) {
+      String radicalName = getRadicalName(requestEvent.getRequest());
+      synchronized (registrationsTable.getLock(radicalName)) {
+         processRegister(requestEvent, serverTransaction, radicalName);
+      }
+   }
+
+   private void processRegister(RequestEvent requestEvent,
+         ServerTransaction serverTransaction, String radicalName) {
       try {
          Request request = requestEvent.getRequest();
-         String radicalName = getRadicalName(request);
 
          // Add the key if it is a new user:
          if (logger.isDebugEnabled()) {
@@ -809,7 +846,7 @@ logger.debug("processRegisterQuery(1): register="+ registrationsTable.hasRegistr
       ContactHeader oldContact, String callId) throws Exception
    {
       Request newRequest = createRegisterRequest(deRegisteringSu, 0);
-      previousRegistration.put(deRegisteringSu.getRadicalName(),
+      setPreviousRegistration(deRegisteringSu.getRadicalName(),
             registrationsTable.getRegistration( deRegisteringSu.getRadicalName()).getCurrentRfss());
 
       //RouteHeader route = headerFactory.createRouteHeader(oldContact.getAddress());
@@ -5,6 +5,7 @@ import gov.nist.p25.common.util.DateUtils;
 import gov.nist.p25.common.util.IpAddressUtility;
 import gov.nist.p25.issi.constants.ISSITesterConstants;
 import gov.nist.p25.issi.rfss.tester.RfssController;
+import gov.nist.p25.issi.utils.HttpCompression;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -135,9 +136,7 @@ public class ControlServlet extends HttpServlet {
                if( header)
                   retval = "<sip-messages>\n"+retval+"\n</sip-messages>";
                response.setContentType("text/xml");
-               response.setContentLength(retval.length());
-               response.getOutputStream().print(retval.toString());
-               response.getOutputStream().flush();
+               HttpCompression.writeBody(request, response, retval);
             } else {
                response.setContentLength(0);
                response.getOutputStream().flush();
@@ -149,9 +148,7 @@ public class ControlServlet extends HttpServlet {
                if( header)
                   retval = "<ptt-messages>\n"+retval+"\n</ptt-messages>";
                response.setContentType("text/xml");
-               response.setContentLength(retval.length());
-               response.getOutputStream().print(retval.toString());
-               response.getOutputStream().flush();
+               HttpCompression.writeBody(request, response, retval);
             } else {
                response.setContentLength(0);
                response.getOutputStream().flush();
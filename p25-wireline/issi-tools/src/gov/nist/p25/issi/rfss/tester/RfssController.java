@@ -7,6 +7,7 @@ import gov.nist.p25.issi.issiconfig.RfssConfig;
 import gov.nist.p25.issi.issiconfig.TopologyConfig;
 import gov.nist.p25.issi.rfss.RFSS;
 import gov.nist.p25.issi.testlauncher.TestControllerInterface;
+import gov.nist.p25.issi.transctlmgr.ptt.PttPacketLogger;
 
 import java.io.File;
 import java.io.FileReader;
@@ -366,6 +367,7 @@ logger.debug("RfssController: loadScenario....rfssName="+rfssConfig.getRfssName(
          }
          //TopologyConfig.closeRtpMessageLogStream();
          TesterUtility.closeRtpMessageLogStream();
+         PttPacketLogger.getInstance().closeLog();
 
          String messageLogFile = TestScript.getRtpMessageLog();
          logger.debug("RfssController: messageLogFile="+messageLogFile);
@@ -11,7 +11,7 @@ import gov.nist.p25.issi.issiconfig.TopologyConfig;
 import gov.nist.p25.issi.rfss.GroupHome;
 import gov.nist.p25.issi.rfss.GroupServing;
 import gov.nist.p25.issi.rfss.RFSS;
-import gov.nist.p25.issi.utils.ThreadedExecutor;
+import gov.nist.p25.issi.utils.WorkerPool;
 
 /**
  * This defines the actions that can be initiated by an RFSS abstraction.
@@ -290,18 +290,14 @@ public class RfssScript extends AbstractScenario
    class GroupHomeUnmuteTask implements Runnable {
       private GroupHome groupHome;
       private String domainName;
-      private long msec;
 
-      public GroupHomeUnmuteTask(GroupHome groupHome, String domainName, long msec) {
+      public GroupHomeUnmuteTask(GroupHome groupHome, String domainName) {
          this.groupHome = groupHome;
          this.domainName = domainName;
-         this.msec = msec;
       }
       @Override
       public void run() {
          try {
-            // impose delay 
-            Thread.sleep(msec);
             groupHome.sendUnmute(domainName);
          } catch (Exception ex) {
             System.out.println("GroupHomeUnmuteTask: " + ex);
@@ -347,7 +343,8 @@ public class RfssScript extends AbstractScenario
 
       //===Thread.sleep(msec);
       //===groupHome.sendUnmute(domainName);
-      new ThreadedExecutor().execute(
-          new GroupHomeUnmuteTask(groupHome, domainName, msec));
+      // impose delay
+      WorkerPool.PTT_CONTROL.schedule(
+          new GroupHomeUnmuteTask(groupHome, domainName), msec);
    }
 }
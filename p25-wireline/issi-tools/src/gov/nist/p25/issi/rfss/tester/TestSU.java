@@ -27,7 +27,7 @@ import gov.nist.p25.issi.rfss.UnitToUnitCall;
 import gov.nist.p25.issi.rfss.UnitToUnitCallControlResponseEvent;
 import gov.nist.p25.issi.testlauncher.TestHarness;
 //import gov.nist.p25.issi.transctlmgr.TransmissionControlSAP;
-import gov.nist.p25.issi.utils.ThreadedExecutor;
+import gov.nist.p25.issi.utils.WorkerPool;
 import gov.nist.p25.issi.utils.WarningCodes;
 
 import java.util.TimerTask;
@@ -95,88 +95,90 @@ public class TestSU implements SuInterface {
       }
    }
 
+   /**
+    * Delays an incoming INVITE, sending redundant provisional responses
+    * (one every minute -- see RFC 3216 section 13.2.1.1). Each run sends
+    * one round of responses and reschedules itself on the SIP_EVENTS pool,
+    * so no worker sleeps through the delay.
+    */
    class DelayTask implements Runnable {
       private CallSetupRequestEvent ccRequestEvent;
+      private int count;
+      private int niterations = 0;
 
       public DelayTask(CallSetupRequestEvent ccRequestEvent) {
          this.ccRequestEvent = ccRequestEvent;
-
-      }
-      private void sleep(long msec) {
-         try {
-            Thread.sleep( msec);
-         } catch(Exception ex) { }
+         count = suConfig.getInviteProcessingDelay() / 60;
+         if (count == 0 && suConfig.getInviteProcessingDelay() > 0)
+            count = 1;
+         logger.debug("DelayTask: count="+count);
       }
 
       public void run() {
-
-         // send redundant provisional responses (one every minute -- 
-         // see RFC 3216 section 13.2.1.1)
-         int count = suConfig.getInviteProcessingDelay() / 60;
-         if (count == 0 && suConfig.getInviteProcessingDelay() > 0)
-            count = 1;
+         if (niterations >= count) {
+            actuallyHandleSetupIndicate(ccRequestEvent);
+            return;
+         }
          SuConfig calledSu = ccRequestEvent.getCallSegment().getCalledSuConfig();
          CallParamContent callParamContent = ccRequestEvent.getCallSegment().getCallParamContent();
 
-         logger.debug("DelayTask: run(): count="+count);
 	 boolean isACRequested = false;
 	 boolean isACSupported = false;
-         for (int niterations = 0; niterations < count; niterations++) {
-            try {
-               // #557 Remove Ringing for 12.7.1.x AC/DC
-               isACRequested=callParamContent.getCallParam().isAvailabilityCheckRequested();
-               isACSupported=calledSu.getUserServiceProfile().isAvailabilityCheckSupported();
-               logger.debug("run(#557): isACRequested="+isACRequested+" isACSupported="+isACSupported);
-
-               if (getCurrentRfss().getRFSS().isRfResourcesAvailable()) {
-
-                  logger.debug("run(): isRfResourcesAvailable=true RINGING-"+niterations);
-
-                  // #557
-                  if (calledSu.getUserServiceProfile().isAvailabilityCheckSupported()) {
-                    logger.debug("run(): calledSu.isAvailabilityCheckSupported=true");
-                    ccSap.ccSetupIndicateResponse(ccRequestEvent, Response.RINGING);
-                    //sleep( 2L);
+         boolean done = false;
+         try {
+            // #557 Remove Ringing for 12.7.1.x AC/DC
+            isACRequested=callParamContent.getCallParam().isAvailabilityCheckRequested();
+            isACSupported=calledSu.getUserServiceProfile().isAvailabilityCheckSupported();
+            logger.debug("run(#557): isACRequested="+isACRequested+" isACSupported="+isACSupported);
+
+            if (getCurrentRfss().getRFSS().isRfResourcesAvailable()) {
+
+               logger.debug("run(): isRfResourcesAvailable=true RINGING-"+niterations);
+
+               // #557
+               if (calledSu.getUserServiceProfile().isAvailabilityCheckSupported()) {
+                 logger.debug("run(): calledSu.isAvailabilityCheckSupported=true");
+                 ccSap.ccSetupIndicateResponse(ccRequestEvent, Response.RINGING);
+                 //sleep( 2L);
 		  }
 
-               } else {
+            } else {
 
-                  //isACRequested=callParamContent.getCallParam().isAvailabilityCheckRequested();
-                  //isACSupported=calledSu.getUserServiceProfile().isAvailabilityCheckSupported();
-                  //logger.debug("run(): isACRequested="+isACRequested+" isACSupported="+isACSupported);
+               //isACRequested=callParamContent.getCallParam().isAvailabilityCheckRequested();
+               //isACSupported=calledSu.getUserServiceProfile().isAvailabilityCheckSupported();
+               //logger.debug("run(): isACRequested="+isACRequested+" isACSupported="+isACSupported);
 
-                  if (calledSu.getUserServiceProfile().isAvailabilityCheckSupported()) {
-                     if (callParamContent.getCallParam().isAvailabilityCheckRequested()) {
+               if (calledSu.getUserServiceProfile().isAvailabilityCheckSupported()) {
+                  if (callParamContent.getCallParam().isAvailabilityCheckRequested()) {
 
-                        // #375 12.6.1 <ringing>
+                     // #375 12.6.1 <ringing>
 			// 12.1.1.3 and 12.1.1.4
-                        logger.debug("run(): RINGING instead of SESSION_PROGRESS...");
-                        ccSap.ccSetupIndicateResponse(ccRequestEvent, Response.RINGING);
+                     logger.debug("run(): RINGING instead of SESSION_PROGRESS...");
+                     ccSap.ccSetupIndicateResponse(ccRequestEvent, Response.RINGING);
 			
 			//=== I dont know if the RFC-3612 is applied here !! 
-                        ccSap.ccSetupIndicateResponse(ccRequestEvent, Response.SESSION_PROGRESS);
+                     ccSap.ccSetupIndicateResponse(ccRequestEvent, Response.SESSION_PROGRESS);
 
-                     } else {
-                        break;
-                     }
                   } else {
-                     break;
+                     done = true;
                   }
+               } else {
+                  done = true;
                }
-
-            } catch (Exception e1) {
-               logger.error("unexpected exception", e1);
             }
 
-            int timeToSleep = suConfig.getInviteProcessingDelay() - niterations * 60;
-            int msec = (timeToSleep < 60) ? timeToSleep : 60;
-            try {
-               Thread.sleep(msec * 1000);
-            } catch (InterruptedException e) {
-               e.printStackTrace();
-            }
-         }  // for-loop
-         actuallyHandleSetupIndicate(ccRequestEvent);
+         } catch (Exception e1) {
+            logger.error("unexpected exception", e1);
+         }
+         if (done) {
+            actuallyHandleSetupIndicate(ccRequestEvent);
+            return;
+         }
+
+         int timeToSleep = suConfig.getInviteProcessingDelay() - niterations * 60;
+         int msec = (timeToSleep < 60) ? timeToSleep : 60;
+         niterations++;
+         WorkerPool.SIP_EVENTS.schedule(this, msec * 1000L);
       }
    }
 
@@ -384,7 +386,7 @@ public class TestSU implements SuInterface {
          if (count == 0 && delay > 0)
             count = 1;
          if (count >= 1) {
-            new ThreadedExecutor().execute(new DelayTask(ccRequestEvent));
+            WorkerPool.SIP_EVENTS.execute(new DelayTask(ccRequestEvent));
          } else {
             this.actuallyHandleSetupIndicate(ccRequestEvent);
          }
@@ -904,18 +906,14 @@ public class TestSU implements SuInterface {
    class ServingUnmuteTask implements Runnable {
       private String groupRadicalName;
       private SuConfig suConfig;
-      private long msec;
 
-      public ServingUnmuteTask(String groupRadicalName, SuConfig suConfig, long msec) {
+      public ServingUnmuteTask(String groupRadicalName, SuConfig suConfig) {
          this.groupRadicalName = groupRadicalName;
          this.suConfig = suConfig;
-         this.msec = msec;
       }
       @Override
       public void run() {
          try {
-            // impose delay 
-            Thread.sleep(msec);
             TestSU.this.tcSap.sendUnmute(groupRadicalName, suConfig);
          } catch (Exception ex) {
             testHarness.fail("ServingUnmuteTask: ", ex);
@@ -926,13 +924,14 @@ public class TestSU implements SuInterface {
    //#682 11.4.x serving sendMute
    public void sendMute(String groupRadicalName) throws Exception {
       //tcSap.sendMute(groupRadicalName, suConfig);
-      new ThreadedExecutor().execute(
+      WorkerPool.PTT_CONTROL.execute(
           new ServingMuteTask(groupRadicalName,suConfig));
    }
    public void sendUnmute(String groupRadicalName, long msec) throws Exception {
       //tcSap.sendUnmute(groupRadicalName, suConfig);
-      new ThreadedExecutor().execute(
-          new ServingUnmuteTask(groupRadicalName,suConfig,msec));
+      // impose delay
+      WorkerPool.PTT_CONTROL.schedule(
+          new ServingUnmuteTask(groupRadicalName,suConfig), msec);
    }
    public void sleep(long msec) {
       logger.debug("TestSU: sleep(): "+msec);
@@ -6,10 +6,17 @@ import gov.nist.p25.issi.issiconfig.PacketMonitorWebServerAddress;
 import gov.nist.p25.issi.issiconfig.WebServerAddress;
 import gov.nist.p25.issi.rfss.tester.ISSITesterConfiguration;
 
+import gov.nist.p25.issi.utils.HttpCompression;
+import gov.nist.p25.issi.utils.WorkerPool;
+
 import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import javax.swing.JOptionPane;
 
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
@@ -57,10 +64,23 @@ public class RemoteTestController implements TestControllerInterface {
     */
    public RemoteTestController(TestStatusInterface gui) throws Exception {
       this.gui = gui;      
-      httpClient = new HttpClient();
+      httpClient = createHttpClient();
       issiTesterConfig = gui.getIssiTesterConfiguration();
    }
 
+   /**
+    * Traces are fetched from all packet monitors and emulators at once, so
+    * the client must allow one connection per node.
+    */
+   private static HttpClient createHttpClient() {
+      MultiThreadedHttpConnectionManager connectionManager =
+         new MultiThreadedHttpConnectionManager();
+      int maxConnections = WorkerPool.TRACE_IO.getMaxThreads();
+      connectionManager.setMaxConnectionsPerHost(maxConnections);
+      connectionManager.setMaxTotalConnections(maxConnections);
+      return new HttpClient(connectionManager);
+   }
+
    /**
     * Client side web server for posting results. Enable this code if you want
     * to have the testers post results to the Client. Starting the web server
@@ -112,6 +132,7 @@ public class RemoteTestController implements TestControllerInterface {
          }
       }
       method.setQueryString(nvPairs);
+      HttpCompression.acceptGzip(method);
 
       try {
          int rc = httpClient.executeMethod(method);
@@ -125,7 +146,7 @@ public class RemoteTestController implements TestControllerInterface {
          }
 
          if (resultFlag) {
-            String retval = method.getResponseBodyAsString();
+            String retval = HttpCompression.readBody(method);
             return retval;
          } else
             return null;
@@ -164,24 +185,91 @@ public class RemoteTestController implements TestControllerInterface {
       if ( issiTesterConfig.getPacketMonitors().size() == 0) 
          throw new Exception("Packet monitors are not configured!");
 
-      StringBuffer sbuf = new StringBuffer();
+      return getMonitorTraces("SIP trace", "/sniffer/siptrace");
+   }
+
+   /**
+    * Get a trace from every packet monitor, in parallel. The traces are
+    * concatenated in the order the monitors are configured.
+    * 
+    * @param what -- name of the trace, for logging.
+    * @param path -- the trace servlet path.
+    * @return -- the concatenated traces.
+    * @throws Exception if any of the monitors fails.
+    */
+   private String getMonitorTraces(String what, final String path)
+      throws Exception {
+
+      TraceCollector collector = new TraceCollector(what);
       for (PacketMonitorWebServerAddress pmc: issiTesterConfig.getPacketMonitors()) {
-         String host = pmc.getIpAddress();
-         int port = pmc.getHttpPort();
-         String url = "http://" + host + ":" + port + "/sniffer/siptrace";
+         final String url = "http://" + pmc.getIpAddress() + ":"
+            + pmc.getHttpPort() + path;
+         collector.add(url, new Callable<String>() {
+            public String call() throws Exception {
+               logger.info("getting from URL : " + url);
+               GetMethod method = new GetMethod(url);
+               HttpCompression.acceptGzip(method);
+               try {
+                  int rc = httpClient.executeMethod(method);
+                  String trace = HttpCompression.readBody(method);
+                  if (rc != 200) {
+                     logger.error("Unexpected return retrieving " + url + " " + rc);
+                     throw new Exception("Unexpected return code " + rc);
+                  }
+                  return trace;
+               } finally {
+                  method.releaseConnection();
+               }
+            }
+         });
+      }
 
-         logger.info("getting from URL : " + url);
-         GetMethod method = new GetMethod(url);
-         int rc = httpClient.executeMethod(method);
-         String trace = method.getResponseBodyAsString();
-         if (rc != 200) {
-            throw new Exception("Unexpected return code " + rc);
-         }
-         sbuf.append(trace);
+      StringBuffer sbuf = new StringBuffer();
+      for (TraceCollector.Result result: collector.collect()) {
+         if (result.error != null)
+            throw result.error;
+         sbuf.append(result.body);
       }
       return sbuf.toString();
    }
 
+   /**
+    * Get a trace from every emulated RFSS, in parallel. Emulators that fail
+    * are logged and skipped.
+    * 
+    * @param command -- the trace command to send.
+    * @return -- the traces in the order the emulators are configured, or an
+    *            empty list if none of them answered.
+    */
+   private List<String> getEmulatorTraces(final String command) {
+
+      TraceCollector collector = new TraceCollector(command);
+      for (final WebServerAddress ws: issiTesterConfig.getEmulatorConfigurations()) {
+         collector.add(ws.getHttpControlUrl(), new Callable<String>() {
+            public String call() throws Exception {
+               return sendHttpRequest(ws, true,
+                  new NameValuePair[] { new NameValuePair(
+                     ISSITesterConstants.COMMAND, command)
+                  });
+            }
+         });
+      }
+
+      List<String> traces = new ArrayList<String>();
+      try {
+         for (TraceCollector.Result result: collector.collect()) {
+            if (result.error != null)
+               logger.error("Unexpected exception getting trace " + command
+                  + " from " + result.endpoint, result.error);
+            else
+               traces.add(result.body);
+         }
+      } catch (InterruptedException ex) {
+         logger.error("Interrupted getting trace " + command, ex);
+      }
+      return traces;
+   }
+
    /**
     * This method is called in interactive mode to tell the tester to run to
     * the given scenario.
@@ -324,17 +412,8 @@ public class RemoteTestController implements TestControllerInterface {
 
    public String getStackSipLogs() {
       StringBuffer sbuf = new StringBuffer();
-      for (WebServerAddress ws: issiTesterConfig.getEmulatorConfigurations()) {
-         try {
-            String msg = sendHttpRequest(ws, true,
-               new NameValuePair[] { new NameValuePair(
-                  ISSITesterConstants.COMMAND,
-                  ISSITesterConstants.GET_SIP_TRACE)
-            });
-            sbuf.append(msg);
-         } catch (Exception ex) {
-            logger.error("Unexpected exception getting trace ", ex);
-         }
+      for (String msg: getEmulatorTraces(ISSITesterConstants.GET_SIP_TRACE)) {
+         sbuf.append(msg);
       }
       return sbuf.toString();
    }
@@ -371,25 +450,15 @@ public class RemoteTestController implements TestControllerInterface {
    }
 
    public String getStackPttLogs() {
-      boolean gotTrace = false;
+      List<String> traces = getEmulatorTraces(ISSITesterConstants.GET_PTT_TRACE);
       StringBuffer sbuf = new StringBuffer();
-      for (WebServerAddress ws: issiTesterConfig.getEmulatorConfigurations()) {
-         try {
-            String msg = sendHttpRequest(ws, true,
-               new NameValuePair[] { new NameValuePair(
-                  ISSITesterConstants.COMMAND,
-                  ISSITesterConstants.GET_PTT_TRACE)
-               });
-            sbuf.append(msg);
-            gotTrace = true;
-         }
-	 catch (Exception ex) {
-            logger.error("Unexpected exception getStackPttLogs: ", ex);
-         }
+      for (String msg: traces) {
+         sbuf.append(msg);
       }
 
-      logger.debug("RemoteTestController: ws.getStackPttLogs(): sbuf=\n"+sbuf.toString());
-      if (!gotTrace)
+      if (logger.isDebugEnabled())
+         logger.debug("RemoteTestController: ws.getStackPttLogs(): sbuf=\n"+sbuf.toString());
+      if (traces.isEmpty())
          return null;
       else
          return sbuf.toString();
@@ -405,23 +474,7 @@ public class RemoteTestController implements TestControllerInterface {
       if ( issiTesterConfig.getPacketMonitors().size() == 0 ) 
          throw new Exception ("Packet monitors are not running!");
       
-      StringBuffer sbuf = new StringBuffer();
-      for (PacketMonitorWebServerAddress pmc : issiTesterConfig.getPacketMonitors()) {
-         String host = pmc.getIpAddress();
-         int port = pmc.getHttpPort();
-         String url = "http://" + host + ":" + port + "/sniffer/ptttrace";
-         logger.info("getting from URL : " + url);
-
-         GetMethod method = new GetMethod(url);
-         int rc = httpClient.executeMethod(method);
-         String trace = method.getResponseBodyAsString();
-         if (rc != 200) {
-            logger.error("Unexpected return retrieving  PTT trace." + rc);
-            throw new Exception("Unexpected return code " + rc);
-         }
-         sbuf.append(trace);
-      }
-      return sbuf.toString();
+      return getMonitorTraces("PTT trace", "/sniffer/ptttrace");
    }
 
    /*
@@ -512,7 +565,9 @@ public class RemoteTestController implements TestControllerInterface {
    }
 
    public void reset() {
-      httpClient = new HttpClient();
+      if (httpClient.getHttpConnectionManager() instanceof MultiThreadedHttpConnectionManager)
+         ((MultiThreadedHttpConnectionManager) httpClient.getHttpConnectionManager()).shutdown();
+      httpClient = createHttpClient();
    }
 
    public String getErrorLog() throws Exception {
@@ -0,0 +1,110 @@
+//
+package gov.nist.p25.issi.testlauncher;
+
+import gov.nist.p25.issi.utils.WorkerPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Fetches traces from several packet monitors or emulators at once, so that
+ * collecting them takes as long as the slowest node rather than the sum of
+ * all of them. The fetches run on the trace I/O worker pool. Results come
+ * back in the order the endpoints were added, each with the time its fetch
+ * took.
+ */
+class TraceCollector {
+
+   private static Logger logger = Logger.getLogger(TraceCollector.class);
+
+   static class Result {
+      final String endpoint;
+      String body;
+      Exception error;
+      long millis;
+
+      Result(String endpoint) {
+         this.endpoint = endpoint;
+      }
+   }
+
+   private final String what;
+   private final List<String> endpoints = new ArrayList<String>();
+   private final List<Callable<String>> fetches = new ArrayList<Callable<String>>();
+
+   /**
+    * @param what -- name of the trace, for logging.
+    */
+   TraceCollector(String what) {
+      this.what = what;
+   }
+
+   void add(String endpoint, Callable<String> fetch) {
+      endpoints.add(endpoint);
+      fetches.add(fetch);
+   }
+
+   /**
+    * Run every fetch and wait for all of them.
+    */
+   List<Result> collect() throws InterruptedException {
+      final List<Result> results = new ArrayList<Result>(fetches.size());
+      List<FutureTask<Result>> tasks = new ArrayList<FutureTask<Result>>(fetches.size());
+      for (int i = 0; i < fetches.size(); i++) {
+         final Result result = new Result(endpoints.get(i));
+         final Callable<String> fetch = fetches.get(i);
+         results.add(result);
+         tasks.add(new FutureTask<Result>(new Callable<Result>() {
+            public Result call() {
+               long start = System.currentTimeMillis();
+               try {
+                  result.body = fetch.call();
+               } catch (Exception ex) {
+                  result.error = ex;
+               }
+               result.millis = System.currentTimeMillis() - start;
+               return result;
+            }
+         }));
+      }
+      if (tasks.isEmpty())
+         return results;
+
+      long start = System.currentTimeMillis();
+      for (FutureTask<Result> task : tasks) {
+         WorkerPool.TRACE_IO.execute(task);
+      }
+      for (int i = 0; i < tasks.size(); i++) {
+         try {
+            tasks.get(i).get();
+         } catch (ExecutionException ex) {
+            // the task records its own failure
+         } catch (CancellationException ex) {
+            results.get(i).error = new RejectedExecutionException(
+               "discarded by the full " + WorkerPool.TRACE_IO.getName() + " pool");
+         }
+      }
+
+      if (logger.isInfoEnabled()) {
+         StringBuffer sbuf = new StringBuffer();
+         sbuf.append("collected " + what + " from " + results.size()
+               + " endpoints in " + (System.currentTimeMillis() - start) + " ms:");
+         for (Result result : results) {
+            sbuf.append("\n   " + result.endpoint + " " + result.millis + " ms ");
+            if (result.error != null)
+               sbuf.append("failed: " + result.error.getMessage());
+            else
+               sbuf.append(result.body == null ? 0 : result.body.length()).append(" chars");
+         }
+         logger.info(sbuf.toString());
+      }
+      return results;
+   }
+}
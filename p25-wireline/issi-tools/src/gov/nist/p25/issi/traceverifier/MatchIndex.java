@@ -0,0 +1,137 @@
+//
+package gov.nist.p25.issi.traceverifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hash index for checking captured messages against expected (template)
+ * messages without comparing every template with every capture.
+ * <p>
+ * Each capture is filed under one or more keys, from coarse (e.g. the SIP
+ * method) to fine (e.g. method, From and To). A template is looked up under
+ * the finest key it fully determines, so it is only compared with the
+ * captures that can possibly match it. A capture may satisfy any number of
+ * templates.
+ * <p>
+ * Captures and templates can be added in any order. Templates that have no
+ * match yet stay pending and are resolved as matching captures arrive, so
+ * the index can run while a test is in progress.
+ *
+ * @param <C> the captured message type.
+ * @param <T> the template type.
+ */
+public abstract class MatchIndex<C, T> {
+
+   private final Map<Object, List<C>> captures = new HashMap<Object, List<C>>();
+   private final Map<Object, Collection<T>> pending = new HashMap<Object, Collection<T>>();
+   private int captureCount;
+   private int pendingCount;
+
+   /**
+    * @return the keys a capture is filed under.
+    */
+   protected abstract Object[] getKeys(C captured);
+
+   /**
+    * @return the key to look a template up under; it must be one of the
+    *         keys of every capture that can match the template.
+    */
+   protected abstract Object getTemplateKey(T template);
+
+   protected abstract boolean match(C captured, T template);
+
+   /**
+    * Add a capture, resolving any pending templates it matches.
+    *
+    * @return the templates this capture resolved.
+    */
+   public synchronized List<T> addCaptured(C captured) {
+      List<T> resolved = null;
+      for (Object key : getKeys(captured)) {
+         List<C> list = captures.get(key);
+         if (list == null) {
+            list = new ArrayList<C>(4);
+            captures.put(key, list);
+         }
+         list.add(captured);
+
+         Collection<T> waiting = pending.get(key);
+         if (waiting == null)
+            continue;
+         for (Iterator<T> it = waiting.iterator(); it.hasNext();) {
+            T template = it.next();
+            if (match(captured, template)) {
+               it.remove();
+               pendingCount--;
+               if (resolved == null)
+                  resolved = new ArrayList<T>();
+               resolved.add(template);
+            }
+         }
+         if (waiting.isEmpty())
+            pending.remove(key);
+      }
+      captureCount++;
+      return resolved == null ? new ArrayList<T>(0) : resolved;
+   }
+
+   /**
+    * Find a capture matching a template.
+    *
+    * @return the first matching capture, or null.
+    */
+   public synchronized C find(T template) {
+      List<C> list = captures.get(getTemplateKey(template));
+      if (list != null) {
+         for (C captured : list) {
+            if (match(captured, template))
+               return captured;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Expect a template: resolve it now if a matching capture has been
+    * added, otherwise keep it pending until one is.
+    *
+    * @return true if the template is already resolved.
+    */
+   public synchronized boolean expect(T template) {
+      if (find(template) != null)
+         return true;
+      Object key = getTemplateKey(template);
+      Collection<T> waiting = pending.get(key);
+      if (waiting == null) {
+         waiting = new ArrayList<T>(4);
+         pending.put(key, waiting);
+      }
+      waiting.add(template);
+      pendingCount++;
+      return false;
+   }
+
+   /**
+    * @return the templates still waiting for a match.
+    */
+   public synchronized List<T> getPending() {
+      List<T> list = new ArrayList<T>(pendingCount);
+      for (Collection<T> waiting : pending.values()) {
+         list.addAll(waiting);
+      }
+      return list;
+   }
+
+   public synchronized int getPendingCount() {
+      return pendingCount;
+   }
+
+   public synchronized int getCaptureCount() {
+      return captureCount;
+   }
+}
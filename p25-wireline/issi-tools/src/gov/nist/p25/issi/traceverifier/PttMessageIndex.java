@@ -0,0 +1,39 @@
+//
+package gov.nist.p25.issi.traceverifier;
+
+import gov.nist.p25.issi.traceviewer.PttMessageData;
+
+import java.util.Properties;
+
+/**
+ * Indexes captured PTT messages by ISSI packet type for matching against
+ * the reference messages of a test. A capture matches a reference message
+ * if it has every matched property of the reference with the same value.
+ */
+public class PttMessageIndex extends MatchIndex<PttMessageData, PttMessageData> {
+
+   private static final String PACKET_TYPE = "issi-packet-type.packetType";
+   private static final String ANY = "*";
+
+   protected Object[] getKeys(PttMessageData captured) {
+      String packetType = captured.getProperties().getProperty(PACKET_TYPE);
+      return packetType == null ? new Object[] { ANY }
+            : new Object[] { ANY, packetType };
+   }
+
+   protected Object getTemplateKey(PttMessageData template) {
+      String packetType = template.getProperties().getProperty(PACKET_TYPE);
+      return packetType == null ? ANY : packetType;
+   }
+
+   protected boolean match(PttMessageData captured, PttMessageData template) {
+      Properties capturedProperties = captured.getProperties();
+      Properties templateProperties = template.getProperties();
+      for (String name : templateProperties.stringPropertyNames()) {
+         if (!templateProperties.getProperty(name).equals(
+               capturedProperties.getProperty(name)))
+            return false;
+      }
+      return true;
+   }
+}
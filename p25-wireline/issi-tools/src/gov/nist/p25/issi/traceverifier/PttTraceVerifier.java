@@ -71,7 +71,7 @@ public class PttTraceVerifier {
          }
          logger.debug("trace file name  = " + dirFileName);
 
-         freader = new FileReader(dirFile);
+         freader = new FileReader(dirFileName);
          breader = new BufferedReader(freader);
          systemTopologyName = refDirName + "/systemtopology.xml";
 
@@ -81,6 +81,7 @@ public class PttTraceVerifier {
             sbuf.append(line + "\n");
          }
          sbuf.append("</pttmessages>\n");
+         freader.close();
          bytes = sbuf.toString().getBytes();
          bais = new ByteArrayInputStream(bytes);
          PttTraceLoader pttRefTraceLoader = new PttTraceLoader(bais);
@@ -94,23 +95,16 @@ public class PttTraceVerifier {
                continue;
             }
 
-            List<MessageData> capturedMessages = pttTraceLoader.getRecords(rfssConfig.getDomainName());
+            PttMessageIndex index = new PttMessageIndex();
+            for (MessageData messageData : pttTraceLoader.getRecords(rfssConfig.getDomainName())) {
+               index.addCaptured((PttMessageData) messageData);
+            }
             for (MessageData messageData : refMessages) {
-               PttMessageData pttMessageData = (PttMessageData) messageData;
-               record.statusFlag = StatusFlag.FAIL;
-               
-               for (MessageData messageData1 : capturedMessages) {
-                  PttMessageData pttMessageData1 = (PttMessageData) messageData;
-                  //+++if (pttMessageData1.match(pttMessageData)) {
-                  if ( match( pttMessageData1, pttMessageData)) {
-                     record.statusFlag = StatusFlag.PASS;
-                     break;
-                  }
-               }
-
-               if (record.statusFlag != StatusFlag.PASS) {
+               if (index.find((PttMessageData) messageData) == null) {
+                  record.statusFlag = StatusFlag.FAIL;
                   break;
                }
+               record.statusFlag = StatusFlag.PASS;
             }
             logger.debug("Ptt Verification status for Rfss " + rfssConfig.getRfssName()
                + " Status " + record.statusFlag);
@@ -124,16 +118,4 @@ public class PttTraceVerifier {
          return record;
       }
    }
-
-   // transfer from PttMessageData to here
-   private static boolean match(PttMessageData ref, PttMessageData that) {
-      for ( String name: that.getProperties().stringPropertyNames())
-      {
-         if ( ref.getProperties().get(name) == null) 
-            return false;
-         if ( !ref.getProperties().get(name).equals(that.getProperties().get(name)))
-            return false;
-      }
-      return true;
-   }
 }
@@ -0,0 +1,114 @@
+//
+package gov.nist.p25.issi.traceverifier;
+
+import gov.nist.javax.sip.address.SipUri;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.p25.issi.p25body.ContentList;
+
+import java.text.ParseException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.sip.header.CallIdHeader;
+import javax.sip.header.ExpiresHeader;
+import javax.sip.header.HeaderAddress;
+import javax.sip.message.Message;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Indexes captured SIP messages by method (requests) or status code
+ * (responses), and by the From and To users, for matching against the
+ * reference messages of a test.
+ */
+public class SipMessageIndex extends MatchIndex<SIPMessage, SipMessageIndex.Template> {
+
+   private static Logger logger = Logger.getLogger(SipMessageIndex.class);
+
+   /**
+    * A reference message prepared for matching: the Call-ID and Expires
+    * headers are arbitrary, so they are removed from the match template.
+    */
+   public static class Template {
+      private final SIPMessage message;
+      private final ContentList contentList;
+      private final boolean expiresRemoved;
+
+      public Template(Message reference) throws ParseException {
+         message = (SIPMessage) reference.clone();
+         contentList = ContentList.getContentListFromMessage(message);
+         message.removeHeader(CallIdHeader.NAME);
+         expiresRemoved = message.getHeader(ExpiresHeader.NAME) != null;
+         message.removeHeader(ExpiresHeader.NAME);
+      }
+
+      public SIPMessage getMessage() {
+         return message;
+      }
+
+      public String toString() {
+         return message.toString();
+      }
+   }
+
+   private final Map<SIPMessage, ContentList> contentLists =
+      new IdentityHashMap<SIPMessage, ContentList>();
+
+   private static String getKind(SIPMessage message) {
+      if (message instanceof SIPRequest)
+         return "REQ:" + ((SIPRequest) message).getMethod().toUpperCase();
+      else
+         return "RSP:" + ((SIPResponse) message).getStatusCode();
+   }
+
+   private static String getUser(HeaderAddress header) {
+      if (header == null || header.getAddress() == null
+            || !(header.getAddress().getURI() instanceof SipUri))
+         return null;
+      return ((SipUri) header.getAddress().getURI()).getUser();
+   }
+
+   /**
+    * @return the kind plus From and To users, or null if either is unknown.
+    */
+   private static String getFineKey(String kind, SIPMessage message) {
+      String fromUser = getUser(message.getFrom());
+      String toUser = getUser(message.getTo());
+      if (fromUser == null || toUser == null)
+         return null;
+      // header values are matched ignoring case
+      return kind + "|" + fromUser.toLowerCase() + "|" + toUser.toLowerCase();
+   }
+
+   protected Object[] getKeys(SIPMessage captured) {
+      String kind = getKind(captured);
+      String fineKey = getFineKey(kind, captured);
+      return fineKey == null ? new Object[] { kind } : new Object[] { kind, fineKey };
+   }
+
+   protected Object getTemplateKey(Template template) {
+      String kind = getKind(template.message);
+      String fineKey = getFineKey(kind, template.message);
+      return fineKey == null ? kind : fineKey;
+   }
+
+   protected boolean match(SIPMessage captured, Template template) {
+      if (!captured.match(template.message))
+         return false;
+      if (template.expiresRemoved && captured.getExpires() == null)
+         return false;
+      ContentList contentList = contentLists.get(captured);
+      if (contentList == null) {
+         try {
+            contentList = ContentList.getContentListFromMessage(captured);
+         } catch (ParseException ex) {
+            logger.error("Cannot parse the content of a captured message", ex);
+            return false;
+         }
+         contentLists.put(captured, contentList);
+      }
+      return template.contentList.match(contentList);
+   }
+}
@@ -1,14 +1,12 @@
 //
 package gov.nist.p25.issi.traceverifier;
 
-import gov.nist.javax.sip.message.SIPRequest;
-import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.message.SIPMessage;
 
 import gov.nist.p25.issi.constants.ISSITesterConstants;
 import gov.nist.p25.issi.issiconfig.RfssConfig;
 import gov.nist.p25.issi.issiconfig.SystemTopologyParser;
 import gov.nist.p25.issi.issiconfig.TopologyConfig;
-import gov.nist.p25.issi.p25body.ContentList;
 import gov.nist.p25.issi.rfss.tester.ISSITesterConfiguration;
 //import gov.nist.p25.issi.rfss.tester.TestMessages;
 //import gov.nist.p25.issi.rfss.tester.TestMessagesParser;
@@ -23,8 +21,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.util.List;
 
-import javax.sip.header.CallIdHeader;
-import javax.sip.header.ExpiresHeader;
 import javax.sip.message.Request;
 import javax.sip.message.Response;
 
@@ -141,87 +137,30 @@ public class SipTraceVerifier {
             testMessages = new TestMessagesParser(traceFileName).parse();
          }
 
-         for (Request request : testMessages.getRequests()) {
-            SIPRequest testSipRequest = (SIPRequest) request.clone();
-            // Get the template sip request content list.
-            ContentList contentList = ContentList.getContentListFromMessage(testSipRequest);
-            /*
-             * We dont care about the call ID header in making the
-             * comparison. However call id header is mandatory and if the
-             * request did not have a call id header it would fail in
-             * transaction matching anyways.
-             */
-            testSipRequest.removeHeader(CallIdHeader.NAME);
-            /*
-             * The contents of the expires header are arbitrary so remove it
-             * from the match template.
-             */
-            boolean expiresRemoved = (ExpiresHeader)request.getHeader(ExpiresHeader.NAME) != null;
-            testSipRequest.removeHeader(ExpiresHeader.NAME);
-            boolean matchFound = false;
-
-            for (SipMessageData smd : sipMessageData) {
-
-               if (!smd.getToRfssId().equals(rfssConfig.getDomainName())) {
-                  logger.debug("rfssId is not matching  conntinue");
-                  continue;
-               }
-
-               if (smd.getSipMessage() instanceof SIPRequest) {
-                  
-                  SIPRequest capturedRequest = (SIPRequest) smd.getSipMessage();
-                  ContentList contentList1 = ContentList.getContentListFromMessage(capturedRequest);
-
-                  if (((SIPRequest) capturedRequest).match(testSipRequest)
-                        && ((!expiresRemoved) || capturedRequest.getExpires() != null)
-                        && contentList.match(contentList1)) {
-                     matchFound = true;
-                     break;
-                  }
-               }
-            }
+         SipMessageIndex index = new SipMessageIndex();
+         for (SipMessageData smd : sipMessageData) {
+            if (smd.getToRfssId().equals(rfssConfig.getDomainName()))
+               index.addCaptured((SIPMessage) smd.getSipMessage());
+         }
 
-            if (!matchFound) {
-               logger.error("Could not find a match for this message :\n" + testSipRequest);
+         for (Request request : testMessages.getRequests()) {
+            SipMessageIndex.Template template = new SipMessageIndex.Template(request);
+            if (index.find(template) == null) {
+               logger.error("Could not find a match for this message :\n" + template);
                logger.debug("messages to search =  " + sipMessageData);
                record.failureReason = rfssConfig.getRfssName() 
                      + ": Could not find a match for this message "
-                     + testSipRequest;
+                     + template;
                record.statusFlag = StatusFlag.FAIL;
                return;
             }
          }
          for (Response response : testMessages.getResponses()) {
-
-            SIPResponse testSipResponse = (SIPResponse) response.clone();
-            testSipResponse.removeHeader(CallIdHeader.NAME);
-
-            ContentList testContentList = ContentList.getContentListFromMessage(testSipResponse);
-
-            boolean expiresRemoved = testSipResponse.getHeader(ExpiresHeader.NAME) != null;
-            testSipResponse.removeHeader(ExpiresHeader.NAME);
-            response.removeHeader(ExpiresHeader.NAME);
-            boolean matchFound = false;
-            for (SipMessageData capturedMessage : sipMessageData) {
-
-               if (!capturedMessage.getToRfssId().equals( rfssConfig.getDomainName()))
-                  continue;
-
-               SIPResponse capturedResponse = (SIPResponse) capturedMessage.getSipMessage();
-               ContentList contentList = ContentList.getContentListFromMessage(capturedResponse);
-               testSipResponse.removeHeader(CallIdHeader.NAME);
-
-               if (((SIPResponse) capturedResponse).match(testSipResponse)
-                     && ((!expiresRemoved) || capturedResponse.getExpires() != null)
-                     && testContentList.match(contentList)) {
-                  matchFound = true;
-                  break;
-               }
-            }
-            if (!matchFound) {
+            SipMessageIndex.Template template = new SipMessageIndex.Template(response);
+            if (index.find(template) == null) {
                record.failureReason = rfssConfig.getRfssName() 
                      + ": Could not find a match for this message:\n "
-                     + testSipResponse;
+                     + template;
                logger.error(record.failureReason);
                record.statusFlag = StatusFlag.FAIL;
                return;
@@ -528,7 +528,8 @@ public class PttPointToMultipointSession implements SmfRxListener,
             return;
          }
 
-         IMBEVoiceBlock[] imbeVoices = pttPacket.getIMBEVoiceBlockArray();
+         // encode the voice once for every peer
+         IMBEVoiceBody imbeVoices = new IMBEVoiceBody(pttPacket.getIMBEVoiceBlockArray());
          int unitId = pttPacket.getPTTControlWord().getUnitId();
          int systemId = pttPacket.getPTTControlWord().getSystemId();
          TransmitPriorityType ptype = pttPacket.getPTTControlWord().getTransmitPriority();
@@ -742,7 +743,8 @@ public class PttPointToMultipointSession implements SmfRxListener,
       try {
          MmfSession mySession = (MmfSession) event.getSource();
          P25Payload pttPacket = event.getPttPacket();
-         IMBEVoiceBlock[] imbeVoices = pttPacket.getIMBEVoiceBlockArray();
+         // encode the voice once for every peer
+         IMBEVoiceBody imbeVoices = new IMBEVoiceBody(pttPacket.getIMBEVoiceBlockArray());
          int unitId = pttPacket.getPTTControlWord().getUnitId();
          int systemId = pttPacket.getPTTControlWord().getSystemId();
          TransmitPriorityType ptype = pttPacket.getPTTControlWord()
@@ -0,0 +1,250 @@
+//
+package gov.nist.p25.issi.transctlmgr.ptt;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.log4j.Logger;
+
+/**
+ * This class paces the voice packets of every active talker from a few
+ * shared threads instead of one thread per talk spurt. Each stream has an
+ * absolute System.nanoTime() deadline that advances by a whole number of 20
+ * ms IMBE frames after every packet, so sleep error never accumulates.
+ * Streams whose deadlines fall within the same batch window are sent
+ * together in one wakeup.
+ */
+public class AudioPacer {
+
+   private static Logger logger = Logger.getLogger(AudioPacer.class);
+
+   /** Duration of one IMBE voice frame in nanoseconds. */
+   public static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+   /** Default number of pacing threads. */
+   public static final int DEFAULT_THREAD_COUNT = 2;
+
+   /** Deadlines closer than this to the current one are sent with it. */
+   private static final long BATCH_WINDOW_NANOS = TimeUnit.MICROSECONDS
+         .toNanos(500);
+
+   private static AudioPacer instance = null;
+
+   private PacerThread[] pacerThreads = null;
+
+   private AtomicInteger nextPacerThread = new AtomicInteger();
+
+   /**
+    * Get the shared audio pacer.
+    *
+    * @return the shared audio pacer.
+    */
+   public static synchronized AudioPacer getInstance() {
+      if (instance == null)
+         instance = new AudioPacer(DEFAULT_THREAD_COUNT);
+      return instance;
+   }
+
+   /**
+    * Construct an audio pacer.
+    *
+    * @param threadCount
+    *            the number of pacing threads.
+    */
+   public AudioPacer(int threadCount) {
+      if (threadCount < 1)
+         throw new IllegalArgumentException("threadCount must be positive");
+      pacerThreads = new PacerThread[threadCount];
+      for (int i = 0; i < threadCount; i++) {
+         pacerThreads[i] = new PacerThread(i);
+         pacerThreads[i].start();
+      }
+   }
+
+   /**
+    * Start pacing a stream. Its first packet is due immediately.
+    *
+    * @param stream
+    *            the stream to pace.
+    */
+   public void start(PacedStream stream) {
+      int index = (nextPacerThread.getAndIncrement() & 0x7fffffff)
+            % pacerThreads.length;
+      stream.deadline = System.nanoTime();
+      pacerThreads[index].add(stream);
+   }
+
+   /**
+    * Get the number of streams being paced.
+    *
+    * @return the number of active streams.
+    */
+   public int getStreamCount() {
+      int count = 0;
+      for (PacerThread pacerThread : pacerThreads)
+         count += pacerThread.size();
+      return count;
+   }
+
+   /**
+    * A source of paced packets.
+    */
+   public static abstract class PacedStream implements Comparable<PacedStream> {
+
+      /** Returned by transmit() when the stream has nothing more to send. */
+      public static final int DONE = -1;
+
+      private long deadline;
+
+      private volatile boolean cancelled = false;
+
+      private SendJitterHistogram sendJitter = new SendJitterHistogram();
+
+      /**
+       * Send the packet that is due now.
+       *
+       * @return the number of 20 ms frames until the next packet is due, or
+       *         DONE.
+       * @throws Exception
+       */
+      protected abstract int transmit() throws Exception;
+
+      /**
+       * Called once when the stream is done, cancelled or failed.
+       */
+      protected void finished() {
+      }
+
+      /**
+       * Stop pacing this stream. No further packet is sent.
+       */
+      public void cancel() {
+         cancelled = true;
+      }
+
+      /**
+       * Get the lateness histogram of the packets of this stream.
+       *
+       * @return the send jitter histogram.
+       */
+      public SendJitterHistogram getSendJitterHistogram() {
+         return sendJitter;
+      }
+
+      public int compareTo(PacedStream other) {
+         return deadline < other.deadline ? -1
+               : (deadline == other.deadline ? 0 : 1);
+      }
+   }
+
+   /**
+    * A pacing thread and the streams it drives.
+    */
+   private static class PacerThread extends Thread {
+
+      private final ReentrantLock lock = new ReentrantLock();
+
+      private final Condition changed = lock.newCondition();
+
+      private final PriorityQueue<PacedStream> streams =
+         new PriorityQueue<PacedStream>();
+
+      private final ArrayList<PacedStream> due = new ArrayList<PacedStream>();
+
+      PacerThread(int index) {
+         super("AudioPacer-" + index);
+         setDaemon(true);
+         setPriority(Thread.MAX_PRIORITY);
+      }
+
+      void add(PacedStream stream) {
+         lock.lock();
+         try {
+            streams.add(stream);
+            changed.signal();
+         } finally {
+            lock.unlock();
+         }
+      }
+
+      int size() {
+         lock.lock();
+         try {
+            return streams.size();
+         } finally {
+            lock.unlock();
+         }
+      }
+
+      public void run() {
+         for (;;) {
+            try {
+               awaitDue();
+               for (int i = 0; i < due.size(); i++)
+                  send(due.get(i));
+            } catch (InterruptedException ex) {
+               // Keep pacing; the thread is only stopped with the JVM
+            } finally {
+               due.clear();
+            }
+         }
+      }
+
+      /*
+       * Wait for the earliest deadline and collect every stream due within
+       * the batch window of it.
+       */
+      private void awaitDue() throws InterruptedException {
+         lock.lock();
+         try {
+            for (;;) {
+               PacedStream head = streams.peek();
+               if (head == null) {
+                  changed.await();
+                  continue;
+               }
+               long wait = head.deadline - System.nanoTime();
+               if (wait > BATCH_WINDOW_NANOS) {
+                  changed.awaitNanos(wait);
+                  continue;
+               }
+               long limit = System.nanoTime() + BATCH_WINDOW_NANOS;
+               while ((head = streams.peek()) != null && head.deadline <= limit)
+                  due.add(streams.poll());
+               return;
+            }
+         } finally {
+            lock.unlock();
+         }
+      }
+
+      private void send(PacedStream stream) {
+         int frames;
+         if (stream.cancelled) {
+            frames = PacedStream.DONE;
+         } else {
+            stream.sendJitter.record(System.nanoTime() - stream.deadline);
+            try {
+               frames = stream.transmit();
+            } catch (Exception ex) {
+               logger.error("Paced audio stream failed", ex);
+               frames = PacedStream.DONE;
+            }
+         }
+
+         if (frames == PacedStream.DONE || stream.cancelled) {
+            try {
+               stream.finished();
+            } catch (RuntimeException ex) {
+               logger.error("Paced audio stream failed to finish", ex);
+            }
+         } else {
+            stream.deadline += frames * FRAME_NANOS;
+            add(stream);
+         }
+      }
+   }
+}
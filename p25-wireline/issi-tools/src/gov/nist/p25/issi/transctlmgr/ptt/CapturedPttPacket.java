@@ -2,6 +2,8 @@
 //package gov.nist.p25.issi.rfss;
 package gov.nist.p25.issi.transctlmgr.ptt;
 
+import gov.nist.p25.issi.p25payload.ControlOctet;
+import gov.nist.p25.issi.p25payload.ISSIPacketType;
 import gov.nist.p25.issi.p25payload.P25Payload;
 import gov.nist.p25.issi.transctlmgr.ptt.PttSessionInterface;
 import gov.nist.rtp.RtpPacket;
@@ -64,6 +66,38 @@ public class CapturedPttPacket implements Serializable {
       this.remoteRfssDomainName = session.getRemoteRfssDomainName();
    }
    
+   /**
+    * Rebuild a packet read from a PTT trace file.
+    */
+   CapturedPttPacket(RtpPacket rtpPacket, P25Payload payload,
+         boolean isSender, long captureTime, int packetNumber,
+         int remotePort, String remoteIpAddress, String remoteRfssDomainName) {
+      this.rtpPacket = rtpPacket;
+      this.p25Payload = payload;
+      this.isSender = isSender;
+      this.captureTime = captureTime;
+      this.packetNumber = packetNumber;
+      this.remotePort = remotePort;
+      this.remoteIpAddress = remoteIpAddress;
+      this.remoteRfssDomainName = remoteRfssDomainName;
+   }
+
+   RtpPacket getRtpPacket() {
+      return rtpPacket;
+   }
+   P25Payload getP25Payload() {
+      return p25Payload;
+   }
+   boolean isSender() {
+      return isSender;
+   }
+   long getCaptureTime() {
+      return captureTime;
+   }
+   int getPacketNumber() {
+      return packetNumber;
+   }
+
    public int getRemotePort() {
       return this.remotePort;
    }
@@ -80,6 +114,29 @@ public class CapturedPttPacket implements Serializable {
          remoteRfssDomainName, remoteIpAddress, remotePort);
    }
 
+   /**
+    * Get a hash of the fields that match() compares for equality. Packets
+    * that match have the same key.
+    */
+   public long getMatchKey() {
+      ISSIPacketType packetType = p25Payload.getISSIPacketType();
+      ControlOctet controlOctet = p25Payload.getControlOctet();
+      int hash = rtpPacket.getV();
+      hash = hash * 31 + rtpPacket.getP();
+      hash = hash * 31 + rtpPacket.getX();
+      hash = hash * 31 + rtpPacket.getCC();
+      hash = hash * 31 + rtpPacket.getM();
+      hash = hash * 31 + rtpPacket.getPT();
+      hash = hash * 31 + packetType.getM();
+      hash = hash * 31 + packetType.getPT();
+      hash = hash * 31 + packetType.getTransmissionSequenceNumber();
+      hash = hash * 31 + packetType.getL();
+      hash = hash * 31 + packetType.getInterval();
+      hash = hash * 31 + controlOctet.getC();
+      hash = hash * 31 + controlOctet.getS();
+      return (rtpPacket.getSSRC() << 32) | (hash & 0xffffffffL);
+   }
+
    /**
     * Compare a captured packet against a template packet.
     * This is for confromance testing.
@@ -2,6 +2,7 @@
 package gov.nist.p25.issi.transctlmgr.ptt;
 
 import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.ISSITimerTask;
 import gov.nist.p25.issi.p25payload.*;
 import gov.nist.rtp.RtpSession;
 
@@ -49,8 +50,9 @@ public class HeartbeatReceiver {
       receiveHeartbeatsTimeoutTask = new ReceiveHeartbeatsTimeoutTask();
 
       long delay = TimerValues.THEARTBEAT * 4;
-      ISSITimer.getTimer().schedule(receiveHeartbeatsTimeoutTask, delay);
-      logger.debug(getTarget() + " schedule HEARTBEAT TimeoutTask: delay="+delay);
+      ISSITimer.getWheelTimer().schedule(receiveHeartbeatsTimeoutTask, delay);
+      if (logger.isDebugEnabled())
+         logger.debug(getTarget() + " schedule HEARTBEAT TimeoutTask: delay="+delay);
    }
 
    private String getTarget() {
@@ -81,7 +83,7 @@ public class HeartbeatReceiver {
 
          if (heartbeatListener != null) {
             heartbeatListener.receivedHeartbeat(issiPacketType.getTransmissionSequenceNumber());
-	 } else { 
+	 } else if (logger.isDebugEnabled()) {
             logger.debug(getTarget() + " No heartbeat listener.");
          }
 
@@ -100,7 +102,7 @@ public class HeartbeatReceiver {
 	    //long delay = TimerValues.THEARTBEAT * 4;
 	    //
 	    long delay = issiPacketType.getInterval() * 4 * 1000L;
-            ISSITimer.getTimer().schedule(receiveHeartbeatsTimeoutTask, delay);
+            ISSITimer.getWheelTimer().schedule(receiveHeartbeatsTimeoutTask, delay);
 
             if (logger.isDebugEnabled()) {
                logger.debug(getTarget() + " received HEARTBEAT. interval="+issiPacketType.getInterval());
@@ -113,7 +115,7 @@ public class HeartbeatReceiver {
          if (heartbeatListener != null) {
             heartbeatListener.receivedHeartbeatQuery(pttSession,
                   issiPacketType.getTransmissionSequenceNumber());
-	 } else { 
+	 } else if (logger.isDebugEnabled()) {
             logger.debug(getTarget() + " No heartbeat query listener.");
          }
 
@@ -130,7 +132,7 @@ public class HeartbeatReceiver {
 	 //long delay = TimerValues.THEARTBEAT * 4;
 	 //
 	 long delay = issiPacketType.getInterval() * 4 * 1000L;
-         ISSITimer.getTimer().schedule(receiveHeartbeatsTimeoutTask, delay);
+         ISSITimer.getWheelTimer().schedule(receiveHeartbeatsTimeoutTask, delay);
 
          if (logger.isDebugEnabled()) {
             logger.debug(getTarget() + " myRtpRecvPort=" + pttSession.getMyRtpRecvPort());
@@ -139,9 +141,10 @@ public class HeartbeatReceiver {
 
          // Now respond with a HEARTBEAT
          if (pttSession.getHeartbeatTransmitter() != null) {
-            logger.debug(getTarget() + " received HEARTBEAT QUERY. Sending heartbeat");
+            if (logger.isDebugEnabled())
+               logger.debug(getTarget() + " received HEARTBEAT QUERY. Sending heartbeat");
             pttSession.getHeartbeatTransmitter().sendHeartbeat();
-         } else {
+         } else if (logger.isDebugEnabled()) {
             logger.debug(getTarget() + " Cannot send heartbeat, heartbeat transmitter is null ");
          }
       }
@@ -155,6 +158,17 @@ public class HeartbeatReceiver {
     * @return True if handled, false otherwise.
     */
    public boolean isPacketTypeHandled(PacketType packetType) {
+      return handlesPacketType(packetType);
+   }
+
+   /**
+    * Checks if connection heartbeat receivers handle this packet type.
+    * 
+    * @param packetType
+    *            The packet type to be handled.
+    * @return True if handled, false otherwise.
+    */
+   static boolean handlesPacketType(PacketType packetType) {
       return handledPacketTypes.contains(packetType);
    }
    
@@ -181,7 +195,7 @@ public class HeartbeatReceiver {
     * 
     * @see TIA-109.BACA Section 7.6.10
     */
-   class ReceiveHeartbeatsTimeoutTask extends TimerTask {
+   class ReceiveHeartbeatsTimeoutTask extends ISSITimerTask {
 
       // If we get here we have timed out waiting for a (connection
       // maintenance) heartbeat.  Note that in Section 7.6.10 of TIA-102.BACA,
@@ -2,6 +2,7 @@
 package gov.nist.p25.issi.transctlmgr.ptt;
 
 import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.ISSITimerTask;
 import gov.nist.p25.issi.issiconfig.RfssConfig;
 import gov.nist.p25.issi.p25payload.*;
 import gov.nist.rtp.RtpPacket;
@@ -69,8 +70,9 @@ public class HeartbeatTransmitter {
       //return target;
       return buildTarget();
    }
-   private void sendPttPacket(P25Payload p25Payload) throws Exception {
+   private void sendPttPacket(P25PayloadTemplate template) throws Exception {
       
+      P25Payload p25Payload = template.getP25Payload();
       RtpPacket rtpPacket = new RtpPacket();
 
       // The NIST RTP stack already define default values for some of these,
@@ -84,8 +86,7 @@ public class HeartbeatTransmitter {
       rtpPacket.setTS(0);
       rtpPacket.setSSRC(linkType.getValue());
 
-      byte[] payload = p25Payload.getBytes();
-      rtpPacket.setPayload(payload,payload.length);
+      rtpPacket.setPayload(template.getBytes(), template.getLength());
 
       if (rtpSession.getRemoteRtpRecvPort() != -1) {
          if ( logger.isDebugEnabled()) {
@@ -122,18 +123,17 @@ public class HeartbeatTransmitter {
     */
    public void sendHeartbeat() {
 
-      P25Payload p25Payload = PttSession.createHeartbeatConnection();
+      P25PayloadTemplate template = PttSession.getHeartbeatConnectionTemplate();
       try {
-	 String dateString = new Date().toString();
          if (!blockOutgoingHeartbeatTransmission) {
             if (logger.isDebugEnabled()) {
-               logger.debug(getTarget() + " sending HEARTBEAT TSN=0 "+dateString);
+               logger.debug(getTarget() + " sending HEARTBEAT TSN=0 "+new Date());
             }
 	    // SMF ?
-            this.sendPttPacket(p25Payload);
+            this.sendPttPacket(template);
          } else {
             if (logger.isDebugEnabled()) {
-               logger.debug(getTarget() + " blocked sending HEARTBEAT TSN=0 "+dateString);
+               logger.debug(getTarget() + " blocked sending HEARTBEAT TSN=0 "+new Date());
             }
          }
       } catch (Exception e) {
@@ -149,17 +149,16 @@ public class HeartbeatTransmitter {
     */
    public void sendHeartbeatQuery() {
 
-      P25Payload p25Payload = PttSession.createHeartbeatQuery();
+      P25PayloadTemplate template = PttSession.getHeartbeatQueryTemplate();
       try {
-	 String dateString = new Date().toString();
          if (!blockOutgoingHeartbeatTransmission) {
             if (logger.isDebugEnabled()) {
-               logger.debug(getTarget() + " sending HEARTBEAT QUERY TSN=0 "+dateString);
+               logger.debug(getTarget() + " sending HEARTBEAT QUERY TSN=0 "+new Date());
             }
-            sendPttPacket(p25Payload);
+            sendPttPacket(template);
          } else {
             if (logger.isDebugEnabled()) {
-               logger.debug(getTarget() + " blocked sending HEARTBEAT QUERY TSN=0 "+dateString);
+               logger.debug(getTarget() + " blocked sending HEARTBEAT QUERY TSN=0 "+new Date());
             }
          }
       } catch (Exception e) {
@@ -202,7 +201,7 @@ public class HeartbeatTransmitter {
       long delay = TimerValues.THEARTBEAT;
       logger.debug(getTarget() + " start()...delay="+delay);
       logger.debug(getTarget() + " start()...THEARTBEAT="+TimerValues.THEARTBEAT);
-      ISSITimer.getTimer().schedule(sendHeartbeatsTask, delay, TimerValues.THEARTBEAT);
+      ISSITimer.getWheelTimer().schedule(sendHeartbeatsTask, delay, TimerValues.THEARTBEAT);
 
    }
 
@@ -222,24 +221,24 @@ public class HeartbeatTransmitter {
     * 
     * @see TIA-109.BACA Section 7.5.1
     */
-   class SendHeartbeatsTask extends TimerTask {
+   class SendHeartbeatsTask extends ISSITimerTask {
       public void run() {
          try {
             String target = getTarget();
-	    String dateString = new Date().toString();
             if (!blockOutgoingHeartbeatTransmission) {
                if (rtpSession.getRemoteRtpRecvPort() > 0) {
                   // MMF
-                  P25Payload p25Payload = PttSession.createHeartbeatConnection();
-                  HeartbeatTransmitter.this.sendPttPacket(p25Payload);
+                  P25PayloadTemplate template = PttSession.getHeartbeatConnectionTemplate();
+                  HeartbeatTransmitter.this.sendPttPacket(template);
 
-                  logger.debug(target + " sending HEARTBEAT Task TSN=0 "+dateString);
-               } else {
-                  logger.debug(target + " Not sending heartbeat, port is not set "+dateString);
+                  if (logger.isDebugEnabled())
+                     logger.debug(target + " sending HEARTBEAT Task TSN=0 "+new Date());
+               } else if (logger.isDebugEnabled()) {
+                  logger.debug(target + " Not sending heartbeat, port is not set "+new Date());
                }
             } else {
                if (logger.isDebugEnabled()) {
-                  logger.debug(target + " blocked sending HEARTBEAT TSN=0 "+dateString);
+                  logger.debug(target + " blocked sending HEARTBEAT TSN=0 "+new Date());
                }
             }
          } catch (Exception e) {
@@ -2,7 +2,9 @@
 package gov.nist.p25.issi.transctlmgr.ptt;
 
 import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.ISSITimerTask;
 import gov.nist.p25.issi.p25payload.*;
+import gov.nist.p25.issi.utils.EventLogger;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -60,6 +62,7 @@ public class MmfReceiver {
    protected AudioTimeoutTask audioTimeoutTask = null;
 
    private static Logger logger = Logger.getLogger(MmfReceiver.class);
+   private static EventLogger eventLogger = new EventLogger(logger);
 
    /* TODO (steveq): Remove the following state machine variables in v2. */
 
@@ -253,14 +256,10 @@ public class MmfReceiver {
    }
    
    private void setCurrentState(int tsn, MmfRxState newState) {
-      logger.debug("MmfReceiver : setCurrentState [" + this.mmfSession.getMyRtpRecvPort() + "]" 
-            + " tsn = " + tsn 
-            + " newstate = " + newState   );
-      if (logger.isDebugEnabled()) {
-         logger.debug("setting mmf state [" + 
-               this.mmfSession.getRtpSession().getMyRtpRecvPort() + "]"+  newState);
-         logger.debug("current mmf Rx state " + this.currentState);
-      }
+      eventLogger.event("MmfReceiver.setCurrentState")
+            .field("port", mmfSession.getMyRtpRecvPort())
+            .field("tsn", tsn).field("newState", newState)
+            .field("currentState", currentState).log();
       if (getCurrentState(tsn) == MmfRxState.DONE) {
          logStackTrace(); // see where we are getting called from
       }
@@ -279,17 +278,20 @@ public class MmfReceiver {
       MmfPacketEvent event = new MmfPacketEvent(mmfSession, p25Payload);
       int tsn = p25Payload.getISSIPacketType().getTransmissionSequenceNumber();
 
-      if (logger.isDebugEnabled())
-         logger.debug(this + ":\n\tMMF RX received: " + packetType.toString());
+      eventLogger.event("MmfReceiver.received")
+            .field("port", mmfSession.getMyRtpRecvPort())
+            .field("tsn", tsn).field("packetType", packetType).log();
 
       if (getCurrentState(tsn) == MmfRxState.DONE) {
-         logger.debug(this + ":\n\tMMF RX received " + packetType
-               + " in the DONE state.  Ignoring.");
+         if (logger.isDebugEnabled())
+            logger.debug(this + ":\n\tMMF RX received " + packetType
+                  + " in the DONE state.  Ignoring.");
 
       } else if (packetType == PacketType.PTT_TRANSMIT_REQUEST) {
          if (ignoreRequests) {
-            logger.debug(this + ":\n\tMMF RX in IGNORE REQUEST MODE. "
-                  + "Ignoring received " + packetType + ".");
+            if (logger.isDebugEnabled())
+               logger.debug(this + ":\n\tMMF RX in IGNORE REQUEST MODE. "
+                     + "Ignoring received " + packetType + ".");
             return;
          }
          receivedPttRequest(event);
@@ -397,7 +399,7 @@ public class MmfReceiver {
    public void arbitrate(PttEvent event) {
 
       int tsn = event.getPttPacket().getISSIPacketType().getTransmissionSequenceNumber();
-      logger.debug("MmfReceiver: arbitrate TSN = " + tsn);
+      eventLogger.event("MmfReceiver.arbitrate").field("tsn", tsn).log();
       
       if (this.getCurrentState(tsn) == MmfRxState.DENY || getCurrentState(tsn) == MmfRxState.DONE)
          return;
@@ -433,7 +435,7 @@ public class MmfReceiver {
       int tsn = event.getPttPacket().getISSIPacketType().getTransmissionSequenceNumber();
 
       audioTimeoutTask = new AudioTimeoutTask(tsn);
-      ISSITimer.getTimer().schedule(audioTimeoutTask, TimerValues.TENDLOSS);
+      ISSITimer.getWheelTimer().schedule(audioTimeoutTask, TimerValues.TENDLOSS);
       try {
 
          if (getCurrentState(tsn) == MmfRxState.ARBITRATE) {
@@ -539,7 +541,7 @@ public class MmfReceiver {
             firstPacketTimeoutTask.cancel();
 
          firstPacketTimeoutTask = new FirstPacketTimeoutTask(tsn);
-         ISSITimer.getTimer().schedule(firstPacketTimeoutTask,
+         ISSITimer.getWheelTimer().schedule(firstPacketTimeoutTask,
                TimerValues.TFIRSTPACKETTIME);
 
          P25Payload p25Payload = mmfSession.createPttTransmitGrant(tsn);
@@ -594,7 +596,7 @@ public class MmfReceiver {
          if (waitTask == null) {
             // We don't want multiple wait tasks
             waitTask = new WaitTask(transition, tsn);
-            ISSITimer.getTimer().schedule(waitTask, waitDuration);
+            ISSITimer.getWheelTimer().schedule(waitTask, waitDuration);
          }
 
       } catch (Exception e) {
@@ -667,7 +669,7 @@ public class MmfReceiver {
     * This class implements a WAIT state. After the wait timeout, this class
     * will invoke either a grantInd() or denyInd().
     */
-   class WaitTask extends TimerTask {
+   class WaitTask extends ISSITimerTask {
 
       // Default behavior after wait
       private MmfRxTransition transition = null;
@@ -702,7 +704,7 @@ public class MmfReceiver {
     * are a number of specification issues with this class.
     * TIA-109.BACA Section 7.6.2
     */
-   class FirstPacketTimeoutTask extends TimerTask {
+   class FirstPacketTimeoutTask extends ISSITimerTask {
 
       private int tsn;
       public FirstPacketTimeoutTask ( int tsn ) {
@@ -729,7 +731,7 @@ public class MmfReceiver {
    /**
     * This class implements the timeout for receiving audio.
     */
-   class AudioTimeoutTask extends TimerTask {
+   class AudioTimeoutTask extends ISSITimerTask {
       private int tsn;
 
       public AudioTimeoutTask(int tsn) {
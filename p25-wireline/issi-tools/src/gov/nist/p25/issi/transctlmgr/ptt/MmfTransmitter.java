@@ -2,6 +2,7 @@
 package gov.nist.p25.issi.transctlmgr.ptt;
 
 import gov.nist.p25.issi.p25payload.IMBEVoiceBlock;
+import gov.nist.p25.issi.p25payload.IMBEVoiceBody;
 import gov.nist.p25.issi.p25payload.P25Payload;
 import gov.nist.p25.issi.p25payload.TransmitPriorityType;
 import gov.nist.rtp.*;
@@ -116,6 +117,21 @@ public class MmfTransmitter {
          int tsn, 
          TransmitPriorityType transmitPriorityType, int transmitPriorityLevel)
          throws IllegalStateException {
+      sendVoice(new IMBEVoiceBody(imbeVoiceBlocks), systemId, fromUnitId,
+            tsn, transmitPriorityType, transmitPriorityLevel);
+   }
+
+   /**
+    * Send voice that is already encoded, as when the same voice goes to
+    * several peers.
+    * 
+    * @param imbeVoiceBody
+    *            The IMBE voice blocks and their encoding.
+    */
+   public void sendVoice(IMBEVoiceBody imbeVoiceBody, int systemId, int fromUnitId,
+         int tsn, 
+         TransmitPriorityType transmitPriorityType, int transmitPriorityLevel)
+         throws IllegalStateException {
 
       if (mmfSession.muteTransmitter.peerMuteState == Mute.MUTED) {
          if (logger.isDebugEnabled())
@@ -128,11 +144,12 @@ public class MmfTransmitter {
 
          if (MmfTransmitter.this.getCurrentState(tsn) == MmfTxState.TRANSMITTING) {
             updateTxState(tsn, MmfTxTransition.SEND_AUDIO);
-            sendProgressPacket(imbeVoiceBlocks, systemId,fromUnitId, tsn,
+            sendProgressPacket(imbeVoiceBody, systemId,fromUnitId, tsn,
                   transmitPriorityType, transmitPriorityLevel);
          } else {
-            logger.debug("Not sending audio current state = "
-                  + getCurrentState(tsn));
+            if (logger.isDebugEnabled())
+               logger.debug("Not sending audio current state = "
+                     + getCurrentState(tsn));
          }
       }
    }
@@ -149,8 +166,8 @@ public class MmfTransmitter {
       if (this.getCurrentState(tsn) != MmfTxState.TRANSMITTING)
          this.updateTxState(tsn, MmfTxTransition.TX_TRIGGER);
 
-      sendProgressPacket(imbeVoiceBlocks, systemId, fromUnitId, tsn, 
-            priorityType, level);
+      sendProgressPacket(new IMBEVoiceBody(imbeVoiceBlocks), systemId,
+            fromUnitId, tsn, priorityType, level);
    }
 
    /**
@@ -171,10 +188,10 @@ public class MmfTransmitter {
    /**
     * Send a progress packet after if the state is not muted.
     * 
-    * @param imbeVoiceBlocks --
+    * @param imbeVoiceBody --
     *            voice blocks to send.
     */
-   private void sendProgressPacket(IMBEVoiceBlock[] imbeVoiceBlocks,
+   private void sendProgressPacket(IMBEVoiceBody imbeVoiceBody,
          int fromSystemId,
          int fromUnitId, int tsn, 
          TransmitPriorityType transmitPriorityType, int transmitPriorityLevel) {
@@ -190,7 +207,7 @@ public class MmfTransmitter {
             }
             P25Payload p25Payload = mmfSession.createPttTransmitProgress(
                   fromSystemId, fromUnitId,  transmitPriorityType,
-                  transmitPriorityLevel,imbeVoiceBlocks);
+                  transmitPriorityLevel,imbeVoiceBody);
             mmfSession.addNewTsnToMap(tsn,p25Payload.getISSIPacketType().getTransmissionSequenceNumber());
             if (!blockOutgoingAudioTransmission) {
                mmfSession.sendPttPacket(p25Payload);
@@ -2,6 +2,7 @@
 package gov.nist.p25.issi.transctlmgr.ptt;
 
 import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.ISSITimerTask;
 import gov.nist.p25.issi.p25payload.P25Payload;
 import gov.nist.p25.issi.p25payload.PacketType;
 import java.util.*;
@@ -219,7 +220,7 @@ public class MuteReceiver {
                muteEndLossTask.cancel();
 
             muteEndLossTask = new MuteEndLoss();
-            ISSITimer.getTimer().schedule(muteEndLossTask, TimerValues.TMUTEENDLOSS);
+            ISSITimer.getWheelTimer().schedule(muteEndLossTask, TimerValues.TMUTEENDLOSS);
 
          } else {
             // Connection maintenance heartbeats should
@@ -254,7 +255,7 @@ public class MuteReceiver {
             muteEndLossTask.cancel();
 
          muteEndLossTask = new MuteEndLoss();
-         ISSITimer.getTimer().schedule(muteEndLossTask, TimerValues.TMUTEENDLOSS);
+         ISSITimer.getWheelTimer().schedule(muteEndLossTask, TimerValues.TMUTEENDLOSS);
 
          // Kill PttSession.AudioTimeout since we won't be receiving
          // any progress packets during MUTE mode
@@ -297,7 +298,7 @@ public class MuteReceiver {
 
       // See Section 7.5.7
       unmuteTask = new UnmuteTask();
-      ISSITimer.getTimer().schedule(unmuteTask, 0, TimerValues.TUNMUTE);
+      ISSITimer.getWheelTimer().schedule(unmuteTask, 0, TimerValues.TUNMUTE);
       unmuteTaskRunning = true;      
    }
    
@@ -306,7 +307,7 @@ public class MuteReceiver {
     * 
     * @see TIA-109 Section 7.5.7
     */
-   class UnmuteTask extends TimerTask {
+   class UnmuteTask extends ISSITimerTask {
       public void run() {
          // Cancel End Loss timout
          if (muteEndLossTask != null)
@@ -328,7 +329,7 @@ public class MuteReceiver {
     * This class implements EndLossTimeout when a MUTE HEARTBEAT is not
     * received within TMutedEndLoss time if this receiver is in a MUTE state.
     */
-   class MuteEndLoss extends TimerTask {
+   class MuteEndLoss extends ISSITimerTask {
       public void run() {
          if (logger.isDebugEnabled())
             logger.debug(pttSession.sessionType + " T MUTE END LOSS"
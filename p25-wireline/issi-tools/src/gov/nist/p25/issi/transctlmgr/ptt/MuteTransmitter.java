@@ -2,6 +2,7 @@
 package gov.nist.p25.issi.transctlmgr.ptt;
 
 import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.ISSITimerTask;
 import gov.nist.p25.issi.p25payload.*;
 
 import java.util.*;
@@ -86,7 +87,7 @@ public class MuteTransmitter {
       
       this.heartbeatTasks.put(tsn, muteTransmissionHeartbeatTask);
       try {
-         ISSITimer.getTimer().schedule(muteTransmissionHeartbeatTask, 0,
+         ISSITimer.getWheelTimer().schedule(muteTransmissionHeartbeatTask, 0,
                TimerValues.TMUTEPROGRESS);
       } catch (Exception e) {
          // Only caught if timer has already been cancelled
@@ -155,23 +156,23 @@ public class MuteTransmitter {
     * 
     * @see TIA-109.BACA Section 7.2.3
     */
-   class MuteTransmissionHeartbeatTask extends TimerTask {
+   class MuteTransmissionHeartbeatTask extends ISSITimerTask {
       int tsn;
-      private P25Payload p25Payload;
+      private P25PayloadTemplate template;
       
       MuteTransmissionHeartbeatTask( int tsn ) {
          this.tsn = tsn;
-         this.p25Payload = pttSession.createPttMuteTransmission(tsn);
+         this.template = PttSession.createTemplate(pttSession.createPttMuteTransmission(tsn));
       }
 
       public void run() {
          if (logger.isDebugEnabled())
             logger.debug(pttSession.sessionType + " sending "
                   + PacketType.HEARTBEAT_MUTE_TRANSMISSION + " TSN="
-                  + p25Payload.getISSIPacketType().getTransmissionSequenceNumber()+ ", (M=1)");
+                  + template.getISSIPacketType().getTransmissionSequenceNumber()+ ", (M=1)");
 
          try {
-            pttSession.sendPttPacket(p25Payload);
+            pttSession.sendPttPacket(template);
          } catch (Exception e) {
             e.printStackTrace();
             logger.debug(pttSession.sessionType + " ex: " + e.toString());
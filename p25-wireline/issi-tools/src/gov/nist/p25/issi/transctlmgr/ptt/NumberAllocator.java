@@ -0,0 +1,188 @@
+//
+package gov.nist.p25.issi.transctlmgr.ptt;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hands out the numbers first, first + step, ... (count of them) and keeps
+ * track of which ones are in use, so that a number is not given out twice
+ * while it is held. Used for TSNs and RTP ports.
+ * <p>
+ * The numbers in use are kept in a bitmap updated with compare-and-set, so
+ * allocation and release never block. Allocation is round-robin: the search
+ * for a free number starts after the last number handed out, so a released
+ * number is reused as late as possible.
+ */
+public class NumberAllocator {
+
+   private final String name;
+   private final int first;
+   private final int step;
+   private final int count;
+
+   private final AtomicLongArray inUse;
+   private final AtomicInteger cursor;
+
+   private final AtomicLong allocationCount = new AtomicLong();
+   private final AtomicLong releaseCount = new AtomicLong();
+   private final AtomicLong exhaustedCount = new AtomicLong();
+
+   /**
+    * @param name -- name for statistics.
+    * @param first -- the first number.
+    * @param step -- distance between numbers.
+    * @param count -- how many numbers there are.
+    */
+   public NumberAllocator(String name, int first, int step, int count) {
+      this.name = name;
+      this.first = first;
+      this.step = step;
+      this.count = count;
+      this.inUse = new AtomicLongArray((count + 63) >>> 6);
+      this.cursor = new AtomicInteger(count - 1);
+   }
+
+   private long validBits(int word) {
+      int bits = count - (word << 6);
+      return bits >= 64 ? -1L : (1L << bits) - 1;
+   }
+
+   private int findFree(int start) {
+      int words = inUse.length();
+      int word = start >>> 6;
+      long free = ~inUse.get(word) & validBits(word) & (-1L << (start & 63));
+      for (int i = 0; i < words; i++) {
+         if (free != 0)
+            return (word << 6) + Long.numberOfTrailingZeros(free);
+         word = (word + 1) % words;
+         free = ~inUse.get(word) & validBits(word);
+      }
+      return free != 0 ? (word << 6) + Long.numberOfTrailingZeros(free) : -1;
+   }
+
+   /**
+    * Take the next free number.
+    *
+    * @return the number, or -1 if all of them are in use.
+    */
+   public int allocate() {
+      for (;;) {
+         int slot = findFree((cursor.get() + 1) % count);
+         if (slot < 0) {
+            exhaustedCount.incrementAndGet();
+            return -1;
+         }
+         int word = slot >>> 6;
+         long bit = 1L << (slot & 63);
+         long bits = inUse.get(word);
+         if ((bits & bit) == 0 && inUse.compareAndSet(word, bits, bits | bit)) {
+            cursor.set(slot);
+            allocationCount.incrementAndGet();
+            return first + slot * step;
+         }
+      }
+   }
+
+   /**
+    * Move past the next number in sequence without taking it. This is what
+    * a caller that cannot hold a number (all in use) gets instead.
+    *
+    * @return the number skipped.
+    */
+   public int skip() {
+      for (;;) {
+         int current = cursor.get();
+         int slot = (current + 1) % count;
+         if (cursor.compareAndSet(current, slot))
+            return first + slot * step;
+      }
+   }
+
+   /**
+    * Give a number back.
+    *
+    * @return false if the number was not in use.
+    */
+   public boolean release(int number) {
+      int offset = number - first;
+      if (offset < 0 || offset % step != 0 || offset / step >= count)
+         return false;
+      int slot = offset / step;
+      int word = slot >>> 6;
+      long bit = 1L << (slot & 63);
+      for (;;) {
+         long bits = inUse.get(word);
+         if ((bits & bit) == 0)
+            return false;
+         if (inUse.compareAndSet(word, bits, bits & ~bit)) {
+            releaseCount.incrementAndGet();
+            return true;
+         }
+      }
+   }
+
+   /**
+    * Give all numbers back.
+    */
+   public void releaseAll() {
+      for (int word = 0; word < inUse.length(); word++) {
+         long bits = inUse.getAndSet(word, 0);
+         releaseCount.addAndGet(Long.bitCount(bits));
+      }
+   }
+
+   public boolean isInUse(int number) {
+      int offset = number - first;
+      if (offset < 0 || offset % step != 0 || offset / step >= count)
+         return false;
+      int slot = offset / step;
+      return (inUse.get(slot >>> 6) & (1L << (slot & 63))) != 0;
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   public int getCapacity() {
+      return count;
+   }
+
+   public int getInUseCount() {
+      int n = 0;
+      for (int word = 0; word < inUse.length(); word++) {
+         n += Long.bitCount(inUse.get(word));
+      }
+      return n;
+   }
+
+   /**
+    * @return the percentage of numbers in use.
+    */
+   public int getUtilization() {
+      return getInUseCount() * 100 / count;
+   }
+
+   public long getAllocationCount() {
+      return allocationCount.get();
+   }
+
+   public long getReleaseCount() {
+      return releaseCount.get();
+   }
+
+   /**
+    * @return how many allocations found every number in use.
+    */
+   public long getExhaustedCount() {
+      return exhaustedCount.get();
+   }
+
+   public String toString() {
+      return name + " inUse=" + getInUseCount() + "/" + count
+            + " allocated=" + allocationCount.get()
+            + " released=" + releaseCount.get()
+            + " exhausted=" + exhaustedCount.get();
+   }
+}
@@ -11,6 +11,7 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -42,28 +43,31 @@ public class PttManager {
    private int systemId = 0;
 
    /** TSNs for Serving to Home RFSS. */
-   private int lastServingToHomeTSN = 0;
+   private final NumberAllocator servingToHomeTsns = createTsnAllocator("servingToHome", 2);
 
    /** TSNs for Home to Serving RFSS. */
-   private int lastHomeToServingTSN = -1;
+   private final NumberAllocator homeToServingTsns = createTsnAllocator("homeToServing", 1);
 
    /** TSNs for Calling Home to Called Home RFSS. */
-   private int lastCallingHomeToCalledHomeTSN = 0;
+   private final NumberAllocator callingHomeToCalledHomeTsns = createTsnAllocator("callingHomeToCalledHome", 2);
 
    /** TSNs for Called Home to Calling Home RFSS. */
-   private int lastCalledHomeToCallingHomeTSN = -1;
+   private final NumberAllocator calledHomeToCallingHomeTsns = createTsnAllocator("calledHomeToCallingHome", 1);
 
    /** TSNs for group serving. */
-   private int lastGroupServingTSN = 0;
+   private final NumberAllocator groupServingTsns = createTsnAllocator("groupServing", 2);
 
    /** TSNs for group home. */
-   private int lastGroupHomeTSN = -1;
+   private final NumberAllocator groupHomeTsns = createTsnAllocator("groupHome", 1);
+
+   /** Even RTP ports 25000..25198 for session multiplexers. */
+   private final NumberAllocator multiplexerPorts = new NumberAllocator("rtpPort", 25000, 2, 100);
 
    /** MAX number of ports that can be allocated on this Rfss */
-   private int maxPorts;
+   private final AtomicInteger maxPorts = new AtomicInteger();
 
    /** Current number allocated */
-   private int portCount = 0;
+   private final AtomicInteger portCount = new AtomicInteger();
 
    /** A collection of SMFs ( for later retrieval and printing ) */
    private HashSet<SmfSession> smfSessions = new HashSet<SmfSession>();
@@ -112,7 +116,7 @@ public class PttManager {
          this.wacnId = rfss.getRfssConfig().getWacnId();
          this.systemId = rfss.getRfssConfig().getSystemId();
          rtpManager = new RtpManager(myIpAddress);
-         this.maxPorts = rfss.getRfssConfig().getMaxRtpPorts();
+         this.maxPorts.set(rfss.getRfssConfig().getMaxRtpPorts());
          this.myRtpSessions = new HashSet<RtpSession>();
       } catch (UnknownHostException uhe) {
          logger.error(uhe);
@@ -146,7 +150,8 @@ public class PttManager {
       RtpSession rtpSession = rtpManager.createRtpSession(myRtpRecvPort,
             remoteIpAddress, remoteRtpRecvPort);
       this.myRtpSessions.add(rtpSession);
-      int transmissionSequenceNumber = getNewTsn(linkType);
+      // keep the TSN sequence; the session allocates its own TSNs per unit
+      skipTsn(linkType);
 
       SmfSession smfSession = new SmfSession(rtpSession, linkType,this);
       SmfSession.PTT_TEST_MODE = true;
@@ -174,7 +179,8 @@ public class PttManager {
 
       RtpSession rtpSession = rtpManager.createRtpSession(myRtpRecvPort);
       this.myRtpSessions.add(rtpSession);
-      int transmissionSequenceNumber = getNewTsn(linkType);
+      // keep the TSN sequence; the session allocates its own TSNs per unit
+      skipTsn(linkType);
 
       SmfSession smfSession = new SmfSession(rtpSession, linkType, this);
       smfSession.setSystemId(systemId);
@@ -221,11 +227,16 @@ public class PttManager {
             throw new RtpException("No rtp resources");
          }
       } else {
-         for (int port = 25000; port < 25200; port += 2) {
+         for (int i = 0; i < multiplexerPorts.getCapacity(); i++) {
+            int port = multiplexerPorts.allocate();
+            if (port < 0)
+               break;
             try {
                rtpSession = rtpManager.createRtpSession(port);
                this.myRtpSessions.add(rtpSession);
             } catch (Exception ex) {
+               // bound by someone else; the next allocation moves past it
+               multiplexerPorts.release(port);
                continue;
             }
             break;
@@ -259,7 +270,8 @@ public class PttManager {
    public SmfSession createSmfSession(RtpSession rtpSession, LinkType linkType)
          throws RtpException, IOException {
 
-      int transmissionSequenceNumber = getNewTsn(linkType);
+      // keep the TSN sequence; the session allocates its own TSNs per unit
+      skipTsn(linkType);
 
       SmfSession smfSession = new SmfSession(rtpSession, linkType, this);
       smfSession.setSystemId(systemId);
@@ -303,7 +315,8 @@ public class PttManager {
             remoteIpAddress, remoteRtpRecvPort);
 
       this.myRtpSessions.add(rtpSession);
-      int transmissionSequenceNumber = getNewTsn(linkType);
+      // keep the TSN sequence; the session allocates its own TSNs per unit
+      skipTsn(linkType);
 
       MmfSession mmfSession = new MmfSession(rtpSession, linkType, this);
       mmfSession.getHeartbeatReceiver().setHeartbeatListener(listener);
@@ -337,7 +350,8 @@ public class PttManager {
       RtpSession rtpSession = rtpManager.createRtpSession(myRtpRecvPort);
       this.myRtpSessions.add(rtpSession);
 
-      int transmissionSequenceNumber = getNewTsn(linkType);
+      // keep the TSN sequence; the session allocates its own TSNs per unit
+      skipTsn(linkType);
 
       MmfSession mmfSession = new MmfSession(rtpSession, linkType,this);
       mmfSession.setSystemId(systemId);
@@ -354,60 +368,90 @@ public class PttManager {
       return myIpAddress;
    }
 
+   static NumberAllocator createTsnAllocator(String name, int first) {
+      // 0 is reserved for HEARTBEATS/HEARBEAT QUERIES
+      return new NumberAllocator(name, first, 2, first == 1 ? 32 : 31);
+   }
+
+   /**
+    * @return the TSN partition for the link type, or null if it is unknown.
+    */
+   private NumberAllocator getTsnAllocator(LinkType linkType) {
+      switch (linkType) {
+      case UNIT_TO_UNIT_CALLED_SERVING_TO_CALLED_HOME:
+      case UNIT_TO_UNIT_CALLING_SERVING_TO_CALLING_HOME:
+         return servingToHomeTsns;
+      case UNIT_TO_UNIT_CALLED_HOME_TO_CALLED_SERVING:
+      case UNIT_TO_UNIT_CALLING_HOME_TO_CALLING_SERVING:
+         return homeToServingTsns;
+      case UNIT_TO_UNIT_CALLING_HOME_TO_CALLED_HOME:
+         return callingHomeToCalledHomeTsns;
+      case UNIT_TO_UNIT_CALLED_HOME_TO_CALLING_HOME:
+         return calledHomeToCallingHomeTsns;
+      case GROUP_SERVING:
+         // Added this case @mranga
+         return groupServingTsns;
+      case GROUP_HOME:
+         // Added @mranga
+         return groupHomeTsns;
+      default:
+         logger.error(this + " Unknown link type: " + linkType);
+         return null;
+      }
+   }
+
    /**
-    * This method generates a new TSN based on the RFSS's link type.
+    * This method generates a new TSN based on the RFSS's link type. TSNs
+    * are handed out in sequence, skipping those still in use; release them
+    * with releaseTsn. If every TSN of the link type is in use, the next one
+    * in sequence is shared.
     * 
     * @param linkType --
     *            The link type for this RFSS.
-    * @return The current TSN.
+    * @return The current TSN (-1 for an unknown link type).
     */
    // TODO (steveq): Make sure that these do not conflict with
    // response TSNs (which have the same TSNs as the request).
    public int getNewTsn(LinkType linkType) {
+      NumberAllocator allocator = getTsnAllocator(linkType);
+      if (allocator == null)
+         return -1;
+      int tsn = allocator.allocate();
+      if (tsn < 0) {
+         tsn = allocator.skip();
+         logger.warn("All " + allocator.getName() + " TSNs in use, sharing TSN " + tsn);
+      }
+      return tsn;
+   }
 
-      int tsn = -1;
-      if (linkType == LinkType.UNIT_TO_UNIT_CALLED_SERVING_TO_CALLED_HOME
-            || linkType == LinkType.UNIT_TO_UNIT_CALLING_SERVING_TO_CALLING_HOME) {
-         tsn = generateTsn(lastServingToHomeTSN);
-         lastServingToHomeTSN = tsn;
-
-      } else if (linkType == LinkType.UNIT_TO_UNIT_CALLED_HOME_TO_CALLED_SERVING
-            || linkType == LinkType.UNIT_TO_UNIT_CALLING_HOME_TO_CALLING_SERVING) {
-         tsn = generateTsn(lastHomeToServingTSN);
-         lastHomeToServingTSN = tsn;
-
-      } else if (linkType == LinkType.UNIT_TO_UNIT_CALLING_HOME_TO_CALLED_HOME) {
-         tsn = generateTsn(lastCallingHomeToCalledHomeTSN);
-         lastCallingHomeToCalledHomeTSN = tsn;
-
-      } else if (linkType == LinkType.UNIT_TO_UNIT_CALLED_HOME_TO_CALLING_HOME) {
-         tsn = generateTsn(lastCalledHomeToCallingHomeTSN);
-         lastCalledHomeToCallingHomeTSN = tsn;
-
-      } else if (linkType == LinkType.GROUP_SERVING) {
-         // Added this case @mranga
-         tsn = generateTsn(lastGroupServingTSN);
-         lastGroupServingTSN = tsn;
-
-      } else if (linkType == LinkType.GROUP_HOME) {
-         // Added @mranga
-         tsn = generateTsn(lastGroupHomeTSN);
-         lastGroupHomeTSN = tsn;
+   private void skipTsn(LinkType linkType) {
+      NumberAllocator allocator = getTsnAllocator(linkType);
+      if (allocator != null)
+         allocator.skip();
+   }
 
-      } else {
-         if (logger.isEnabledFor(org.apache.log4j.Level.DEBUG))
-            logger.error(this + " Unknown link type: " + linkType);
+   /**
+    * Release a TSN obtained from getNewTsn.
+    * 
+    * @param linkType --
+    *            The link type the TSN was allocated for.
+    * @param tsn --
+    *            The TSN.
+    */
+   public void releaseTsn(LinkType linkType, int tsn) {
+      NumberAllocator allocator = getTsnAllocator(linkType);
+      if (allocator != null && !allocator.release(tsn)) {
+         if (logger.isDebugEnabled())
+            logger.debug("releaseTsn: " + allocator.getName() + " TSN " + tsn + " not in use");
       }
-      return tsn;
    }
 
    /**
-    * Generate a TSN. Note that we do NOT recycle TSNs yet. Thus, we have up to
-    * 31 SMF and 32 MMF TSNs available.
+    * Generate the TSN that follows lastTsn in sequence, without checking
+    * whether it is in use.
     * 
-    * @return int The generated TSN (-1 if no TSNs are available).
+    * @return int The generated TSN.
     */
-   // TODO (steveq): Modify to handle recycling of TSNs
    public int generateTsn(int lastTsn) {
 
       int newTsn = (lastTsn + 2) % 64;
@@ -415,61 +459,23 @@ public class PttManager {
          newTsn = (lastTsn + 4) % 64;
 
       return newTsn;
-
-      // // The following uses HashSet to store active TSNs. We need mods
-      // // to recycle TSNs.
-      // int oldTsn = lastTsn;
-      // int newTsn = -1;
-      //      
-      // for (;;) {
-      //         
-      // if (hashSet.size() <= 64) { // 64 odd or 64 even TNSs available
-      //            
-      // newTsn = (oldTsn + 2) % 64;
-      //            
-      // if (newTsn == 0) // TSN=0 reserved for HEARTBEATs
-      // newTsn += 2;
-      //            
-      // Integer i = new Integer(newTsn);
-      //            
-      // if (! hashSet.contains(i)) {
-      //               
-      // hashSet.add(i);
-      // break;
-      //               
-      // } else {
-      //
-      // // TSN is already active so increment and try again
-      // oldTsn += 2;
-      //               
-      // }
-      //            
-      // } else if (hashSet.size() > 64) {
-      //               
-      // // We have tested all values, so just FAIL
-      // if (logger.isEnabledFor(org.apache.log4j.Level.DEBUG))
-      // logger.debug("[PttManager.generateTsn()]: " +
-      // " FAIL: No more TSNs available.");
-      //               
-      // break;
-      //               
-      // }
-      //
-      // }
-      //      
-      // return newTsn;
    }
 
    /**
-    * This method releases a TSN (i.e., removes from memory).
-    * 
-    * @param linkType --
-    *            The link type for this RFSS.
-    * @return The current TSN.
+    * @return the use of the TSN partitions and multiplexer ports.
     */
-   // TODO This method will be moved to PttSession
-   // private int releaseTsn(int Tsn, LinkType linkType) {
-   // }
+   public String getAllocatorStatistics() {
+      StringBuffer sbuf = new StringBuffer();
+      NumberAllocator[] allocators = { servingToHomeTsns, homeToServingTsns,
+            callingHomeToCalledHomeTsns, calledHomeToCallingHomeTsns,
+            groupServingTsns, groupHomeTsns, multiplexerPorts };
+      for (NumberAllocator allocator : allocators) {
+         sbuf.append(allocator.toString()).append("\n");
+      }
+      sbuf.append("ports=" + portCount.get() + "/" + maxPorts.get()).append("\n");
+      return sbuf.toString();
+   }
+
    public HashSet<MmfSession> getMmfSessions() {
       return this.mmfSessions;
    }
@@ -492,14 +498,16 @@ public class PttManager {
       return sbuf.toString();
    }
 
-   public synchronized boolean grabPort() {
-      if (this.maxPorts == -1)
-         return true;
-      if (this.portCount >= this.maxPorts)
-         return false;
-      else {
-         this.portCount++;
-         return true;
+   public boolean grabPort() {
+      for (;;) {
+         int max = this.maxPorts.get();
+         if (max == -1)
+            return true;
+         int count = this.portCount.get();
+         if (count >= max)
+            return false;
+         if (this.portCount.compareAndSet(count, count + 1))
+            return true;
       }
    }
 
@@ -510,8 +518,10 @@ public class PttManager {
     * @param nports
     */
    public void incrementPortLimit(int nports) {
-      if (this.maxPorts != -1) {
-         this.maxPorts += nports;
+      for (;;) {
+         int max = this.maxPorts.get();
+         if (max == -1 || this.maxPorts.compareAndSet(max, max + nports))
+            return;
       }
    }
 
@@ -556,6 +566,7 @@ public class PttManager {
          }
 	  **/
       }
+      multiplexerPorts.releaseAll();
    }
 
    // 14.4.x
@@ -0,0 +1,304 @@
+//
+package gov.nist.p25.issi.transctlmgr.ptt;
+
+import gov.nist.p25.common.util.ByteArrayUtil;
+import gov.nist.p25.issi.p25payload.P25BlockException;
+import gov.nist.p25.issi.p25payload.P25Payload;
+import gov.nist.p25.issi.rfss.tester.TestScript;
+import gov.nist.p25.issi.rfss.tester.TesterUtility;
+import gov.nist.rtp.RtpPacket;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes the PTT packet log from a background thread. Callers only queue a
+ * record holding a copy of the packet bytes and its metadata; the writer
+ * thread decodes and formats the records and writes and flushes them to the
+ * RTP message log in batches. The queue is bounded: a caller waits when the
+ * writer falls that far behind, so no record is lost.
+ * <p>
+ * When BINARY_FORMAT is set the records are written to the RTP message log
+ * name with a .bin suffix instead. The binary log is reopened when the RTP
+ * message log name changes and closed by closeLog(), so each test gets a
+ * log of its own. It holds the int PTTL_MAGIC, then per record
+ * the long capture time, int packet number, boolean isSender, UTF receiving
+ * RFSS, UTF sending RFSS, UTF remote IP address, int remote port, int RTP
+ * packet length and the RTP packet bytes.
+ */
+public class PttPacketLogger {
+
+   private static Logger logger = Logger.getLogger(PttPacketLogger.class);
+
+   /** Write binary records instead of the XML message log. */
+   public static boolean BINARY_FORMAT = false;
+
+   /** First int of a binary PTT log. */
+   public static final int PTTL_MAGIC = 0x5054544c;
+
+   /** Number of records that may wait for the writer. */
+   public static final int QUEUE_CAPACITY = 4096;
+
+   /** Largest number of records written between two flushes. */
+   private static final int MAX_BATCH = 256;
+
+   private static PttPacketLogger instance = null;
+
+   private final ArrayBlockingQueue<Record> queue =
+      new ArrayBlockingQueue<Record>(QUEUE_CAPACITY);
+
+   private final Object progress = new Object();
+
+   /* Guarded by progress. */
+   private long queuedCount = 0;
+   private long writtenCount = 0;
+
+   private final Object binaryLock = new Object();
+
+   /* Guarded by binaryLock. */
+   private DataOutputStream binaryLog;
+   private String binaryLogName;
+
+   /**
+    * A PTT packet waiting to be logged. The session is formatted and the
+    * packets encoded when the record is made, so the record does not keep
+    * them alive and later changes to them do not reach the log.
+    */
+   static class Record {
+      final String sessionText;
+      final byte[] rtpData;
+      final byte[] p25Data;
+      final boolean isSender;
+      final long timeStamp;
+      final int packetNumber;
+      final String receivingRfssId;
+      final String sendingRfssId;
+      final String remoteIpAddress;
+      final int remotePort;
+
+      Record(PttSessionInterface session, RtpPacket rtpPacket,
+            P25Payload p25Payload, boolean isSender, long timeStamp,
+            int packetNumber, String receivingRfssId, String sendingRfssId,
+            String remoteIpAddress, int remotePort) {
+         this.sessionText = session.toString();
+         this.rtpData = rtpPacket.getData();
+         byte[] p25Data = null;
+         try {
+            p25Data = p25Payload.getBytes();
+         } catch (P25BlockException ex) {
+            logger.error("Cannot encode the P25 payload of PTT packet "
+                  + packetNumber, ex);
+         }
+         this.p25Data = p25Data;
+         this.isSender = isSender;
+         this.timeStamp = timeStamp;
+         this.packetNumber = packetNumber;
+         this.receivingRfssId = receivingRfssId;
+         this.sendingRfssId = sendingRfssId;
+         this.remoteIpAddress = remoteIpAddress;
+         this.remotePort = remotePort;
+      }
+   }
+
+   /**
+    * Get the shared PTT packet logger.
+    *
+    * @return the PTT packet logger.
+    */
+   public static synchronized PttPacketLogger getInstance() {
+      if (instance == null)
+         instance = new PttPacketLogger();
+      return instance;
+   }
+
+   private PttPacketLogger() {
+      Thread writer = new Thread(new Runnable() {
+         public void run() {
+            writeRecords();
+         }
+      }, "PttPacketLogger");
+      writer.setDaemon(true);
+      writer.start();
+   }
+
+   /**
+    * Check whether there is a log to write records to, so that callers do
+    * not build records that would be dropped.
+    *
+    * @return true if the XML or binary RTP message log is configured.
+    */
+   public static boolean isLogEnabled() {
+      if (BINARY_FORMAT)
+         return TestScript.rtpMessagelog != null;
+      return TesterUtility.getRtpMessageLogStream() != null;
+   }
+
+   /**
+    * Queue a record for the writer thread.
+    */
+   void log(Record record) {
+      synchronized (progress) {
+         queuedCount++;
+      }
+      try {
+         queue.put(record);
+      } catch (InterruptedException ex) {
+         logger.error("Interrupted while logging PTT packet");
+         recordWritten(1);
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Wait until every record queued so far has been written and flushed.
+    */
+   public void flush() {
+      synchronized (progress) {
+         long target = queuedCount;
+         try {
+            while (writtenCount < target)
+               progress.wait();
+         } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   /**
+    * Write the records queued so far and close the binary log. The next
+    * record opens a new one.
+    */
+   public void closeLog() {
+      flush();
+      synchronized (binaryLock) {
+         if (binaryLog == null)
+            return;
+         try {
+            binaryLog.close();
+         } catch (IOException ex) {
+            logger.error("Could not close the binary PTT packet log", ex);
+         }
+         binaryLog = null;
+         binaryLogName = null;
+      }
+   }
+
+   /**
+    * Get the number of records waiting for the writer.
+    *
+    * @return the queue length.
+    */
+   public int getQueueLength() {
+      return queue.size();
+   }
+
+   private void recordWritten(int count) {
+      synchronized (progress) {
+         writtenCount += count;
+         progress.notifyAll();
+      }
+   }
+
+   private void writeRecords() {
+      ArrayList<Record> batch = new ArrayList<Record>(MAX_BATCH);
+      StringBuffer sbuf = new StringBuffer();
+      for (;;) {
+         try {
+            batch.add(queue.take());
+            queue.drainTo(batch, MAX_BATCH - 1);
+            if (BINARY_FORMAT) {
+               writeBinary(batch);
+            } else {
+               writeXml(batch, sbuf);
+            }
+         } catch (InterruptedException ex) {
+            // Keep writing; the thread is only stopped with the JVM
+         } catch (Exception ex) {
+            logger.error("Could not write the PTT packet log", ex);
+         } finally {
+            recordWritten(batch.size());
+            batch.clear();
+         }
+      }
+   }
+
+   private void writeXml(ArrayList<Record> batch, StringBuffer sbuf) {
+      PrintWriter rtpLog = TesterUtility.getRtpMessageLogStream();
+      if (rtpLog == null)
+         return;
+      for (Record record : batch) {
+         sbuf.setLength(0);
+         format(record, sbuf);
+         rtpLog.println(sbuf);
+      }
+      rtpLog.flush();
+   }
+
+   private void writeBinary(ArrayList<Record> batch) throws IOException {
+      synchronized (binaryLock) {
+         String logName = TestScript.rtpMessagelog;
+         if (binaryLog != null && !binaryLogName.equals(logName)) {
+            binaryLog.close();
+            binaryLog = null;
+         }
+         if (binaryLog == null) {
+            if (logName == null)
+               return;
+            binaryLog = new DataOutputStream(new BufferedOutputStream(
+                  new FileOutputStream(logName + ".bin")));
+            binaryLogName = logName;
+            binaryLog.writeInt(PTTL_MAGIC);
+         }
+         writeBinary(batch, binaryLog);
+      }
+   }
+
+   private static void writeBinary(ArrayList<Record> batch,
+         DataOutputStream binaryLog) throws IOException {
+      for (Record record : batch) {
+         byte[] data = record.rtpData;
+         binaryLog.writeLong(record.timeStamp);
+         binaryLog.writeInt(record.packetNumber);
+         binaryLog.writeBoolean(record.isSender);
+         binaryLog.writeUTF(String.valueOf(record.receivingRfssId));
+         binaryLog.writeUTF(String.valueOf(record.sendingRfssId));
+         binaryLog.writeUTF(String.valueOf(record.remoteIpAddress));
+         binaryLog.writeInt(record.remotePort);
+         binaryLog.writeInt(data.length);
+         binaryLog.write(data);
+      }
+      binaryLog.flush();
+   }
+
+   static void format(Record record, StringBuffer sbuf) {
+      RtpPacket rtpPacket = new RtpPacket(record.rtpData, record.rtpData.length);
+      sbuf.append("\n<ptt-packet\n");
+      sbuf.append(" receptionTime=\"" + record.timeStamp + "\"\n");
+      sbuf.append(" packetNumber=\"" + record.packetNumber + "\"\n");
+      sbuf.append(" isSender=\"" + record.isSender + "\"\n");
+      sbuf.append(" rawdata=\"");
+      sbuf.append(ByteArrayUtil.toHexString(rtpPacket.getPayload(), 16));
+      sbuf.append("\"\n");
+      sbuf.append(" receivingRfssId=\"" + record.receivingRfssId + "\"\n");
+      sbuf.append(" sendingRfssId=\"" + record.sendingRfssId + "\"\n>\n");
+      sbuf.append(record.sessionText);
+      sbuf.append("\n");
+      sbuf.append(rtpPacket.toString());
+      if (record.p25Data != null) {
+         try {
+            sbuf.append(new P25Payload(record.p25Data).toString());
+         } catch (P25BlockException ex) {
+            logger.error("Cannot decode the P25 payload of PTT packet "
+                  + record.packetNumber, ex);
+         }
+      }
+      sbuf.append("\n</ptt-packet>");
+   }
+}
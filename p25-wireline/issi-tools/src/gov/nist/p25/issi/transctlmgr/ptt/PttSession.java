@@ -1,11 +1,9 @@
 //
 package gov.nist.p25.issi.transctlmgr.ptt;
 
-import gov.nist.p25.common.util.ByteArrayUtil;
 import gov.nist.p25.issi.issiconfig.RfssConfig;
 import gov.nist.p25.issi.p25payload.*;
 import gov.nist.p25.issi.rfss.RFSS;
-import gov.nist.p25.issi.rfss.tester.TesterUtility;
 import gov.nist.p25.issi.transctlmgr.PttPointToMultipointSession;
 import gov.nist.p25.issi.utils.ByteUtil;
 import gov.nist.rtp.*;
@@ -58,6 +56,12 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
    /** The service options for this RFSS. */
    private static ServiceOptions serviceOptions = new ServiceOptions();
 
+   /** Encoded connection heartbeat, shared by all sessions. */
+   private static volatile P25PayloadTemplate heartbeatConnectionTemplate = null;
+
+   /** Encoded heartbeat query, shared by all sessions. */
+   private static volatile P25PayloadTemplate heartbeatQueryTemplate = null;
+
    /** The link type for this RFSS. */
    private LinkType linkType;
 
@@ -140,8 +144,9 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
    /** The ptt manager that created me */
    private PttManager manager;
 
-   //NOTE: use for MUTE/UNMUTE
-   private int currentTSN;
+   //NOTE: use for MUTE/UNMUTE; the TSN of the last packet this session
+   // accepted, read by the threads that send a mute.
+   private volatile int currentTSN;
    public int getCurrentTSN() { return currentTSN; }
    public void setCurrentTSN(int tsn) { currentTSN=tsn; }
 
@@ -299,7 +304,8 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
     * Create a PTT packet with IMBE voice.
     * 
     * @param packetType
-    * @param imbeVoiceBlocks
+    * @param imbeVoiceBody
+    *            the voice blocks, encoded once for every peer they go to.
     * @param unitId -
     *            the Unit id for the block.
     * @param transmitPriorityType
@@ -309,7 +315,7 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
     * @return
     */
    private P25Payload createPttPacket(PacketType packetType,
-         IMBEVoiceBlock[] imbeVoiceBlocks, int systemId, int unitId,
+         IMBEVoiceBody imbeVoiceBody, int systemId, int unitId,
          TransmitPriorityType transmitPriorityType, int transmitPriorityLevel) {
 
       if (imbeIndex >= 18) { // 18 blocks in super frame
@@ -322,6 +328,7 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
       }
 
       int tsn = unitId != 0 ? this.getTsnForUnitId(systemId, unitId) : 0;
+      IMBEVoiceBlock[] imbeVoiceBlocks = imbeVoiceBody.getIMBEVoiceBlocks();
       int numVoiceBlocks = imbeVoiceBlocks.length;
       imbeIndex += numVoiceBlocks;
 
@@ -329,7 +336,6 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
       ISSIPacketType issiPacketType = null;
       PTTControlWord pttControlWord = null;
       ISSIHeaderWord issiHeaderWord = null;
-      ManufacturerSpecific[] mfrSpecificBlocks = null;
 
       // Set ISSI Packet Type
       issiPacketType = new ISSIPacketType();
@@ -376,7 +382,7 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
             // total sampling time of all contained IMBE voice blocks.
             rtpTimeStamp += (rtpTimeStampIncrement * imbeVoiceBlocks.length);
             p25Payload = new P25Payload(issiPacketType, pttControlWord,
-                  issiHeaderWord, imbeVoiceBlocks, mfrSpecificBlocks);
+                  issiHeaderWord, imbeVoiceBody);
 
          } else if (packetType == PacketType.PTT_TRANSMIT_PROGRESS) {
 
@@ -415,7 +421,7 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
             // total sampling time of all contained IMBE voice blocks.
             rtpTimeStamp += (rtpTimeStampIncrement * imbeVoiceBlocks.length);
             p25Payload = new P25Payload(issiPacketType, pttControlWord,
-                  issiHeaderWord, imbeVoiceBlocks, mfrSpecificBlocks);
+                  issiHeaderWord, imbeVoiceBody);
          }
 
          if (logger.isDebugEnabled())
@@ -563,6 +569,55 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
       }
    }
 
+   /**
+    * Encode a packet that is sent repeatedly.
+    * 
+    * @param p25Payload -- the packet, which must not be modified afterwards.
+    * @return the template to send.
+    */
+   static P25PayloadTemplate createTemplate(P25Payload p25Payload) {
+      try {
+         return new P25PayloadTemplate(p25Payload);
+      } catch (P25BlockException ex) {
+         logger.fatal("Unexpected error encoding " + p25Payload, ex);
+         throw new RuntimeException("Unexpected exception ", ex);
+      }
+   }
+
+   // THEARTBEAT may be reconfigured between tests
+   private static boolean hasCurrentInterval(P25PayloadTemplate template) {
+      return template != null && template.getISSIPacketType().getInterval()
+            == TimerValues.THEARTBEAT / 1000;
+   }
+
+   /**
+    * Get the encoded heartbeat connection packet.
+    * 
+    * @return -- the heartbeat connection template.
+    */
+   static P25PayloadTemplate getHeartbeatConnectionTemplate() {
+      P25PayloadTemplate template = heartbeatConnectionTemplate;
+      if (!hasCurrentInterval(template)) {
+         template = createTemplate(createHeartbeatConnection());
+         heartbeatConnectionTemplate = template;
+      }
+      return template;
+   }
+
+   /**
+    * Get the encoded heartbeat query packet.
+    * 
+    * @return -- the heartbeat query template.
+    */
+   static P25PayloadTemplate getHeartbeatQueryTemplate() {
+      P25PayloadTemplate template = heartbeatQueryTemplate;
+      if (!hasCurrentInterval(template)) {
+         template = createTemplate(createHeartbeatQuery());
+         heartbeatQueryTemplate = template;
+      }
+      return template;
+   }
+
    /**
     * Create a ptt packet of the given type given its unit id. TODO -- check
     * the type.
@@ -699,7 +754,7 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
    P25Payload createPttTransmitRequest(int systemId, int unitId,
          IMBEVoiceBlock[] imbeVoiceBlocks) {
       return this.createPttPacket(PacketType.PTT_TRANSMIT_REQUEST,
-            imbeVoiceBlocks, systemId, unitId, this.transmitPriorityType,
+            new IMBEVoiceBody(imbeVoiceBlocks), systemId, unitId, this.transmitPriorityType,
             this.transmitPriorityLevel);
    }
    
@@ -715,7 +770,25 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
    P25Payload createPttTransmitProgress( int fromSystemId, int fromUnitId, 
          TransmitPriorityType transmitPriorityType,
          int transmitPriorityLevel, IMBEVoiceBlock[] imbeVoiceBlocks) {
-      return createPttPacket(PacketType.PTT_TRANSMIT_PROGRESS, imbeVoiceBlocks,
+      return createPttTransmitProgress(fromSystemId, fromUnitId,
+            transmitPriorityType, transmitPriorityLevel,
+            new IMBEVoiceBody(imbeVoiceBlocks));
+   }
+
+   /**
+    * Create a ptt tx progress for this SU from voice that is already
+    * encoded.
+    * 
+    * @param fromUnitId
+    * @param transmitPriorityType
+    * @param transmitPriorityLevel
+    * @param imbeVoiceBody
+    * @return
+    */
+   P25Payload createPttTransmitProgress( int fromSystemId, int fromUnitId, 
+         TransmitPriorityType transmitPriorityType,
+         int transmitPriorityLevel, IMBEVoiceBody imbeVoiceBody) {
+      return createPttPacket(PacketType.PTT_TRANSMIT_PROGRESS, imbeVoiceBody,
             fromSystemId,
             fromUnitId, transmitPriorityType, transmitPriorityLevel);   
    }
@@ -745,6 +818,30 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
     * Encapsulates a PTT payload into an RTP packet and sends it out.
     */
    void sendPttPacket(P25Payload p25Payload) throws IOException, RtpException {
+      byte[] p25PayloadBytes = null;
+      try {
+         p25PayloadBytes = p25Payload.getBytes();
+      } catch (P25BlockException pbe) {
+         // This should never occur.
+         pbe.printStackTrace();
+         logger.fatal("Unexpected exception", pbe);
+         return;
+      }
+      sendPttPacket(p25Payload, p25PayloadBytes);
+   }
+
+   /**
+    * Send a packet encoded ahead of time.
+    * 
+    * @param template -- the encoded packet.
+    */
+   void sendPttPacket(P25PayloadTemplate template) throws IOException,
+         RtpException {
+      sendPttPacket(template.getP25Payload(), template.getBytes());
+   }
+
+   private void sendPttPacket(P25Payload p25Payload, byte[] p25PayloadBytes)
+         throws IOException, RtpException {
 
       // intentional delay to resolve the systime different between RFSSes
       if( PTT_DELAY_2MS) {
@@ -794,31 +891,20 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
                + rtpSession.getRemoteIpAddress() + ":"
                + rtpSession.getRemoteRtpRecvPort());
       }
-      try {
-         byte[] p25PayloadBytes = p25Payload.getBytes();
-         rtpPacket.setPayload(p25PayloadBytes, p25PayloadBytes.length);
-
-         if (rtpSession.getRemoteRtpRecvPort() != -1) {
-            rtpSession.sendRtpPacket(rtpPacket);
-            // Log the outgoing packet if we are sending to another host
-            // (other than ourselves).
-            if (!rtpSession.getRemoteIpAddress().equals(
-                  rtpSession.getMyIpAddress().getHostAddress())) {
+      rtpPacket.setPayload(p25PayloadBytes, p25PayloadBytes.length);
+
+      if (rtpSession.getRemoteRtpRecvPort() != -1) {
+         rtpSession.sendRtpPacket(rtpPacket);
+         // Log the outgoing packet if we are sending to another host
+         // (other than ourselves).
+         if (!rtpSession.getRemoteIpAddress().equals(
+               rtpSession.getMyIpAddress().getHostAddress())) {
 //logger.debug("ZMARKER(2): rtpPacket="+rtpPacket.toString());
-               if (!PTT_TEST_MODE) {
-                  this.owningRfss.getRFSS().capturePttPacket(rtpPacket,
-                        p25Payload, true, this);
-               }
+            if (!PTT_TEST_MODE) {
+               this.owningRfss.getRFSS().capturePttPacket(rtpPacket,
+                     p25Payload, true, this);
             }
          }
-
-      } catch (P25BlockException pbe) {
-         // This should never occur.
-         pbe.printStackTrace();
-         logger.fatal("Unexpected exception", pbe);
-
-      } catch (RtpException re) {
-         throw re;
       }
    }
 
@@ -845,10 +931,11 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
       cp <<= 0x04;
       cp |= (this.transmitPriorityLevel & 0x0f);
       int retval = cp > tp ? 1 : 0;
-      logger.debug("isCurrentPriorityHigher " + retval + " ptype = "
-            + priorityType + " pl = " + priorityLevel + " this.priority = "
-            + this.transmitPriorityType + " this.level = "
-            + this.transmitPriorityLevel);
+      if (logger.isDebugEnabled())
+         logger.debug("isCurrentPriorityHigher " + retval + " ptype = "
+               + priorityType + " pl = " + priorityLevel + " this.priority = "
+               + this.transmitPriorityType + " this.level = "
+               + this.transmitPriorityLevel);
       return retval;
    }
 
@@ -943,46 +1030,21 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
    }
 
    /**
-    * Log the PTT packet.
+    * Log the PTT packet. The packet is formatted and written by the
+    * PttPacketLogger thread.
     */
    
    public void logPttPacket(RtpPacket rtpPacket, P25Payload p25Payload,
          boolean isSender, long timeStamp, int packetNumber,
          String remoteRfssDomainName, String remoteIpAddress, int remotePort) {
       
-      //PrintWriter rtpLog = TopologyConfig.getRtpMessageLogStream();
-      PrintWriter rtpLog = TesterUtility.getRtpMessageLogStream();
-      if (rtpLog != null) {
-         StringBuffer sbuf = new StringBuffer();
-         //sbuf.append("\n<!-- PTT PACKET BEGIN 1 -->");
-         sbuf.append("\n<ptt-packet\n");
-         sbuf.append(" receptionTime=\"" + timeStamp + "\"\n");
-         sbuf.append(" packetNumber=\"" + packetNumber + "\"\n");
-         sbuf.append(" isSender=\"" + isSender + "\"\n");
-         sbuf.append(" rawdata=\"");
-         sbuf.append( ByteArrayUtil.toHexString( rtpPacket.getPayload(), 16));
-         sbuf.append("\"\n");
-
-         sbuf.append(" receivingRfssId=\""
-               + (this.owningRfss != null ? this.owningRfss
-                     .getDomainName() : "UNKNOWN") + "\"\n");
-         sbuf.append(" sendingRfssId=\"" + remoteRfssDomainName + "\"\n>\n");
-         sbuf.append(this.toString());
-         sbuf.append("\n");
-         sbuf.append(rtpPacket.toString());
-         sbuf.append(p25Payload.toString());
-	 /***
-         sbuf.append("\n<rtf-format>\n");
-         sbuf.append("<![CDATA[\n");
-	 // disable RTF support
-         sbuf.append(" RTF Endcoding not supportted. ");
-         sbuf.append("]]>\n");
-         sbuf.append("</rtf-format>");
-	  ***/
-         sbuf.append("\n</ptt-packet>");
-         rtpLog.println(sbuf.toString());
-         rtpLog.flush();
-      }
+      if (!PttPacketLogger.isLogEnabled())
+         return;
+      PttPacketLogger.getInstance().log(new PttPacketLogger.Record(this,
+            rtpPacket, p25Payload, isSender, timeStamp, packetNumber,
+            (this.owningRfss != null ? this.owningRfss.getDomainName()
+                  : "UNKNOWN"), remoteRfssDomainName, remoteIpAddress,
+            remotePort));
    }
 
    @Override
@@ -1084,6 +1146,14 @@ public abstract class PttSession implements RtpListener, PttSessionInterface,
          rtpSession.shutDown(owningRfss.getRfssName(), sessionType);
       }
 
+      // Return the TSNs of this session
+      if (manager != null) {
+         for (int tsn : myTsnSet) {
+            manager.releaseTsn(linkType, tsn);
+         }
+         myTsnSet.clear();
+      }
+
       // Shutdown Heartbeat transmitter and receiver
       if (heartbeatTransmitter != null) {
          //   && heartbeatTransmitter.sendHeartbeatsTask != null) {
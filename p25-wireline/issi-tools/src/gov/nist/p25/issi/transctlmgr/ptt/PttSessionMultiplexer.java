@@ -1,19 +1,18 @@
 //
 package gov.nist.p25.issi.transctlmgr.ptt;
 
-import java.io.PrintWriter;
 import java.util.Collection;
-import java.util.Hashtable;
+import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.sdp.SessionDescription;
 import org.apache.log4j.Logger;
 
-import gov.nist.p25.common.util.ByteArrayUtil;
+import gov.nist.p25.common.util.CopyOnWriteIntMap;
 import gov.nist.p25.issi.issiconfig.RfssConfig;
 import gov.nist.p25.issi.p25payload.ISSIPacketType;
 import gov.nist.p25.issi.p25payload.P25Payload;
 import gov.nist.p25.issi.p25payload.PacketType;
-import gov.nist.p25.issi.rfss.tester.TesterUtility;
 import gov.nist.rtp.RtpErrorEvent;
 import gov.nist.rtp.RtpException;
 import gov.nist.rtp.RtpListener;
@@ -25,18 +24,53 @@ import gov.nist.rtp.RtpTimeoutEvent;
 
 /**
  * A class that listens for RTP packets and multiplexes to the appropriate
- * PttSession based on the tsn.
+ * PttSession based on the tsn. Packets may be handed in by several receive
+ * threads: the session tables are safe for concurrent use and no state of
+ * a packet is kept in the multiplexer while it is dispatched.
  */
 public class PttSessionMultiplexer implements RtpListener, PttSessionInterface {
    
    private static Logger logger = Logger.getLogger(PttSessionMultiplexer.class);
 
+   /** How a received packet is dispatched, by packet type */
+   private enum Route {
+      /** Connection heartbeats, handled by the mux heartbeat receiver */
+      HEARTBEAT,
+      /** Directed to the session of the TSN stamped on the packet */
+      TSN,
+      /** Delivered to every session of the group */
+      ALL_SESSIONS
+   }
+
+   private static final Route[] routes = new Route[PacketType.values().length];
+
+   static {
+      for (PacketType packetType : PacketType.values()) {
+         Route route;
+         if (HeartbeatReceiver.handlesPacketType(packetType)) {
+            route = Route.HEARTBEAT;
+         } else if (packetType == PacketType.PTT_TRANSMIT_MUTE
+               || packetType == PacketType.PTT_TRANSMIT_UNMUTE
+               || packetType == PacketType.PTT_TRANSMIT_WAIT
+               || packetType == PacketType.PTT_TRANSMIT_GRANT
+               || packetType == PacketType.PTT_TRANSMIT_DENY) {
+            // Mute and unmute and wait are directed towards specific
+            // remote TSNs. Note that the remote tsn is stamped on the
+            // packet when it is constructed ( see PttSession.java ).
+            route = Route.TSN;
+         } else {
+            route = Route.ALL_SESSIONS;
+         }
+         routes[packetType.ordinal()] = route;
+      }
+   }
+
    /** A set of smf sessions that this mux multiplexes */
-   private Hashtable<Integer, SmfSession> pttSessions;   
-   private Hashtable<SmfSession,Integer> pttSessionToTsnMap;
+   private CopyOnWriteIntMap<SmfSession> pttSessions;
+   private ConcurrentHashMap<SmfSession,Integer> pttSessionToTsnMap;
    
    /** Each SU In the group served owns a TSN * */
-   private Hashtable<String, Integer> tsnTable;
+   private ConcurrentHashMap<String, Integer> tsnTable;
 
    /** The session description used to create this mux */
    private SessionDescription sessionDescription;
@@ -50,19 +84,12 @@ public class PttSessionMultiplexer implements RtpListener, PttSessionInterface {
    private SmfSession currentTransmitter;
    private String remoteRfssRadicalName;
    private PriorityQueue<SmfSession> pendingTransmitters;
-   private byte[] rtpPayload;
-
-   //NOTE: keep the incomingTSN for MUTE/UNMUTE
-   private int currentTSN;
-   public void setCurrentTSN(int tsn) { currentTSN=tsn; }
-   public int getCurrentTSN() { return currentTSN; }
-
 
    // constructor
    public PttSessionMultiplexer(RtpSession rtpSession, int gid) {
-      pttSessions = new Hashtable<Integer, SmfSession>();
-      tsnTable = new Hashtable<String, Integer>();
-      pttSessionToTsnMap = new Hashtable<SmfSession,Integer> ();
+      pttSessions = new CopyOnWriteIntMap<SmfSession>();
+      tsnTable = new ConcurrentHashMap<String, Integer>();
+      pttSessionToTsnMap = new ConcurrentHashMap<SmfSession,Integer>();
       this.rtpSession = rtpSession;
       this.rtpSession.addRtpListener(this);
       this.linkType = LinkType.GROUP_SERVING;
@@ -110,6 +137,14 @@ public class PttSessionMultiplexer implements RtpListener, PttSessionInterface {
       return this.pttSessions.get(tsn);
    }
 
+   /**
+    * Decode a received PTT packet and hand it to the heartbeat receiver or
+    * the PTT sessions it is for. The P25 payload is decoded in place from
+    * the RTP payload. It is decoded in full for every packet: the capture
+    * keeps the P25Payload and the sessions hand it to their listeners in
+    * events, so a flyweight view of the packet would only spare the decode
+    * of dropped packets.
+    */
    public void handleRtpPacketEvent(RtpPacketEvent rtpPacketEvent) {
       try {
          RtpPacket rtpPacket = rtpPacketEvent.getRtpPacket();
@@ -118,47 +153,37 @@ public class PttSessionMultiplexer implements RtpListener, PttSessionInterface {
 rtpPacket.setPT(100);
 //logger.error("#386 setting PT from 72 to 100...");
 
-         //byte[] rtpPayload = rtpPacket.getPayload();
-         rtpPayload = rtpPacket.getPayload();
-         P25Payload p25Payload = new P25Payload(rtpPayload);
+         P25Payload p25Payload = new P25Payload(rtpPacket.getPayload());
 
          ISSIPacketType issiPacketType = p25Payload.getISSIPacketType();
          PacketType packetType = issiPacketType.getPacketType();
          int incomingTSN = issiPacketType.getTransmissionSequenceNumber();
-	 setCurrentTSN( incomingTSN);
 
          if (!PttSession.PTT_TEST_MODE) {
             this.owningRfss.getRFSS().capturePttPacket(rtpPacket,
                   p25Payload, false, this);
          }
 
-         if (this.heartbeatReceiver.isPacketTypeHandled(issiPacketType
-               .getPacketType())) {
+         switch (routes[packetType.ordinal()]) {
+         case HEARTBEAT:
             this.heartbeatReceiver.handlePttPacket(p25Payload);
-         } else {
-            //===PacketType packetType = issiPacketType.getPacketType();
-            if (packetType == PacketType.PTT_TRANSMIT_MUTE
-                  || packetType == PacketType.PTT_TRANSMIT_UNMUTE
-                  || packetType == PacketType.PTT_TRANSMIT_WAIT
-                  || packetType == PacketType.PTT_TRANSMIT_GRANT
-                  || packetType == PacketType.PTT_TRANSMIT_DENY) {
-               // Mute and unmute and wait are directed towards specific
-               // remote
-               // TSNs. Note that the remote tsn is stamped on the packet
-               // when it is constructed ( see PttSession.java ).
-               //===int incomingTSN = issiPacketType.getTransmissionSequenceNumber();
-               PttSession pttSession = this.pttSessions.get(incomingTSN);
-               if (pttSession == null) {
-                  logger.error("Could not find PTT session for"
-                        + incomingTSN + " discarding packet ");
-               } else {
-                  pttSession.handleIncomingPttPacket(p25Payload);
-               }
+            break;
+         case TSN:
+            PttSession pttSession = this.pttSessions.get(incomingTSN);
+            if (pttSession == null) {
+               logger.error("Could not find PTT session for"
+                     + incomingTSN + " discarding packet ");
             } else {
-               for (PttSession pttSession : this.pttSessions.values()) {
-                  pttSession.handleIncomingPttPacket(p25Payload);
-               }
+               pttSession.handleIncomingPttPacket(p25Payload);
+            }
+            break;
+         default:
+            // A snapshot, so no lock is held while the sessions run
+            List<SmfSession> sessions = this.pttSessions.values();
+            for (int i = 0; i < sessions.size(); i++) {
+               sessions.get(i).handleIncomingPttPacket(p25Payload);
             }
+            break;
          }
       } catch (Exception ex) {
          // java.lang.IllegalStateException: Timer already cancelled.
@@ -315,43 +340,14 @@ rtpPacket.setPT(100);
       if (PttSession.PTT_TEST_MODE)
          return;
 
-      //PrintWriter rtpLog = TopologyConfig.getRtpMessageLogStream();
-      PrintWriter rtpLog = TesterUtility.getRtpMessageLogStream();
-      if (rtpLog != null) {
-
+      if (PttPacketLogger.isLogEnabled()) {
          if (this.owningRfss == null) {
             logger.warn("Warning -- owning rfss is null for " + this);
          }
-         StringBuffer sbuf = new StringBuffer();
-         sbuf.append("\n<!-- PTT PACKET BEGIN 2 -->");
-         sbuf.append("\n<ptt-packet \n");
-         sbuf.append(" receptionTime=\"" + timeStamp + "\"\n");
-         sbuf.append(" packetNumber=\"" + sequenceNumber + "\"\n");
-         sbuf.append(" isSender=\"" + isSender + "\"\n");
-         sbuf.append(" rawdata=\"");
-         sbuf.append( ByteArrayUtil.toHexString( rtpPayload, 16));
-         sbuf.append("\"\n");
-
-         sbuf.append(" receivingRfssId=\""
-               + (this.owningRfss != null ? this.owningRfss
-                     .getDomainName() : "UNKNOWN") + "\"\n");
-         sbuf.append(" sendingRfssId=\"" + remoteRfssDomainName + "\"\n>\n");
-         sbuf.append(this.toString());
-         sbuf.append("\n");
-         sbuf.append(rtpPacket.toString());
-         sbuf.append(p25Payload.toString());
-	 /***
-         sbuf.append("\n<rtf-format>\n");
-         sbuf.append("<![CDATA[\n");
-	 // disbale RTF support
-	 sbuf.append(" RTF Endcoding not supportted. ");
-         sbuf.append("]]>\n");
-         sbuf.append("</rtf-format>");
-	  ***/
-         sbuf.append("\n</ptt-packet>");
-
-         rtpLog.println(sbuf.toString());
-         rtpLog.flush();
+         PttPacketLogger.getInstance().log(new PttPacketLogger.Record(this,
+               rtpPacket, p25Payload, isSender, timeStamp, sequenceNumber,
+               (this.owningRfss != null ? this.owningRfss.getDomainName()
+                     : "UNKNOWN"), remoteRfssDomainName, ipAddress, port));
       }
    }
 
@@ -0,0 +1,68 @@
+//
+package gov.nist.p25.issi.transctlmgr.ptt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A hash index of captured PTT packets for checking them against a
+ * reference trace. Packets are grouped by their match key, so each
+ * reference packet is compared only against captures that can match it.
+ * <p>
+ * Each capture matches at most one reference packet. Within a group,
+ * captures are consumed in the order they were captured, so the reference
+ * packets of one stream must appear in the same order as the captures.
+ */
+public class PttTraceIndex {
+
+   private static class Group {
+      final ArrayList<CapturedPttPacket> packets = new ArrayList<CapturedPttPacket>(4);
+      boolean[] consumed;
+      /** Packets below this index have all been consumed. */
+      int first;
+   }
+
+   private final HashMap<Long, Group> groups = new HashMap<Long, Group>();
+
+   public PttTraceIndex(Iterable<CapturedPttPacket> captures) {
+      for (CapturedPttPacket packet : captures) {
+         Long key = packet.getMatchKey();
+         Group group = groups.get(key);
+         if (group == null) {
+            group = new Group();
+            groups.put(key, group);
+         }
+         group.packets.add(packet);
+      }
+      for (Group group : groups.values()) {
+         group.consumed = new boolean[group.packets.size()];
+      }
+   }
+
+   /**
+    * Find the earliest unconsumed capture that matches a reference packet
+    * and consume it.
+    *
+    * @param template
+    *            the reference packet.
+    * @return the matching capture, or null if there is none.
+    */
+   public CapturedPttPacket consume(CapturedPttPacket template) {
+      Group group = groups.get(template.getMatchKey());
+      if (group == null)
+         return null;
+      for (int i = group.first; i < group.consumed.length; i++) {
+         if (group.consumed[i])
+            continue;
+         CapturedPttPacket packet = group.packets.get(i);
+         if (packet.match(template)) {
+            group.consumed[i] = true;
+            while (group.first < group.consumed.length
+                  && group.consumed[group.first])
+               group.first++;
+            return packet;
+         }
+      }
+      return null;
+   }
+}
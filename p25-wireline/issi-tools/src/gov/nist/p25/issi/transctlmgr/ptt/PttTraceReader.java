@@ -0,0 +1,137 @@
+//
+package gov.nist.p25.issi.transctlmgr.ptt;
+
+import gov.nist.p25.issi.p25payload.P25BlockException;
+import gov.nist.p25.issi.p25payload.P25Payload;
+import gov.nist.rtp.RtpPacket;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+/**
+ * Reads a binary PTT trace written by PttTraceWriter, one packet at a time.
+ * Traces saved as serialized CapturedPttPacket objects by earlier versions
+ * are also read.
+ */
+public class PttTraceReader {
+
+   private static final int OBJECT_STREAM_MAGIC = 0xaced;
+
+   private final DataInputStream in;
+   private ObjectInputStream legacyIn;
+   private byte[] recordBytes = new byte[512];
+
+   public PttTraceReader(InputStream inputStream) throws IOException {
+      BufferedInputStream bis = new BufferedInputStream(inputStream);
+      in = new DataInputStream(bis);
+      bis.mark(4);
+      int magic = readMagic(bis);
+      if (magic >>> 16 == OBJECT_STREAM_MAGIC) {
+         bis.reset();
+         legacyIn = new ObjectInputStream(bis);
+      } else if (magic != PttTraceWriter.MAGIC) {
+         throw new IOException("Not a PTT trace");
+      } else {
+         int version = in.readUnsignedShort();
+         if (version > PttTraceWriter.VERSION)
+            throw new IOException("Unsupported PTT trace version " + version);
+      }
+   }
+
+   private static int readMagic(InputStream is) throws IOException {
+      int magic = 0;
+      for (int i = 0; i < 4; i++) {
+         int b = is.read();
+         if (b < 0)
+            throw new IOException("Not a PTT trace");
+         magic = (magic << 8) | b;
+      }
+      return magic;
+   }
+
+   /**
+    * Read the next packet.
+    *
+    * @return the packet, or null at the end of the trace.
+    */
+   public CapturedPttPacket read() throws IOException {
+      if (legacyIn != null)
+         return readLegacy();
+
+      int length;
+      try {
+         length = in.readInt();
+      } catch (EOFException ex) {
+         return null;
+      }
+      if (length < 0)
+         throw new IOException("Bad PTT trace record length " + length);
+      if (recordBytes.length < length)
+         recordBytes = new byte[Math.max(length, recordBytes.length * 2)];
+      in.readFully(recordBytes, 0, length);
+      DataInputStream record = new DataInputStream(
+            new ByteArrayInputStream(recordBytes, 0, length));
+
+      int flags = record.readUnsignedByte();
+      long captureTime = record.readLong();
+      int packetNumber = record.readInt();
+      int remotePort = record.readInt();
+      String ipAddress = null;
+      if ((flags & PttTraceWriter.FLAG_IP_ADDRESS) != 0)
+         ipAddress = record.readUTF();
+      String domainName = null;
+      if ((flags & PttTraceWriter.FLAG_DOMAIN_NAME) != 0)
+         domainName = record.readUTF();
+
+      RtpPacket rtpPacket = new RtpPacket();
+      int vsn = record.readInt();
+      rtpPacket.setV(vsn >>> 30);
+      rtpPacket.setP((vsn >>> 29) & 0x01);
+      rtpPacket.setX((vsn >>> 28) & 0x01);
+      rtpPacket.setCC((vsn >>> 24) & 0x0f);
+      rtpPacket.setM((vsn >>> 23) & 0x01);
+      rtpPacket.setPT((vsn >>> 16) & 0x7f);
+      rtpPacket.setSN(vsn & 0xffff);
+      rtpPacket.setTS(record.readInt() & 0xffffffffL);
+      rtpPacket.setSSRC(record.readInt() & 0xffffffffL);
+      byte[] p25Data = new byte[record.readUnsignedShort()];
+      record.readFully(p25Data);
+      byte[] rtpPayload = p25Data;
+      if ((flags & PttTraceWriter.FLAG_RTP_PAYLOAD_IS_P25) == 0) {
+         rtpPayload = new byte[record.readUnsignedShort()];
+         record.readFully(rtpPayload);
+      }
+      rtpPacket.setPayload(rtpPayload, rtpPayload.length);
+
+      P25Payload payload;
+      try {
+         payload = new P25Payload(p25Data);
+      } catch (P25BlockException ex) {
+         throw new IOException("Bad P25 payload in PTT trace: " + ex.getMessage());
+      }
+      return new CapturedPttPacket(rtpPacket, payload,
+            (flags & PttTraceWriter.FLAG_SENDER) != 0, captureTime,
+            packetNumber, remotePort, ipAddress, domainName);
+   }
+
+   private CapturedPttPacket readLegacy() throws IOException {
+      try {
+         return (CapturedPttPacket) legacyIn.readObject();
+      } catch (EOFException ex) {
+         return null;
+      } catch (ClassNotFoundException ex) {
+         throw new IOException("Bad PTT trace: " + ex.getMessage());
+      }
+   }
+
+   public void close() throws IOException {
+      if (legacyIn != null)
+         legacyIn.close();
+      in.close();
+   }
+}
@@ -0,0 +1,114 @@
+//
+package gov.nist.p25.issi.transctlmgr.ptt;
+
+import gov.nist.p25.issi.p25payload.P25BlockException;
+import gov.nist.rtp.RtpPacket;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes captured PTT packets as a binary PTT trace.
+ * <p>
+ * A trace starts with the magic number and a format version, followed by
+ * one record per packet. Each record is prefixed by its length so that a
+ * reader can skip fields added by later versions:
+ *
+ * <pre>
+ * int     record length (bytes that follow)
+ * byte    flags: isSender, RTP payload is the P25 payload, has IP, has domain
+ * long    capture time
+ * int     packet number
+ * int     remote port
+ * UTF     remote IP address (if flagged)
+ * UTF     remote RFSS domain name (if flagged)
+ * 12      RTP header (V..SN, TS, SSRC)
+ * short   P25 payload length, followed by the payload
+ * short   RTP payload length, followed by the payload (if not the P25 payload)
+ * </pre>
+ */
+public class PttTraceWriter {
+
+   /** "PTTR" */
+   public static final int MAGIC = 0x50545452;
+   public static final short VERSION = 1;
+
+   static final int FLAG_SENDER = 0x01;
+   static final int FLAG_RTP_PAYLOAD_IS_P25 = 0x02;
+   static final int FLAG_IP_ADDRESS = 0x04;
+   static final int FLAG_DOMAIN_NAME = 0x08;
+
+   private final DataOutputStream out;
+   private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(512);
+   private final DataOutputStream record = new DataOutputStream(recordBuffer);
+
+   public PttTraceWriter(OutputStream outputStream) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(outputStream));
+      out.writeInt(MAGIC);
+      out.writeShort(VERSION);
+   }
+
+   /**
+    * Append a packet to the trace.
+    */
+   public void write(CapturedPttPacket packet) throws IOException {
+      RtpPacket rtpPacket = packet.getRtpPacket();
+      int rtpPayloadLength = rtpPacket.getPayload() == null ? 0
+            : rtpPacket.getPayloadLength();
+      byte[] p25Data;
+      try {
+         p25Data = packet.getP25Payload().getBytes();
+      } catch (P25BlockException ex) {
+         throw new IOException("Cannot encode P25 payload: " + ex.getMessage());
+      }
+      boolean samePayload = rtpPayloadLength == p25Data.length
+            && Arrays.equals(p25Data, Arrays.copyOf(rtpPacket.getPayload(),
+                  rtpPayloadLength));
+      String ipAddress = packet.getRemoteIpAddress();
+      String domainName = packet.getRemoteRfssDomainName();
+
+      int flags = 0;
+      if (packet.isSender())
+         flags |= FLAG_SENDER;
+      if (samePayload)
+         flags |= FLAG_RTP_PAYLOAD_IS_P25;
+      if (ipAddress != null)
+         flags |= FLAG_IP_ADDRESS;
+      if (domainName != null)
+         flags |= FLAG_DOMAIN_NAME;
+
+      recordBuffer.reset();
+      record.writeByte(flags);
+      record.writeLong(packet.getCaptureTime());
+      record.writeInt(packet.getPacketNumber());
+      record.writeInt(packet.getRemotePort());
+      if (ipAddress != null)
+         record.writeUTF(ipAddress);
+      if (domainName != null)
+         record.writeUTF(domainName);
+      record.writeInt(rtpPacket.getV() << 30 | rtpPacket.getP() << 29
+            | rtpPacket.getX() << 28 | rtpPacket.getCC() << 24
+            | rtpPacket.getM() << 23 | rtpPacket.getPT() << 16
+            | rtpPacket.getSN());
+      record.writeInt((int) rtpPacket.getTS());
+      record.writeInt((int) rtpPacket.getSSRC());
+      record.writeShort(p25Data.length);
+      record.write(p25Data);
+      if (!samePayload) {
+         record.writeShort(rtpPayloadLength);
+         record.write(rtpPacket.getPayload(), 0, rtpPayloadLength);
+      }
+      record.flush();
+
+      out.writeInt(recordBuffer.size());
+      recordBuffer.writeTo(out);
+   }
+
+   public void close() throws IOException {
+      out.close();
+   }
+}
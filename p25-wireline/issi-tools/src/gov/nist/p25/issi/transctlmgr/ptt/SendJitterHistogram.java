@@ -0,0 +1,86 @@
+//
+package gov.nist.p25.issi.transctlmgr.ptt;
+
+/**
+ * A histogram of how late the packets of one paced audio stream were sent
+ * relative to their deadline. Bucket upper bounds are in microseconds; the
+ * last bucket holds everything later than the last bound.
+ */
+public class SendJitterHistogram {
+
+   /** Upper bounds of the buckets in microseconds. */
+   private static final long[] BOUNDS_MICROS = { 100, 250, 500, 1000, 2000,
+         5000, 10000, 20000 };
+
+   private final long[] counts = new long[BOUNDS_MICROS.length + 1];
+
+   private long count = 0;
+
+   private long totalNanos = 0;
+
+   private long maxNanos = 0;
+
+   /**
+    * Record the lateness of one send.
+    *
+    * @param latenessNanos
+    *            the time between the deadline and the send.
+    */
+   public synchronized void record(long latenessNanos) {
+      long lateness = Math.max(0, latenessNanos);
+      long micros = lateness / 1000L;
+      int i = 0;
+      while (i < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[i])
+         i++;
+      counts[i]++;
+      count++;
+      totalNanos += lateness;
+      if (lateness > maxNanos)
+         maxNanos = lateness;
+   }
+
+   public synchronized long getCount() {
+      return count;
+   }
+
+   public synchronized long getMaxMicros() {
+      return maxNanos / 1000L;
+   }
+
+   public synchronized long getMeanMicros() {
+      return count == 0 ? 0 : totalNanos / count / 1000L;
+   }
+
+   /**
+    * Get the number of sends in each bucket.
+    *
+    * @return a copy of the bucket counts.
+    */
+   public synchronized long[] getCounts() {
+      return counts.clone();
+   }
+
+   /**
+    * Get the upper bounds of the buckets.
+    *
+    * @return the bucket upper bounds in microseconds.
+    */
+   public static long[] getBoundsMicros() {
+      return BOUNDS_MICROS.clone();
+   }
+
+   public synchronized String toString() {
+      StringBuffer sbuf = new StringBuffer();
+      sbuf.append("<send-jitter count=\"" + count + "\" meanMicros=\""
+            + getMeanMicros() + "\" maxMicros=\"" + getMaxMicros() + "\">");
+      for (int i = 0; i < counts.length; i++) {
+         if (counts[i] == 0)
+            continue;
+         String bound = i < BOUNDS_MICROS.length ? "<=" + BOUNDS_MICROS[i]
+               : ">" + BOUNDS_MICROS[BOUNDS_MICROS.length - 1];
+         sbuf.append(" " + bound + "us:" + counts[i]);
+      }
+      sbuf.append("</send-jitter>");
+      return sbuf.toString();
+   }
+}
@@ -2,11 +2,11 @@
 package gov.nist.p25.issi.transctlmgr.ptt;
 
 import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.ISSITimerTask;
 import gov.nist.p25.issi.p25payload.P25Payload;
 import gov.nist.p25.issi.p25payload.PacketType;
 
 import java.util.HashSet;
-import java.util.TimerTask;
 import org.apache.log4j.Logger;
 
 /**
@@ -82,8 +82,9 @@ public class SmfReceiver {
          logger.debug(this + ":\n\tSMF RX received: " + packetType);
 
       if (currentState == SmfRxState.DONE) {
-         logger.debug(this
-               + ":\n\tSMF RX received packet in the DONE state.  Ignoring.");
+         if (logger.isDebugEnabled())
+            logger.debug(this
+                  + ":\n\tSMF RX received packet in the DONE state.  Ignoring.");
 
       } else if (packetType == PacketType.PTT_TRANSMIT_START) {
          spurtRqstInd(packetEvent);
@@ -122,7 +123,7 @@ public class SmfReceiver {
             if (firstPacketTimeoutTask != null)
                firstPacketTimeoutTask.cancel();
             firstPacketTimeoutTask = new FirstPacketTimeoutTask();
-            ISSITimer.getTimer().schedule(firstPacketTimeoutTask,
+            ISSITimer.getWheelTimer().schedule(firstPacketTimeoutTask,
                   TimerValues.TFIRSTPACKETTIME);
 
             if (logger.isEnabledFor(org.apache.log4j.Level.DEBUG))
@@ -136,7 +137,7 @@ public class SmfReceiver {
                firstPacketTimeoutTask.cancel();
             }
             firstPacketTimeoutTask = new FirstPacketTimeoutTask();
-            ISSITimer.getTimer().schedule(firstPacketTimeoutTask,
+            ISSITimer.getWheelTimer().schedule(firstPacketTimeoutTask,
                   TimerValues.TFIRSTPACKETTIME);
 
             if (logger.isEnabledFor(org.apache.log4j.Level.DEBUG))
@@ -169,7 +170,7 @@ public class SmfReceiver {
             audioTimeoutTask.cancel();
 
          audioTimeoutTask = new AudioTimeoutTask();
-         ISSITimer.getTimer().schedule(audioTimeoutTask,
+         ISSITimer.getWheelTimer().schedule(audioTimeoutTask,
                TimerValues.TENDLOSS);
 
          if (smfSession.muteReceiver.myMuteState == Mute.MUTED) {
@@ -262,7 +263,7 @@ public class SmfReceiver {
     * 
     * @see TIA-109.BACA Section 7.6.2
     */
-   class FirstPacketTimeoutTask extends TimerTask {
+   class FirstPacketTimeoutTask extends ISSITimerTask {
       public void run() {
          // If we reach this point, then we have reached the timeout
          // for waiting for teh first audio packet, just to move to
@@ -280,7 +281,7 @@ public class SmfReceiver {
    /**
     * This class implements the timeout for receiving audio.
     */
-   class AudioTimeoutTask extends TimerTask {
+   class AudioTimeoutTask extends ISSITimerTask {
       public void run() {
          // Check if we are in a MUTED state. If so, we can simply
          // cancel this task.
@@ -2,7 +2,9 @@
 package gov.nist.p25.issi.transctlmgr.ptt;
 
 import gov.nist.p25.issi.ISSITimer;
+import gov.nist.p25.issi.ISSITimerTask;
 import gov.nist.p25.issi.p25payload.IMBEVoiceBlock;
+import gov.nist.p25.issi.p25payload.IMBEVoiceBody;
 import gov.nist.p25.issi.p25payload.P25Payload;
 import gov.nist.p25.issi.p25payload.PacketType;
 import gov.nist.p25.issi.p25payload.TransmitPriorityType;
@@ -10,7 +12,6 @@ import gov.nist.rtp.RtpException;
 import java.io.IOException;
 import java.util.List;
 import java.util.HashSet;
-import java.util.TimerTask;
 import org.apache.log4j.Logger;
 
 /**
@@ -31,12 +32,6 @@ public class SmfTransmitter {
     */
    public int NUM_IMBE_BLOCKS_PER_PACKET = 3;
 
-   /**
-    * The delay between IMBE voice blocks in miliseconds. Note that a packet
-    * may have up to NUM_IMBE_BLOCKS_PER_PACKET.
-    */
-   private static final int AUDIO_TRANSMISSION_RATE = 20;
-
 
    /** Application listener for GRANT, DENY, and WAIT responses. */
    private SmfTxListener smfTxListener = null;
@@ -71,8 +66,11 @@ public class SmfTransmitter {
    /** Collection of packet types this class handles. */
    private static HashSet<PacketType> handledPacketTypes = null;
 
-   /** Transmits IMBE audio. */
-   private Thread audioSourceTransmitterThread = null;
+   /** Transmits IMBE audio. Cleared by the pacer thread when it finishes. */
+   private volatile AudioSourceTransmitter audioSourceTransmitter = null;
+
+   /** Send jitter of the last audio spurt transmitted. */
+   private SendJitterHistogram sendJitterHistogram = null;
 
 
    /** Application-dependent and default transition behavior. */
@@ -247,7 +245,7 @@ public class SmfTransmitter {
       this.systemId = systemId;
       this.unitId = unitId;
       requestTask = new RequestTask(systemId,unitId);
-      ISSITimer.getTimer().schedule(requestTask, 0, TimerValues.TREQUEST);
+      ISSITimer.getWheelTimer().schedule(requestTask, 0, TimerValues.TREQUEST);
    }
 
    public void sendSpurtRequestWithVoice(
@@ -269,7 +267,7 @@ public class SmfTransmitter {
       this.unitId = unitId;
       this.systemId = systemId;
       requestTask = new RequestTask(unitId, imbeVoiceBlocks);
-      ISSITimer.getTimer().schedule(requestTask, 0, TimerValues.TREQUEST);
+      ISSITimer.getWheelTimer().schedule(requestTask, 0, TimerValues.TREQUEST);
    }
 
    /**
@@ -290,7 +288,7 @@ public class SmfTransmitter {
       this.systemId = systemId;
       this.unitId = unitId;
       requestTask = new RequestTask(systemId, unitId);
-      ISSITimer.getTimer().schedule(requestTask, 0, TimerValues.TREQUEST);
+      ISSITimer.getWheelTimer().schedule(requestTask, 0, TimerValues.TREQUEST);
    }
 
    /**
@@ -306,6 +304,22 @@ public class SmfTransmitter {
          int fromSystemId, int fromUnitId, int tsn, 
          TransmitPriorityType transmitPriorityType, int transmitPriorityLevel)
          throws IllegalStateException {
+      forwardPttProgress(new IMBEVoiceBody(imbeVoiceBlocks), fromSystemId,
+            fromUnitId, tsn, transmitPriorityType, transmitPriorityLevel);
+   }
+
+   /**
+    * "Forward" a PTT progress packet whose voice is already encoded, as when
+    * the same voice goes to several peers.
+    * 
+    * @param imbeVoiceBody
+    *            The IMBE voice blocks and their encoding.
+    * @throws IllegalStateException
+    */
+   public void forwardPttProgress(IMBEVoiceBody imbeVoiceBody,
+         int fromSystemId, int fromUnitId, int tsn, 
+         TransmitPriorityType transmitPriorityType, int transmitPriorityLevel)
+         throws IllegalStateException {
 
       try {
           this.unitId = fromUnitId;
@@ -314,7 +328,7 @@ public class SmfTransmitter {
 
             P25Payload p25Payload = smfSession.createPttTransmitProgress(
                   fromSystemId,fromUnitId, transmitPriorityType,
-                  transmitPriorityLevel, imbeVoiceBlocks);
+                  transmitPriorityLevel, imbeVoiceBody);
 
             // p25Payload.setIMBEVoiceBlockArray(imbeVoiceBlocks);
             smfSession.sendPttPacket(p25Payload);
@@ -326,7 +340,7 @@ public class SmfTransmitter {
             this.updateTxState(SmfTxTransition.SELF_GRANT);
             P25Payload p25Payload = smfSession.createPttTransmitProgress(
                   fromSystemId,fromUnitId,  transmitPriorityType,
-                  transmitPriorityLevel,imbeVoiceBlocks);
+                  transmitPriorityLevel,imbeVoiceBody);
             smfSession.sendPttPacket(p25Payload);
          } else {
             // I think one should silently drop packet here rather than
@@ -402,10 +416,9 @@ public class SmfTransmitter {
       try {
          this.updateTxState(SmfTxTransition.SELF_GRANT);
          if (imbeVoiceBlocks != null) { // We must be a source SMF
-            if (this.audioSourceTransmitterThread == null) {
-               this.audioSourceTransmitterThread = new Thread(
-                     new AudioSourceTransmitter(systemId,unitId));
-               this.audioSourceTransmitterThread.start();
+            if (this.audioSourceTransmitter == null) {
+               this.audioSourceTransmitter = new AudioSourceTransmitter(systemId,unitId);
+               AudioPacer.getInstance().start(audioSourceTransmitter);
             }
          }
       } catch (Exception e) {
@@ -565,8 +578,9 @@ public class SmfTransmitter {
          logger.debug(this + ":\n\tSMF TX received " + packetType.toString());
 
       if (currentState == SmfTxState.TERMINATED) {
-         logger.debug(this + ":\n\tSMF TX received " + packetType
-               + " in the TERMINATED state.  Ignoring.");
+         if (logger.isDebugEnabled())
+            logger.debug(this + ":\n\tSMF TX received " + packetType
+                  + " in the TERMINATED state.  Ignoring.");
 
       } else if (packetType.equals(PacketType.PTT_TRANSMIT_GRANT)) {
          if (currentState == SmfTxState.REQUESTING) {
@@ -591,10 +605,9 @@ public class SmfTransmitter {
          // imbeVoiceBlocks should NOT be null. If are an intermediate
          // SMF, imbeVoiceBlocks will be null.
          if (imbeVoiceBlocks != null) { // We must be a source SMF
-            if (this.audioSourceTransmitterThread == null) {
-               this.audioSourceTransmitterThread = new Thread(
-                     new AudioSourceTransmitter(systemId,unitId));
-               this.audioSourceTransmitterThread.start();
+            if (this.audioSourceTransmitter == null) {
+               this.audioSourceTransmitter = new AudioSourceTransmitter(systemId,unitId);
+               AudioPacer.getInstance().start(audioSourceTransmitter);
             }
          }
 
@@ -618,10 +631,9 @@ public class SmfTransmitter {
                   updateTxState(SmfTxTransition.SELF_GRANT);
                   if (imbeVoiceBlocks != null) { // We must be a source
                      // SMF
-                     if (this.audioSourceTransmitterThread == null) {
-                        this.audioSourceTransmitterThread = new Thread(
-                              new AudioSourceTransmitter(systemId,unitId));
-                        this.audioSourceTransmitterThread.start();
+                     if (this.audioSourceTransmitter == null) {
+                        this.audioSourceTransmitter = new AudioSourceTransmitter(systemId,unitId);
+                        AudioPacer.getInstance().start(audioSourceTransmitter);
                      }
                   }
                } catch (Exception e) {
@@ -648,7 +660,7 @@ public class SmfTransmitter {
             requestTask.cancel();
 
          waitTask = new WaitTask(systemId,unitId);
-         ISSITimer.getTimer().schedule(waitTask, TimerValues.WAITTIMEOUT);
+         ISSITimer.getWheelTimer().schedule(waitTask, TimerValues.WAITTIMEOUT);
 
          // Currently, the following is only relevant if we are an SMF on an
          // intermediate RFSS
@@ -729,8 +741,9 @@ public class SmfTransmitter {
 
       // If the state transitions to terminated we are done.
       if (currentState == SmfTxState.TERMINATED) {
-         if (audioSourceTransmitterThread != null) {
-            audioSourceTransmitterThread.interrupt();
+         AudioSourceTransmitter transmitter = audioSourceTransmitter;
+         if (transmitter != null) {
+            transmitter.cancel();
          }
       }
    }
@@ -743,7 +756,7 @@ public class SmfTransmitter {
     * 
     * @see TIA-109 Section 7
     */
-   class RequestTask extends TimerTask {
+   class RequestTask extends ISSITimerTask {
 
       int nretries = 2;
       int unitId;
@@ -812,7 +825,7 @@ public class SmfTransmitter {
 
                } else if (requestTransition == SmfTxTransition.SELF_GRANT) {
 
-                  if (audioSourceTransmitterThread == null) {
+                  if (audioSourceTransmitter == null) {
                      transmitterStarted = false;
                      forceAudio(imbeVoiceBlocks, this.systemId, this.unitId,
                            numberOfBlocksToSend);
@@ -856,7 +869,7 @@ public class SmfTransmitter {
 
                   if (logger.isDebugEnabled())
                      logger.debug(this + ":\n\tSMF TX LOCAL POLICY: SELF_GRANT");
-                  if (SmfTransmitter.this.audioSourceTransmitterThread == null) {
+                  if (SmfTransmitter.this.audioSourceTransmitter == null) {
                      transmitterStarted = false;
                      forceAudio(imbeVoiceBlocks, this.systemId, this.unitId,
                            numberOfBlocksToSend);
@@ -873,7 +886,7 @@ public class SmfTransmitter {
    }
 
    /** This class waits in the WAITING state. */
-   class WaitTask extends TimerTask {
+   class WaitTask extends ISSITimerTask {
 
       private int unitId;
       private int systemId;
@@ -903,7 +916,7 @@ public class SmfTransmitter {
             if (logger.isDebugEnabled())
                logger.debug(this + ":\n\tSMF TX LOCAL POLICY: SELF_GRANT");
             try {
-               if (audioSourceTransmitterThread == null) {
+               if (audioSourceTransmitter == null) {
                   transmitterStarted = false;
                   forceAudio(imbeVoiceBlocks, systemId,unitId,
                         numberOfBlocksToSend);
@@ -926,7 +939,7 @@ public class SmfTransmitter {
             // Trequest=500 miliseconds until we reach REQUEST_TIMEOUT=1000.
             // Thus, we will send only two PTT REQUESTs until we reach the
             // timeout.
-            ISSITimer.getTimer().schedule(requestTask, 0,
+            ISSITimer.getWheelTimer().schedule(requestTask, 0,
                   TimerValues.TREQUEST);
 
          }
@@ -936,15 +949,25 @@ public class SmfTransmitter {
    }
 
    /**
-    * This class implements an audio sender.
+    * Get the send jitter of the last audio spurt transmitted by this SMF.
+    * 
+    * @return the send jitter histogram, or null if no audio was sent.
     */
-   class AudioSourceTransmitter implements Runnable {
+   public SendJitterHistogram getSendJitterHistogram() {
+      return sendJitterHistogram;
+   }
+
+   /**
+    * This class implements an audio sender. It is paced by the shared
+    * AudioPacer, which calls transmit() each time a packet is due.
+    */
+   class AudioSourceTransmitter extends AudioPacer.PacedStream {
 
       private int unitId;
       private int systemId;
-      private long deadline;
-      private long[] timeDiffs = new long[imbeVoiceBlocks.size()
-            / NUM_IMBE_BLOCKS_PER_PACKET + 1]; // 3 per packet
+
+      /** Index of the next IMBE block to send. */
+      private int i = 0;
 
       public AudioSourceTransmitter(int systemId, int unitId) {
          transmitterStarted = true;
@@ -952,116 +975,73 @@ public class SmfTransmitter {
          this.systemId = systemId;
       }
 
-      public void run() {
-         try {
-            // set first packet deadline to now, will get incremented after
-            // sending packet below
-            deadline = System.currentTimeMillis();
-            int m = 0;
-            for (int i = 0; i < numberOfBlocksToSend; i += NUM_IMBE_BLOCKS_PER_PACKET) {
-               int nblocks;
-               if (i + NUM_IMBE_BLOCKS_PER_PACKET <= numberOfBlocksToSend)
-                  nblocks = NUM_IMBE_BLOCKS_PER_PACKET;
-               else
-                  nblocks = numberOfBlocksToSend - i;
-
-               IMBEVoiceBlock[] vbarray = new IMBEVoiceBlock[nblocks];
-               for (int k = i, j = 0; k < i + nblocks; k++, j++) {
-                  vbarray[j] = imbeVoiceBlocks.get(k % imbeVoiceBlocks.size());
-               }
-
-               if (smfSession.muteTransmitter.peerMuteState == Mute.MUTED) {
-                  if (logger.isDebugEnabled())
-                     logger.debug(this
-                                 + ":\n\tSMF TX peer (MMF) is muted.  "
-                                 + "Not sending PTT PROGRESS. Discarding packet silently");
-                  // Note that we need to sleep here because we may be
-                  // unmuted and then
-                  // need to transmit the rest.
-                  try {
-                     // set the next packet deadline
-                     deadline += nblocks * AUDIO_TRANSMISSION_RATE;
-
-                     // by always sleeping for the same amount of time, the
-                     // packets being sent will gradually become later and later
-                     // due to the amount of error in the sleep() function.
-                     // instead, calculate the exact time between now and the next
-                     // packet deadline and sleep for that amount of time.
-                     long currentTime = System.currentTimeMillis();
-                     long timeDiff = deadline - currentTime;
-
-                     // timeDiffs[m++] = timeDiff;
-                     if (timeDiff > 0)
-                        Thread.sleep(timeDiff);
-                  } catch (Exception ex) {
-                     ex.printStackTrace();
-                  }
+      protected int transmit() throws Exception {
+         if (i >= numberOfBlocksToSend) {
+            if (!blockOutgoingTransmission) {
+               sendSpurtEndNotification(SmfTxTransition.END_TRIGGER,systemId,unitId);
+            }
+            return DONE;
+         }
 
-               } else {
-                  if (logger.isDebugEnabled())
-                     logger.debug(this
-                                 + ":\n\tSMF TX sending PTT TRANSMIT PROGRESS");
-
-                  P25Payload p25Payload = smfSession.createPttTransmitProgress(
-                        systemId,unitId, vbarray);
-
-                  if (!blockOutgoingTransmission) {
-                     smfSession.sendPttPacket(p25Payload);
-                     // set the next packet deadline
-                     deadline += nblocks * AUDIO_TRANSMISSION_RATE;
-
-                  } else {
-                     /*
-                      * Uncomment the following if statement to test \
-                      * MMF audio timeout (rather than MMF firstpacket
-                      * timeout).
-                      */
-                     // if (i == 0)
-                     // smfSession.sendPttPacket(p25Payload);
-                     //                     
-                     if (logger.isDebugEnabled())
-                        logger.debug(this
-                              + ":\n\tSMF blocking outgoing "
-                              + "audio packet");
-                  }
-               }
+         int nblocks;
+         if (i + NUM_IMBE_BLOCKS_PER_PACKET <= numberOfBlocksToSend)
+            nblocks = NUM_IMBE_BLOCKS_PER_PACKET;
+         else
+            nblocks = numberOfBlocksToSend - i;
 
-               try {
-                  // by always sleeping for the same amount of time, the
-                  // packets being sent will gradually become later and later 
-                  // due to the amount of error in the sleep() function.
-                  // instead, calculate the exact time between now and the next
-                  // packet deadline and sleep for that amount of time.
-                  long currentTime = System.currentTimeMillis();
-                  long timeDiff = deadline - currentTime;
-
-                  if (logger.isTraceEnabled()) {
-                     timeDiffs[m++] = timeDiff;
-                  }
+         IMBEVoiceBlock[] vbarray = new IMBEVoiceBlock[nblocks];
+         for (int k = i, j = 0; k < i + nblocks; k++, j++) {
+            vbarray[j] = imbeVoiceBlocks.get(k % imbeVoiceBlocks.size());
+         }
+         i += nblocks;
 
-                  if (timeDiff > 0)
-                     Thread.sleep(timeDiff);
+         if (smfSession.muteTransmitter.peerMuteState == Mute.MUTED) {
+            if (logger.isDebugEnabled())
+               logger.debug(this
+                           + ":\n\tSMF TX peer (MMF) is muted.  "
+                           + "Not sending PTT PROGRESS. Discarding packet silently");
+            // Keep time while muted because we may be unmuted and then
+            // need to transmit the rest.
+            return nblocks;
+         }
 
-               } catch (Exception ex) {
-                  ex.printStackTrace();
-               }
-            }
-            if (!blockOutgoingTransmission) {
-               sendSpurtEndNotification(SmfTxTransition.END_TRIGGER,systemId,unitId);
-            }
-         } catch (Exception e) {
-            e.printStackTrace();
-         } finally {
-            transmitterStarted = false;
-            audioSourceTransmitterThread = null;
+         if (logger.isDebugEnabled())
+            logger.debug(this
+                        + ":\n\tSMF TX sending PTT TRANSMIT PROGRESS");
+
+         P25Payload p25Payload = smfSession.createPttTransmitProgress(
+               systemId,unitId, vbarray);
+
+         if (blockOutgoingTransmission) {
+            /*
+             * Uncomment the following if statement to test \
+             * MMF audio timeout (rather than MMF firstpacket
+             * timeout).
+             */
+            // if (i == nblocks)
+            // smfSession.sendPttPacket(p25Payload);
+            //                     
+            if (logger.isDebugEnabled())
+               logger.debug(this
+                     + ":\n\tSMF blocking outgoing "
+                     + "audio packet");
+            // Keep time so the blocked spurt lasts as long as a sent one.
+            return nblocks;
          }
+         smfSession.sendPttPacket(p25Payload);
+         return nblocks;
+      }
 
-         if (logger.isTraceEnabled()) {
-            // Print how bad our jitter is.
-            for (int n = 0; n < timeDiffs.length; n++) {
-               logger.debug("Audio delay: " + timeDiffs[n]);
-            }
+      protected void finished() {
+         // A spurt started after this one was cancelled has its own
+         // transmitter; leave it alone.
+         if (audioSourceTransmitter == this) {
+            transmitterStarted = false;
+            audioSourceTransmitter = null;
          }
+         SmfTransmitter.this.sendJitterHistogram = super.getSendJitterHistogram();
+         if (logger.isDebugEnabled())
+            logger.debug("Audio send jitter: " + sendJitterHistogram);
       }
    }
 }
@@ -0,0 +1,166 @@
+//
+package gov.nist.p25.issi.transctlmgr.ptt;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests that the audio pacer sends each packet on its 20 ms frame grid,
+ * that a stream held back by a slow send catches up with the grid instead
+ * of drifting, and that cancelled and failed streams stop.
+ */
+public class Test_AudioPacerTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.transctlmgr");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private static final long FRAME_MILLIS = 20;
+
+   /** Scheduling slack allowed on each send. */
+   private static final long SLACK_MILLIS = 15;
+
+   private AudioPacer pacer;
+
+   public void setUp() {
+      pacer = new AudioPacer(1);
+   }
+
+   /**
+    * Sends a number of packets, each followed by a pause of framesPerPacket
+    * frames, and records when each one was sent. Create it just before it
+    * is started: its first packet is due then.
+    */
+   static class RecordingStream extends AudioPacer.PacedStream {
+      final List<Long> sendTimes = new Vector<Long>();
+      final CountDownLatch finished = new CountDownLatch(1);
+      final AtomicInteger finishedCount = new AtomicInteger();
+      final long created = System.nanoTime();
+      private final int packets;
+      private final int framesPerPacket;
+
+      RecordingStream(int packets, int framesPerPacket) {
+         this.packets = packets;
+         this.framesPerPacket = framesPerPacket;
+      }
+
+      protected int transmit() throws Exception {
+         sendTimes.add(System.nanoTime());
+         stall(sendTimes.size());
+         return sendTimes.size() < packets ? framesPerPacket : DONE;
+      }
+
+      /** Called after the n-th packet, counting from 1. */
+      protected void stall(int n) throws Exception {
+      }
+
+      protected void finished() {
+         finishedCount.incrementAndGet();
+         finished.countDown();
+      }
+
+      long millisAfterStart(int i) {
+         return TimeUnit.NANOSECONDS.toMillis(sendTimes.get(i) - created);
+      }
+   }
+
+   /** Each packet is sent when its frames are due, without accumulating error. */
+   public void testPacketsFollowTheFrameGrid() throws Exception {
+      RecordingStream stream = new RecordingStream(15, 3);
+      pacer.start(stream);
+      assertTrue(stream.finished.await(5, TimeUnit.SECONDS));
+
+      assertEquals(15, stream.sendTimes.size());
+      for (int i = 0; i < stream.sendTimes.size(); i++) {
+         long due = i * 3 * FRAME_MILLIS;
+         long sent = stream.millisAfterStart(i);
+         assertTrue("packet " + i + " sent at " + sent + " ms, due at " + due,
+               sent >= due - 1 && sent <= due + SLACK_MILLIS);
+      }
+      assertEquals(1, stream.finishedCount.get());
+      assertEquals(0, pacer.getStreamCount());
+   }
+
+   /**
+    * A send that takes 100 ms holds back the packets behind it; they are
+    * then sent back to back until the stream is on its grid again.
+    */
+   public void testStalledStreamCatchesUp() throws Exception {
+      RecordingStream stream = new RecordingStream(20, 1) {
+         protected void stall(int n) throws Exception {
+            if (n == 3)
+               Thread.sleep(5 * FRAME_MILLIS);
+         }
+      };
+      pacer.start(stream);
+      assertTrue(stream.finished.await(5, TimeUnit.SECONDS));
+
+      // Packets 4 to 7 were due during the stall and go out at once.
+      long resumed = stream.millisAfterStart(3);
+      assertTrue(resumed >= 5 * FRAME_MILLIS);
+      assertTrue(stream.millisAfterStart(6) - resumed < FRAME_MILLIS);
+      // The last packet is on time, as if there had been no stall.
+      long last = stream.millisAfterStart(19);
+      assertTrue("last packet sent at " + last + " ms",
+            last >= 19 * FRAME_MILLIS - 1 && last <= 19 * FRAME_MILLIS + SLACK_MILLIS);
+      assertTrue(stream.getSendJitterHistogram().getMaxMicros() >= 3 * FRAME_MILLIS * 1000);
+      assertEquals(20, stream.getSendJitterHistogram().getCount());
+   }
+
+   /** Streams on one pacing thread keep their own grids. */
+   public void testStreamsShareAThread() throws Exception {
+      RecordingStream[] streams = new RecordingStream[20];
+      for (int i = 0; i < streams.length; i++) {
+         streams[i] = new RecordingStream(10, 1 + i % 3);
+         pacer.start(streams[i]);
+      }
+      assertTrue(pacer.getStreamCount() > 0);
+      for (int i = 0; i < streams.length; i++) {
+         assertTrue(streams[i].finished.await(5, TimeUnit.SECONDS));
+         long last = streams[i].millisAfterStart(9);
+         long due = 9 * (1 + i % 3) * FRAME_MILLIS;
+         assertTrue("stream " + i + " ended at " + last + " ms, due at " + due,
+               last >= due - 1 && last <= due + SLACK_MILLIS);
+      }
+      assertEquals(0, pacer.getStreamCount());
+   }
+
+   public void testCancel() throws Exception {
+      RecordingStream stream = new RecordingStream(1000, 1);
+      pacer.start(stream);
+      Thread.sleep(5 * FRAME_MILLIS);
+      stream.cancel();
+      assertTrue(stream.finished.await(1, TimeUnit.SECONDS));
+      int sent = stream.sendTimes.size();
+      Thread.sleep(5 * FRAME_MILLIS);
+      assertEquals(sent, stream.sendTimes.size());
+      assertEquals(1, stream.finishedCount.get());
+   }
+
+   /** A stream whose send fails is finished and not sent again. */
+   public void testFailedStreamStops() throws Exception {
+      RecordingStream stream = new RecordingStream(10, 1) {
+         protected void stall(int n) throws Exception {
+            if (n == 2)
+               throw new Exception("send failed");
+         }
+      };
+      pacer.start(stream);
+      assertTrue(stream.finished.await(1, TimeUnit.SECONDS));
+      Thread.sleep(5 * FRAME_MILLIS);
+      assertEquals(2, stream.sendTimes.size());
+      assertEquals(1, stream.finishedCount.get());
+   }
+}
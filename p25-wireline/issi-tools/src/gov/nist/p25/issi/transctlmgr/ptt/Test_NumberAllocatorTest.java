@@ -0,0 +1,136 @@
+//
+package gov.nist.p25.issi.transctlmgr.ptt;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests the TSN and port allocators: the numbers each one hands out, what
+ * happens when all of them are in use, and that no number is held twice
+ * when threads allocate and release at once.
+ */
+public class Test_NumberAllocatorTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.transctlmgr");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private static final int THREADS = 8;
+   private static final int ROUNDS = 20000;
+
+   /** Allocate every number and check they are first, first + 2, ... last. */
+   private static void checkSequence(NumberAllocator allocator, int first, int last) {
+      for (int tsn = first; tsn <= last; tsn += 2) {
+         assertEquals(tsn, allocator.allocate());
+         assertTrue(allocator.isInUse(tsn));
+      }
+      assertEquals(-1, allocator.allocate());
+      assertEquals(100, allocator.getUtilization());
+      assertFalse(allocator.isInUse(0));
+   }
+
+   public void testOddTsns() {
+      NumberAllocator allocator = PttManager.createTsnAllocator("odd", 1);
+      assertEquals(32, allocator.getCapacity());
+      checkSequence(allocator, 1, 63);
+   }
+
+   public void testEvenTsns() {
+      NumberAllocator allocator = PttManager.createTsnAllocator("even", 2);
+      assertEquals(31, allocator.getCapacity());
+      checkSequence(allocator, 2, 62);
+   }
+
+   public void testExhaustionAndReuse() {
+      NumberAllocator allocator = PttManager.createTsnAllocator("odd", 1);
+      for (int i = 0; i < allocator.getCapacity(); i++)
+         allocator.allocate();
+      assertEquals(-1, allocator.allocate());
+      assertEquals(-1, allocator.allocate());
+      assertEquals(2, allocator.getExhaustedCount());
+
+      assertTrue(allocator.release(17));
+      assertFalse(allocator.release(17));
+      assertFalse(allocator.release(0));
+      assertFalse(allocator.release(18));
+      assertFalse(allocator.release(65));
+      assertEquals(17, allocator.allocate());
+      assertEquals(-1, allocator.allocate());
+
+      // A released number is reused only after the ones not yet handed out.
+      assertTrue(allocator.release(5));
+      assertTrue(allocator.release(41));
+      assertEquals(41, allocator.allocate());
+      assertEquals(5, allocator.allocate());
+
+      allocator.releaseAll();
+      assertEquals(0, allocator.getInUseCount());
+      assertEquals(allocator.getAllocationCount(), allocator.getReleaseCount());
+      // The search still starts after the last number handed out.
+      assertEquals(7, allocator.allocate());
+   }
+
+   /**
+    * Threads allocate, hold and release numbers from one allocator; each
+    * number taken must not be held by another thread at the time.
+    */
+   public void testConcurrentAllocateRelease() throws Exception {
+      final NumberAllocator allocator = new NumberAllocator("rtpPort", 25000, 2, 100);
+      final AtomicIntegerArray holders = new AtomicIntegerArray(allocator.getCapacity());
+      final AtomicInteger duplicates = new AtomicInteger();
+      final AtomicInteger allocated = new AtomicInteger();
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(THREADS);
+
+      for (int t = 0; t < THREADS; t++) {
+         final int id = t + 1;
+         new Thread() {
+            public void run() {
+               try {
+                  start.await();
+                  int[] held = new int[4];
+                  for (int i = 0; i < ROUNDS; i++) {
+                     int n = 0;
+                     for (; n < held.length; n++) {
+                        int port = allocator.allocate();
+                        if (port < 0)
+                           break;
+                        if (!holders.compareAndSet((port - 25000) / 2, 0, id))
+                           duplicates.incrementAndGet();
+                        held[n] = port;
+                        allocated.incrementAndGet();
+                     }
+                     for (int j = 0; j < n; j++) {
+                        holders.set((held[j] - 25000) / 2, 0);
+                        if (!allocator.release(held[j]))
+                           duplicates.incrementAndGet();
+                     }
+                  }
+               } catch (InterruptedException ex) {
+                  // fall through
+               } finally {
+                  done.countDown();
+               }
+            }
+         }.start();
+      }
+      start.countDown();
+      done.await();
+
+      logger.info(allocator);
+      assertEquals(0, duplicates.get());
+      assertEquals(0, allocator.getInUseCount());
+      assertEquals(allocated.get(), allocator.getAllocationCount());
+      assertEquals(allocated.get(), allocator.getReleaseCount());
+   }
+}
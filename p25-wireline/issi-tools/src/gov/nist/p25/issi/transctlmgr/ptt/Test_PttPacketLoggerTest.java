@@ -0,0 +1,178 @@
+//
+package gov.nist.p25.issi.transctlmgr.ptt;
+
+import gov.nist.p25.issi.p25payload.ISSIPacketType;
+import gov.nist.p25.issi.p25payload.P25Payload;
+import gov.nist.p25.issi.p25payload.PTTControlWord;
+import gov.nist.p25.issi.p25payload.PacketType;
+import gov.nist.p25.issi.rfss.tester.TestScript;
+import gov.nist.rtp.RtpPacket;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests that a queued PTT log record is a copy of the packet, unaffected by
+ * later changes, and that the binary log starts over for each test.
+ */
+public class Test_PttPacketLoggerTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.transctlmgr");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private File dir;
+   private String savedLogName;
+   private boolean savedFormat;
+
+   /** The text the session stub formats itself as. */
+   private String sessionText = "<ptt-session state=\"first\"/>";
+
+   public void setUp() throws Exception {
+      dir = Files.createTempDirectory("pttlog").toFile();
+      savedLogName = TestScript.rtpMessagelog;
+      savedFormat = PttPacketLogger.BINARY_FORMAT;
+   }
+
+   public void tearDown() {
+      PttPacketLogger.getInstance().closeLog();
+      TestScript.rtpMessagelog = savedLogName;
+      PttPacketLogger.BINARY_FORMAT = savedFormat;
+      File[] files = dir.listFiles();
+      for (int i = 0; files != null && i < files.length; i++)
+         files[i].delete();
+      dir.delete();
+   }
+
+   private PttSessionInterface session() {
+      return (PttSessionInterface) Proxy.newProxyInstance(
+            PttSessionInterface.class.getClassLoader(),
+            new Class[] { PttSessionInterface.class }, new InvocationHandler() {
+               public Object invoke(Object proxy, Method method, Object[] args) {
+                  if (method.getName().equals("toString"))
+                     return sessionText;
+                  throw new UnsupportedOperationException(method.getName());
+               }
+            });
+   }
+
+   private static P25Payload payload(int tsn) throws Exception {
+      ISSIPacketType packetType = new ISSIPacketType();
+      packetType.setPacketType(PacketType.PTT_TRANSMIT_REQUEST);
+      packetType.setSO(0);
+      packetType.setTranssmissionSequenceNumber(tsn);
+      PTTControlWord controlWord = new PTTControlWord();
+      controlWord.setSystemId(1);
+      controlWord.setUnitId(2);
+      return new P25Payload(packetType, controlWord, null, null, null);
+   }
+
+   private static RtpPacket rtpPacket(int sn, P25Payload payload) throws Exception {
+      RtpPacket rtpPacket = new RtpPacket();
+      rtpPacket.setPT(100);
+      rtpPacket.setSN(sn);
+      rtpPacket.setSSRC(0x1234);
+      byte[] bytes = payload.getBytes();
+      rtpPacket.setPayload(bytes, bytes.length);
+      return rtpPacket;
+   }
+
+   private PttPacketLogger.Record record(RtpPacket rtpPacket, P25Payload payload,
+         int packetNumber) {
+      return new PttPacketLogger.Record(session(), rtpPacket, payload, true,
+            1000L + packetNumber, packetNumber, "rfss_1", "rfss_2", "127.0.0.1", 25000);
+   }
+
+   public void testRecordIsACopy() throws Exception {
+      P25Payload payload = payload(5);
+      RtpPacket rtpPacket = rtpPacket(7, payload);
+      String payloadText = payload.toString();
+      PttPacketLogger.Record record = record(rtpPacket, payload, 1);
+
+      sessionText = "<ptt-session state=\"second\"/>";
+      rtpPacket.setSN(8);
+      payload.getISSIPacketType().setTranssmissionSequenceNumber(6);
+
+      StringBuffer sbuf = new StringBuffer();
+      PttPacketLogger.format(record, sbuf);
+      String text = sbuf.toString();
+      assertTrue(text.indexOf("state=\"first\"") != -1);
+      assertTrue(text.indexOf("sequenceNumber=\"7\"") != -1);
+      assertTrue(text.indexOf(payloadText) != -1);
+      assertFalse(payloadText.equals(payload.toString()));
+   }
+
+   public void testNoRecordsWithoutALog() {
+      PttPacketLogger.BINARY_FORMAT = true;
+      TestScript.rtpMessagelog = null;
+      assertFalse(PttPacketLogger.isLogEnabled());
+      TestScript.rtpMessagelog = new File(dir, "first.xml").getPath();
+      assertTrue(PttPacketLogger.isLogEnabled());
+   }
+
+   /** Counts the records of a binary log after checking its magic. */
+   private static int countRecords(File file) throws Exception {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(file)));
+      try {
+         assertEquals(PttPacketLogger.PTTL_MAGIC, in.readInt());
+         int count = 0;
+         for (;;) {
+            try {
+               in.readLong();
+            } catch (EOFException ex) {
+               return count;
+            }
+            in.readInt();
+            in.readBoolean();
+            in.readUTF();
+            in.readUTF();
+            in.readUTF();
+            in.readInt();
+            in.readFully(new byte[in.readInt()]);
+            count++;
+         }
+      } finally {
+         in.close();
+      }
+   }
+
+   public void testBinaryLogPerTest() throws Exception {
+      PttPacketLogger.BINARY_FORMAT = true;
+      PttPacketLogger pttLogger = PttPacketLogger.getInstance();
+      P25Payload payload = payload(5);
+
+      TestScript.rtpMessagelog = new File(dir, "first.xml").getPath();
+      pttLogger.log(record(rtpPacket(1, payload), payload, 1));
+      pttLogger.flush();
+
+      // A new log name starts a new binary log.
+      TestScript.rtpMessagelog = new File(dir, "second.xml").getPath();
+      pttLogger.log(record(rtpPacket(2, payload), payload, 2));
+      pttLogger.log(record(rtpPacket(3, payload), payload, 3));
+      pttLogger.closeLog();
+      assertEquals(1, countRecords(new File(dir, "first.xml.bin")));
+      assertEquals(2, countRecords(new File(dir, "second.xml.bin")));
+
+      // After closeLog, the next test with the same name starts over.
+      pttLogger.log(record(rtpPacket(4, payload), payload, 4));
+      pttLogger.closeLog();
+      assertEquals(1, countRecords(new File(dir, "second.xml.bin")));
+   }
+}
@@ -0,0 +1,190 @@
+//
+package gov.nist.p25.issi.transctlmgr.ptt;
+
+import gov.nist.p25.issi.p25payload.ISSIPacketType;
+import gov.nist.p25.issi.p25payload.P25Payload;
+import gov.nist.p25.issi.p25payload.PTTControlWord;
+import gov.nist.p25.issi.p25payload.PacketType;
+import gov.nist.rtp.RtpPacket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests that captured PTT packets come back unchanged from a binary PTT
+ * trace, and that packets match() accepts share a match key, so that the
+ * trace index finds them.
+ */
+public class Test_PttTraceTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.transctlmgr");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private static P25Payload payload(int tsn, int unitId) throws Exception {
+      ISSIPacketType packetType = new ISSIPacketType();
+      packetType.setPacketType(PacketType.PTT_TRANSMIT_REQUEST);
+      packetType.setSO(0);
+      packetType.setTranssmissionSequenceNumber(tsn);
+      PTTControlWord controlWord = new PTTControlWord();
+      controlWord.setSystemId(1);
+      controlWord.setUnitId(unitId);
+      return new P25Payload(packetType, controlWord, null, null, null);
+   }
+
+   private static RtpPacket rtpPacket(int sn, long ts, long ssrc, byte[] payload) {
+      RtpPacket rtpPacket = new RtpPacket();
+      rtpPacket.setPT(100);
+      rtpPacket.setSN(sn);
+      rtpPacket.setTS(ts);
+      rtpPacket.setSSRC(ssrc);
+      rtpPacket.setPayload(payload, payload.length);
+      return rtpPacket;
+   }
+
+   private static CapturedPttPacket packet(int sn, int tsn, int unitId, int packetNumber)
+         throws Exception {
+      P25Payload payload = payload(tsn, unitId);
+      return new CapturedPttPacket(rtpPacket(sn, 160L * sn, 0x1234, payload.getBytes()),
+            payload, true, 1000L + packetNumber, packetNumber, 25000 + packetNumber,
+            "10.0.0." + packetNumber, "rfss_" + packetNumber);
+   }
+
+   private static byte[] write(List<CapturedPttPacket> packets) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      PttTraceWriter writer = new PttTraceWriter(bytes);
+      for (CapturedPttPacket packet : packets)
+         writer.write(packet);
+      writer.close();
+      return bytes.toByteArray();
+   }
+
+   private static List<CapturedPttPacket> read(byte[] trace) throws IOException {
+      PttTraceReader reader = new PttTraceReader(new ByteArrayInputStream(trace));
+      List<CapturedPttPacket> packets = new ArrayList<CapturedPttPacket>();
+      for (CapturedPttPacket packet = reader.read(); packet != null; packet = reader.read())
+         packets.add(packet);
+      reader.close();
+      return packets;
+   }
+
+   private static void assertSamePacket(CapturedPttPacket expected, CapturedPttPacket actual)
+         throws Exception {
+      assertEquals(expected.isSender(), actual.isSender());
+      assertEquals(expected.getCaptureTime(), actual.getCaptureTime());
+      assertEquals(expected.getPacketNumber(), actual.getPacketNumber());
+      assertEquals(expected.getRemotePort(), actual.getRemotePort());
+      assertEquals(expected.getRemoteIpAddress(), actual.getRemoteIpAddress());
+      assertEquals(expected.getRemoteRfssDomainName(), actual.getRemoteRfssDomainName());
+
+      RtpPacket expectedRtp = expected.getRtpPacket();
+      RtpPacket actualRtp = actual.getRtpPacket();
+      assertEquals(expectedRtp.getV(), actualRtp.getV());
+      assertEquals(expectedRtp.getM(), actualRtp.getM());
+      assertEquals(expectedRtp.getPT(), actualRtp.getPT());
+      assertEquals(expectedRtp.getSN(), actualRtp.getSN());
+      assertEquals(expectedRtp.getTS(), actualRtp.getTS());
+      assertEquals(expectedRtp.getSSRC(), actualRtp.getSSRC());
+
+      assertTrue(actual.match(expected));
+   }
+
+   private static byte[] rtpPayload(CapturedPttPacket packet) {
+      RtpPacket rtpPacket = packet.getRtpPacket();
+      return Arrays.copyOf(rtpPacket.getPayload(), rtpPacket.getPayloadLength());
+   }
+
+   public void testRoundTrip() throws Exception {
+      List<CapturedPttPacket> packets = new ArrayList<CapturedPttPacket>();
+      packets.add(packet(1, 5, 2, 1));
+
+      // High bits of the timestamp and SSRC, a marker, the receive side,
+      // no addresses, and an RTP payload that is not the P25 payload.
+      P25Payload payload = payload(7, 3);
+      RtpPacket rtpPacket = rtpPacket(65535, 0xfffffff0L, 0x80000001L,
+            new byte[] { 1, 2, 3, 4, 5 });
+      rtpPacket.setM(1);
+      packets.add(new CapturedPttPacket(rtpPacket, payload, false, 2000L, 2, 25002,
+            null, null));
+
+      List<CapturedPttPacket> copies = read(write(packets));
+      assertEquals(packets.size(), copies.size());
+      for (int i = 0; i < packets.size(); i++) {
+         assertSamePacket(packets.get(i), copies.get(i));
+         assertTrue(Arrays.equals(packets.get(i).getP25Payload().getBytes(),
+               copies.get(i).getP25Payload().getBytes()));
+         assertTrue(Arrays.equals(rtpPayload(packets.get(i)), rtpPayload(copies.get(i))));
+      }
+   }
+
+   /** Traces of serialized packets from earlier versions are still read. */
+   public void testReadsSerializedTrace() throws Exception {
+      CapturedPttPacket packet = packet(1, 5, 2, 1);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(packet);
+      out.close();
+
+      List<CapturedPttPacket> copies = read(bytes.toByteArray());
+      assertEquals(1, copies.size());
+      assertSamePacket(packet, copies.get(0));
+   }
+
+   public void testRejectsOtherFiles() throws Exception {
+      try {
+         new PttTraceReader(new ByteArrayInputStream("<ptt-trace/>".getBytes()));
+         fail("read a file that is not a PTT trace");
+      } catch (IOException ex) {
+         // expected
+      }
+   }
+
+   /**
+    * Packets that differ only in fields match() ignores share a key, and
+    * the index hands them out in capture order.
+    */
+   public void testMatchingPacketsShareAKey() throws Exception {
+      CapturedPttPacket template = packet(1, 5, 2, 1);
+      CapturedPttPacket first = packet(9, 5, 2, 2);
+      CapturedPttPacket second = packet(10, 5, 2, 3);
+      CapturedPttPacket otherTsn = packet(11, 7, 2, 4);
+      CapturedPttPacket otherUnit = packet(12, 5, 3, 5);
+
+      assertTrue(first.match(template));
+      assertTrue(second.match(template));
+      assertEquals(template.getMatchKey(), first.getMatchKey());
+      assertEquals(template.getMatchKey(), second.getMatchKey());
+      assertFalse(otherTsn.match(template));
+      assertFalse(template.getMatchKey() == otherTsn.getMatchKey());
+      // The control word is not in the key, so match() still tells them apart.
+      assertFalse(otherUnit.match(template));
+      assertEquals(template.getMatchKey(), otherUnit.getMatchKey());
+
+      // Packets read back from a trace keep their key.
+      List<CapturedPttPacket> copies = read(write(Arrays.asList(first, second)));
+      assertEquals(first.getMatchKey(), copies.get(0).getMatchKey());
+
+      List<CapturedPttPacket> captures = new ArrayList<CapturedPttPacket>();
+      captures.add(otherUnit);
+      captures.add(otherTsn);
+      captures.addAll(copies);
+      PttTraceIndex index = new PttTraceIndex(captures);
+      assertSame(copies.get(0), index.consume(template));
+      assertSame(copies.get(1), index.consume(template));
+      assertNull(index.consume(template));
+   }
+}
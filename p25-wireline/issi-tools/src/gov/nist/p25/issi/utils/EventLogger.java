@@ -0,0 +1,154 @@
+//
+package gov.nist.p25.issi.utils;
+
+import java.net.InetAddress;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Debug logging of structured events for the per-packet paths. An event is
+ * a name followed by name=value fields:
+ *
+ * <pre>
+ * eventLogger.event(&quot;capturePttPacket&quot;).field(&quot;rfss&quot;, rfssName)
+ *       .field(&quot;isSender&quot;, isSender).field(&quot;packetType&quot;, packetType).log();
+ * </pre>
+ *
+ * Fields are given as the objects and primitives the caller already holds
+ * and are only turned into text when the event is logged. When debug is
+ * disabled for the category, event() returns a shared event that ignores
+ * its fields, so logging an event builds and allocates nothing. When it is
+ * enabled, each thread reuses one event and its buffer.
+ * <p>
+ * The field arguments are still evaluated when debug is disabled, so they
+ * should be values at hand or plain getters; work such as building a
+ * string or calling toString() belongs in the formatting, which only
+ * happens for logged events.
+ */
+public class EventLogger {
+
+   /** The event handed out while debug is disabled. */
+   private static final Event DISABLED = new Event(null);
+
+   private final Logger logger;
+
+   private final ThreadLocal<Event> events = new ThreadLocal<Event>() {
+      protected Event initialValue() {
+         return new Event(logger);
+      }
+   };
+
+   /**
+    * Create an event logger writing to the given log4j category.
+    *
+    * @param logger -- the category, usually the class logger.
+    */
+   public EventLogger(Logger logger) {
+      this.logger = logger;
+   }
+
+   /**
+    * @return true if events are logged.
+    */
+   public boolean isEnabled() {
+      return logger.isDebugEnabled();
+   }
+
+   /**
+    * Start an event.
+    *
+    * @param name -- the event name.
+    * @return the event, to which fields are added before it is logged.
+    */
+   public Event event(String name) {
+      if (!logger.isDebugEnabled())
+         return DISABLED;
+      Event event = events.get();
+      if (event.inUse) {
+         // A field value logged an event of its own while being formatted.
+         event = new Event(logger);
+      }
+      return event.start(name);
+   }
+
+   /**
+    * An event being built. An event must be logged before the thread starts
+    * another one.
+    */
+   public static class Event {
+      private final Logger logger;
+      private final StringBuffer sbuf = new StringBuffer(128);
+      private boolean inUse = false;
+
+      Event(Logger logger) {
+         this.logger = logger;
+      }
+
+      private Event start(String name) {
+         sbuf.setLength(0);
+         sbuf.append(name);
+         inUse = true;
+         return this;
+      }
+
+      private StringBuffer name(String name) {
+         return sbuf.append(' ').append(name).append('=');
+      }
+
+      public Event field(String name, Object value) {
+         if (logger != null)
+            name(name).append(value);
+         return this;
+      }
+
+      public Event field(String name, int value) {
+         if (logger != null)
+            name(name).append(value);
+         return this;
+      }
+
+      public Event field(String name, long value) {
+         if (logger != null)
+            name(name).append(value);
+         return this;
+      }
+
+      public Event field(String name, boolean value) {
+         if (logger != null)
+            name(name).append(value);
+         return this;
+      }
+
+      /**
+       * Add an address and port field, written as host:port.
+       *
+       * @param name -- the field name.
+       * @param host -- an InetAddress, or the host as a string.
+       * @param port -- the port.
+       */
+      public Event field(String name, Object host, int port) {
+         if (logger != null) {
+            StringBuffer value = name(name);
+            if (host instanceof InetAddress)
+               value.append(((InetAddress) host).getHostAddress());
+            else
+               value.append(host);
+            value.append(':').append(port);
+         }
+         return this;
+      }
+
+      /**
+       * Log the event at debug level.
+       */
+      public void log() {
+         if (logger == null)
+            return;
+         try {
+            logger.debug(sbuf.toString());
+         } finally {
+            inUse = false;
+         }
+      }
+   }
+}
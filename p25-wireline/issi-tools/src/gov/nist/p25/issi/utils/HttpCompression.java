@@ -0,0 +1,80 @@
+//
+package gov.nist.p25.issi.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethodBase;
+
+/**
+ * Gzip transfer of the (large) trace bodies exchanged between the test
+ * controller and the emulators and packet monitors. Either side falls back
+ * to plain bodies when the other does not use gzip.
+ */
+public class HttpCompression {
+
+   public static final String ACCEPT_ENCODING = "Accept-Encoding";
+   public static final String CONTENT_ENCODING = "Content-Encoding";
+   public static final String GZIP = "gzip";
+
+   /** Trace bodies are written as ISO-8859-1, as ServletOutputStream.print does. */
+   private static final String CHARSET = "ISO-8859-1";
+
+   /**
+    * Write a response body, gzipped if the client accepts it.
+    */
+   public static void writeBody(HttpServletRequest request,
+         HttpServletResponse response, String body) throws IOException {
+      byte[] data = body.getBytes(CHARSET);
+      String accept = request.getHeader(ACCEPT_ENCODING);
+      if (accept != null && accept.indexOf(GZIP) >= 0) {
+         ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4 + 64);
+         GZIPOutputStream gzip = new GZIPOutputStream(bos);
+         gzip.write(data);
+         gzip.close();
+         response.setHeader(CONTENT_ENCODING, GZIP);
+         data = bos.toByteArray();
+      }
+      response.setContentLength(data.length);
+      OutputStream os = response.getOutputStream();
+      os.write(data);
+      os.flush();
+   }
+
+   /**
+    * Ask for a gzipped response body.
+    */
+   public static void acceptGzip(HttpMethodBase method) {
+      method.setRequestHeader(ACCEPT_ENCODING, GZIP);
+   }
+
+   /**
+    * Read a response body, inflating it if the server gzipped it.
+    */
+   public static String readBody(HttpMethodBase method) throws IOException {
+      Header encoding = method.getResponseHeader(CONTENT_ENCODING);
+      if (encoding == null || encoding.getValue().indexOf(GZIP) < 0)
+         return method.getResponseBodyAsString();
+
+      InputStream is = method.getResponseBodyAsStream();
+      if (is == null)
+         return null;
+      InputStream gzip = new GZIPInputStream(is);
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(8192);
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = gzip.read(buffer)) > 0) {
+         bos.write(buffer, 0, n);
+      }
+      gzip.close();
+      return bos.toString(method.getResponseCharSet());
+   }
+}
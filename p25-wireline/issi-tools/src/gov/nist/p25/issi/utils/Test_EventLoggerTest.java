@@ -0,0 +1,155 @@
+//
+package gov.nist.p25.issi.utils;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import org.apache.log4j.WriterAppender;
+import junit.framework.TestCase;
+
+/**
+ * Tests the event format, and that events logged while debug is disabled
+ * allocate nothing where the string concatenation they replace did.
+ */
+public class Test_EventLoggerTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.utils");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private static final int EVENTS = 100000;
+
+   private Logger eventCategory;
+   private StringWriter output;
+
+   public void setUp() {
+      eventCategory = Logger.getLogger("gov.nist.p25.issi.utils.Test_EventLoggerTest.events");
+      eventCategory.setAdditivity(false);
+      eventCategory.removeAllAppenders();
+      output = new StringWriter();
+      eventCategory.addAppender(new WriterAppender(new PatternLayout("%m%n"), output));
+   }
+
+   public void testFormat() throws Exception {
+      eventCategory.setLevel(Level.DEBUG);
+      EventLogger eventLogger = new EventLogger(eventCategory);
+      assertTrue(eventLogger.isEnabled());
+
+      eventLogger.event("capturePttPacket").field("rfss", "rfss_1")
+            .field("isSender", true).field("tsn", 7).field("timeStamp", 12L)
+            .field("remote", InetAddress.getByName("127.0.0.1"), 25000)
+            .field("my", "10.0.0.1", 25002).log();
+      eventLogger.event("sortPacket.ignored").log();
+
+      assertEquals("capturePttPacket rfss=rfss_1 isSender=true tsn=7 timeStamp=12"
+            + " remote=127.0.0.1:25000 my=10.0.0.1:25002\n"
+            + "sortPacket.ignored\n", output.toString());
+   }
+
+   /** An event started while formatting a field of another still logs both. */
+   public void testNestedEvent() {
+      eventCategory.setLevel(Level.DEBUG);
+      final EventLogger eventLogger = new EventLogger(eventCategory);
+      Object nested = new Object() {
+         public String toString() {
+            eventLogger.event("inner").field("n", 1).log();
+            return "value";
+         }
+      };
+      eventLogger.event("outer").field("field", nested).log();
+      assertEquals("inner n=1\nouter field=value\n", output.toString());
+   }
+
+   public void testDisabled() {
+      eventCategory.setLevel(Level.INFO);
+      EventLogger eventLogger = new EventLogger(eventCategory);
+      assertFalse(eventLogger.isEnabled());
+      eventLogger.event("capturePttPacket").field("rfss", "rfss_1").log();
+      assertEquals("", output.toString());
+   }
+
+   /**
+    * Logging an event with debug disabled allocates nothing, where the
+    * unguarded concatenation it replaces allocates for every packet.
+    */
+   public void testDisabledEventsDoNotAllocate() throws Exception {
+      Method allocatedBytes = allocatedBytesMethod();
+      if (allocatedBytes == null) {
+         logger.info("Thread allocation counting is not supported; skipped");
+         return;
+      }
+      eventCategory.setLevel(Level.INFO);
+      EventLogger eventLogger = new EventLogger(eventCategory);
+      String rfss = "rfss_1";
+      InetAddress host = InetAddress.getByName("127.0.0.1");
+
+      // Warm up so that the measured loops run compiled code.
+      for (int i = 0; i < 3; i++) {
+         logEvents(eventLogger, rfss, host);
+         logConcatenated(rfss, host);
+      }
+
+      long baseline = allocated(allocatedBytes);
+      baseline = allocated(allocatedBytes) - baseline;
+
+      long start = allocated(allocatedBytes);
+      logEvents(eventLogger, rfss, host);
+      long eventBytes = allocated(allocatedBytes) - start - baseline;
+
+      start = allocated(allocatedBytes);
+      logConcatenated(rfss, host);
+      long concatenatedBytes = allocated(allocatedBytes) - start - baseline;
+
+      logger.info("Disabled debug, " + EVENTS + " events: "
+            + ((double) eventBytes / EVENTS) + " bytes per event, "
+            + ((double) concatenatedBytes / EVENTS) + " bytes per concatenated message");
+      assertTrue(eventBytes < EVENTS / 100);
+      assertTrue(concatenatedBytes > eventBytes);
+   }
+
+   private void logEvents(EventLogger eventLogger, String rfss, InetAddress host) {
+      for (int i = 0; i < EVENTS; i++) {
+         eventLogger.event("capturePttPacket").field("rfss", rfss)
+               .field("isSender", (i & 1) == 0).field("tsn", i)
+               .field("remote", host, 25000).log();
+      }
+   }
+
+   private void logConcatenated(String rfss, InetAddress host) {
+      for (int i = 0; i < EVENTS; i++) {
+         eventCategory.debug("capturePttPacket rfss=" + rfss + " isSender="
+               + ((i & 1) == 0) + " tsn=" + i + " remote=" + host + ":25000");
+      }
+   }
+
+   private static long allocated(Method allocatedBytes) throws Exception {
+      return ((Long) allocatedBytes.invoke(ManagementFactory.getThreadMXBean(),
+            Long.valueOf(Thread.currentThread().getId()))).longValue();
+   }
+
+   /**
+    * @return the per-thread allocation counter of the JVM, or null if it has
+    *         none.
+    */
+   private static Method allocatedBytesMethod() {
+      try {
+         Class<?> mxBean = Class.forName("com.sun.management.ThreadMXBean");
+         if (!mxBean.isInstance(ManagementFactory.getThreadMXBean()))
+            return null;
+         return mxBean.getMethod("getThreadAllocatedBytes", long.class);
+      } catch (Exception ex) {
+         return null;
+      }
+   }
+}
@@ -0,0 +1,158 @@
+//
+package gov.nist.p25.issi.utils;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+import junit.framework.TestCase;
+
+/**
+ * Tests that a worker pool runs no more tasks than its threads and queue
+ * hold, applies its rejection policy to the rest, and runs scheduled tasks
+ * on its workers once their delay has passed.
+ */
+public class Test_WorkerPoolTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger("gov.nist.p25.issi.utils");
+
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   /** Keeps a worker busy until released. */
+   private final CountDownLatch release = new CountDownLatch(1);
+
+   /** Counts down as the blocking tasks start. */
+   private CountDownLatch started;
+
+   public void tearDown() {
+      release.countDown();
+   }
+
+   private Runnable blocker() {
+      return new Runnable() {
+         public void run() {
+            started.countDown();
+            try {
+               release.await();
+            } catch (InterruptedException ex) {
+               Thread.currentThread().interrupt();
+            }
+         }
+      };
+   }
+
+   /** Occupy every worker and fill the queue of a pool. */
+   private void fill(WorkerPool pool) throws Exception {
+      started = new CountDownLatch(pool.getMaxThreads());
+      for (int i = 0; i < pool.getMaxThreads(); i++)
+         pool.execute(blocker());
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      for (int i = 0; i < pool.getQueueCapacity(); i++)
+         pool.execute(blocker());
+      assertEquals(pool.getMaxThreads(), pool.getActiveThreads());
+      assertEquals(pool.getQueueCapacity(), pool.getQueueDepth());
+   }
+
+   private static void awaitCompleted(WorkerPool pool, long count) throws Exception {
+      for (int i = 0; i < 500 && pool.getCompletedCount() < count; i++)
+         Thread.sleep(10);
+      assertEquals(count, pool.getCompletedCount());
+   }
+
+   public void testAbortBeyondBounds() throws Exception {
+      WorkerPool pool = WorkerPool.getPool("test-abort", 2, 3, WorkerPool.Policy.ABORT);
+      fill(pool);
+      try {
+         pool.execute(blocker());
+         fail("a full pool accepted a task");
+      } catch (RejectedExecutionException ex) {
+         // expected
+      }
+      assertEquals(1, pool.getRejectedCount());
+      assertEquals(6, pool.getSubmittedCount());
+
+      release.countDown();
+      awaitCompleted(pool, 5);
+      String statistics = pool.getStatistics();
+      logger.info(statistics);
+      assertTrue(statistics.startsWith("WorkerPool test-abort "));
+      assertTrue(statistics.indexOf(" queue=0/3 ") != -1);
+      assertTrue(statistics.indexOf(" rejected=1") != -1);
+      assertTrue(WorkerPool.getAllStatistics().indexOf(statistics) != -1);
+   }
+
+   public void testCallerRunsBeyondBounds() throws Exception {
+      WorkerPool pool = WorkerPool.getPool("test-caller-runs", 1, 1,
+            WorkerPool.Policy.CALLER_RUNS);
+      fill(pool);
+      final AtomicReference<Thread> runner = new AtomicReference<Thread>();
+      pool.execute(new Runnable() {
+         public void run() {
+            runner.set(Thread.currentThread());
+         }
+      });
+      assertSame(Thread.currentThread(), runner.get());
+      assertEquals(1, pool.getRejectedCount());
+   }
+
+   /** A discarded Future is cancelled, so waiting on it does not hang. */
+   public void testDiscardCancelsFuture() throws Exception {
+      WorkerPool pool = WorkerPool.getPool("test-discard", 1, 1, WorkerPool.Policy.DISCARD);
+      fill(pool);
+      FutureTask<String> task = new FutureTask<String>(new Runnable() {
+         public void run() {
+            fail("a discarded task ran");
+         }
+      }, "done");
+      pool.execute(task);
+      assertEquals(1, pool.getRejectedCount());
+      try {
+         task.get(1, TimeUnit.SECONDS);
+         fail("a discarded task completed");
+      } catch (CancellationException ex) {
+         // expected
+      }
+      release.countDown();
+      awaitCompleted(pool, 2);
+   }
+
+   public void testSchedule() throws Exception {
+      WorkerPool pool = WorkerPool.getPool("test-schedule", 2, 4, WorkerPool.Policy.ABORT);
+      final CountDownLatch ran = new CountDownLatch(1);
+      final AtomicLong ranAt = new AtomicLong();
+      final AtomicReference<String> threadName = new AtomicReference<String>();
+      long start = System.nanoTime();
+      pool.schedule(new Runnable() {
+         public void run() {
+            ranAt.set(System.nanoTime());
+            threadName.set(Thread.currentThread().getName());
+            ran.countDown();
+         }
+      }, 100);
+      assertTrue(ran.await(5, TimeUnit.SECONDS));
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(ranAt.get() - start) >= 100);
+      assertTrue(threadName.get().startsWith("test-schedule-"));
+   }
+
+   public void testPropertiesOverrideDefaults() {
+      System.setProperty("diets.pool.test-properties.threads", "3");
+      System.setProperty("diets.pool.test-properties.queue", "7");
+      System.setProperty("diets.pool.test-properties.policy", "discard");
+      WorkerPool pool = WorkerPool.getPool("test-properties", 1, 1, WorkerPool.Policy.ABORT);
+      assertEquals(3, pool.getMaxThreads());
+      assertEquals(7, pool.getQueueCapacity());
+      assertEquals(WorkerPool.Policy.DISCARD, pool.getPolicy());
+      assertSame(pool, WorkerPool.getPool("test-properties", 5, 5, WorkerPool.Policy.ABORT));
+   }
+}
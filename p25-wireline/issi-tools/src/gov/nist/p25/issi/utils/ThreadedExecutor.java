@@ -2,6 +2,12 @@ package gov.nist.p25.issi.utils;
 
 import java.util.concurrent.Executor;
 
+/**
+ * Runs every task on a thread of its own.
+ *
+ * @deprecated unbounded; use one of the WorkerPool pools.
+ */
+@Deprecated
 public class ThreadedExecutor implements Executor {
 
    @Override
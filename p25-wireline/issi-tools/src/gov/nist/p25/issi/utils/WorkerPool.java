@@ -0,0 +1,315 @@
+//
+package gov.nist.p25.issi.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A named, bounded pool of worker threads for one class of work. Tasks wait
+ * in a queue of limited depth when all workers are busy; once the queue is
+ * full the pool's rejection policy applies. By default the submitting
+ * thread runs the task itself, which slows the producer down instead of
+ * creating more threads.
+ * <p>
+ * Tasks must not sleep on a worker. Work that has to wait is given to
+ * schedule, which keeps the delay on one shared scheduler thread and hands
+ * the task to the pool when it is due.
+ * <p>
+ * The size of a pool can be set with the system properties
+ * <code>diets.pool.&lt;name&gt;.threads</code>,
+ * <code>diets.pool.&lt;name&gt;.queue</code> and
+ * <code>diets.pool.&lt;name&gt;.policy</code> (one of the Policy names).
+ */
+public class WorkerPool implements Executor {
+
+   private static Logger logger = Logger.getLogger(WorkerPool.class);
+
+   /** What to do with a task when the pool and its queue are full. */
+   public enum Policy {
+      /** Run the task in the submitting thread. */
+      CALLER_RUNS,
+      /** Throw a RejectedExecutionException. */
+      ABORT,
+      /** Drop the task and log it; a dropped Future is cancelled. */
+      DISCARD
+   }
+
+   private static final Map<String, WorkerPool> pools =
+      new LinkedHashMap<String, WorkerPool>();
+
+   /** SIP call control work, such as delayed INVITE handling. */
+   public static final WorkerPool SIP_EVENTS =
+      getPool("sip-events", 32, 256, Policy.CALLER_RUNS);
+
+   /** PTT control work, such as mute and unmute requests. */
+   public static final WorkerPool PTT_CONTROL =
+      getPool("ptt-control", 16, 256, Policy.CALLER_RUNS);
+
+   /** Trace collection and trace file I/O. */
+   public static final WorkerPool TRACE_IO =
+      getPool("trace-io", 8, 64, Policy.CALLER_RUNS);
+
+   /** Keeps the delays of scheduled tasks; never runs the tasks. */
+   private static final ScheduledExecutorService scheduler =
+      new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "worker-pool-scheduler");
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+
+   private final String name;
+   private final int maxThreads;
+   private final int queueCapacity;
+   private final Policy policy;
+   private final ThreadPoolExecutor executor;
+
+   private final AtomicLong submittedCount = new AtomicLong();
+   private final AtomicLong completedCount = new AtomicLong();
+   private final AtomicLong failedCount = new AtomicLong();
+   private final AtomicLong rejectedCount = new AtomicLong();
+   private final AtomicLong totalQueueWait = new AtomicLong();
+   private final AtomicLong maxQueueWait = new AtomicLong();
+   private final AtomicLong totalRunTime = new AtomicLong();
+
+   /**
+    * Get the pool with the given name, creating it on first use.
+    *
+    * @param name -- the pool name.
+    * @param maxThreads -- default number of worker threads.
+    * @param queueCapacity -- default queue depth.
+    * @param policy -- default rejection policy.
+    * @return the pool.
+    */
+   public static synchronized WorkerPool getPool(String name, int maxThreads,
+         int queueCapacity, Policy policy) {
+      WorkerPool pool = pools.get(name);
+      if (pool == null) {
+         String prefix = "diets.pool." + name + ".";
+         maxThreads = Integer.getInteger(prefix + "threads", maxThreads);
+         queueCapacity = Integer.getInteger(prefix + "queue", queueCapacity);
+         String policyName = System.getProperty(prefix + "policy");
+         if (policyName != null)
+            policy = Policy.valueOf(policyName.toUpperCase());
+         pool = new WorkerPool(name, maxThreads, queueCapacity, policy);
+         pools.put(name, pool);
+      }
+      return pool;
+   }
+
+   /**
+    * @return all pools created so far, in creation order.
+    */
+   public static synchronized Collection<WorkerPool> getPools() {
+      return new ArrayList<WorkerPool>(pools.values());
+   }
+
+   /**
+    * @return one line of statistics per pool.
+    */
+   public static String getAllStatistics() {
+      StringBuffer sbuf = new StringBuffer();
+      for (WorkerPool pool : getPools()) {
+         sbuf.append(pool.getStatistics()).append("\n");
+      }
+      return sbuf.toString();
+   }
+
+   private WorkerPool(final String name, int maxThreads, int queueCapacity,
+         Policy policy) {
+      this.name = name;
+      this.maxThreads = Math.max(1, maxThreads);
+      this.queueCapacity = Math.max(1, queueCapacity);
+      this.policy = policy;
+
+      ThreadFactory threadFactory = new ThreadFactory() {
+         private final AtomicInteger threadCount = new AtomicInteger();
+
+         public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      };
+      RejectedExecutionHandler rejectionHandler = new RejectedExecutionHandler() {
+         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejected(r);
+         }
+      };
+      executor = new ThreadPoolExecutor(this.maxThreads, this.maxThreads,
+            60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(this.queueCapacity),
+            threadFactory, rejectionHandler);
+      executor.allowCoreThreadTimeOut(true);
+   }
+
+   private void rejected(Runnable r) {
+      rejectedCount.incrementAndGet();
+      if (policy == Policy.CALLER_RUNS && !executor.isShutdown()) {
+         if (logger.isDebugEnabled())
+            logger.debug("WorkerPool " + name + " is full; running in caller");
+         r.run();
+      } else if (policy == Policy.DISCARD) {
+         logger.error("WorkerPool " + name + " is full; task discarded");
+         // Whoever waits on a dropped Future gets a CancellationException
+         // instead of waiting for ever.
+         Runnable task = ((PoolTask) r).task;
+         if (task instanceof Future)
+            ((Future<?>) task).cancel(false);
+      } else {
+         throw new RejectedExecutionException("WorkerPool " + name + " is full");
+      }
+   }
+
+   /**
+    * Run a task on one of the workers.
+    */
+   public void execute(Runnable task) {
+      submittedCount.incrementAndGet();
+      executor.execute(new PoolTask(task));
+   }
+
+   /** A submitted task, timed while it waits and while it runs. */
+   private class PoolTask implements Runnable {
+      private final Runnable task;
+      private final long queuedAt = System.currentTimeMillis();
+
+      PoolTask(Runnable task) {
+         this.task = task;
+      }
+
+      public void run() {
+         long startedAt = System.currentTimeMillis();
+         long wait = startedAt - queuedAt;
+         totalQueueWait.addAndGet(wait);
+         long max;
+         while (wait > (max = maxQueueWait.get())
+               && !maxQueueWait.compareAndSet(max, wait))
+            ;
+         try {
+            task.run();
+         } catch (RuntimeException ex) {
+            failedCount.incrementAndGet();
+            logger.error("WorkerPool " + name + ": task failed", ex);
+            throw ex;
+         } finally {
+            totalRunTime.addAndGet(System.currentTimeMillis() - startedAt);
+            completedCount.incrementAndGet();
+         }
+      }
+   }
+
+   /**
+    * Run a task on one of the workers once a delay has passed.
+    *
+    * @param task -- the task.
+    * @param delay -- the delay in milliseconds.
+    */
+   public void schedule(final Runnable task, long delay) {
+      scheduler.schedule(new Runnable() {
+         public void run() {
+            execute(task);
+         }
+      }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   public int getMaxThreads() {
+      return maxThreads;
+   }
+
+   public int getQueueCapacity() {
+      return queueCapacity;
+   }
+
+   public Policy getPolicy() {
+      return policy;
+   }
+
+   public int getActiveThreads() {
+      return executor.getActiveCount();
+   }
+
+   public int getQueueDepth() {
+      return executor.getQueue().size();
+   }
+
+   public long getSubmittedCount() {
+      return submittedCount.get();
+   }
+
+   public long getCompletedCount() {
+      return completedCount.get();
+   }
+
+   public long getFailedCount() {
+      return failedCount.get();
+   }
+
+   public long getRejectedCount() {
+      return rejectedCount.get();
+   }
+
+   /**
+    * @return total time tasks spent waiting in the queue, in ms.
+    */
+   public long getTotalQueueWait() {
+      return totalQueueWait.get();
+   }
+
+   /**
+    * @return longest time a task spent waiting in the queue, in ms.
+    */
+   public long getMaxQueueWait() {
+      return maxQueueWait.get();
+   }
+
+   /**
+    * @return total time spent running tasks, in ms.
+    */
+   public long getTotalRunTime() {
+      return totalRunTime.get();
+   }
+
+   public String getStatistics() {
+      long completed = completedCount.get();
+      StringBuffer sbuf = new StringBuffer();
+      sbuf.append("WorkerPool " + name);
+      sbuf.append(" threads=" + getActiveThreads() + "/" + maxThreads);
+      sbuf.append(" queue=" + getQueueDepth() + "/" + queueCapacity);
+      sbuf.append(" submitted=" + submittedCount.get());
+      sbuf.append(" completed=" + completed);
+      sbuf.append(" failed=" + failedCount.get());
+      sbuf.append(" rejected=" + rejectedCount.get());
+      if (completed > 0) {
+         sbuf.append(" avgWait=" + totalQueueWait.get() / completed + "ms");
+         sbuf.append(" maxWait=" + maxQueueWait.get() + "ms");
+         sbuf.append(" avgRun=" + totalRunTime.get() / completed + "ms");
+      }
+      return sbuf.toString();
+   }
+
+   public String toString() {
+      return getStatistics();
+   }
+}
@@ -0,0 +1,91 @@
+//
+package gov.nist.p25.issi.p25body;
+
+import gov.nist.p25.issi.utils.ProtocolObjects;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.message.Request;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of SIP message bodies through ContentList: a plain SDP body and
+ * a multipart body with SDP and a group service profile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContentListBenchmark {
+
+   private static final String INVITE =
+      "INVITE sip:abcde0020001@p25dr;user=TIA-P25-SG SIP/2.0\r\n"
+      + "Via: SIP/2.0/UDP 09.002.abcde.p25dr;branch=z9hG4bK721ade08c9b8564889cc602864df5a61\r\n"
+      + "To: <sip:abcde0020001@p25dr;user=TIA-P25-SG>\r\n"
+      + "From: <sip:abcde0020001@p25dr;user=TIA-P25-SG>;tag=0a0a3270.00000101\r\n"
+      + "Call-ID: 4899d0c4.00000101@p25dr\r\n"
+      + "CSeq: 1 INVITE\r\n"
+      + "Max-Forwards: 70\r\n"
+      + "Contact: <sip:abcde0020001@09.002.abcde.p25dr;user=TIA-P25-SG>\r\n"
+      + "Content-Length: 0\r\n\r\n";
+
+   private static final String SDP = "v=0\r\n"
+      + "o=- 1218040004 1218040004 IN IP4 09.002.abcde.p25dr\r\n"
+      + "s=TIA-P25-GroupCall\r\n"
+      + "c=IN IP4 10.10.50.112\r\n"
+      + "t=3427028804 0\r\n"
+      + "m=audio 17586 RTP/AVP 100\r\n"
+      + "a=rtpmap:100 X-TIA-P25-IMBE/8000\r\n";
+
+   private static final String GROUP_PROFILE = "g-access:1\r\n"
+      + "g-agroup:0B4561A27271\r\n" + "g-pri:2\r\n" + "g-ecap:1\r\n"
+      + "g-eprempt:0\r\n" + "g-rfhangT:0\r\n" + "g-ccsetupT:0\r\n"
+      + "g-intmode:0\r\n" + "g-sec:1\r\n" + "g-ic:0\r\n"
+      + "g-icsecstart:0\r\n";
+
+   private Request sdpRequest;
+   private Request multipartRequest;
+
+   @Setup
+   public void setup() throws ParseException {
+      ContentList sdpOnly = new ContentList();
+      sdpOnly.add(SdpContent.createSdpContent(SDP));
+      sdpRequest = createRequest(sdpOnly);
+
+      ContentList multipart = new ContentList();
+      multipart.add(SdpContent.createSdpContent(SDP));
+      multipart.add(GroupServiceProfileContent
+            .createGroupServiceProfileContent(GROUP_PROFILE));
+      multipartRequest = createRequest(multipart);
+   }
+
+   private static Request createRequest(ContentList contents)
+         throws ParseException {
+      Request request = ProtocolObjects.getMessageFactory().createRequest(INVITE);
+      request.setContent(contents.toString(), contents.getContentTypeHeader());
+      return request;
+   }
+
+   @Benchmark
+   public ContentList parseSdp() throws ParseException {
+      return ContentList.getContentListFromMessage(sdpRequest);
+   }
+
+   @Benchmark
+   public ContentList parseMultipart() throws ParseException {
+      return ContentList.getContentListFromMessage(multipartRequest);
+   }
+}
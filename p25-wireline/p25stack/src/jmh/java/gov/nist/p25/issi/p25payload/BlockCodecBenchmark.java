@@ -0,0 +1,74 @@
+//
+package gov.nist.p25.issi.p25payload;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode and decode of the individual P25 payload blocks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockCodecBenchmark {
+
+   private IMBEVoiceBlock voiceBlock;
+   private byte[] voiceBlockBytes;
+   private ISSIHeaderWord headerWord;
+   private byte[] headerWordBytes;
+   private PTTControlWord controlWord;
+   private byte[] controlWordBytes;
+
+   @Setup
+   public void setup() {
+      voiceBlock = PayloadFixtures.createVoiceBlock(0);
+      voiceBlockBytes = voiceBlock.getBytes();
+      headerWord = PayloadFixtures.createHeaderWord();
+      headerWordBytes = headerWord.getBytes();
+      controlWord = PayloadFixtures.createControlWord();
+      controlWordBytes = controlWord.getBytes();
+   }
+
+   @Benchmark
+   public IMBEVoiceBlock decodeVoiceBlock() {
+      return new IMBEVoiceBlock(voiceBlockBytes);
+   }
+
+   @Benchmark
+   public byte[] encodeVoiceBlock() {
+      return voiceBlock.getBytes();
+   }
+
+   @Benchmark
+   public ISSIHeaderWord decodeHeaderWord() {
+      return new ISSIHeaderWord(headerWordBytes);
+   }
+
+   @Benchmark
+   public byte[] encodeHeaderWord() {
+      return headerWord.getBytes();
+   }
+
+   @Benchmark
+   public PTTControlWord decodeControlWord() {
+      return new PTTControlWord(controlWordBytes);
+   }
+
+   @Benchmark
+   public byte[] encodeControlWord() {
+      return controlWord.getBytes();
+   }
+}
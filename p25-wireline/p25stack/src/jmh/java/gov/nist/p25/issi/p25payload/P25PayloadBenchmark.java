@@ -0,0 +1,71 @@
+//
+package gov.nist.p25.issi.p25payload;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode and decode of whole P25 payloads: a PTT control packet and voice
+ * packets carrying one to three IMBE voice blocks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class P25PayloadBenchmark {
+
+   @Param({ "1", "2", "3" })
+   public int voiceBlockCount;
+
+   private P25Payload controlPayload;
+   private byte[] controlBytes;
+   private P25Payload voicePayload;
+   private byte[] voiceBytes;
+
+   @Setup
+   public void setup() throws P25BlockException {
+      controlPayload = PayloadFixtures.createControlPayload();
+      controlBytes = controlPayload.getBytes();
+      voicePayload = PayloadFixtures.createVoicePayload(voiceBlockCount);
+      voiceBytes = voicePayload.getBytes();
+   }
+
+   @Benchmark
+   public P25Payload decodeControl() throws P25BlockException {
+      return new P25Payload(controlBytes);
+   }
+
+   @Benchmark
+   public byte[] encodeControl() throws P25BlockException {
+      return controlPayload.getBytes();
+   }
+
+   @Benchmark
+   public P25Payload decodeVoice() throws P25BlockException {
+      return new P25Payload(voiceBytes);
+   }
+
+   @Benchmark
+   public byte[] encodeVoice() throws P25BlockException {
+      return voicePayload.getBytes();
+   }
+
+   /** Decode a voice packet and encode it again, as a relay does. */
+   @Benchmark
+   public byte[] relayVoice() throws P25BlockException {
+      return new P25Payload(voiceBytes).getBytes();
+   }
+}
@@ -0,0 +1,95 @@
+//
+package gov.nist.p25.issi.p25payload;
+
+import gov.nist.p25.issi.utils.ByteUtil;
+
+/**
+ * Sample P25 payloads for the codec benchmarks, built like the ones in
+ * Test_P25PayloadTest.
+ */
+public class PayloadFixtures {
+
+   /**
+    * Create a PTT control packet: packet type and control word only.
+    */
+   public static P25Payload createControlPayload() throws P25BlockException {
+      ISSIPacketType packetType = createPacketType(PacketType.PTT_TRANSMIT_REQUEST);
+      return new P25Payload(packetType, createControlWord(), null, null, null);
+   }
+
+   /**
+    * Create a voice packet with a header word and some IMBE voice blocks.
+    *
+    * @param blockCount
+    *            the number of IMBE voice blocks (1 to 3 in practice).
+    */
+   public static P25Payload createVoicePayload(int blockCount)
+         throws P25BlockException {
+      ISSIPacketType packetType = createPacketType(PacketType.PTT_TRANSMIT_PROGRESS);
+      IMBEVoiceBlock[] voiceBlocks = new IMBEVoiceBlock[blockCount];
+      for (int i = 0; i < blockCount; i++)
+         voiceBlocks[i] = createVoiceBlock(i);
+      return new P25Payload(packetType, createControlWord(),
+            createHeaderWord(), voiceBlocks, null);
+   }
+
+   public static ISSIPacketType createPacketType(PacketType type) {
+      ISSIPacketType packetType = new ISSIPacketType();
+      packetType.setPacketType(type);
+      packetType.setSO(128);
+      packetType.setTranssmissionSequenceNumber(ByteUtil.getMaxIntValueForNumBits(7));
+      packetType.setInterval(ByteUtil.getMaxIntValueForNumBits(8));
+      return packetType;
+   }
+
+   public static PTTControlWord createControlWord() {
+      PTTControlWord controlWord = new PTTControlWord();
+      controlWord.setWacnId(ByteUtil.getMaxIntValueForNumBits(20));
+      controlWord.setSystemId(ByteUtil.getMaxIntValueForNumBits(12));
+      controlWord.setUnitId(ByteUtil.getMaxIntValueForNumBits(24));
+      controlWord.setTP(3);
+      return controlWord;
+   }
+
+   public static ISSIHeaderWord createHeaderWord() {
+      ISSIHeaderWord headerWord = new ISSIHeaderWord();
+      byte[] messageIndicatorBytes = new byte[9];
+      messageIndicatorBytes[8] |= 1;
+      headerWord.setMessageIndicator(messageIndicatorBytes);
+      headerWord.setAlgId(0x80);
+      headerWord.setKeyId(ByteUtil.getMaxIntValueForNumBits(16));
+      headerWord.setMFID(ByteUtil.getMaxIntValueForNumBits(8));
+      headerWord.setGroupId(ByteUtil.getMaxIntValueForNumBits(16));
+      headerWord.setNID(ByteUtil.getMaxIntValueForNumBits(16));
+      headerWord.setSF(ByteUtil.getMaxIntValueForNumBits(2));
+      headerWord.setVBB(ByteUtil.getMaxIntValueForNumBits(2));
+      return headerWord;
+   }
+
+   /**
+    * Create an IMBE voice block for one of the 18 frames of a superframe.
+    *
+    * @param frame
+    *            the zero based frame index.
+    */
+   public static IMBEVoiceBlock createVoiceBlock(int frame) {
+      IMBEVoiceBlock voiceBlock = new IMBEVoiceBlock();
+      voiceBlock.setFT(IMBEVoiceBlock.getFrameType(frame % 18 + 1));
+      voiceBlock.setU0(ByteUtil.getMaxIntValueForNumBits(12));
+      voiceBlock.setU1(ByteUtil.getMaxIntValueForNumBits(12));
+      voiceBlock.setU2(ByteUtil.getMaxIntValueForNumBits(12));
+      voiceBlock.setU3(ByteUtil.getMaxIntValueForNumBits(12));
+      voiceBlock.setU4(ByteUtil.getMaxIntValueForNumBits(11));
+      voiceBlock.setU5(ByteUtil.getMaxIntValueForNumBits(11));
+      voiceBlock.setU6(ByteUtil.getMaxIntValueForNumBits(11));
+      voiceBlock.setU7(ByteUtil.getMaxIntValueForNumBits(7));
+      voiceBlock.setEt(ByteUtil.getMaxIntValueForNumBits(3));
+      voiceBlock.setEr(ByteUtil.getMaxIntValueForNumBits(3));
+      voiceBlock.setM(ByteUtil.getMaxIntValueForNumBits(1));
+      voiceBlock.setL(ByteUtil.getMaxIntValueForNumBits(1));
+      voiceBlock.setE4(ByteUtil.getMaxIntValueForNumBits(1));
+      voiceBlock.setE1(ByteUtil.getMaxIntValueForNumBits(3));
+      voiceBlock.setSF(ByteUtil.getMaxIntValueForNumBits(2));
+      return voiceBlock;
+   }
+}
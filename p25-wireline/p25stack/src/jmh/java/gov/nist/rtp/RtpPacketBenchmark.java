@@ -0,0 +1,70 @@
+//
+package gov.nist.rtp;
+
+import gov.nist.p25.issi.p25payload.P25BlockException;
+import gov.nist.p25.issi.p25payload.PayloadFixtures;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode and decode of RTP packets carrying P25 voice payloads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RtpPacketBenchmark {
+
+   @Param({ "1", "3" })
+   public int voiceBlockCount;
+
+   private RtpPacket rtpPacket;
+   private byte[] packetBytes;
+   private RtpPacket receivePacket;
+
+   @Setup
+   public void setup() throws P25BlockException {
+      byte[] payload = PayloadFixtures.createVoicePayload(voiceBlockCount)
+            .getBytes();
+      rtpPacket = new RtpPacket();
+      rtpPacket.setV(2);
+      rtpPacket.setPT(100);
+      rtpPacket.setSN(1234);
+      rtpPacket.setTS(160000L);
+      rtpPacket.setSSRC(0x12345678L);
+      rtpPacket.setPayload(payload, payload.length);
+      packetBytes = rtpPacket.getData();
+      receivePacket = new RtpPacket();
+   }
+
+   @Benchmark
+   public byte[] getData() {
+      return rtpPacket.getData();
+   }
+
+   @Benchmark
+   public RtpPacket setData() {
+      receivePacket.setData(packetBytes, packetBytes.length);
+      return receivePacket;
+   }
+
+   @Benchmark
+   public byte[] getPayload() {
+      receivePacket.setData(packetBytes, packetBytes.length);
+      return receivePacket.getPayload();
+   }
+}
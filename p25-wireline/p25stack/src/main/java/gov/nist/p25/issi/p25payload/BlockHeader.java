@@ -58,8 +58,19 @@ public class BlockHeader implements Serializable {
     * @throws P25BlockException
     */
    public BlockHeader(byte[] bytes) throws P25BlockException {
+      this(bytes, 0);
+   }
+
+   /**
+    * Construct a P25 block header in place from a larger buffer.
+    * 
+    * @param bytes The buffer holding the block header.
+    * @param offset The index of the block header in the buffer.
+    * @throws P25BlockException
+    */
+   public BlockHeader(byte[] bytes, int offset) throws P25BlockException {
       
-      int i = ByteUtil.bytesToInt(bytes);
+      int i = ByteUtil.bytesToInt(bytes, offset);
 
       this.E = (i >>> 0x1F) & 0x01;      // Extract E
       this.BT = (i >>> 0x18) & 0x07F;    // Extract BT
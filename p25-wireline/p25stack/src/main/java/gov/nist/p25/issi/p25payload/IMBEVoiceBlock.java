@@ -286,14 +286,23 @@ public class IMBEVoiceBlock implements Serializable {
     * @throws P25BlockException
     */
    public IMBEVoiceBlock(byte[] bytes) {
+      this(bytes, 0, bytes.length);
+   }
+
+   /**
+    * Construct an IMBE voice block in place from a larger buffer.
+    * 
+    * @param bytes The buffer holding the IMBE voice block.
+    * @param offset The index of the IMBE voice block in the buffer.
+    * @param length The length of the IMBE voice block in bytes.
+    */
+   public IMBEVoiceBlock(byte[] bytes, int offset, int length) {
       
-      int offset = 0;
+      int end = offset + length;
 
       // Extract FT..U1.
       int FT_U1_length = 4;
-      byte[] FT_U1_bytes = new byte[FT_U1_length];
-      System.arraycopy(bytes, offset, FT_U1_bytes, 0, FT_U1_length);
-      int FT_U1 = ByteUtil.bytesToInt(FT_U1_bytes);
+      int FT_U1 = ByteUtil.bytesToInt(bytes, offset);
       offset += FT_U1_length;
 
       this.FT = (short) ((FT_U1 >>> 0x18) & 0xFF);
@@ -304,7 +313,7 @@ public class IMBEVoiceBlock implements Serializable {
       int U2_U7_length = 8;
       this.U2_U7_bytes = new byte[U2_U7_length];
       System.arraycopy(bytes, offset, U2_U7_bytes, 0, U2_U7_length);
-      long U2_U7 = ByteUtil.bytesToLong(U2_U7_bytes);
+      long U2_U7 = ByteUtil.bytesToLong(bytes, offset);
       offset += U2_U7_length;
 
       this.U2 = (short) ((U2_U7 >>> 0x34) & 0xFFF);
@@ -316,9 +325,7 @@ public class IMBEVoiceBlock implements Serializable {
 
       // Extract Et..Rsvd.
       int Et_Rsvd_length = 2;
-      byte[] Et_Rsvd_bytes = new byte[Et_Rsvd_length];
-      System.arraycopy(bytes, offset, Et_Rsvd_bytes, 0, Et_Rsvd_length);
-      short Et_Rsvd = ByteUtil.bytesToShort(Et_Rsvd_bytes);
+      short Et_Rsvd = ByteUtil.bytesToShort(bytes, offset);
       offset += Et_Rsvd_length;
 
       this.Et = (byte) ((Et_Rsvd >>> 0x0D) & 0x07);
@@ -331,11 +338,11 @@ public class IMBEVoiceBlock implements Serializable {
       this.reserved = (byte) (Et_Rsvd & 0x03);
 
       // Finally extract the variable length data at the end of the block.
-      if (bytes.length > offset) {
+      if (end > offset) {
          
          // There must be additional frame data
          this.additionalFrameData = 
-            new byte[bytes.length - offset];
+            new byte[end - offset];
          
          System.arraycopy(bytes, offset, this.additionalFrameData, 
             0, this.additionalFrameData.length);
@@ -0,0 +1,62 @@
+//
+package gov.nist.p25.issi.p25payload;
+
+/**
+ * This class holds the IMBE voice blocks of a PTT packet together with their
+ * encoding. When the same voice is forwarded to several peers (group call
+ * fan-out), each peer's P25Payload is built from one IMBEVoiceBody so the
+ * voice blocks are encoded once rather than once per peer. Only the blocks
+ * that differ per peer (packet type, control word, header word) are
+ * encoded for each packet.
+ * <p>
+ * The voice blocks must not be modified after the body is created.
+ *
+ */
+public class IMBEVoiceBody {
+
+   /** The voice blocks. */
+   private final IMBEVoiceBlock[] imbeVoiceBlocks;
+
+   /** The voice blocks, encoded one after the other. */
+   private final byte[] bytes;
+
+   /**
+    * Construct a voice body.
+    *
+    * @param imbeVoiceBlocks
+    *            The IMBE voice blocks.
+    */
+   public IMBEVoiceBody(IMBEVoiceBlock[] imbeVoiceBlocks) {
+      this.imbeVoiceBlocks = imbeVoiceBlocks;
+      int length = 0;
+      for (IMBEVoiceBlock imbeVoiceBlock : imbeVoiceBlocks) {
+         length += imbeVoiceBlock.size();
+      }
+      bytes = new byte[length];
+      int offset = 0;
+      for (IMBEVoiceBlock imbeVoiceBlock : imbeVoiceBlocks) {
+         int size = imbeVoiceBlock.size();
+         System.arraycopy(imbeVoiceBlock.getBytes(), 0, bytes, offset, size);
+         offset += size;
+      }
+   }
+
+   /**
+    * Get the IMBE voice blocks.
+    *
+    * @return the IMBE voice blocks.
+    */
+   public IMBEVoiceBlock[] getIMBEVoiceBlocks() {
+      return imbeVoiceBlocks;
+   }
+
+   /**
+    * Get the encoded voice blocks. The array is shared and must not be
+    * modified.
+    *
+    * @return the encoded voice blocks.
+    */
+   public byte[] getBytes() {
+      return bytes;
+   }
+}
@@ -81,12 +81,22 @@ public class ISSIHeaderWord implements Serializable {
     * @throws P25BlockException
     */
    public ISSIHeaderWord(byte[] bytes) {
+      this(bytes, 0);
+   }
+
+   /**
+    * Construct an ISSI Header Word in place from a larger buffer.
+    * 
+    * @param bytes The buffer holding the ISSI Header Word.
+    * @param offset The index of the ISSI Header Word in the buffer.
+    */
+   public ISSIHeaderWord(byte[] bytes, int offset) {
       
       // Extract message indicator
       this.messageIndicator = new byte[MAX_MSG_INDICATOR_LENGTH];
-      System.arraycopy(bytes, 0, this.messageIndicator, 0,
+      System.arraycopy(bytes, offset, this.messageIndicator, 0,
             MAX_MSG_INDICATOR_LENGTH);
-      int offset = MAX_MSG_INDICATOR_LENGTH;
+      offset += MAX_MSG_INDICATOR_LENGTH;
 
       // Extract Alg_ID
       int Alg_ID_length = 1;
@@ -95,9 +105,7 @@ public class ISSIHeaderWord implements Serializable {
 
       // Extract Key_ID
       int Key_ID_length = 2;
-      byte[] Key_ID_bytes = new byte[Key_ID_length];
-      System.arraycopy(bytes, offset, Key_ID_bytes, 0, Key_ID_length);
-      this.keyId = ByteUtil.bytesToShort(Key_ID_bytes) & 0xFFFF;
+      this.keyId = ByteUtil.bytesToShort(bytes, offset) & 0xFFFF;
       offset += Key_ID_length;
 
       // Extract MFID
@@ -107,16 +115,12 @@ public class ISSIHeaderWord implements Serializable {
 
       // Extract Group_ID
       int Group_ID_length = 2;
-      byte[] Group_ID_bytes = new byte[Group_ID_length];
-      System.arraycopy(bytes, offset, Group_ID_bytes, 0, Group_ID_length);
-      this.groupId = ByteUtil.bytesToShort(Group_ID_bytes) & 0xFFFF;
+      this.groupId = ByteUtil.bytesToShort(bytes, offset) & 0xFFFF;
       offset += Group_ID_length;
 
       // Extract NID
       int NID_length = 2;
-      byte[] NID_bytes = new byte[NID_length];
-      System.arraycopy(bytes, offset, NID_bytes, 0, NID_length);
-      this.NID = ByteUtil.bytesToShort(NID_bytes) & 0xFFFF;
+      this.NID = ByteUtil.bytesToShort(bytes, offset) & 0xFFFF;
       offset += NID_length;
 
       // Extract SF and Reserved
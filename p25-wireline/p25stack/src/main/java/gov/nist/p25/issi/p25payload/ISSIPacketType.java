@@ -106,7 +106,17 @@ public class ISSIPacketType implements Serializable {
     * @param bytes The byte array representation of this ISSI Packet Type.
     */
    public ISSIPacketType(byte[] bytes) {
-      int i = ByteUtil.bytesToInt(bytes);
+      this(bytes, 0);
+   }
+
+   /**
+    * Construct an ISSI Packet Type in place from a larger buffer.
+    * 
+    * @param bytes The buffer holding the ISSI Packet Type.
+    * @param offset The index of the ISSI Packet Type in the buffer.
+    */
+   public ISSIPacketType(byte[] bytes, int offset) {
+      int i = ByteUtil.bytesToInt(bytes, offset);
       this.M = (i >>> 0x1F) & 0x01;
       this.PT = (i >>> 0x18) & 0x7F;
       this.serviceOptions = new ServiceOptions((i >>> 0x10) & 0x0FF);
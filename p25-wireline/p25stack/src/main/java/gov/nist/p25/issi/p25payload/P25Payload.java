@@ -93,6 +93,9 @@ public class P25Payload implements Serializable {
    /** Array of IMBE voice blocks. We dont test these for matching so it is transient.*/
    private transient IMBEVoiceBlock[] imbeVoiceBlocks = null;
 
+   /** The IMBE voice blocks already encoded (null to encode them). */
+   private transient byte[] imbeVoiceBytes = null;
+
    /** Array of manufacturer-specific blocks. (TBD) */
    // private ManufacturerSpecific[] mfrSpecificBlocks = null;
 
@@ -223,6 +226,26 @@ public class P25Payload implements Serializable {
       controlOctet.setBHC(blockHeaderCount);
    }
 
+   /**
+    * Contructs a P25 payload whose IMBE voice blocks are already encoded.
+    * 
+    * @param issiPacketType
+    *            The ISSI Packet Type.
+    * @param pttControlWord
+    *            The PTT Control Word.
+    * @param issiHeaderWord
+    *            The ISSI Header Word (null if not present).
+    * @param imbeVoiceBody
+    *            The IMBE Voice Blocks and their encoding.
+    */
+   public P25Payload(ISSIPacketType issiPacketType,
+         PTTControlWord pttControlWord, ISSIHeaderWord issiHeaderWord,
+         IMBEVoiceBody imbeVoiceBody) throws P25BlockException {
+      this(issiPacketType, pttControlWord, issiHeaderWord,
+            imbeVoiceBody.getIMBEVoiceBlocks(), null);
+      this.imbeVoiceBytes = imbeVoiceBody.getBytes();
+   }
+
    /**
     * Construct a P25 payload given its byte array representation.
     * 
@@ -231,11 +254,30 @@ public class P25Payload implements Serializable {
     * @throws P25BlockException
     */
    public P25Payload(byte[] bytes) throws P25BlockException {
+      this(bytes, 0, bytes.length);
+   }
 
-      int offset = 0;
+   /**
+    * Construct a P25 payload in place from a region of a larger buffer, such
+    * as an RTP receive buffer. Blocks are decoded directly from the buffer
+    * without intermediate copies.
+    * 
+    * @param bytes
+    *            The buffer holding this P25 payload.
+    * @param start
+    *            The index of the first byte of this P25 payload.
+    * @param length
+    *            The length of this P25 payload in bytes.
+    * @throws P25BlockException
+    */
+   public P25Payload(byte[] bytes, int start, int length)
+         throws P25BlockException {
+
+      int offset = start;
+      int end = start + length;
       // Set Control Octet
       int controlOctetLength = 1;
-      this.controlOctet = new ControlOctet(bytes[0]);
+      this.controlOctet = new ControlOctet(bytes[offset]);
       offset += controlOctetLength;
 
       // Set Number of Header Blocks
@@ -243,14 +285,14 @@ public class P25Payload implements Serializable {
       // Set Header Blocks
       for (int i = 0; i < numHeaderBlocks; i++) {
 
-         byte[] blockHeaderBytes = new byte[BlockHeader.FIXED_LENGTH];
-         System.arraycopy(bytes, offset, blockHeaderBytes, 0, blockHeaderBytes.length);
-         BlockHeader blockHeader = new BlockHeader(blockHeaderBytes);
+         checkLength(offset, BlockHeader.FIXED_LENGTH, end);
+         BlockHeader blockHeader = new BlockHeader(bytes, offset);
          this.blockHeaders.add(blockHeader);
-         offset += blockHeaderBytes.length;
+         offset += BlockHeader.FIXED_LENGTH;
       }
 
-      ArrayList<IMBEVoiceBlock> voiceBlocks = new ArrayList<IMBEVoiceBlock>();
+      int numVoiceBlocks = 0;
+      IMBEVoiceBlock[] voiceBlocks = null;
       //ArrayList<ManufacturerSpecific> mfrBlocks = new ArrayList<ManufacturerSpecific>();
       // Set all Blocks
       for (int i = 0; i < this.blockHeaders.size(); i++) {
@@ -259,35 +301,33 @@ public class P25Payload implements Serializable {
          int BT = blockHeader.getBT();
          if (BT == BlockType.PACKET_TYPE_INDEX) {
 
-            // p25Payload.issiPacketType = new ISSIPacketType();
-            byte[] packetTypeBytes = new byte[ISSIPacketType.FIXED_LENGTH];
-            System.arraycopy(bytes, offset, packetTypeBytes, 0, packetTypeBytes.length);
-            this.issiPacketType = new ISSIPacketType(packetTypeBytes);
-            offset += packetTypeBytes.length;
+            checkLength(offset, ISSIPacketType.FIXED_LENGTH, end);
+            this.issiPacketType = new ISSIPacketType(bytes, offset);
+            offset += ISSIPacketType.FIXED_LENGTH;
 
          } else if (BT == BlockType.PTT_CONTROL_WORD_INDEX) {
 
-            byte[] pttControlWordBytes = new byte[PTTControlWord.FIXED_LENGTH];
-            System.arraycopy(bytes, offset, pttControlWordBytes, 0, pttControlWordBytes.length);
-            this.pttControlWord = new PTTControlWord(pttControlWordBytes);
-            offset += pttControlWordBytes.length;
+            checkLength(offset, PTTControlWord.FIXED_LENGTH, end);
+            this.pttControlWord = new PTTControlWord(bytes, offset);
+            offset += PTTControlWord.FIXED_LENGTH;
 
 //CSSI - ConsolePTTControlWord
 
          } else if (BT == BlockType.ISSI_HEADER_INFO_INDEX) {
 
-            byte[] issiHeaderWordBytes = new byte[ISSIHeaderWord.FIXED_LENGTH];
-            System.arraycopy(bytes, offset, issiHeaderWordBytes, 0, issiHeaderWordBytes.length);
-            this.issiHeaderWord = new ISSIHeaderWord(issiHeaderWordBytes);
-            offset += issiHeaderWordBytes.length;
+            checkLength(offset, ISSIHeaderWord.FIXED_LENGTH, end);
+            this.issiHeaderWord = new ISSIHeaderWord(bytes, offset);
+            offset += ISSIHeaderWord.FIXED_LENGTH;
 
          } else if (BT == BlockType.IMBE_VOICE_INDEX) {
 
-            byte[] imbeVoiceBytes = new byte[blockHeader.getBlockLength()];
-            System.arraycopy(bytes, offset, imbeVoiceBytes, 0, imbeVoiceBytes.length);
-            IMBEVoiceBlock imbeVoice = new IMBEVoiceBlock(imbeVoiceBytes);
-            voiceBlocks.add(imbeVoice);
-            offset += imbeVoiceBytes.length;
+            int blockLength = blockHeader.getBlockLength();
+            checkLength(offset, blockLength, end);
+            if (voiceBlocks == null)
+               voiceBlocks = new IMBEVoiceBlock[numHeaderBlocks];
+            voiceBlocks[numVoiceBlocks++] = new IMBEVoiceBlock(bytes, offset,
+                  blockLength);
+            offset += blockLength;
 
             // Set Mfr Specific (TBD)
             // } else if (blockHeader.BT == BlockType.MFGSPEC_MIN_INDEX) {
@@ -305,9 +345,14 @@ public class P25Payload implements Serializable {
       }
 
       // Set IMBE Voice Block array
-      if (voiceBlocks.size() > 0) {
-         this.imbeVoiceBlocks = new IMBEVoiceBlock[voiceBlocks.size()];
-         voiceBlocks.toArray(this.imbeVoiceBlocks);
+      if (numVoiceBlocks > 0) {
+         if (numVoiceBlocks == voiceBlocks.length) {
+            this.imbeVoiceBlocks = voiceBlocks;
+         } else {
+            this.imbeVoiceBlocks = new IMBEVoiceBlock[numVoiceBlocks];
+            System.arraycopy(voiceBlocks, 0, this.imbeVoiceBlocks, 0,
+                  numVoiceBlocks);
+         }
 
 	 //#615 assig VBB
          if(this.issiHeaderWord != null)
@@ -322,6 +367,17 @@ public class P25Payload implements Serializable {
       // }
    }
 
+   /**
+    * Check that a block lies within the payload being decoded.
+    */
+   private static void checkLength(int offset, int blockLength, int end)
+         throws P25BlockException {
+      if (offset + blockLength > end) {
+         throw new P25BlockException(P25BlockException.INCOMPLETE
+               + " Block extends past end of payload.");
+      }
+   }
+
    /***************************************************************************
     * Methods
     **************************************************************************/
@@ -421,8 +477,10 @@ public class P25Payload implements Serializable {
       // Get IMBE Voice Blocks
       int numIMBEVoiceBlocks = imbeVoiceBlocks == null ? 0 : imbeVoiceBlocks.length;
       int imbeVoiceBlocksLength = 0;
-      byte[] imbeVoiceBytes = null;
-      if (numIMBEVoiceBlocks != 0) {
+      byte[] imbeVoiceBytes = this.imbeVoiceBytes;
+      if (imbeVoiceBytes != null) {
+         totalLength += imbeVoiceBytes.length;
+      } else if (numIMBEVoiceBlocks != 0) {
          for (int i = 0; i < numIMBEVoiceBlocks; i++) {
             imbeVoiceBlocksLength += imbeVoiceBlocks[i].size();
          }
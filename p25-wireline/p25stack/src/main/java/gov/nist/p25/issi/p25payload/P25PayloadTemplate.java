@@ -0,0 +1,72 @@
+//
+package gov.nist.p25.issi.p25payload;
+
+/**
+ * This class holds a P25 payload together with its encoded bytes, for
+ * control packets that are sent over and over unchanged (heartbeats, mute
+ * transmission heartbeats). The payload is encoded once, when the template
+ * is created, instead of on every send.
+ * <p>
+ * The encoded bytes are shared by every packet sent from the template, and
+ * sent packets may be captured with a reference to them, so neither the
+ * bytes nor the payload may be modified. Create a new template when a
+ * field changes.
+ *
+ */
+public class P25PayloadTemplate {
+
+   /** The payload. */
+   private final P25Payload p25Payload;
+
+   /** The encoded payload. */
+   private final byte[] bytes;
+
+   /**
+    * Construct a template from a payload.
+    *
+    * @param p25Payload
+    *            The payload, which must not be modified afterwards.
+    * @throws P25BlockException
+    *             if the payload cannot be encoded.
+    */
+   public P25PayloadTemplate(P25Payload p25Payload) throws P25BlockException {
+      this.p25Payload = p25Payload;
+      this.bytes = p25Payload.getBytes();
+   }
+
+   /**
+    * Get the payload.
+    *
+    * @return the payload.
+    */
+   public P25Payload getP25Payload() {
+      return p25Payload;
+   }
+
+   /**
+    * Get the ISSI packet type of the payload.
+    *
+    * @return the ISSI packet type.
+    */
+   public ISSIPacketType getISSIPacketType() {
+      return p25Payload.getISSIPacketType();
+   }
+
+   /**
+    * Get the encoded payload. The array is shared and must not be modified.
+    *
+    * @return the encoded payload.
+    */
+   public byte[] getBytes() {
+      return bytes;
+   }
+
+   /**
+    * Get the length of the encoded payload.
+    *
+    * @return the length in bytes.
+    */
+   public int getLength() {
+      return bytes.length;
+   }
+}
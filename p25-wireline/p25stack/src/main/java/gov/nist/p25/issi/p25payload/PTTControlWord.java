@@ -67,7 +67,19 @@ public class PTTControlWord implements Serializable {
     * @throws P25BlockException
     */
    public PTTControlWord(byte[] bytes) {
-      long l = ByteUtil.bytesToLong(bytes);
+      this(bytes, 0);
+   }
+
+   /**
+    * Construct a PTT Control Word in place from a larger buffer.
+    * 
+    * @param bytes
+    *            The buffer holding the PTT Control Word.
+    * @param offset
+    *            The index of the PTT Control Word in the buffer.
+    */
+   public PTTControlWord(byte[] bytes, int offset) {
+      long l = ByteUtil.bytesToLong(bytes, offset);
       this.wacnId = (int) ((l >>> 0x2C) & 0x0FFFFF);
       this.systemId = (int) ((l >>> 0x20) & 0xFFF);
       this.unitId = (int) ((l >>> 0x08) & 0xFFFFFF);
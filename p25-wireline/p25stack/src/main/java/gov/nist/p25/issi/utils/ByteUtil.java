@@ -67,6 +67,19 @@ public class ByteUtil {
       return byteBuffer.getShort();
    }
 
+   /**
+    * Read a big-endian Java short from a byte array without copying.
+    * 
+    * @param bytes
+    *            A byte array.
+    * @param offset
+    *            The index of the first byte of the short.
+    * @return A Java short.
+    */
+   public static short bytesToShort(byte[] bytes, int offset) {
+      return (short) (((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF));
+   }
+
    /**
     * Convert a short to a hex representation.
     * 
@@ -119,6 +132,22 @@ public class ByteUtil {
       return byteBuffer.getInt();
    }
 
+   /**
+    * Read a big-endian Java int from a byte array without copying.
+    * 
+    * @param bytes
+    *            A byte array.
+    * @param offset
+    *            The index of the first byte of the int.
+    * @return A Java int.
+    */
+   public static int bytesToInt(byte[] bytes, int offset) {
+      return ((bytes[offset] & 0xFF) << 24)
+            | ((bytes[offset + 1] & 0xFF) << 16)
+            | ((bytes[offset + 2] & 0xFF) << 8)
+            | (bytes[offset + 3] & 0xFF);
+   }
+
    /**
     * Convert an int to a hex representation.
     * 
@@ -166,6 +195,20 @@ public class ByteUtil {
       return byteBuffer.getLong();
    }
 
+   /**
+    * Read a big-endian Java long from a byte array without copying.
+    * 
+    * @param bytes
+    *            A byte array.
+    * @param offset
+    *            The index of the first byte of the long.
+    * @return A Java long.
+    */
+   public static long bytesToLong(byte[] bytes, int offset) {
+      return ((long) bytesToInt(bytes, offset) << 32)
+            | (bytesToInt(bytes, offset + 4) & 0xFFFFFFFFL);
+   }
+
    /**
     * Convert a long to a hex representation.
     * 
@@ -2,6 +2,7 @@
 package gov.nist.rtp;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import gov.nist.p25.issi.utils.ByteUtil;
 import org.apache.log4j.Logger;
 
@@ -127,7 +128,44 @@ public class RtpPacket implements Serializable {
     */
    public byte[] getData() {
 
-      /* Since V..SN are 32 bits, create a (int) byte array for V..SN. */
+      byte[] data = new byte[size()];
+      writeTo(ByteBuffer.wrap(data));
+
+      if (logger.isEnabledFor(org.apache.log4j.Level.DEBUG)) {
+         logger.debug("[RTPPacket] Packing V: " + V);
+         logger.debug("[RTPPacket] Packing P: " + P);
+         logger.debug("[RTPPacket] Packing X: " + X);
+         logger.debug("[RTPPacket] Packing CC: " + CC);
+         logger.debug("[RTPPacket] Packing M: " + M);
+         logger.debug("[RTPPacket] Packing PT: " + PT);
+         logger.debug("[RTPPacket] Packing SN: " + SN);
+         logger.debug("[RTPPacket] Packing TS: " + TS);
+         logger.debug("[RTPPacket] Packing SSRC: " + SSRC);
+         logger.debug("[RTPPacket] Packing payload: " + ByteUtil.writeBytes(payload));
+         logger.debug("[RTPPacket] Packed: " + ByteUtil.writeBytes(data));
+      }
+      return data;
+   }
+
+   /**
+    * Get the size of this RTP packet in bytes.
+    * 
+    * @return The size of the header plus the payload.
+    */
+   public int size() {
+      return FIXED_HEADER_LENGTH + payloadLength;
+   }
+
+   /**
+    * Write this RTP packet at the position of a buffer, as getData() would
+    * return it, without allocating.
+    * 
+    * @param buffer
+    *            The buffer, with at least size() bytes remaining.
+    */
+   public void writeTo(ByteBuffer buffer) {
+
+      /* Since V..SN are 32 bits, create a (int) for V..SN. */
       int V_SN = 0;
       V_SN |= V; // Add V
       V_SN <<= 0x01; // Make room for P
@@ -142,57 +180,28 @@ public class RtpPacket implements Serializable {
       V_SN |= PT; // Add PT
       V_SN <<= 0x10; // Make room for SN
       V_SN |= SN; // Add SN
-      byte[] V_SN_bytes = ByteUtil.intToBytes(V_SN);
-
-      /*
-       * Create a byte array for TS. Cast from long to int (we won't lose
-       * precision because there are never more than 4 bytes of data).
-       */
-      byte[] TS_bytes = ByteUtil.intToBytes((int) TS);
+      buffer.putInt(V_SN);
 
       /*
-       * Create a byte array for SSRC. Cast from long to int (we won't lose
-       * precision because there are never more than 4 bytes of data).
+       * Cast TS and SSRC from long to int (we won't lose precision because
+       * there are never more than 4 bytes of data).
        */
-      byte[] SSRC_bytes = ByteUtil.intToBytes((int) SSRC);
-
-      /* Create byte array for all data. */
-      int length = V_SN_bytes.length + TS_bytes.length + SSRC_bytes.length
-            + payloadLength;
-
-      byte[] data = new byte[length];
+      buffer.putInt((int) TS);
+      buffer.putInt((int) SSRC);
 
-      int offset = 0;
-      System.arraycopy(V_SN_bytes, 0, data, offset, V_SN_bytes.length);
-
-      offset += V_SN_bytes.length;
-      System.arraycopy(TS_bytes, 0, data, offset, TS_bytes.length);
-
-      offset += TS_bytes.length;
-      System.arraycopy(SSRC_bytes, 0, data, offset, SSRC_bytes.length);
-
-      offset += SSRC_bytes.length;
-      System.arraycopy(payload, 0, data, offset, payloadLength);
-
-      if (logger.isEnabledFor(org.apache.log4j.Level.DEBUG)) {
-         logger.debug("[RTPPacket] Packing V: " + V);
-         logger.debug("[RTPPacket] Packing P: " + P);
-         logger.debug("[RTPPacket] Packing X: " + X);
-         logger.debug("[RTPPacket] Packing CC: " + CC);
-         logger.debug("[RTPPacket] Packing M: " + M);
-         logger.debug("[RTPPacket] Packing PT: " + PT);
-         logger.debug("[RTPPacket] Packing SN: " + SN);
-         logger.debug("[RTPPacket] Packing TS: " + TS);
-         logger.debug("[RTPPacket] Packing SSRC: " + SSRC);
-         logger.debug("[RTPPacket] Packing payload: " + ByteUtil.writeBytes(payload));
-         logger.debug("[RTPPacket] Packed: " + ByteUtil.writeBytes(data));
-      }
-      return data;
+      if (payloadLength > 0)
+         buffer.put(payload, 0, payloadLength);
    }
 
    /**
     * Set the data for this RTP packet. Note that CSRC, DP, and EL are not
     * included.
+    * <p>
+    * The header fields are read in place from the buffer, but the payload
+    * is copied: the receive path reuses its buffer, and a received packet
+    * outlives it in the PTT capture. For the same reason the receive path
+    * builds one RtpPacket and one P25Payload per packet rather than
+    * reusing pooled ones or a flyweight view over the buffer.
     * 
     * @param bytes
     *            The buffer containing the RTP data.
@@ -207,15 +216,13 @@ public class RtpPacket implements Serializable {
    public void setData(byte[] bytes, int length)
          throws IllegalArgumentException {
       /*
-       * Since V..SN are 32 bits, build an int to hold V..SN before
-       * extracting.
+       * Since V..SN are 32 bits, read V..SN as an int directly from the
+       * buffer before extracting.
        */
       int V_SN_length = 4; // # bytes
-      byte[] V_SN_bytes = new byte[V_SN_length];
-      System.arraycopy(bytes, 0, V_SN_bytes, 0, V_SN_length);
+      int V_SN = ByteUtil.bytesToInt(bytes, 0);
 
       /* Extract V..SN */
-      int V_SN = ByteUtil.bytesToInt(V_SN_bytes);
       V = (V_SN >>> 0x1E) & 0x03;
       P = (V_SN >>> 0x1D) & 0x01;
       X = (V_SN >>> 0x1C) & 0x01;
@@ -225,25 +232,18 @@ public class RtpPacket implements Serializable {
       SN = (V_SN & 0xFFFF);
       int offset = V_SN_length;
 
-      /* Extract TS */
-      int TS_length = 4; // 4 bytes arriving, need to store as long
-      byte[] TS_bytes = new byte[TS_length];
-      System.arraycopy(bytes, offset, TS_bytes, 0, TS_length);
-      byte[] longTS_bytes = new byte[8]; // Copy to long byte array
-      System.arraycopy(TS_bytes, 0, longTS_bytes, 4, 4);
-      TS = ByteUtil.bytesToLong(longTS_bytes);
+      /* Extract TS (4 bytes arriving, stored as an unsigned long) */
+      int TS_length = 4;
+      TS = ByteUtil.bytesToInt(bytes, offset) & 0xFFFFFFFFL;
       offset += TS_length;
 
-      // Extract SSRC
-      int SSRC_length = 4; // 4 bytes arriving, need to store as long
-      byte[] SSRC_bytes = new byte[SSRC_length];
-      System.arraycopy(bytes, offset, SSRC_bytes, 0, SSRC_length);
-      byte[] longSSRC_bytes = new byte[8]; // Copy to long byte array
-      System.arraycopy(SSRC_bytes, 0, longSSRC_bytes, 4, 4);
-      SSRC = ByteUtil.bytesToLong(longSSRC_bytes);
+      // Extract SSRC (4 bytes arriving, stored as an unsigned long)
+      int SSRC_length = 4;
+      SSRC = ByteUtil.bytesToInt(bytes, offset) & 0xFFFFFFFFL;
       offset += SSRC_length;
 
-      // Extract Payload
+      // Extract Payload. The payload is copied because the caller may
+      // reuse the receive buffer.
       int payload_length = (length - offset); // # bytes
       payloadLength = payload_length;
       payload = new byte[payload_length];
@@ -0,0 +1,130 @@
+//
+package gov.nist.rtp;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import org.apache.log4j.Logger;
+
+/**
+ * This class turns received datagrams into RTP events and hands them to the
+ * listeners of an RTP session. Sequencing is delegated to the receive state
+ * of the session so that both the thread-per-session RtpPacketReceiver and
+ * the shared RtpReceiveEngine deliver packets with the same semantics.
+ *
+ */
+class RtpPacketDispatcher {
+
+   /*
+    * Shares the RtpPacketReceiver category so that existing log4j settings
+    * for raw RTP logging keep working with the shared receive engine.
+    */
+   private static Logger logger = Logger.getLogger(RtpPacketReceiver.class);
+
+   /** The RTP session whose listeners receive the events. */
+   private RtpSession rtpSession = null;
+
+   /** Packets made deliverable by the last received packet. */
+   private ArrayList<RtpPacket> deliverable = new ArrayList<RtpPacket>();
+
+   /** Packets received since receive statistics were last reported. */
+   private int packetsSinceStatistics = 0;
+
+   /**
+    * Construct an RTP packet dispatcher.
+    *
+    * @param rtpSession
+    *            the RTP session whose listeners receive the events.
+    */
+   RtpPacketDispatcher(RtpSession rtpSession) {
+      this.rtpSession = rtpSession;
+   }
+
+   /**
+    * Get the RTP session.
+    *
+    * @return the RTP session.
+    */
+   RtpSession getRtpSession() {
+      return rtpSession;
+   }
+
+   /**
+    * Decode a received datagram and deliver it to the session listeners.
+    * The buffer may be reused by the caller once this method returns.
+    *
+    * @param packetData
+    *            the buffer holding the datagram.
+    * @param packetSize
+    *            the number of valid bytes in the buffer.
+    */
+   void dispatchPacket(byte[] packetData, int packetSize) {
+
+      // If we are logging in debug mode, store the raw RTP data
+      // so that we can write it to a file later.
+      if (logger.isTraceEnabled()) {
+         byte[] payload = new byte[packetSize];
+         System.arraycopy(packetData, 0, payload, 0, packetSize);
+         rtpSession.loggedRtpPackets.add(payload);
+      }
+
+      RtpPacket rtpPacket = new RtpPacket(packetData, packetSize);
+
+      // Drop duplicates and late packets, and restore order within the
+      // reorder window of the session.
+      rtpSession.receiveState.receive(rtpPacket, System.nanoTime(),
+            deliverable);
+      try {
+         for (int i = 0; i < deliverable.size(); i++) {
+            // Send event to listeners
+            RtpPacketEvent rtpEvent = new RtpPacketEvent(rtpSession,
+                  deliverable.get(i), "Received RTP packet");
+
+            for (RtpListener listener : rtpSession.listeners)
+               listener.handleRtpPacketEvent(rtpEvent);
+         }
+      } finally {
+         deliverable.clear();
+      }
+
+      int interval = rtpSession.getStatisticsInterval();
+      if (interval > 0 && ++packetsSinceStatistics >= interval) {
+         packetsSinceStatistics = 0;
+         dispatchStatistics();
+      }
+   }
+
+   /**
+    * Deliver the receive statistics of the session to the session listeners.
+    */
+   void dispatchStatistics() {
+      RtpStatusEvent rtpEvent = new RtpStatusEvent(rtpSession,
+            rtpSession.getReceiveStatistics());
+      for (RtpListener listener : rtpSession.listeners)
+         listener.handleRtpStatusEvent(rtpEvent);
+   }
+
+   /**
+    * Deliver a timeout event to the session listeners.
+    *
+    * @param se
+    *            the socket exception that ended the receive.
+    */
+   void dispatchTimeout(SocketException se) {
+      RtpTimeoutEvent rtpEvent = new RtpTimeoutEvent(rtpSession, se);
+      for (RtpListener listener : rtpSession.listeners)
+         listener.handleRtpTimeoutEvent(rtpEvent);
+   }
+
+   /**
+    * Deliver an error event to the session listeners.
+    *
+    * @param ioe
+    *            the I/O exception that ended the receive.
+    */
+   void dispatchError(IOException ioe) {
+      RtpErrorEvent rtpEvent = new RtpErrorEvent(rtpSession, ioe);
+      for (RtpListener listener : rtpSession.listeners)
+         listener.handleRtpErrorEvent(rtpEvent);
+   }
+}
@@ -29,8 +29,8 @@ public class RtpPacketReceiver extends Thread {
    /** The calling RTP session. */
    private RtpSession rtpSession = null;
 
-   /** Logs sequence number of last packet received. */
-   private int lastRtpPacketSequenceNumber = 0;
+   /** Delivers received packets to the session listeners. */
+   private RtpPacketDispatcher dispatcher = null;
 
    /**
     * Construct an RTP packet receiver.
@@ -42,6 +42,7 @@ public class RtpPacketReceiver extends Thread {
    public RtpPacketReceiver(RtpSession rtpSession) throws SocketException {
       this.rtpSession = rtpSession;
       this.receiveSocket = rtpSession.getRtpRecvSocket();
+      this.dispatcher = new RtpPacketDispatcher(rtpSession);
    }
 
    /**
@@ -68,53 +69,17 @@ public class RtpPacketReceiver extends Thread {
             // Receive the UDP packet
             receiveSocket.receive(packet);
             
-            byte[] packetData = packet.getData();
             // Get packet size. Note that this is NOT the same as
-            // packetData.length!
-            int packetSize = packet.getLength();
-
-            // If we are logging in debug mode, store the raw RTP data
-            // so that we can write it to a file later.
-            // if (logger.isEnabledFor(org.apache.log4j.Level.DEBUG)) {
-            if (logger.isTraceEnabled()) {
-               byte[] payload = new byte[packetSize];
-               System.arraycopy(packetData, 0, payload, 0, packetSize);
-               rtpSession.loggedRtpPackets.add(payload);
-            }
-
-            RtpPacket rtpPacket = new RtpPacket(packetData, packetSize);
-            // rtpPacket.set();
-
-            // Only process RTP packets in sequence. Otherwise, discard
-            int rtpPacketSN = rtpPacket.getSN();
-            if (rtpPacketSN > lastRtpPacketSequenceNumber) {
-
-               lastRtpPacketSequenceNumber = rtpPacketSN;
-
-               // Send event to listeners
-               RtpPacketEvent rtpEvent = new RtpPacketEvent(rtpSession,
-                     rtpPacket, "Received RTP packet");
-
-               for (RtpListener listener : rtpSession.listeners)
-                  listener.handleRtpPacketEvent((RtpPacketEvent) rtpEvent);
-            } else {
-               // Silently discard
-               // if (logger.isEnabledFor(org.apache.log4j.Level.INFO))
-               // logger.info("[RtpPacketReceiver] Received out of " +
-               // "sequence RTP packet. Discarding.");
-            }
+            // packet.getData().length!
+            dispatcher.dispatchPacket(packet.getData(), packet.getLength());
          }
       } catch (SocketException se) {
 
-         RtpTimeoutEvent rtpEvent = new RtpTimeoutEvent(rtpSession, se);
-         for (RtpListener listener : rtpSession.listeners)
-            listener.handleRtpTimeoutEvent((RtpTimeoutEvent) rtpEvent);
+         dispatcher.dispatchTimeout(se);
 
       } catch (IOException se) {
 
-         RtpErrorEvent rtpEvent = new RtpErrorEvent(rtpSession, se);
-         for (RtpListener listener : rtpSession.listeners)
-            listener.handleRtpErrorEvent((RtpErrorEvent) rtpEvent);
+         dispatcher.dispatchError(se);
 
       } finally {
 
@@ -0,0 +1,278 @@
+//
+package gov.nist.rtp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * This class implements a shared RTP receive engine. Rather than running one
+ * RtpPacketReceiver thread per RTP session, every session receive channel is
+ * registered with one of a small pool of selector threads (one per available
+ * processor by default). Received packets are still delivered to the session
+ * RtpListeners as RtpPacketEvents, so listeners are unaware of which receive
+ * model is in use.
+ * <p>
+ * The engine is disabled by default. It is enabled either by setting the
+ * <code>gov.nist.rtp.receiveEngine</code> system property to true or by
+ * calling setEnabled(true) before RTP sessions are created. Only sessions
+ * whose receive socket was opened while the engine was enabled are served by
+ * it; others keep using their own receiver thread.
+ *
+ */
+public class RtpReceiveEngine {
+
+   /** The logger for this class. */
+   private static Logger logger = Logger.getLogger(RtpReceiveEngine.class);
+
+   /** The system property that enables the shared receive engine. */
+   public static final String ENABLED_PROPERTY = "gov.nist.rtp.receiveEngine";
+
+   /**
+    * The maximum number of datagrams read from one channel before the
+    * selector thread moves on to the next ready channel.
+    */
+   private static final int MAX_READS_PER_SELECT = 16;
+
+   /** Whether newly created RTP sessions use the shared engine. */
+   private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+   /** The shared engine instance, created on first use. */
+   private static RtpReceiveEngine instance = null;
+
+   /** The selector threads. */
+   private SelectorThread[] selectorThreads = null;
+
+   /** Round-robin index used to spread channels over selector threads. */
+   private AtomicInteger nextSelectorThread = new AtomicInteger();
+
+   /** The selector thread serving each registered channel. */
+   private ConcurrentHashMap<DatagramChannel, SelectorThread> registrations =
+      new ConcurrentHashMap<DatagramChannel, SelectorThread>();
+
+   /**
+    * Check whether the shared receive engine is enabled.
+    *
+    * @return true if new RTP sessions use the shared receive engine.
+    */
+   public static boolean isEnabled() {
+      return enabled;
+   }
+
+   /**
+    * Enable or disable the shared receive engine for RTP sessions created
+    * from now on.
+    *
+    * @param flag
+    *            true to use the shared receive engine.
+    */
+   public static void setEnabled(boolean flag) {
+      enabled = flag;
+   }
+
+   /**
+    * Get the shared receive engine, sized to the number of available
+    * processors.
+    *
+    * @return the shared receive engine.
+    * @throws RtpException
+    */
+   public static synchronized RtpReceiveEngine getInstance()
+         throws RtpException {
+      if (instance == null) {
+         instance = new RtpReceiveEngine(Runtime.getRuntime()
+               .availableProcessors());
+      }
+      return instance;
+   }
+
+   /**
+    * Construct an RTP receive engine.
+    *
+    * @param threadCount
+    *            the number of selector threads.
+    * @throws RtpException
+    */
+   public RtpReceiveEngine(int threadCount) throws RtpException {
+      if (threadCount < 1)
+         throw new IllegalArgumentException("threadCount must be positive");
+
+      selectorThreads = new SelectorThread[threadCount];
+      try {
+         for (int i = 0; i < threadCount; i++) {
+            selectorThreads[i] = new SelectorThread(i);
+         }
+      } catch (IOException ex) {
+         throw new RtpException("Failed to open selector", ex);
+      }
+      for (SelectorThread selectorThread : selectorThreads) {
+         selectorThread.start();
+      }
+   }
+
+   /**
+    * Start receiving RTP packets for a session on the given channel. The
+    * channel is switched to non-blocking mode before this method returns;
+    * the selector thread registers it later.
+    *
+    * @param rtpSession
+    *            the RTP session whose listeners receive the packets.
+    * @param channel
+    *            the bound receive channel of the session.
+    */
+   void register(RtpSession rtpSession, DatagramChannel channel) {
+      int index = (nextSelectorThread.getAndIncrement() & 0x7fffffff)
+            % selectorThreads.length;
+      SelectorThread selectorThread = selectorThreads[index];
+      if (registrations.putIfAbsent(channel, selectorThread) == null) {
+         RtpPacketDispatcher dispatcher = new RtpPacketDispatcher(rtpSession);
+         try {
+            channel.configureBlocking(false);
+         } catch (IOException ex) {
+            registrations.remove(channel);
+            dispatcher.dispatchError(ex);
+            return;
+         }
+         selectorThread.register(channel, dispatcher);
+      }
+   }
+
+   /**
+    * Stop receiving RTP packets on the given channel and close it.
+    *
+    * @param channel
+    *            the receive channel to release.
+    */
+   void unregister(DatagramChannel channel) {
+      SelectorThread selectorThread = registrations.remove(channel);
+      if (selectorThread != null) {
+         selectorThread.unregister(channel);
+      } else {
+         close(channel);
+      }
+   }
+
+   /**
+    * Get the number of channels served by this engine.
+    *
+    * @return the number of registered channels.
+    */
+   public int getSessionCount() {
+      return registrations.size();
+   }
+
+   /**
+    * Get the number of selector threads of this engine.
+    *
+    * @return the number of selector threads.
+    */
+   public int getThreadCount() {
+      return selectorThreads.length;
+   }
+
+   private static void close(DatagramChannel channel) {
+      try {
+         channel.close();
+      } catch (IOException ex) {
+         logger.debug("Error closing RTP channel", ex);
+      }
+   }
+
+   /**
+    * A selector thread. Registration changes are queued and applied by the
+    * thread itself so that callers never block on the selector.
+    */
+   private class SelectorThread extends Thread {
+
+      private Selector selector = null;
+
+      private ConcurrentLinkedQueue<Runnable> pendingChanges =
+         new ConcurrentLinkedQueue<Runnable>();
+
+      /* Since the dispatcher copies what it keeps, one buffer will do. */
+      private ByteBuffer buffer = ByteBuffer.allocate(RtpPacket.FIXED_HEADER_LENGTH
+            + RtpPacket.MAX_PAYLOAD_BUFFER_SIZE);
+
+      SelectorThread(int index) throws IOException {
+         super("RtpReceiveEngine-" + index);
+         setDaemon(true);
+         selector = Selector.open();
+      }
+
+      void register(final DatagramChannel channel,
+            final RtpPacketDispatcher dispatcher) {
+         pendingChanges.add(new Runnable() {
+            public void run() {
+               try {
+                  channel.register(selector, SelectionKey.OP_READ, dispatcher);
+               } catch (IOException ex) {
+                  registrations.remove(channel);
+                  dispatcher.dispatchError(ex);
+               }
+            }
+         });
+         selector.wakeup();
+      }
+
+      void unregister(final DatagramChannel channel) {
+         pendingChanges.add(new Runnable() {
+            public void run() {
+               SelectionKey key = channel.keyFor(selector);
+               if (key != null)
+                  key.cancel();
+               close(channel);
+            }
+         });
+         selector.wakeup();
+      }
+
+      public void run() {
+         for (;;) {
+            try {
+               selector.select();
+
+               Runnable change;
+               while ((change = pendingChanges.poll()) != null)
+                  change.run();
+
+               Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+               while (it.hasNext()) {
+                  SelectionKey key = it.next();
+                  it.remove();
+                  if (key.isValid() && key.isReadable())
+                     read(key);
+               }
+            } catch (IOException ex) {
+               logger.error("RtpReceiveEngine: select failed", ex);
+            } catch (RuntimeException ex) {
+               // A failing listener must not stop every session on this thread
+               logger.error("RtpReceiveEngine: unexpected exception", ex);
+            }
+         }
+      }
+
+      private void read(SelectionKey key) {
+         DatagramChannel channel = (DatagramChannel) key.channel();
+         RtpPacketDispatcher dispatcher = (RtpPacketDispatcher) key.attachment();
+         try {
+            for (int i = 0; i < MAX_READS_PER_SELECT; i++) {
+               buffer.clear();
+               if (channel.receive(buffer) == null)
+                  break;
+               dispatcher.dispatchPacket(buffer.array(), buffer.position());
+            }
+         } catch (IOException ex) {
+            key.cancel();
+            registrations.remove(channel);
+            dispatcher.dispatchError(ex);
+         }
+      }
+   }
+}
@@ -0,0 +1,285 @@
+//
+package gov.nist.rtp;
+
+import java.util.List;
+
+/**
+ * This class keeps the receive state of an RTP session. It extends the 16 bit
+ * sequence number of each received packet to a wrap-aware extended sequence
+ * number following RFC 3550 appendix A.1, discards duplicates, optionally
+ * restores the order of packets that arrive out of order within a bounded
+ * window, and computes the loss counters and interarrival jitter of RFC 3550
+ * appendices A.3 and A.8.
+ * <p>
+ * The reorder window is 0 by default, which delivers every new packet as soon
+ * as it arrives and discards packets that arrive after a later one. With a
+ * window of N, a packet that arrives ahead of a gap is held until the gap is
+ * filled or until N later packets are waiting, whichever comes first.
+ *
+ */
+class RtpReceiveState {
+
+   /** RTP timestamp clock rate assumed for jitter (Hz). */
+   static final int DEFAULT_CLOCK_RATE = 8000;
+
+   /** Largest reorder window, bounded by the duplicate history below. */
+   static final int MAX_REORDER_WINDOW = 32;
+
+   /** Sequence number jump accepted as loss rather than a restart. */
+   private static final int MAX_DROPOUT = 3000;
+
+   /** Largest sequence number step back accepted as misordering. */
+   private static final int MAX_MISORDER = 100;
+
+   private static final int RTP_SEQ_MOD = 1 << 16;
+
+   /** Number of recent sequence numbers remembered for duplicates. */
+   private static final int HISTORY = 64;
+
+   private int clockRate = DEFAULT_CLOCK_RATE;
+
+   private int reorderWindow = 0;
+
+   /** Held packets, indexed by extended sequence number. */
+   private RtpPacket[] held = new RtpPacket[1];
+
+   private int heldCount = 0;
+
+   private boolean initialized = false;
+
+   /** Highest 16 bit sequence number seen. */
+   private int maxSeq = 0;
+
+   /** Shifted count of sequence number cycles. */
+   private long cycles = 0;
+
+   /** Expected next sequence number of a suspected sender restart. */
+   private int badSeq = RTP_SEQ_MOD + 1;
+
+   private long baseSeq = 0;
+
+   private long highestSeq = 0;
+
+   /** Extended sequence number of the next packet to deliver. */
+   private long nextDeliver = 0;
+
+   /** Bit i is set if highestSeq - i has been received. */
+   private long seenMask = 0;
+
+   /** Packets expected before the last resynchronization. */
+   private long priorExpected = 0;
+
+   private long received = 0;
+
+   private long duplicates = 0;
+
+   private long late = 0;
+
+   private long reordered = 0;
+
+   private long resyncs = 0;
+
+   private double jitter = 0;
+
+   private boolean hasTransit = false;
+
+   private long lastArrivalNanos = 0;
+
+   private long lastTimestamp = 0;
+
+   /**
+    * Set the number of packets that may be held while waiting for a missing
+    * packet. Must be called before the first packet is received.
+    *
+    * @param reorderWindow
+    *            the reorder window, 0 to disable reordering.
+    */
+   synchronized void setReorderWindow(int reorderWindow) {
+      if (reorderWindow < 0 || reorderWindow > MAX_REORDER_WINDOW)
+         throw new IllegalArgumentException("Reorder window must be between 0 and "
+               + MAX_REORDER_WINDOW);
+      if (initialized)
+         throw new IllegalStateException("Packets already received");
+      this.reorderWindow = reorderWindow;
+      this.held = new RtpPacket[reorderWindow + 1];
+   }
+
+   synchronized int getReorderWindow() {
+      return reorderWindow;
+   }
+
+   /**
+    * Set the RTP timestamp clock rate used to express jitter.
+    *
+    * @param clockRate
+    *            the clock rate in Hz.
+    */
+   synchronized void setClockRate(int clockRate) {
+      if (clockRate <= 0)
+         throw new IllegalArgumentException("Clock rate must be positive");
+      this.clockRate = clockRate;
+   }
+
+   /**
+    * Account for a received packet and collect the packets that are now
+    * ready for delivery, in sequence order.
+    *
+    * @param rtpPacket
+    *            the received packet.
+    * @param arrivalNanos
+    *            the arrival time from System.nanoTime().
+    * @param deliverable
+    *            the list to which deliverable packets are appended.
+    */
+   synchronized void receive(RtpPacket rtpPacket, long arrivalNanos,
+         List<RtpPacket> deliverable) {
+
+      int seq = rtpPacket.getSN();
+      long ext;
+      if (!initialized) {
+         initSequence(seq);
+         ext = seq;
+      } else {
+         int udelta = (seq - maxSeq) & 0xFFFF;
+         if (udelta < MAX_DROPOUT) {
+            // In order, with a permissible gap
+            if (seq < maxSeq)
+               cycles += RTP_SEQ_MOD;
+            maxSeq = seq;
+            ext = cycles + seq;
+         } else if (udelta <= RTP_SEQ_MOD - MAX_MISORDER) {
+            // The sequence number made a very large jump. If two sequential
+            // packets arrive, assume the sender restarted.
+            if (seq != badSeq) {
+               badSeq = (seq + 1) & 0xFFFF;
+               return;
+            }
+            releaseAll(deliverable);
+            priorExpected += highestSeq - baseSeq + 1;
+            resyncs++;
+            initSequence(seq);
+            ext = seq;
+         } else {
+            // Duplicate or reordered packet
+            ext = cycles + seq;
+            if (seq > maxSeq)
+               ext -= RTP_SEQ_MOD;
+         }
+      }
+
+      // Discard duplicates
+      if (ext > highestSeq) {
+         long shift = ext - highestSeq;
+         seenMask = shift >= HISTORY ? 0 : seenMask << shift;
+         seenMask |= 1;
+         highestSeq = ext;
+      } else if (highestSeq - ext < HISTORY) {
+         long bit = 1L << (highestSeq - ext);
+         if ((seenMask & bit) != 0) {
+            duplicates++;
+            return;
+         }
+         seenMask |= bit;
+      } else {
+         late++;
+         received++;
+         return;
+      }
+
+      received++;
+      updateJitter(rtpPacket.getTS(), arrivalNanos);
+
+      if (ext < nextDeliver) {
+         late++;
+      } else if (ext == nextDeliver) {
+         if (ext < highestSeq)
+            reordered++;
+         deliverable.add(rtpPacket);
+         nextDeliver++;
+         drain(deliverable);
+      } else if (reorderWindow == 0) {
+         deliverable.add(rtpPacket);
+         nextDeliver = ext + 1;
+      } else {
+         // Give up on missing packets that fall out of the window
+         while (heldCount > 0 && ext - nextDeliver > reorderWindow)
+            step(deliverable);
+         if (ext - nextDeliver > reorderWindow)
+            nextDeliver = ext - reorderWindow;
+         drain(deliverable);
+         if (ext == nextDeliver) {
+            deliverable.add(rtpPacket);
+            nextDeliver++;
+            drain(deliverable);
+         } else {
+            held[(int) (ext % held.length)] = rtpPacket;
+            heldCount++;
+         }
+      }
+   }
+
+   /**
+    * Get a snapshot of the receive statistics.
+    *
+    * @return the receive statistics.
+    */
+   synchronized RtpReceiveStatistics getStatistics() {
+      long expected = priorExpected;
+      if (initialized)
+         expected += highestSeq - baseSeq + 1;
+      return new RtpReceiveStatistics(highestSeq, expected, received,
+            duplicates, late, reordered, resyncs, jitter, clockRate);
+   }
+
+   private void initSequence(int seq) {
+      initialized = true;
+      maxSeq = seq;
+      cycles = 0;
+      badSeq = RTP_SEQ_MOD + 1;
+      baseSeq = seq;
+      highestSeq = seq;
+      nextDeliver = seq;
+      seenMask = 0;
+      hasTransit = false;
+   }
+
+   /*
+    * RFC 3550 A.8. Heartbeats carry a zero timestamp and are not sampled.
+    * Differences are taken modulo 2^32 so that timestamp wraparound does not
+    * show up as jitter.
+    */
+   private void updateJitter(long timestamp, long arrivalNanos) {
+      if (timestamp == 0)
+         return;
+      if (hasTransit) {
+         double arrivalDelta = (arrivalNanos - lastArrivalNanos)
+               * (double) clockRate / 1000000000L;
+         int timestampDelta = (int) (timestamp - lastTimestamp);
+         double d = Math.abs(arrivalDelta - timestampDelta);
+         jitter += (d - jitter) / 16;
+      }
+      hasTransit = true;
+      lastArrivalNanos = arrivalNanos;
+      lastTimestamp = timestamp;
+   }
+
+   private void step(List<RtpPacket> deliverable) {
+      int slot = (int) (nextDeliver % held.length);
+      if (held[slot] != null) {
+         deliverable.add(held[slot]);
+         held[slot] = null;
+         heldCount--;
+      }
+      nextDeliver++;
+   }
+
+   private void drain(List<RtpPacket> deliverable) {
+      while (heldCount > 0 && held[(int) (nextDeliver % held.length)] != null)
+         step(deliverable);
+   }
+
+   private void releaseAll(List<RtpPacket> deliverable) {
+      while (heldCount > 0)
+         step(deliverable);
+   }
+}
@@ -0,0 +1,194 @@
+//
+package gov.nist.rtp;
+
+import java.io.Serializable;
+
+/**
+ * This class holds a snapshot of the receive statistics of an RTP session as
+ * defined in RFC 3550 section 6.4.1 and appendices A.3 and A.8. Instances are
+ * immutable and are obtained from RtpSession.getReceiveStatistics() or from
+ * an RtpStatusEvent with status RECEIVE_STATISTICS.
+ *
+ */
+public class RtpReceiveStatistics implements Serializable {
+
+   private static final long serialVersionUID = -1L;
+
+   /** The number of packets expected since the start of the stream. */
+   private long packetsExpected = 0;
+
+   /** The highest extended sequence number received. */
+   private long highestSequenceNumber = 0;
+
+   /** The number of distinct packets received. */
+   private long packetsReceived = 0;
+
+   /** The number of duplicate packets received and discarded. */
+   private long duplicatePackets = 0;
+
+   /** The number of packets that arrived after they had been skipped. */
+   private long latePackets = 0;
+
+   /** The number of packets delivered out of arrival order. */
+   private long reorderedPackets = 0;
+
+   /** The number of times the sender sequence number was resynchronized. */
+   private long resyncCount = 0;
+
+   /** The interarrival jitter in timestamp units. */
+   private double jitter = 0;
+
+   /** The RTP timestamp clock rate in Hz. */
+   private int clockRate = 0;
+
+   /**
+    * Construct an RTP receive statistics snapshot.
+    */
+   RtpReceiveStatistics(long highestSequenceNumber, long packetsExpected,
+         long packetsReceived, long duplicatePackets, long latePackets,
+         long reorderedPackets, long resyncCount, double jitter, int clockRate) {
+      this.packetsExpected = packetsExpected;
+      this.highestSequenceNumber = highestSequenceNumber;
+      this.packetsReceived = packetsReceived;
+      this.duplicatePackets = duplicatePackets;
+      this.latePackets = latePackets;
+      this.reorderedPackets = reorderedPackets;
+      this.resyncCount = resyncCount;
+      this.jitter = jitter;
+      this.clockRate = clockRate;
+   }
+
+   /**
+    * Get the highest extended sequence number received since the last
+    * resynchronization. The upper bits count sequence number cycles.
+    *
+    * @return the highest extended sequence number received.
+    */
+   public long getHighestSequenceNumber() {
+      return highestSequenceNumber;
+   }
+
+   /**
+    * Get the number of sequence number cycles.
+    *
+    * @return the number of times the 16 bit sequence number wrapped.
+    */
+   public long getCycles() {
+      return highestSequenceNumber >>> 16;
+   }
+
+   /**
+    * Get the number of packets expected since the start of the stream.
+    *
+    * @return the number of packets expected.
+    */
+   public long getPacketsExpected() {
+      return packetsExpected;
+   }
+
+   /**
+    * Get the number of distinct packets received, including late ones.
+    *
+    * @return the number of packets received.
+    */
+   public long getPacketsReceived() {
+      return packetsReceived;
+   }
+
+   /**
+    * Get the cumulative number of packets lost.
+    *
+    * @return the number of packets lost.
+    */
+   public long getPacketsLost() {
+      return Math.max(0, getPacketsExpected() - packetsReceived);
+   }
+
+   /**
+    * Get the fraction of expected packets that were lost.
+    *
+    * @return the loss fraction between 0 and 1.
+    */
+   public double getLossFraction() {
+      long expected = getPacketsExpected();
+      return expected == 0 ? 0 : (double) getPacketsLost() / expected;
+   }
+
+   /**
+    * Get the number of duplicate packets received and discarded.
+    *
+    * @return the number of duplicate packets.
+    */
+   public long getDuplicatePackets() {
+      return duplicatePackets;
+   }
+
+   /**
+    * Get the number of packets that arrived after the reorder window had
+    * already moved past them. These packets are discarded.
+    *
+    * @return the number of late packets.
+    */
+   public long getLatePackets() {
+      return latePackets;
+   }
+
+   /**
+    * Get the number of packets that arrived out of order but were delivered
+    * in order by the reorder window.
+    *
+    * @return the number of reordered packets.
+    */
+   public long getReorderedPackets() {
+      return reorderedPackets;
+   }
+
+   /**
+    * Get the number of times the receiver resynchronized to a sender whose
+    * sequence number jumped, for example after a sender restart.
+    *
+    * @return the number of resynchronizations.
+    */
+   public long getResyncCount() {
+      return resyncCount;
+   }
+
+   /**
+    * Get the interarrival jitter in RTP timestamp units.
+    *
+    * @return the interarrival jitter.
+    */
+   public double getJitter() {
+      return jitter;
+   }
+
+   /**
+    * Get the interarrival jitter in milliseconds.
+    *
+    * @return the interarrival jitter in milliseconds.
+    */
+   public double getJitterMillis() {
+      return jitter * 1000 / clockRate;
+   }
+
+   /**
+    * Get the XML formatted string representation.
+    *
+    * @return the XML formatted string representation.
+    */
+   public String toString() {
+      StringBuffer sbuf = new StringBuffer();
+      sbuf.append("<rtp-receive-statistics\n");
+      sbuf.append(" highestSequenceNumber=\"" + highestSequenceNumber + "\"\n");
+      sbuf.append(" packetsExpected=\"" + getPacketsExpected() + "\"\n");
+      sbuf.append(" packetsReceived=\"" + packetsReceived + "\"\n");
+      sbuf.append(" packetsLost=\"" + getPacketsLost() + "\"\n");
+      sbuf.append(" duplicatePackets=\"" + duplicatePackets + "\"\n");
+      sbuf.append(" latePackets=\"" + latePackets + "\"\n");
+      sbuf.append(" reorderedPackets=\"" + reorderedPackets + "\"\n");
+      sbuf.append(" resyncCount=\"" + resyncCount + "\"\n");
+      sbuf.append(" jitterMillis=\"" + getJitterMillis() + "\"\n");
+      sbuf.append("/>");
+      return sbuf.toString();
+   }
+}
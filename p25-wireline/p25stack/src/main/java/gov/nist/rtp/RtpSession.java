@@ -4,6 +4,8 @@ package gov.nist.rtp;
 import gov.nist.p25.issi.utils.ByteUtil;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -22,6 +24,12 @@ public class RtpSession {
 
    private static final long serialVersionUID = -1L;
 
+   /**
+    * Default number of received packets between receive statistics events
+    * (about 10 seconds of voice).
+    */
+   public static final int DEFAULT_STATISTICS_INTERVAL = 500;
+
    /** The logger for this class. */
    private static Logger logger = Logger.getLogger(RtpSession.class);
 
@@ -66,9 +74,30 @@ public class RtpSession {
     */
    protected ArrayList<byte[]> loggedRtpPackets = new ArrayList<byte[]>();
 
+   /** The receive channel registered with the shared receive engine. */
+   private DatagramChannel engineChannel = null;
+
    /** The rtp sequence number for this session */
    private int rtpSequenceNumber = 1;
 
+   /** The remote address packets are sent to, resolved once. */
+   private InetSocketAddress remoteSocketAddress = null;
+
+   /** Buffer that packets are written to for the send socket. */
+   private ByteBuffer sendBuffer = null;
+
+   /** Datagram reused for every packet sent on the send socket. */
+   private DatagramPacket sendDatagram = null;
+
+   /** Direct buffer that packets are written to for a send channel. */
+   private ByteBuffer sendDirectBuffer = null;
+
+   /** Sequence, reorder and jitter state of received packets. */
+   RtpReceiveState receiveState = new RtpReceiveState();
+
+   /** Received packets between RECEIVE_STATISTICS status events. */
+   private volatile int statisticsInterval = DEFAULT_STATISTICS_INTERVAL;
+
    /**
     * Construct an RTP session.
     * 
@@ -92,7 +121,7 @@ public class RtpSession {
       this.remoteIpAddress = remoteIpAddress;
       this.remoteRtpRecvPort = remoteRtpRecvPort;
 
-      myRtpRecvSocket = new DatagramSocket(myRtpRecvPort);
+      myRtpRecvSocket = openRtpRecvSocket(myRtpRecvPort);
       myRtpSendSocket = myRtpRecvSocket; // Auto binds to an open port
       remoteInetAddress = InetAddress.getByName(remoteIpAddress);
       listeners = new ArrayList<RtpListener>();
@@ -121,7 +150,7 @@ public class RtpSession {
       this.myRtpRecvPort = myRtpRecvPort;
 
       if (myRtpRecvPort != 0) {
-         myRtpRecvSocket = new DatagramSocket(myRtpRecvPort);
+         myRtpRecvSocket = openRtpRecvSocket(myRtpRecvPort);
          myRtpSendSocket = myRtpRecvSocket; // Auto binds to an open port
       } else {
          // A 0 port argument can occur when there is no RTP resources
@@ -132,6 +161,55 @@ public class RtpSession {
       listeners = new ArrayList<RtpListener>();
    }
 
+   /**
+    * Open the RTP receive socket. When the shared receive engine is enabled
+    * the socket is backed by a DatagramChannel so that it can be registered
+    * with a selector.
+    * 
+    * @param port
+    *            The RTP receive port.
+    * @return The bound receive socket.
+    * @throws SocketException
+    */
+   private static DatagramSocket openRtpRecvSocket(int port)
+         throws SocketException {
+      if (!RtpReceiveEngine.isEnabled())
+         return new DatagramSocket(port);
+
+      DatagramChannel channel = null;
+      try {
+         channel = DatagramChannel.open();
+         channel.socket().bind(new InetSocketAddress(port));
+         return channel.socket();
+      } catch (IOException ex) {
+         try {
+            if (channel != null)
+               channel.close();
+         } catch (IOException ignore) {
+         }
+         if (ex instanceof SocketException)
+            throw (SocketException) ex;
+         SocketException se = new SocketException(ex.getMessage());
+         se.initCause(ex);
+         throw se;
+      }
+   }
+
+   /**
+    * Release the receive channel from the shared receive engine, if it was
+    * registered there. The channel is closed.
+    */
+   private void unregisterFromReceiveEngine() {
+      if (engineChannel != null) {
+         try {
+            RtpReceiveEngine.getInstance().unregister(engineChannel);
+         } catch (RtpException ex) {
+            logger.error("Unable to release RTP receive channel", ex);
+         }
+         engineChannel = null;
+      }
+   }
+
    /**
     * Add an RTP listener.
     * 
@@ -164,7 +242,13 @@ public class RtpSession {
          throw new RtpException("No socket -- cannot recieve packets! ");
       if (this.myRtpRecvSocket.isClosed())
          throw new SocketException("Socket is closed.");
-      if ((rtpPacketReceiver == null)
+      DatagramChannel channel = this.myRtpRecvSocket.getChannel();
+      if (channel != null) {
+         if (engineChannel != channel) {
+            RtpReceiveEngine.getInstance().register(this, channel);
+            engineChannel = channel;
+         }
+      } else if ((rtpPacketReceiver == null)
             || (rtpPacketReceiver.getState() == Thread.State.TERMINATED)) {
          rtpPacketReceiver = new RtpPacketReceiver(this);
          rtpPacketReceiver.start();
@@ -176,7 +260,10 @@ public class RtpSession {
     * 
     */
    public void stopRtpPacketReceiver() {
-      this.rtpPacketReceiver.interrupt();
+      if (this.engineChannel != null)
+         unregisterFromReceiveEngine();
+      else
+         this.rtpPacketReceiver.interrupt();
       this.myRtpRecvPort = 0;
       // Note that the interrupt call will close the socket
       // if the remote rtp recv port is still open, we
@@ -202,9 +289,43 @@ public class RtpSession {
    public synchronized void sendRtpPacket(RtpPacket rtpPacket)
          throws RtpException, UnknownHostException, IOException {
 
-      // Ensure that outgoingDatagramPacket has been initialized
-      // with a remote IP address and remote RTP receive port
-      rtpPacket.setSN(rtpSequenceNumber++);
+      // Number the packet, then make sure that the remote IP address
+      // and remote RTP receive port are known.
+      rtpPacket.setSN(rtpSequenceNumber);
+      rtpSequenceNumber = (rtpSequenceNumber + 1) & 0xFFFF;
+      send(rtpPacket, getRemoteSocketAddress());
+   }
+
+   /**
+    * Send several RTP packets, in order, to the remote RTP receive port.
+    * The remote address is checked and the session locked once for all of
+    * them.
+    * 
+    * @param rtpPackets
+    *            The RTP packets to send.
+    * @throws IOException
+    * @throws UnknownHostException
+    * @throws RtpException
+    */
+   public synchronized void sendRtpPackets(RtpPacket[] rtpPackets)
+         throws RtpException, UnknownHostException, IOException {
+
+      for (RtpPacket rtpPacket : rtpPackets) {
+         rtpPacket.setSN(rtpSequenceNumber);
+         rtpSequenceNumber = (rtpSequenceNumber + 1) & 0xFFFF;
+      }
+      InetSocketAddress target = getRemoteSocketAddress();
+      for (RtpPacket rtpPacket : rtpPackets) {
+         send(rtpPacket, target);
+      }
+   }
+
+   /**
+    * Get the address to send to, resolving the remote IP address the first
+    * time it is needed.
+    */
+   private InetSocketAddress getRemoteSocketAddress() throws RtpException,
+         UnknownHostException {
       if (remoteInetAddress == null) {
          if (remoteIpAddress == "") {
             throw new RtpException("Failed sending RTP packet. "
@@ -219,17 +340,51 @@ public class RtpSession {
                + "Remote RTP receive port is undefined.");
       }
 
-      DatagramPacket outgoingDatagramPacket = new DatagramPacket(new byte[1],
-            1, remoteInetAddress, remoteRtpRecvPort);
-
-      // Convert RTP packet to byte array
-      byte[] rtpPacketBytes = rtpPacket.getData();
+      InetSocketAddress target = remoteSocketAddress;
+      if (target == null || target.getPort() != remoteRtpRecvPort
+            || target.getAddress() != remoteInetAddress) {
+         target = new InetSocketAddress(remoteInetAddress, remoteRtpRecvPort);
+         remoteSocketAddress = target;
+      }
+      return target;
+   }
 
-      // Set RTP packet as UDP payload and send
-      outgoingDatagramPacket.setData(rtpPacketBytes);
+   /**
+    * Write a packet into the send buffer of this session and send it. The
+    * caller holds the session lock.
+    */
+   private void send(RtpPacket rtpPacket, InetSocketAddress target)
+         throws IOException {
+
+      if (myRtpSendSocket == null)
+         return;
+      int size = rtpPacket.size();
+      int capacity = Math.max(size, RtpPacket.FIXED_HEADER_LENGTH
+            + RtpPacket.MAX_PAYLOAD_BUFFER_SIZE);
+
+      // A socket opened for the receive engine is written through its
+      // channel whatever its blocking mode, since the engine may make it
+      // non-blocking at any time.
+      DatagramChannel sendChannel = myRtpSendSocket.getChannel();
+      if (sendChannel != null) {
+         if (sendDirectBuffer == null || sendDirectBuffer.capacity() < size)
+            sendDirectBuffer = ByteBuffer.allocateDirect(capacity);
+         sendDirectBuffer.clear();
+         rtpPacket.writeTo(sendDirectBuffer);
+         sendDirectBuffer.flip();
+         sendChannel.send(sendDirectBuffer, target);
+         return;
+      }
 
-      if (myRtpSendSocket != null)
-         myRtpSendSocket.send(outgoingDatagramPacket);
+      if (sendBuffer == null || sendBuffer.capacity() < size) {
+         sendBuffer = ByteBuffer.allocate(capacity);
+         sendDatagram = new DatagramPacket(sendBuffer.array(), 0);
+      }
+      sendBuffer.clear();
+      rtpPacket.writeTo(sendBuffer);
+      sendDatagram.setData(sendBuffer.array(), 0, size);
+      sendDatagram.setSocketAddress(target);
+      myRtpSendSocket.send(sendDatagram);
    }
 
    /**
@@ -299,6 +454,7 @@ public class RtpSession {
       if (rtpPacketReceiver != null) // may be null because recieve port has
          // not yet been associagted
          rtpPacketReceiver.interrupt(); // Shut down RTP packet receiver
+      unregisterFromReceiveEngine();
 
       if (myRtpRecvSocket != null) {
          if( !myRtpRecvSocket.isClosed()) {
@@ -396,8 +552,9 @@ public class RtpSession {
          if (this.rtpPacketReceiver != null)
             this.rtpPacketReceiver.interrupt();
          this.rtpPacketReceiver = null;
+         unregisterFromReceiveEngine();
          this.myRtpRecvPort = myRtpRecvPort;
-         this.myRtpRecvSocket = new DatagramSocket(myRtpRecvPort);
+         this.myRtpRecvSocket = openRtpRecvSocket(myRtpRecvPort);
          this.myRtpSendSocket = myRtpRecvSocket;
       } catch (SocketException ex) {
          throw new RtpException("failed to assign recv port", ex);
@@ -431,6 +588,58 @@ public class RtpSession {
       return myRtpRecvSocket;
    }
 
+   /**
+    * Get a snapshot of the receive statistics of this session.
+    * 
+    * @return the receive statistics.
+    */
+   public RtpReceiveStatistics getReceiveStatistics() {
+      return receiveState.getStatistics();
+   }
+
+   /**
+    * Set the number of received packets that may be held while waiting for
+    * a missing packet, so that packets arriving out of order are delivered
+    * in order. Must be called before packets are received.
+    * 
+    * @param reorderWindow
+    *            the reorder window (0 to disable reordering, the default).
+    */
+   public void setReorderWindow(int reorderWindow) {
+      receiveState.setReorderWindow(reorderWindow);
+   }
+
+   /**
+    * Set the RTP timestamp clock rate used to compute interarrival jitter.
+    * 
+    * @param clockRate
+    *            the clock rate in Hz.
+    */
+   public void setReceiveClockRate(int clockRate) {
+      receiveState.setClockRate(clockRate);
+   }
+
+   /**
+    * Get the number of received packets between RECEIVE_STATISTICS status
+    * events.
+    * 
+    * @return the statistics interval.
+    */
+   public int getStatisticsInterval() {
+      return statisticsInterval;
+   }
+
+   /**
+    * Set the number of received packets between RECEIVE_STATISTICS status
+    * events.
+    * 
+    * @param statisticsInterval
+    *            the statistics interval (0 to disable the events).
+    */
+   public void setStatisticsInterval(int statisticsInterval) {
+      this.statisticsInterval = statisticsInterval;
+   }
+
    /**
     * Get the XML formatted string representation.
     * 
@@ -7,5 +7,5 @@ package gov.nist.rtp;
  */
 public enum RtpStatus {
 
-   RECEIVER_STOPPED, RECEIVER_STARTED;
+   RECEIVER_STOPPED, RECEIVER_STARTED, RECEIVE_STATISTICS;
 }
@@ -12,6 +12,9 @@ public class RtpStatusEvent extends RtpEvent {
    /** The status of the RTP stack. */
    private RtpStatus status = null;
 
+   /** The receive statistics of the session (may be null). */
+   private RtpReceiveStatistics statistics = null;
+
    /**
     * Construct an RTP status event.
     * 
@@ -28,6 +31,20 @@ public class RtpStatusEvent extends RtpEvent {
       this.status = status;
    }
 
+   /**
+    * Construct an RTP status event carrying receive statistics.
+    * 
+    * @param session
+    *            The RTP session
+    * @param statistics
+    *            The receive statistics of the session
+    */
+   public RtpStatusEvent(RtpSession session, RtpReceiveStatistics statistics) {
+      super(session, "RTP receive statistics");
+      this.status = RtpStatus.RECEIVE_STATISTICS;
+      this.statistics = statistics;
+   }
+
    /**
     * Get the status message
     * 
@@ -36,4 +53,14 @@ public class RtpStatusEvent extends RtpEvent {
    public RtpStatus getStatus() {
       return status;
    }
+
+   /**
+    * Get the receive statistics.
+    * 
+    * @return the receive statistics, or null if this event does not carry
+    *         them.
+    */
+   public RtpReceiveStatistics getStatistics() {
+      return statistics;
+   }
 }
@@ -0,0 +1,82 @@
+//
+package gov.nist.p25.issi.p25payload;
+
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+
+/**
+ * This class tests building P25 payloads from an encoded IMBEVoiceBody.
+ *
+ */
+public class Test_IMBEVoiceBodyTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger(Test_IMBEVoiceBodyTest.class);
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      // You can add more appenders here if you wish.
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private IMBEVoiceBlock[] createVoiceBlocks(int numVoiceBlocks) {
+      IMBEVoiceBlock[] voiceBlocks = new IMBEVoiceBlock[numVoiceBlocks];
+      for (int i = 0; i < numVoiceBlocks; i++) {
+         voiceBlocks[i] = new IMBEVoiceBlock();
+         voiceBlocks[i].setFT(i + 1);
+         voiceBlocks[i].setU0(0x100 + i);
+         voiceBlocks[i].setU7(0x11 * i);
+      }
+      return voiceBlocks;
+   }
+
+   private ISSIPacketType createPacketType(int tsn) {
+      ISSIPacketType pt = new ISSIPacketType();
+      pt.setPacketType(PacketType.PTT_TRANSMIT_PROGRESS);
+      pt.setSO(0);
+      pt.setTranssmissionSequenceNumber(tsn);
+      pt.setInterval(5);
+      return pt;
+   }
+
+   private PTTControlWord createControlWord(int unitId) {
+      PTTControlWord cw = new PTTControlWord();
+      cw.setWacnId(0xBEE00);
+      cw.setSystemId(0x2AB);
+      cw.setUnitId(unitId);
+      cw.setTP(2);
+      return cw;
+   }
+
+   /**
+    * Payloads for several peers share one voice body and encode the same
+    * as payloads built from the voice blocks.
+    */
+   public void testFanOut() throws Exception {
+
+      IMBEVoiceBlock[] voiceBlocks = createVoiceBlocks(3);
+      IMBEVoiceBody voiceBody = new IMBEVoiceBody(voiceBlocks);
+      assertSame(voiceBlocks, voiceBody.getIMBEVoiceBlocks());
+
+      for (int tsn = 1; tsn < 8; tsn += 2) {
+         ISSIHeaderWord hw = null;
+         if (tsn == 1) {
+            hw = new ISSIHeaderWord();
+            hw.setMessageIndicator(new byte[9]);
+            hw.setGroupId(0xCAFE);
+         }
+         P25Payload expected = new P25Payload(createPacketType(tsn),
+               createControlWord(0x1234 + tsn), hw, voiceBlocks, null);
+         P25Payload actual = new P25Payload(createPacketType(tsn),
+               createControlWord(0x1234 + tsn), hw, voiceBody);
+         assertTrue(Arrays.equals(expected.getBytes(), actual.getBytes()));
+
+         P25Payload decoded = new P25Payload(actual.getBytes());
+         assertEquals(tsn, decoded.getISSIPacketType().getTransmissionSequenceNumber());
+         assertEquals(0x1234 + tsn, decoded.getPTTControlWord().getUnitId());
+         assertEquals(3, decoded.getIMBEVoiceBlockArray().length);
+      }
+   }
+}
@@ -0,0 +1,67 @@
+//
+package gov.nist.p25.issi.p25payload;
+
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.SimpleLayout;
+
+/**
+ * This class tests sending a P25 payload from a P25PayloadTemplate.
+ *
+ */
+public class Test_P25PayloadTemplateTest extends TestCase {
+
+   private static Logger logger = Logger.getLogger(Test_P25PayloadTemplateTest.class);
+   static {
+      PropertyConfigurator.configure("log4j.properties");
+      // You can add more appenders here if you wish.
+      logger.addAppender(new ConsoleAppender(new SimpleLayout()));
+   }
+
+   private P25Payload createHeartbeat(int tsn) throws P25BlockException {
+      ISSIPacketType pt = new ISSIPacketType();
+      pt.setMuteStatus(tsn != 0);
+      pt.setPacketType(tsn != 0 ? PacketType.HEARTBEAT_MUTE_TRANSMISSION
+            : PacketType.HEARTBEAT);
+      pt.setSO(0);
+      pt.setTranssmissionSequenceNumber(tsn);
+      pt.setInterval(5);
+      return new P25Payload(pt, null, null, null, null);
+   }
+
+   /**
+    * The template bytes are the encoded payload.
+    */
+   public void testTemplateBytes() throws Exception {
+
+      P25Payload p25Payload = createHeartbeat(0);
+      P25PayloadTemplate template = new P25PayloadTemplate(p25Payload);
+
+      assertSame(p25Payload, template.getP25Payload());
+      assertTrue(Arrays.equals(p25Payload.getBytes(), template.getBytes()));
+      assertEquals(template.getBytes().length, template.getLength());
+
+      // encoded once: every send gets the same bytes
+      assertSame(template.getBytes(), template.getBytes());
+      assertEquals(p25Payload.getISSIPacketType(),
+            new P25Payload(template.getBytes()).getISSIPacketType());
+   }
+
+   /**
+    * The fields of the template decode to those of the payload.
+    */
+   public void testTemplateFields() throws Exception {
+
+      P25PayloadTemplate template = new P25PayloadTemplate(createHeartbeat(17));
+      ISSIPacketType decoded = new P25Payload(template.getBytes(), 0,
+            template.getLength()).getISSIPacketType();
+
+      assertEquals(PacketType.HEARTBEAT_MUTE_TRANSMISSION, decoded.getPacketType());
+      assertEquals(17, decoded.getTransmissionSequenceNumber());
+      assertEquals(5, decoded.getInterval());
+      assertEquals(17, template.getISSIPacketType().getTransmissionSequenceNumber());
+   }
+}
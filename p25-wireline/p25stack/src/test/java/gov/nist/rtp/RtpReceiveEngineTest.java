@@ -0,0 +1,194 @@
+//
+package gov.nist.rtp;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+
+/**
+ * This class tests that sessions served by the shared receive engine get
+ * their packets, release their port when unregistered, and can send while
+ * they are being registered.
+ *
+ */
+public class RtpReceiveEngineTest extends TestCase {
+
+   private boolean wasEnabled;
+
+   private InetAddress localhost;
+
+   /** The packets and errors delivered to the session listener. */
+   private BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+
+   private RtpListener listener = new RtpListener() {
+      public void handleRtpPacketEvent(RtpPacketEvent rtpEvent) {
+         events.add(rtpEvent.getRtpPacket());
+      }
+
+      public void handleRtpStatusEvent(RtpStatusEvent rtpEvent) {
+      }
+
+      public void handleRtpTimeoutEvent(RtpTimeoutEvent rtpEvent) {
+      }
+
+      public void handleRtpErrorEvent(RtpErrorEvent rtpEvent) {
+         events.add(rtpEvent.getCause());
+      }
+   };
+
+   public void setUp() throws Exception {
+      wasEnabled = RtpReceiveEngine.isEnabled();
+      // Same as starting with -Dgov.nist.rtp.receiveEngine=true
+      RtpReceiveEngine.setEnabled(true);
+      localhost = InetAddress.getByName("127.0.0.1");
+   }
+
+   public void tearDown() {
+      RtpReceiveEngine.setEnabled(wasEnabled);
+   }
+
+   /** Open a session on a free even port. */
+   private RtpSession openSession() throws Exception {
+      for (int port = 44000; port < 45000; port += 2) {
+         try {
+            return new RtpSession(localhost, port);
+         } catch (SocketException ex) {
+         }
+      }
+      fail("no free RTP port");
+      return null;
+   }
+
+   private static byte[] encoded(int sn) {
+      RtpPacket rtpPacket = new RtpPacket();
+      rtpPacket.setPT(100);
+      rtpPacket.setSN(sn);
+      rtpPacket.setTS(160 * sn);
+      rtpPacket.setSSRC(0x1234);
+      rtpPacket.setPayload(new byte[] { (byte) sn, 1, 2, 3 }, 4);
+      return rtpPacket.getData();
+   }
+
+   private RtpPacket nextPacket() throws Exception {
+      Object event = events.poll(5, TimeUnit.SECONDS);
+      assertNotNull("no packet delivered", event);
+      if (event instanceof Throwable)
+         throw new AssertionError(event);
+      return (RtpPacket) event;
+   }
+
+   public void testDeliveryAndUnregister() throws Exception {
+      RtpReceiveEngine engine = RtpReceiveEngine.getInstance();
+      int sessions = engine.getSessionCount();
+      RtpSession rtpSession = openSession();
+      int port = rtpSession.getMyRtpRecvPort();
+      DatagramSocket sender = new DatagramSocket();
+      try {
+         rtpSession.addRtpListener(listener);
+         rtpSession.receiveRTPPackets();
+         assertEquals(sessions + 1, engine.getSessionCount());
+
+         for (int sn = 1; sn <= 3; sn++) {
+            byte[] data = encoded(sn);
+            sender.send(new DatagramPacket(data, data.length, localhost, port));
+            RtpPacket rtpPacket = nextPacket();
+            assertEquals(sn, rtpPacket.getSN());
+            assertEquals(160 * sn, rtpPacket.getTS());
+            assertEquals(4, rtpPacket.getPayloadLength());
+            assertEquals(sn, rtpPacket.getPayload()[0]);
+         }
+
+         rtpSession.stopRtpPacketReceiver();
+         assertEquals(sessions, engine.getSessionCount());
+
+         // The selector thread closes the channel, which frees the port.
+         DatagramSocket rebound = null;
+         for (int i = 0; rebound == null && i < 50; i++) {
+            try {
+               rebound = new DatagramSocket(port, localhost);
+            } catch (SocketException ex) {
+               Thread.sleep(100);
+            }
+         }
+         assertNotNull("port " + port + " still bound", rebound);
+         rebound.close();
+         byte[] data = encoded(4);
+         sender.send(new DatagramPacket(data, data.length, localhost, port));
+         assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+      } finally {
+         sender.close();
+         rtpSession.shutDown();
+      }
+   }
+
+   /**
+    * A session that sends from another thread while its channel is being
+    * registered with the engine keeps sending every packet.
+    */
+   public void testSendRacingRegistration() throws Exception {
+      DatagramSocket receiver = evenReceiver();
+      try {
+         for (int round = 0; round < 20; round++) {
+            final RtpSession rtpSession = openSession();
+            rtpSession.setRemoteIpAddress("127.0.0.1");
+            rtpSession.setRemoteRtpRecvPort(receiver.getLocalPort());
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            final int packets = 50;
+            Thread sender = new Thread() {
+               public void run() {
+                  try {
+                     for (int i = 0; i < packets; i++) {
+                        RtpPacket rtpPacket = new RtpPacket();
+                        rtpPacket.setPT(100);
+                        rtpPacket.setSSRC(0x1234);
+                        rtpPacket.setPayload(new byte[] { (byte) i }, 1);
+                        rtpSession.sendRtpPacket(rtpPacket);
+                     }
+                  } catch (Throwable ex) {
+                     failure.set(ex);
+                  }
+               }
+            };
+            try {
+               sender.start();
+               rtpSession.receiveRTPPackets();
+               sender.join();
+               if (failure.get() != null)
+                  throw new AssertionError(failure.get());
+
+               byte[] buffer = new byte[64];
+               for (int i = 0; i < packets; i++) {
+                  DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+                  receiver.receive(datagram);
+                  assertEquals(RtpPacket.FIXED_HEADER_LENGTH + 1, datagram.getLength());
+                  assertEquals((byte) i, buffer[RtpPacket.FIXED_HEADER_LENGTH]);
+               }
+            } finally {
+               rtpSession.shutDown();
+            }
+         }
+      } finally {
+         receiver.close();
+      }
+   }
+
+   /** Open a plain socket on a free even port, as a remote RTP port. */
+   private DatagramSocket evenReceiver() throws Exception {
+      for (int port = 46000; port < 47000; port += 2) {
+         try {
+            DatagramSocket receiver = new DatagramSocket(port, localhost);
+            receiver.setSoTimeout(5000);
+            return receiver;
+         } catch (SocketException ex) {
+         }
+      }
+      fail("no free even port");
+      return null;
+   }
+}
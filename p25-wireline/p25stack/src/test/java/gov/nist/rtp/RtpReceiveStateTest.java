@@ -0,0 +1,102 @@
+//
+package gov.nist.rtp;
+
+import java.util.ArrayList;
+import junit.framework.TestCase;
+
+/**
+ * This class tests sequence number handling, reordering and receive
+ * statistics of RtpReceiveState.
+ *
+ */
+public class RtpReceiveStateTest extends TestCase {
+
+   private ArrayList<RtpPacket> delivered = new ArrayList<RtpPacket>();
+
+   private RtpPacket packet(int sn) {
+      RtpPacket rtpPacket = new RtpPacket();
+      rtpPacket.setSN(sn);
+      rtpPacket.setTS(sn * 160L);
+      return rtpPacket;
+   }
+
+   private void receive(RtpReceiveState state, int... sns) {
+      for (int sn : sns)
+         state.receive(packet(sn), sn * 20000000L, delivered);
+   }
+
+   private void assertDelivered(int... sns) {
+      assertEquals(sns.length, delivered.size());
+      for (int i = 0; i < sns.length; i++)
+         assertEquals(sns[i], delivered.get(i).getSN());
+      delivered.clear();
+   }
+
+   /**
+    * Packets keep flowing across the 16 bit sequence number wraparound.
+    */
+   public void testWraparound() {
+      RtpReceiveState state = new RtpReceiveState();
+      receive(state, 65533, 65534, 65535, 0, 1);
+      assertDelivered(65533, 65534, 65535, 0, 1);
+
+      RtpReceiveStatistics stats = state.getStatistics();
+      assertEquals(1, stats.getCycles());
+      assertEquals(5, stats.getPacketsExpected());
+      assertEquals(0, stats.getPacketsLost());
+      assertEquals(0.0, stats.getJitter(), 0.0001);
+   }
+
+   /**
+    * Without a reorder window, late packets and duplicates are dropped and
+    * gaps are counted as loss.
+    */
+   public void testLossDuplicateAndLate() {
+      RtpReceiveState state = new RtpReceiveState();
+      receive(state, 10, 11, 11, 13, 12, 14);
+      assertDelivered(10, 11, 13, 14);
+
+      RtpReceiveStatistics stats = state.getStatistics();
+      assertEquals(5, stats.getPacketsExpected());
+      assertEquals(5, stats.getPacketsReceived());
+      assertEquals(1, stats.getDuplicatePackets());
+      assertEquals(1, stats.getLatePackets());
+      assertEquals(0, stats.getPacketsLost());
+
+      receive(state, 17);
+      assertDelivered(17);
+      assertEquals(2, state.getStatistics().getPacketsLost());
+   }
+
+   /**
+    * A reorder window restores order and gives up on a missing packet once
+    * the window is full.
+    */
+   public void testReorderWindow() {
+      RtpReceiveState state = new RtpReceiveState();
+      state.setReorderWindow(2);
+      receive(state, 1, 3, 2);
+      assertDelivered(1, 2, 3);
+      assertEquals(1, state.getStatistics().getReorderedPackets());
+
+      receive(state, 5, 6);
+      assertDelivered();
+      receive(state, 7);
+      assertDelivered(5, 6, 7);
+      receive(state, 4);
+      assertDelivered();
+      assertEquals(1, state.getStatistics().getLatePackets());
+   }
+
+   /**
+    * A sender that restarts its sequence numbers is followed after two
+    * sequential packets.
+    */
+   public void testSenderRestart() {
+      RtpReceiveState state = new RtpReceiveState();
+      receive(state, 20000, 20001);
+      receive(state, 1, 2, 3);
+      assertDelivered(20000, 20001, 2, 3);
+      assertEquals(1, state.getStatistics().getResyncCount());
+   }
+}
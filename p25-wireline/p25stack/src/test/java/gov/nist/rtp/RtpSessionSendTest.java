@@ -0,0 +1,118 @@
+//
+package gov.nist.rtp;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * This class tests that RtpSession sends packets in the RTP wire format,
+ * numbered in order.
+ *
+ */
+public class RtpSessionSendTest extends TestCase {
+
+   private DatagramSocket receiver;
+
+   public void setUp() throws Exception {
+      // RTP receive ports are even
+      for (int port = 42000; receiver == null && port < 43000; port += 2) {
+         try {
+            receiver = new DatagramSocket(port, InetAddress.getByName("127.0.0.1"));
+         } catch (SocketException ex) {
+         }
+      }
+      assertNotNull(receiver);
+      receiver.setSoTimeout(5000);
+   }
+
+   public void tearDown() {
+      receiver.close();
+   }
+
+   private static byte[] payload(int ts, int payloadLength) {
+      byte[] payload = new byte[payloadLength];
+      for (int i = 0; i < payloadLength; i++)
+         payload[i] = (byte) (ts + i);
+      return payload;
+   }
+
+   private RtpPacket packet(int ts, int payloadLength) {
+      RtpPacket rtpPacket = new RtpPacket();
+      rtpPacket.setPT(100);
+      rtpPacket.setTS(ts);
+      rtpPacket.setSSRC(0x1234);
+      rtpPacket.setPayload(payload(ts, payloadLength), payloadLength);
+      return rtpPacket;
+   }
+
+   /**
+    * The packet made by packet(ts, payloadLength), encoded by hand: V=2,
+    * P=0, X=0, CC=0, then M and PT=100, then SN, TS and SSRC big-endian,
+    * then the payload.
+    */
+   private static byte[] encoded(int sn, int ts, int marker, int payloadLength) {
+      byte[] header = {
+         (byte) 0x80, (byte) ((marker << 7) | 100),
+         (byte) (sn >> 8), (byte) sn,
+         (byte) (ts >> 24), (byte) (ts >> 16), (byte) (ts >> 8), (byte) ts,
+         0x00, 0x00, 0x12, 0x34 };
+      byte[] expected = Arrays.copyOf(header, header.length + payloadLength);
+      System.arraycopy(payload(ts, payloadLength), 0, expected, header.length,
+            payloadLength);
+      return expected;
+   }
+
+   private void assertReceived(byte[] expected) throws Exception {
+      byte[] buffer = new byte[1024];
+      DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+      receiver.receive(datagram);
+      assertTrue(Arrays.equals(expected,
+            Arrays.copyOf(buffer, datagram.getLength())));
+   }
+
+   /**
+    * Single and batched sends reuse the session buffer without mixing up
+    * packets of different sizes.
+    */
+   public void testSend() throws Exception {
+      RtpSession rtpSession = new RtpSession(InetAddress.getByName("127.0.0.1"), 0);
+      rtpSession.setRemoteIpAddress("127.0.0.1");
+      rtpSession.setRemoteRtpRecvPort(receiver.getLocalPort());
+      try {
+         RtpPacket first = packet(160, 40);
+         rtpSession.sendRtpPacket(first);
+         assertEquals(1, first.getSN());
+         assertReceived(encoded(1, 160, 0, 40));
+
+         RtpPacket[] batch = { packet(320, 8), packet(480, 0), packet(70000, 33) };
+         batch[1].setM(1);
+         rtpSession.sendRtpPackets(batch);
+         assertReceived(encoded(2, 320, 0, 8));
+         assertReceived(encoded(3, 480, 1, 0));
+         assertReceived(encoded(4, 70000, 0, 33));
+         for (int i = 0; i < batch.length; i++)
+            assertEquals(2 + i, batch[i].getSN());
+      } finally {
+         rtpSession.shutDown();
+      }
+   }
+
+   /**
+    * A session without a remote port cannot send.
+    */
+   public void testNoRemotePort() throws Exception {
+      RtpSession rtpSession = new RtpSession(InetAddress.getByName("127.0.0.1"), 0);
+      rtpSession.setRemoteIpAddress("127.0.0.1");
+      try {
+         rtpSession.sendRtpPacket(packet(160, 4));
+         fail("sent without a remote port");
+      } catch (RtpException ex) {
+      } finally {
+         rtpSession.shutDown();
+      }
+   }
+}